@@ -40,6 +40,15 @@ public interface Map {
      */
     public Path[] getChildren(Path path) throws RepositoryException;
 
+    /**
+     * Get a page of the children sorted by name
+     * @param path Path of collection
+     * @param offset Position (within all children sorted by name) of the first child which is returned
+     * @param limit Maximum number of children which are returned
+     * @return Children or empty array if offset is beyond the number of children
+     */
+    public Path[] getChildren(Path path, int offset, int limit) throws RepositoryException;
+
     /**
      *
      */
@@ -108,6 +108,26 @@ public interface Node {
      * @throws RepositoryException if node is not a collection or if a repository error occurs
      */
     public Node[] getNodes() throws RepositoryException;
+
+    /**
+     * Gets a page of the child nodes sorted by name, e.g. in order to browse collections containing a large number of child nodes.
+     *
+     * @param offset Position (within all child nodes sorted by name) of the first child node which is returned
+     * @param limit Maximum number of child nodes which are returned
+     * @return child nodes or empty array if offset is beyond the number of child nodes.
+     * @throws RepositoryException if node is not a collection or if a repository error occurs
+     */
+    public Node[] getNodes(int offset, int limit) throws RepositoryException;
+
+    /**
+     * Gets lightweight descriptions of all child nodes, which in contrast to getNodes() do not require to instantiate the child nodes and to read their properties.
+     *
+     * There is no guarantee that the descriptions in the resulting array will appear in any specific order.
+     *
+     * @return descriptions of child nodes or empty array if there are no child nodes.
+     * @throws RepositoryException if node is not a collection or if a repository error occurs
+     */
+    public NodeInfo[] listChildren() throws RepositoryException;
     
     /**
      * Indicates whether this node has a direct child node with the given name.
@@ -204,6 +224,15 @@ public interface Node {
      */
     public void setProperty(Property property) throws RepositoryException;
 
+    /**
+     * Sets several properties at once or creates them if they do not exist yet.
+     * In contrast to calling setProperty(Property) for each property, an implementation
+     * should persist (and index) the properties only once.
+     * @param properties
+     * @throws RepositoryException repository error
+     */
+    public void setProperties(Property[] properties) throws RepositoryException;
+
     //public Property getDefaultProperty() throws RepositoryException;
     
     /**
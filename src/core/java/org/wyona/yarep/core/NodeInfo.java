@@ -0,0 +1,96 @@
+package org.wyona.yarep.core;
+
+/**
+ * Lightweight description of a node (e.g. a child node of a collection), which can be created without reading the properties of the node.
+ * Useful for directory listings and sitemaps, where it is not necessary to instantiate every node (see Node#listChildren()).
+ */
+public class NodeInfo {
+
+    private String name;
+    private String path;
+    private int type;
+    private long size;
+    private long lastModified;
+    private String mimeType;
+
+    /**
+     * @param name Name of node
+     * @param path Path of node
+     * @param type Type of node (see NodeType)
+     * @param size Size of content in bytes (0 for collections)
+     * @param lastModified Last modified date of node (in milliseconds)
+     * @param mimeType Mime type of node or null if not known (e.g. because properties of node have not been read yet)
+     */
+    public NodeInfo(String name, String path, int type, long size, long lastModified, String mimeType) {
+        this.name = name;
+        this.path = path;
+        this.type = type;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.mimeType = mimeType;
+    }
+
+    /**
+     * Get name of node
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get path of node, which can be used to get the actual node (see Repository#getNode(String))
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Get type of node (see NodeType)
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Check whether node is a resource
+     */
+    public boolean isResource() {
+        return type == NodeType.RESOURCE;
+    }
+
+    /**
+     * Check whether node is a collection
+     */
+    public boolean isCollection() {
+        return type == NodeType.COLLECTION;
+    }
+
+    /**
+     * Get size of content in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get last modified date (in milliseconds)
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get mime type
+     * @return Mime type or null if the mime type is not known
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     *
+     */
+    public String toString() {
+        return path + " (" + NodeType.getTypeName(type) + ")";
+    }
+}
@@ -14,6 +14,7 @@ import org.wyona.yarep.core.NoSuchNodeException;
 import org.wyona.yarep.core.NoSuchPropertyException;
 import org.wyona.yarep.core.NoSuchRevisionException;
 import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeInfo;
 import org.wyona.yarep.core.NodeStateException;
 import org.wyona.yarep.core.NodeType;
 import org.wyona.yarep.core.Property;
@@ -177,8 +178,7 @@ public abstract class AbstractNode implements Node {
      * @see org.wyona.yarep.core.Node#setProperty(java.lang.String, boolean)
      */
     public Property setProperty(String name, boolean value) throws RepositoryException {
-        Property property = new DefaultProperty(name, PropertyType.BOOLEAN, this);
-        property.setValue(value);
+        Property property = createProperty(name, value);
         setProperty(property);
         return property;
     }
@@ -187,8 +187,7 @@ public abstract class AbstractNode implements Node {
      * @see org.wyona.yarep.core.Node#setProperty(java.lang.String, java.util.Date)
      */
     public Property setProperty(String name, Date value) throws RepositoryException {
-        Property property = new DefaultProperty(name, PropertyType.DATE, this);
-        property.setValue(value);
+        Property property = createProperty(name, value);
         setProperty(property);
         return property;
     }
@@ -197,8 +196,7 @@ public abstract class AbstractNode implements Node {
      * @see org.wyona.yarep.core.Node#setProperty(java.lang.String, double)
      */
     public Property setProperty(String name, double value) throws RepositoryException {
-        Property property = new DefaultProperty(name, PropertyType.DOUBLE, this);
-        property.setValue(value);
+        Property property = createProperty(name, value);
         setProperty(property);
         return property;
     }
@@ -209,8 +207,7 @@ public abstract class AbstractNode implements Node {
      * @see org.wyona.yarep.core.Node#setProperty(java.lang.String, long)
      */
     public Property setProperty(String name, long value) throws RepositoryException {
-        Property property = new DefaultProperty(name, PropertyType.LONG, this);
-        property.setValue(value);
+        Property property = createProperty(name, value);
         setProperty(property);
         return property;
     }
@@ -220,12 +217,64 @@ public abstract class AbstractNode implements Node {
      */
     public Property setProperty(String name, String value) throws RepositoryException {
         //log.debug("Set property: " + name + ", " + value);
-        Property property = new DefaultProperty(name, PropertyType.STRING, this);
-        property.setValue(value);
+        Property property = createProperty(name, value);
         setProperty(property);
         return property;
     }
     
+    /**
+     * @see org.wyona.yarep.core.Node#setProperties(Property[])
+     */
+    public void setProperties(Property[] properties) throws RepositoryException {
+        for (int i = 0; i < properties.length; i++) {
+            setProperty(properties[i]);
+        }
+    }
+
+    /**
+     * Create (but do not set) a property of type boolean
+     */
+    protected Property createProperty(String name, boolean value) throws RepositoryException {
+        Property property = new DefaultProperty(name, PropertyType.BOOLEAN, this);
+        property.setValue(value);
+        return property;
+    }
+
+    /**
+     * Create (but do not set) a property of type date
+     */
+    protected Property createProperty(String name, Date value) throws RepositoryException {
+        Property property = new DefaultProperty(name, PropertyType.DATE, this);
+        property.setValue(value);
+        return property;
+    }
+
+    /**
+     * Create (but do not set) a property of type double
+     */
+    protected Property createProperty(String name, double value) throws RepositoryException {
+        Property property = new DefaultProperty(name, PropertyType.DOUBLE, this);
+        property.setValue(value);
+        return property;
+    }
+
+    /**
+     * Create (but do not set) a property of type long
+     */
+    protected Property createProperty(String name, long value) throws RepositoryException {
+        Property property = new DefaultProperty(name, PropertyType.LONG, this);
+        property.setValue(value);
+        return property;
+    }
+
+    /**
+     * Create (but do not set) a property of type string
+     */
+    protected Property createProperty(String name, String value) throws RepositoryException {
+        Property property = new DefaultProperty(name, PropertyType.STRING, this);
+        property.setValue(value);
+        return property;
+    }
     
     /**
      * @see org.wyona.yarep.core.Node#isCheckedOut()
@@ -318,6 +367,52 @@ public abstract class AbstractNode implements Node {
         return false;
     }
     
+    /**
+     * Default implementation based on getNodes(), which sorts all child nodes by name, whereas implementations which are able to access a page of child nodes more efficiently should overwrite it
+     * @see org.wyona.yarep.core.Node#getNodes(int, int)
+     */
+    public Node[] getNodes(int offset, int limit) throws RepositoryException {
+        if (offset < 0 || limit < 0) {
+            throw new RepositoryException("Offset and limit must not be negative (offset: " + offset + ", limit: " + limit + ")");
+        }
+        Node[] children = getNodes();
+        if (children == null) {
+            return new Node[0];
+        }
+        String[] names = new String[children.length];
+        java.util.Map childrenByName = new HashMap();
+        for (int i = 0; i < children.length; i++) {
+            names[i] = children[i].getName();
+            childrenByName.put(names[i], children[i]);
+        }
+        java.util.Arrays.sort(names);
+        int end = (int) Math.min((long) offset + limit, names.length);
+        if (offset >= end) {
+            return new Node[0];
+        }
+        Node[] page = new Node[end - offset];
+        for (int i = 0; i < page.length; i++) {
+            page[i] = (Node) childrenByName.get(names[offset + i]);
+        }
+        return page;
+    }
+
+    /**
+     * Default implementation based on getNodes(), which should be overwritten by implementations which are able to describe child nodes more efficiently
+     * @see org.wyona.yarep.core.Node#listChildren()
+     */
+    public NodeInfo[] listChildren() throws RepositoryException {
+        Node[] children = getNodes();
+        if (children == null) {
+            return new NodeInfo[0];
+        }
+        NodeInfo[] infos = new NodeInfo[children.length];
+        for (int i = 0; i < children.length; i++) {
+            infos[i] = new NodeInfo(children[i].getName(), children[i].getPath(), children[i].getType(), children[i].getSize(), children[i].getLastModified(), children[i].getMimeType());
+        }
+        return infos;
+    }
+
     /**
      * @see org.wyona.yarep.core.Node#getLastModified()
      */
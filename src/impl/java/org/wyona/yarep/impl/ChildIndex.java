@@ -0,0 +1,275 @@
+package org.wyona.yarep.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+
+/**
+ * Sorted index of the names of the children of a directory, which is stored outside of the directory (see VFileSystemMapImpl#setChildIndexDir(File)), such that the index does not show up as child.
+ * The index allows to read a page of children (offset and limit) without listing and sorting all children of the directory,
+ * whereas adding or removing a child rewrites the whole index (O(number of children)).
+ * <br/><br/>
+ * Layout:
+ * <pre>
+ * last modified date of directory when the index has been written (long)
+ * number of children (int)
+ * for each child: offset of name relative to the beginning of the names (int)
+ * for each child: name (UTF)
+ * </pre>
+ * The index is considered out of date as soon as the last modified date of the directory differs from the date stored within the index
+ * (e.g. because a file has been added without using VFileSystemMapImpl) and is then rebuilt the next time it is read.
+ * Because the last modified date of a directory has a limited granularity (e.g. one second), a child which is added or removed shortly after the index has been written
+ * might not change the date. Hence, as long as the index has been written within the granularity of the date of the directory, also the number of children is compared,
+ * and the index is rewritten once the granularity has elapsed, such that the children do not have to be counted anymore.
+ * Reading and writing an index is synchronized per index file, such that all instances (also of different repositories) referring to the same index file share the lock.
+ */
+class ChildIndex {
+
+    private static Logger log = LogManager.getLogger(ChildIndex.class);
+
+    static final String INDEX_FILE_NAME = "child-index";
+
+    private static final int HEADER_LENGTH = 12;
+
+    private static final StripedLock INDEX_LOCKS = new StripedLock(64);
+
+    private static final long LAST_MODIFIED_GRANULARITY = 2000; // INFO: In milliseconds (e.g. FAT has a granularity of two seconds)
+
+    private File dir;
+    private File indexFile;
+    private FilenameFilter filter;
+
+    /**
+     * @param dir Directory containing children
+     * @param indexFile File containing the index
+     * @param filter Filter which is used when the index is rebuilt
+     */
+    ChildIndex(File dir, File indexFile, FilenameFilter filter) {
+        this.dir = dir;
+        this.indexFile = indexFile;
+        this.filter = filter;
+    }
+
+    /**
+     * Check whether the index exists and the directory has not been modified since the index has been written
+     */
+    boolean isUpToDate() {
+        if (!indexFile.isFile()) {
+            return false;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(indexFile, "r");
+            long lastModified = dir.lastModified();
+            if (raf.length() < HEADER_LENGTH || raf.readLong() != lastModified) {
+                return false;
+            }
+            int count = raf.readInt();
+            if (isWithinGranularity(lastModified)) {
+                String[] names = dir.list(filter);
+                if (names == null || names.length != count) {
+                    log.debug("Number of children of '" + dir + "' differs from child index, although last modified date has not changed.");
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not read child index '" + indexFile + "': " + e.getMessage());
+            return false;
+        } finally {
+            close(raf);
+        }
+    }
+
+    /**
+     * Check whether the index has been written within the granularity of the last modified date of the directory, such that a modification of the directory after the index has been written might not have changed the date
+     * @param lastModified Last modified date of the directory
+     */
+    private boolean isWithinGranularity(long lastModified) {
+        return indexFile.lastModified() - lastModified < LAST_MODIFIED_GRANULARITY;
+    }
+
+    /**
+     * Get a page of the sorted names of the children, whereas the index is rebuilt if it does not exist yet or is out of date
+     * @param offset Position of first child
+     * @param limit Maximum number of children
+     * @return Sorted names of children
+     */
+    String[] getNames(int offset, int limit) throws IOException {
+        synchronized(INDEX_LOCKS.getLock(indexFile)) {
+            return readNames(offset, limit);
+        }
+    }
+
+    /**
+     * @see getNames(int, int)
+     */
+    private String[] readNames(int offset, int limit) throws IOException {
+        if (!isUpToDate()) {
+            String[] names = rebuild();
+            int end = (int) Math.min((long) offset + limit, names.length);
+            if (offset >= end) {
+                return new String[0];
+            }
+            String[] page = new String[end - offset];
+            System.arraycopy(names, offset, page, 0, page.length);
+            return page;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        try {
+            long lastModified = raf.readLong();
+            if (isWithinGranularity(lastModified) && System.currentTimeMillis() - lastModified >= LAST_MODIFIED_GRANULARITY) {
+                // INFO: The index is up to date and any further modification will change the last modified date of the directory, hence rewrite the index (with the date which it has been checked against), such that the children do not have to be counted anymore
+                close(raf);
+                write(readAll(), lastModified);
+                raf = new RandomAccessFile(indexFile, "r");
+            }
+            raf.seek(8);
+            int count = raf.readInt();
+            int end = (int) Math.min((long) offset + limit, count);
+            if (offset >= end) {
+                return new String[0];
+            }
+            raf.seek(HEADER_LENGTH + 4L * offset);
+            int nameOffset = raf.readInt();
+            raf.seek(HEADER_LENGTH + 4L * count + nameOffset);
+            String[] page = new String[end - offset];
+            for (int i = 0; i < page.length; i++) {
+                page[i] = raf.readUTF();
+            }
+            return page;
+        } finally {
+            close(raf);
+        }
+    }
+
+    /**
+     * Update the index after a child has been added or removed. If the index does not exist, then nothing is done (the index is created when it is read the first time).
+     * @param name Name of child
+     * @param added True if child has been added, false if child has been removed
+     * @param wasUpToDate True if the index has been up to date before the child has been added or removed (see isUpToDate()), otherwise the index is rebuilt
+     */
+    void update(String name, boolean added, boolean wasUpToDate) throws IOException {
+        synchronized(INDEX_LOCKS.getLock(indexFile)) {
+            if (!indexFile.exists()) {
+                return;
+            }
+            if (!wasUpToDate) {
+                rebuild();
+                return;
+            }
+
+            List names = new ArrayList(Arrays.asList(readAll()));
+            int pos = Collections.binarySearch(names, name);
+            if (added && pos < 0) {
+                names.add(-pos - 1, name);
+            } else if (!added && pos >= 0) {
+                names.remove(pos);
+            }
+            write((String[]) names.toArray(new String[names.size()]), dir.lastModified());
+        }
+    }
+
+    /**
+     * List children of directory and write index
+     * @return Sorted names of children
+     */
+    private String[] rebuild() throws IOException {
+        long lastModified = dir.lastModified(); // INFO: Read before listing, such that a child added in the meantime makes the index out of date
+        String[] names = dir.list(filter);
+        if (names == null) {
+            throw new IOException("No such directory: " + dir);
+        }
+        Arrays.sort(names);
+        write(names, lastModified);
+        log.debug("Child index of '" + dir + "' has been rebuilt (number of children: " + names.length + ")");
+        return names;
+    }
+
+    /**
+     * Read all names of index
+     */
+    private String[] readAll() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        try {
+            raf.seek(8);
+            int count = raf.readInt();
+            raf.seek(HEADER_LENGTH + 4L * count);
+            String[] names = new String[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = raf.readUTF();
+            }
+            return names;
+        } finally {
+            close(raf);
+        }
+    }
+
+    /**
+     * Write index into a temporary file and replace the index by the temporary file
+     * @param names Sorted names of children
+     * @param lastModified Last modified date of the directory which corresponds to the names
+     */
+    private void write(String[] names, long lastModified) throws IOException {
+        ByteArrayOutputStream namesBuffer = new ByteArrayOutputStream();
+        DataOutputStream namesOut = new DataOutputStream(namesBuffer);
+        int[] offsets = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            offsets[i] = namesOut.size();
+            namesOut.writeUTF(names[i]);
+        }
+        namesOut.flush();
+
+        File indexDir = indexFile.getParentFile();
+        if (!indexDir.isDirectory()) {
+            indexDir.mkdirs();
+        }
+        File tmpFile = File.createTempFile(INDEX_FILE_NAME, ".tmp", indexDir);
+        DataOutputStream out = new DataOutputStream(new java.io.BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeLong(lastModified);
+            out.writeInt(names.length);
+            for (int i = 0; i < offsets.length; i++) {
+                out.writeInt(offsets[i]);
+            }
+            namesBuffer.writeTo(out);
+        } finally {
+            out.close();
+        }
+
+        if (!tmpFile.renameTo(indexFile)) {
+            // INFO: On some platforms (e.g. Windows) an existing file cannot be replaced by renaming
+            indexFile.delete();
+            if (!tmpFile.renameTo(indexFile)) {
+                tmpFile.delete();
+                throw new IOException("Could not replace child index: " + indexFile);
+            }
+        }
+    }
+
+    /**
+     *
+     */
+    private static void close(RandomAccessFile raf) {
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                log.error(e, e);
+            }
+        }
+    }
+}
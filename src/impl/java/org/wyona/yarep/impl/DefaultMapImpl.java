@@ -169,6 +169,16 @@ public class DefaultMapImpl implements Map {
         return children;
     }
 
+    /**
+     * @see org.wyona.yarep.core.Map#getChildren(Path, int, int)
+     */
+    public Path[] getChildren(Path path, int offset, int limit) throws RepositoryException {
+        if (offset < 0 || limit < 0) {
+            throw new RepositoryException("Offset and limit must not be negative (offset: " + offset + ", limit: " + limit + ")");
+        }
+        return VFileSystemMapImpl.getPage(getChildren(path), offset, limit);
+    }
+
     /**
      * Get UID
      */
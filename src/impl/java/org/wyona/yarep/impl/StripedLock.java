@@ -0,0 +1,34 @@
+package org.wyona.yarep.impl;
+
+import java.io.File;
+
+/**
+ * Fixed set of lock objects, whereas a file is always mapped to the same lock object.
+ * This allows to synchronize access to a particular file (e.g. the meta file of a node) without
+ * serializing access to all other files, but also without having to keep a lock object per file.
+ */
+public class StripedLock {
+
+    private final Object[] locks;
+
+    /**
+     * @param stripes Number of lock objects (the more stripes, the less likely two different files share the same lock)
+     */
+    public StripedLock(int stripes) {
+        locks = new Object[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Get lock object of a particular file
+     * @param file File, e.g. meta file of a node
+     * @return Lock object which can be used for synchronization
+     */
+    public Object getLock(File file) {
+        int hash = file.getAbsolutePath().hashCode();
+        hash ^= (hash >>> 16); // INFO: Spread the high bits, because the paths of neighbouring nodes usually differ only at the end
+        return locks[(hash & 0x7fffffff) % locks.length];
+    }
+}
@@ -13,6 +13,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.BufferedReader;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,6 +30,8 @@ public class VFileSystemMapImpl implements Map {
     protected File pathsDir;
     protected Pattern[] ignorePatterns;
     protected ChildrenFilter childrenFilter = new ChildrenFilter();
+    protected boolean childIndexEnabled = false;
+    protected File childIndexDir;
 
     /**
      *
@@ -40,6 +43,7 @@ public class VFileSystemMapImpl implements Map {
             if (mapConfig != null) {
                 Configuration[] ignoreElements = mapConfig.getChildren("ignore");
                 setIgnorePatterns(ignoreElements);
+                setChildIndexEnabled(mapConfig.getAttributeAsBoolean("child-index", false));
             }
         } catch(Exception e) {
             log.error(e);
@@ -65,6 +69,40 @@ public class VFileSystemMapImpl implements Map {
         }
     }
     
+    /**
+     * Enable/disable the sorted index of the children of a collection, which is updated when children are created or deleted (see getChildren(Path, int, int))
+     */
+    public void setChildIndexEnabled(boolean enabled) {
+        this.childIndexEnabled = enabled;
+    }
+
+    /**
+     * Check whether the sorted index of the children of a collection is enabled
+     */
+    public boolean isChildIndexEnabled() {
+        return childIndexEnabled;
+    }
+
+    /**
+     * Set directory containing the indexes of the children of the collections, whereas the index of a collection is stored as file 'child-index' within the directory PATH.yarep
+     * (e.g. the index of the collection /hello/world is stored as CHILD_INDEX_DIR/hello/world.yarep/child-index, which corresponds with the meta directory of the collection).
+     * If no directory is set, then the paths directory is used, such that the indexes are located where the meta directories are located if no separate meta directory is configured.
+     * @param dir Directory, e.g. meta directory of repository
+     */
+    public void setChildIndexDir(File dir) {
+        this.childIndexDir = dir;
+    }
+
+    /**
+     * Get the index of the children of a directory
+     * @param dir Directory of collection
+     */
+    protected ChildIndex getChildIndex(File dir) {
+        String relativePath = dir.getAbsolutePath().substring(pathsDir.getAbsolutePath().length());
+        File indexDir = new File(childIndexDir != null ? childIndexDir : pathsDir, relativePath + ".yarep");
+        return new ChildIndex(dir, new File(indexDir, ChildIndex.INDEX_FILE_NAME), this.childrenFilter);
+    }
+
     /**
      * Test if path should be ignored
      */
@@ -115,6 +153,33 @@ public class VFileSystemMapImpl implements Map {
         return true;
     }
 
+    /**
+     * Delete file or directory (recursively) of a path and update the index of the children of the parent collection (if enabled)
+     * @param path Path of file or directory
+     */
+    public synchronized void deleteFile(Path path) throws RepositoryException {
+        File file = new File(pathsDir + path.toString());
+        ChildIndex childIndex = null;
+        boolean isChildIndexUpToDate = false;
+        if (childIndexEnabled) {
+            childIndex = getChildIndex(file.getParentFile());
+            isChildIndexUpToDate = childIndex.isUpToDate();
+        }
+
+        try {
+            if (file.isDirectory()) {
+                org.apache.commons.io.FileUtils.deleteDirectory(file);
+            } else {
+                file.delete();
+            }
+            if (childIndex != null) {
+                childIndex.update(file.getName(), false, isChildIndexUpToDate);
+            }
+        } catch (IOException e) {
+            throw new RepositoryException("Could not delete '" + file + "': " + e.toString(), e);
+        }
+    }
+
     /**
      *
      */
@@ -155,6 +220,77 @@ public class VFileSystemMapImpl implements Map {
         return children;
     }
 
+    /**
+     * Get a page of the children sorted by name. If the child index is enabled, then only the names of the requested page are read from the index of the collection, otherwise all children are listed and sorted.
+     * @see org.wyona.yarep.core.Map#getChildren(Path, int, int)
+     */
+    public Path[] getChildren(Path path, int offset, int limit) throws RepositoryException {
+        if (offset < 0 || limit < 0) {
+            throw new RepositoryException("Offset and limit must not be negative (offset: " + offset + ", limit: " + limit + ")");
+        }
+        if (!childIndexEnabled) {
+            return getPage(getChildren(path), offset, limit);
+        }
+
+        File file = new File(pathsDir + path.toString());
+        if (!file.isDirectory()) {
+            log.warn("No such directory: " + file);
+            return new Path[0];
+        }
+        try {
+            String[] names = getChildIndex(file).getNames(offset, limit);
+            Path[] children = new Path[names.length];
+            for (int i = 0; i < names.length; i++) {
+                if (path.toString().endsWith("/")) {
+                    children[i] = new Path(path + names[i]);
+                } else {
+                    children[i] = new Path(path + "/" + names[i]);
+                }
+            }
+            return children;
+        } catch (IOException e) {
+            throw new RepositoryException("Could not read child index of '" + file + "': " + e.toString(), e);
+        }
+    }
+
+    /**
+     * Sort children by name and get a particular page
+     * @param children Children
+     * @param offset Position of first child
+     * @param limit Maximum number of children
+     */
+    static Path[] getPage(Path[] children, int offset, int limit) {
+        Path[] sorted = new Path[children.length];
+        System.arraycopy(children, 0, sorted, 0, children.length);
+        java.util.Arrays.sort(sorted, new java.util.Comparator() {
+            public int compare(Object o1, Object o2) {
+                return o1.toString().compareTo(o2.toString());
+            }
+        });
+        int end = (int) Math.min((long) offset + limit, sorted.length);
+        if (offset >= end) {
+            return new Path[0];
+        }
+        Path[] page = new Path[end - offset];
+        System.arraycopy(sorted, offset, page, 0, page.length);
+        return page;
+    }
+
+    /**
+     * Get the files of the children (within one pass over the directory), such that callers can describe the children without instantiating a node per child
+     * @param path Path of collection
+     * @return Files of children (ignore patterns are applied) or empty array if there are no children
+     */
+    public File[] listChildFiles(Path path) throws RepositoryException {
+        File file = new File(pathsDir + path.toString());
+        File[] children = file.listFiles(this.childrenFilter);
+        if (children == null) {
+            log.warn("No children: " + path + " (" + file + ")");
+            return new File[0];
+        }
+        return children;
+    }
+
     /**
      * Get UID
      */
@@ -175,6 +311,13 @@ public class VFileSystemMapImpl implements Map {
             parent.mkdirs();
         }
 
+        ChildIndex childIndex = null;
+        boolean isChildIndexUpToDate = false;
+        if (childIndexEnabled) {
+            childIndex = getChildIndex(parent);
+            isChildIndexUpToDate = childIndex.isUpToDate();
+        }
+
         if (type == org.wyona.yarep.core.NodeType.COLLECTION) {
             File dir = new File(parent, path.getName());
             boolean created = dir.mkdir();
@@ -196,6 +339,14 @@ public class VFileSystemMapImpl implements Map {
                 log.error(e.getMessage(), e);
             }
         }
+
+        if (childIndex != null) {
+            try {
+                childIndex.update(path.getName(), true, isChildIndexUpToDate);
+            } catch (IOException e) {
+                log.error("Could not update child index of '" + parent + "': " + e.getMessage(), e);
+            }
+        }
         
         return new UID(path.toString());
     }
@@ -7,6 +7,7 @@ import java.io.Writer;
 import java.util.Date;
 
 import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeInfo;
 import org.wyona.yarep.core.NoSuchNodeException;
 import org.wyona.yarep.core.NoSuchRevisionException;
 import org.wyona.yarep.core.NodeStateException;
@@ -202,6 +203,22 @@ public class JCRNode implements Node {
         log.error("Not implemented yet!");
         return null;
     }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getNodes(int, int)
+     */
+    public Node[] getNodes(int offset, int limit) throws RepositoryException {
+        log.error("Not implemented yet!");
+        return null;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#listChildren()
+     */
+    public NodeInfo[] listChildren() throws RepositoryException {
+        log.error("Not implemented yet!");
+        return null;
+    }
     
     /**
      * Indicates whether this node has a direct child node with the given name.
@@ -394,6 +411,15 @@ public class JCRNode implements Node {
         }
     }
 
+    /**
+     * @see org.wyona.yarep.core.Node#setProperties(Property[])
+     */
+    public void setProperties(Property[] properties) throws RepositoryException {
+        for (int i = 0; i < properties.length; i++) {
+            setProperty(properties[i]);
+        }
+    }
+
     //public Property getDefaultProperty() throws RepositoryException;
     
     /**
@@ -0,0 +1,425 @@
+package org.wyona.yarep.impl.repo.pointintime;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+
+import org.wyona.yarep.core.NoSuchNodeException;
+import org.wyona.yarep.core.NoSuchRevisionException;
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeInfo;
+import org.wyona.yarep.core.NodeStateException;
+import org.wyona.yarep.core.NodeType;
+import org.wyona.yarep.core.Property;
+import org.wyona.yarep.core.RepositoryException;
+import org.wyona.yarep.core.Revision;
+
+/**
+ * Read-only node of a point in time view (see PointInTimeRepository), whereas a resource is backed by the revision which has been valid at the point in time of the view and a collection by the collection of the repository itself
+ */
+public class PointInTimeNode implements Node {
+
+    private PointInTimeRepository view;
+    private String path;
+    private Node node; // INFO: Revision of a resource or collection of the repository itself
+
+    /**
+     * @param view Point in time view containing resource
+     * @param path Absolute repository path of resource
+     * @param revision Revision of resource which has been valid at the point in time of the view
+     */
+    PointInTimeNode(PointInTimeRepository view, String path, Revision revision) {
+        this.view = view;
+        this.path = path;
+        this.node = revision;
+    }
+
+    /**
+     * @param view Point in time view containing collection
+     * @param collection Collection of the repository itself
+     */
+    PointInTimeNode(PointInTimeRepository view, Node collection) throws RepositoryException {
+        this.view = view;
+        this.path = collection.getPath();
+        this.node = collection;
+    }
+
+    /**
+     * Get revision which has been valid at the point in time of the view
+     * @return Revision or null if this node is a collection
+     */
+    public Revision getValidRevision() {
+        return node instanceof Revision ? (Revision) node : null;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getName()
+     */
+    public String getName() throws RepositoryException {
+        return path.equals("/") ? "" : path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getParent()
+     */
+    public Node getParent() throws RepositoryException {
+        if (path.equals("/")) {
+            return null;
+        }
+        int index = path.lastIndexOf('/');
+        return view.getNode(index > 0 ? path.substring(0, index) : "/");
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#delete()
+     */
+    public void delete() throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getPath()
+     */
+    public String getPath() throws RepositoryException {
+        return path;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getUUID()
+     */
+    public String getUUID() throws RepositoryException {
+        return node.getUUID();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getType()
+     */
+    public int getType() throws RepositoryException {
+        return node instanceof Revision ? NodeType.RESOURCE : NodeType.COLLECTION;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#isResource()
+     */
+    public boolean isResource() throws RepositoryException {
+        return getType() == NodeType.RESOURCE;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#isCollection()
+     */
+    public boolean isCollection() throws RepositoryException {
+        return getType() == NodeType.COLLECTION;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#addNode(String, int)
+     */
+    public Node addNode(String name, int type) throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getNode(String)
+     */
+    public Node getNode(String name) throws NoSuchNodeException, RepositoryException {
+        return view.getNode(getChildPath(name));
+    }
+
+    /**
+     * Get the children which have existed at the point in time of the view, whereas the revisions of all children are looked up together
+     * @see org.wyona.yarep.core.Node#getNodes()
+     */
+    public Node[] getNodes() throws RepositoryException {
+        if (isResource()) {
+            return new Node[0];
+        }
+        return view.getChildren(node);
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getNodes(int, int)
+     */
+    public Node[] getNodes(int offset, int limit) throws RepositoryException {
+        if (offset < 0 || limit < 0) {
+            throw new RepositoryException("Offset and limit must not be negative (offset: " + offset + ", limit: " + limit + ")");
+        }
+        Node[] children = getNodes();
+        int from = Math.min(offset, children.length);
+        int to = Math.min(from + limit, children.length);
+        Node[] page = new Node[to - from];
+        System.arraycopy(children, from, page, 0, page.length);
+        return page;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#listChildren()
+     */
+    public NodeInfo[] listChildren() throws RepositoryException {
+        Node[] children = getNodes();
+        NodeInfo[] infos = new NodeInfo[children.length];
+        for (int i = 0; i < children.length; i++) {
+            infos[i] = new NodeInfo(children[i].getName(), children[i].getPath(), children[i].getType(), children[i].getSize(), children[i].getLastModified(), children[i].getMimeType());
+        }
+        return infos;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#hasNode(String)
+     */
+    public boolean hasNode(String name) throws RepositoryException {
+        return view.existsNode(getChildPath(name));
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getProperty(String)
+     */
+    public Property getProperty(String name) throws RepositoryException {
+        return node.getProperty(name);
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getProperties()
+     */
+    public Property[] getProperties() throws RepositoryException {
+        return node.getProperties();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#hasProperty(String)
+     */
+    public boolean hasProperty(String name) throws RepositoryException {
+        return node.hasProperty(name);
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#removeProperty(String)
+     */
+    public void removeProperty(String name) throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#setProperty(String, boolean)
+     */
+    public Property setProperty(String name, boolean value) throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#setProperty(String, Date)
+     */
+    public Property setProperty(String name, Date value) throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#setProperty(String, double)
+     */
+    public Property setProperty(String name, double value) throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#setProperty(String, long)
+     */
+    public Property setProperty(String name, long value) throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#setProperty(String, String)
+     */
+    public Property setProperty(String name, String value) throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#setProperty(Property)
+     */
+    public void setProperty(Property property) throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#setProperties(Property[])
+     */
+    public void setProperties(Property[] properties) throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getInputStream()
+     */
+    public InputStream getInputStream() throws RepositoryException {
+        if (isCollection()) {
+            throw new RepositoryException("Node '" + path + "' is a collection and hence has no content");
+        }
+        return node.getInputStream();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getOutputStream()
+     */
+    public OutputStream getOutputStream() throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#checkin()
+     */
+    public Revision checkin() throws NodeStateException, RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#checkin(String)
+     */
+    public Revision checkin(String comment) throws NodeStateException, RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#checkout(String)
+     */
+    public void checkout(String userID) throws NodeStateException, RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#cancelCheckout()
+     */
+    public void cancelCheckout() throws NodeStateException, RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#isCheckedOut()
+     */
+    public boolean isCheckedOut() throws RepositoryException {
+        return false;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getCheckoutUserID()
+     */
+    public String getCheckoutUserID() throws NodeStateException, RepositoryException {
+        throw new NodeStateException("Node '" + path + "' of point in time view is not checked out");
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getCheckoutDate()
+     */
+    public Date getCheckoutDate() throws NodeStateException, RepositoryException {
+        throw new NodeStateException("Node '" + path + "' of point in time view is not checked out");
+    }
+
+    /**
+     * Get creation date of the revision which has been valid at the point in time of the view
+     * @see org.wyona.yarep.core.Node#getCheckinDate()
+     */
+    public Date getCheckinDate() throws NodeStateException, RepositoryException {
+        if (isCollection()) {
+            throw new NodeStateException("Node '" + path + "' is a collection and hence has no revisions");
+        }
+        return ((Revision) node).getCreationDate();
+    }
+
+    /**
+     * Get the revision which has been valid at the point in time of the view (revisions created later do not exist yet within the view)
+     * @see org.wyona.yarep.core.Node#getRevisions()
+     */
+    public Revision[] getRevisions() throws RepositoryException {
+        return isResource() ? new Revision[] {(Revision) node} : new Revision[0];
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getRevision(String)
+     */
+    public Revision getRevision(String revisionName) throws NoSuchRevisionException, RepositoryException {
+        if (isResource() && ((Revision) node).getRevisionName().equals(revisionName)) {
+            return (Revision) node;
+        }
+        throw new NoSuchRevisionException("Node '" + path + "' of point in time view '" + view.getName() + "' has no such revision: " + revisionName);
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getRevisionByTag(String)
+     */
+    public Revision getRevisionByTag(String tag) throws NoSuchRevisionException, RepositoryException {
+        if (hasRevisionWithTag(tag)) {
+            return (Revision) node;
+        }
+        throw new NoSuchRevisionException("Node '" + path + "' of point in time view '" + view.getName() + "' has no revision with tag: " + tag);
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#hasRevisionWithTag(String)
+     */
+    public boolean hasRevisionWithTag(String tag) throws RepositoryException {
+        return isResource() && tag.equals(((Revision) node).getTag());
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#restore(String)
+     */
+    public void restore(String revisionName) throws NoSuchRevisionException, RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getLastModified()
+     */
+    public long getLastModified() throws RepositoryException {
+        return node.getLastModified();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getSize()
+     */
+    public long getSize() throws RepositoryException {
+        return isResource() ? node.getSize() : 0;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getMimeType()
+     */
+    public String getMimeType() throws RepositoryException {
+        return node.getMimeType();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#setMimeType(String)
+     */
+    public void setMimeType(String mimeType) throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getEncoding()
+     */
+    public String getEncoding() throws RepositoryException {
+        return node.getEncoding();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#setEncoding(String)
+     */
+    public void setEncoding(String encoding) throws RepositoryException {
+        throw view.newReadOnlyException();
+    }
+
+    /**
+     * Get absolute path of a child
+     */
+    private String getChildPath(String name) {
+        return path.equals("/") ? "/" + name : path + "/" + name;
+    }
+
+    /**
+     *
+     */
+    public String toString() {
+        return path + " (" + view.getPointInTime() + ")";
+    }
+}
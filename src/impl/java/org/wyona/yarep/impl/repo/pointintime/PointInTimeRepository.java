@@ -0,0 +1,461 @@
+package org.wyona.yarep.impl.repo.pointintime;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.wyona.yarep.core.NoSuchNodeException;
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeInfo;
+import org.wyona.yarep.core.Path;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.RepositoryException;
+import org.wyona.yarep.core.Revision;
+import org.wyona.yarep.core.UID;
+import org.wyona.yarep.core.attributes.VersionableRepositoryV1;
+import org.wyona.yarep.core.search.Indexer;
+import org.wyona.yarep.core.search.Searcher;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository;
+
+/**
+ * Read-only view of a versionable repository at a fixed point in time, e.g. in order to render a historical version of a whole section of a website.
+ * A resource is resolved to the revision which has been valid at this point in time (see VersionableRepositoryV1#getRevision(String, Date)), whereas collections are not versioned and hence are read from the repository itself.
+ * Resources which have been created after this point in time do not exist within the view, and resources which have been deleted in the meantime can still be accessed by their path, but are not listed as children of their collection.
+ * <br/><br/>
+ * The revisions of the children of a collection are looked up together when the children are listed (see VirtualFileSystemRepository#getRevisions(String[], Date)) and every resolved revision is cached for the life of the view, e.g.
+ * <pre>
+ * Repository view = new PointInTimeRepository(repo, date);
+ * Node[] children = view.getNode("/en/news").getNodes();
+ * </pre>
+ * Closing the view does not close the repository itself.
+ */
+public class PointInTimeRepository implements Repository {
+
+    private static Logger log = LogManager.getLogger(PointInTimeRepository.class);
+
+    private static final Object NO_REVISION = new Object();
+
+    private Repository repo;
+    private Date pointInTime;
+    private String id;
+
+    private java.util.Map revisions = new HashMap(); // INFO: Resolved revisions by path (or NO_REVISION if a resource has no revision at this point in time)
+
+    /**
+     * @param repo Versionable repository (see VersionableRepositoryV1)
+     * @param pointInTime Point in time at which the repository shall be viewed
+     */
+    public PointInTimeRepository(Repository repo, Date pointInTime) throws RepositoryException {
+        if (!(repo instanceof VersionableRepositoryV1)) {
+            throw new RepositoryException("Repository '" + repo.getName() + "' (" + repo.getClass().getName() + ") does not implement " + VersionableRepositoryV1.class.getName());
+        }
+        this.repo = repo;
+        this.pointInTime = pointInTime;
+        this.id = repo.getID();
+    }
+
+    /**
+     * Get point in time at which the repository is viewed
+     */
+    public Date getPointInTime() {
+        return pointInTime;
+    }
+
+    /**
+     * Get repository which is viewed
+     */
+    public Repository getRepository() {
+        return repo;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getID()
+     */
+    public String getID() {
+        return id;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#setID(String)
+     */
+    public void setID(String id) {
+        this.id = id;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#readConfiguration(File)
+     */
+    public void readConfiguration(File configFile) throws RepositoryException {
+        throw new RepositoryException("A point in time view cannot be configured, but is created based on a repository (see constructor)");
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getName()
+     */
+    public String getName() {
+        return repo.getName() + " (" + pointInTime + ")";
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getConfigFile()
+     */
+    public File getConfigFile() {
+        return repo.getConfigFile();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getWriter(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public Writer getWriter(Path path) throws RepositoryException {
+        throw newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getOutputStream(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public OutputStream getOutputStream(Path path) throws RepositoryException {
+        throw newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getReader(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public Reader getReader(Path path) throws RepositoryException {
+        return new InputStreamReader(getInputStream(path));
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getInputStream(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public InputStream getInputStream(Path path) throws RepositoryException {
+        return getNode(path.toString()).getInputStream();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getLastModified(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public long getLastModified(Path path) throws RepositoryException {
+        return getNode(path.toString()).getLastModified();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getSize(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public long getSize(Path path) throws RepositoryException {
+        return getNode(path.toString()).getSize();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#delete(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public boolean delete(Path path) throws RepositoryException {
+        throw newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#delete(Path, boolean)
+     */
+    @SuppressWarnings("deprecation")
+    public boolean delete(Path path, boolean recursive) throws RepositoryException {
+        throw newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getValidity(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public void getValidity(Path path) throws RepositoryException {
+        log.warn("Not implemented!");
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getContentLength(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public void getContentLength(Path path) throws RepositoryException {
+        log.warn("Not implemented!");
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getURI(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public void getURI(Path path) throws RepositoryException {
+        log.warn("Not implemented!");
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#isResource(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public boolean isResource(Path path) throws RepositoryException {
+        return existsNode(path.toString()) && getNode(path.toString()).isResource();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#isCollection(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public boolean isCollection(Path path) throws RepositoryException {
+        return existsNode(path.toString()) && getNode(path.toString()).isCollection();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getChildren(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public Path[] getChildren(Path path) throws RepositoryException {
+        Node[] children = getNode(path.toString()).getNodes();
+        Path[] paths = new Path[children.length];
+        for (int i = 0; i < children.length; i++) {
+            paths[i] = new Path(children[i].getPath());
+        }
+        return paths;
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getUID(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public UID getUID(Path path) throws RepositoryException {
+        return repo.getUID(path);
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getRevisions(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public String[] getRevisions(Path path) throws RepositoryException {
+        Revision revision = getRevision(path.toString());
+        return revision != null ? new String[] {revision.getRevisionName()} : new String[0];
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#addSymbolicLink(Path, Path)
+     */
+    @SuppressWarnings("deprecation")
+    public void addSymbolicLink(Path target, Path link) throws RepositoryException {
+        throw newReadOnlyException();
+    }
+
+    /**
+     * Get node as it has been at the point in time of this view
+     * @see org.wyona.yarep.core.Repository#getNode(String)
+     */
+    public Node getNode(String path) throws NoSuchNodeException, RepositoryException {
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (repo.existsNode(path)) {
+            Node node = repo.getNode(path);
+            if (node.isCollection()) {
+                return new PointInTimeNode(this, node);
+            }
+        }
+        Revision revision = getRevision(path);
+        if (revision == null) {
+            throw new NoSuchNodeException("No such node '" + path + "' at point in time '" + pointInTime + "' (Repository: " + repo.getName() + ")");
+        }
+        return new PointInTimeNode(this, path, revision);
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getNodeByUUID(String)
+     */
+    public Node getNodeByUUID(String uuid) throws NoSuchNodeException, RepositoryException {
+        return getNode(repo.getNodeByUUID(uuid).getPath());
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#existsNode(String)
+     */
+    public boolean existsNode(String path) throws RepositoryException {
+        try {
+            getNode(path);
+            return true;
+        } catch (NoSuchNodeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#exists(Path)
+     */
+    @SuppressWarnings("deprecation")
+    public boolean exists(Path path) throws RepositoryException {
+        return existsNode(path.toString());
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getRootNode()
+     */
+    public Node getRootNode() throws RepositoryException {
+        return getNode("/");
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#copy(String, String)
+     */
+    public void copy(String srcPath, String destPath) throws RepositoryException {
+        throw newReadOnlyException();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#move(String, String)
+     */
+    public void move(String srcPath, String destPath) throws RepositoryException {
+        throw newReadOnlyException();
+    }
+
+    /**
+     * The search index contains the current nodes only, hence searching is not supported
+     * @see org.wyona.yarep.core.Repository#search(String)
+     */
+    @SuppressWarnings("deprecation")
+    public Node[] search(String query) throws RepositoryException {
+        throw new RepositoryException("Searching is not supported by a point in time view");
+    }
+
+    /**
+     * The search index contains the current nodes only, hence searching is not supported
+     * @see org.wyona.yarep.core.Repository#searchProperty(String, String, String)
+     */
+    @SuppressWarnings("deprecation")
+    public Node[] searchProperty(String pName, String query, String path) throws RepositoryException {
+        throw new RepositoryException("Searching is not supported by a point in time view");
+    }
+
+    /**
+     * Clear the cached revisions, whereas the repository itself is not closed
+     * @see org.wyona.yarep.core.Repository#close()
+     */
+    public void close() throws RepositoryException {
+        synchronized(revisions) {
+            revisions.clear();
+        }
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getIndexer()
+     */
+    public Indexer getIndexer() throws RepositoryException {
+        throw new RepositoryException("Indexing is not supported by a point in time view");
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#getSearcher()
+     */
+    public Searcher getSearcher() throws RepositoryException {
+        throw new RepositoryException("Searching is not supported by a point in time view");
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Repository#importNode(String, String, Repository)
+     */
+    public boolean importNode(String destPath, String srcPath, Repository srcRepository) throws RepositoryException {
+        throw newReadOnlyException();
+    }
+
+    /**
+     * Get revision of a resource which has been valid at the point in time of this view
+     * @param path Absolute repository path of resource
+     * @return Revision or null if resource has no revision at this point in time
+     */
+    Revision getRevision(String path) throws RepositoryException {
+        synchronized(revisions) {
+            Object revision = revisions.get(path);
+            if (revision != null) {
+                return revision != NO_REVISION ? (Revision) revision : null;
+            }
+        }
+        resolveRevisions(new String[] {path});
+        synchronized(revisions) {
+            Object revision = revisions.get(path);
+            return revision != NO_REVISION ? (Revision) revision : null;
+        }
+    }
+
+    /**
+     * Get children of a collection as they have been at the point in time of this view, whereas the revisions of all child resources are looked up together
+     * @param collection Collection of the repository itself
+     */
+    Node[] getChildren(Node collection) throws RepositoryException {
+        NodeInfo[] children = collection.listChildren();
+        List unresolved = new ArrayList();
+        synchronized(revisions) {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i].isResource() && !revisions.containsKey(children[i].getPath())) {
+                    unresolved.add(children[i].getPath());
+                }
+            }
+        }
+        if (unresolved.size() > 0) {
+            resolveRevisions((String[]) unresolved.toArray(new String[unresolved.size()]));
+        }
+
+        List nodes = new ArrayList(children.length);
+        for (int i = 0; i < children.length; i++) {
+            if (children[i].isCollection()) {
+                nodes.add(new PointInTimeNode(this, repo.getNode(children[i].getPath())));
+            } else {
+                Revision revision = getRevision(children[i].getPath());
+                if (revision != null) {
+                    nodes.add(new PointInTimeNode(this, children[i].getPath(), revision));
+                }
+            }
+        }
+        return (Node[]) nodes.toArray(new Node[nodes.size()]);
+    }
+
+    /**
+     * Look up the revisions of resources which have been valid at the point in time of this view and cache them
+     * @param paths Absolute repository paths of resources
+     */
+    private void resolveRevisions(String[] paths) throws RepositoryException {
+        Revision[] resolved;
+        try {
+            if (repo instanceof VirtualFileSystemRepository) {
+                resolved = ((VirtualFileSystemRepository) repo).getRevisions(paths, pointInTime);
+            } else {
+                resolved = new Revision[paths.length];
+                for (int i = 0; i < paths.length; i++) {
+                    resolved[i] = ((VersionableRepositoryV1) repo).getRevision(paths[i], pointInTime);
+                }
+            }
+        } catch (RepositoryException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error(e, e);
+            throw new RepositoryException(e.getMessage(), e);
+        }
+        synchronized(revisions) {
+            for (int i = 0; i < paths.length; i++) {
+                revisions.put(paths[i], resolved[i] != null ? (Object) resolved[i] : NO_REVISION);
+            }
+        }
+    }
+
+    /**
+     * Exception thrown by all modifying methods
+     */
+    RepositoryException newReadOnlyException() {
+        return new RepositoryException("Point in time view '" + getName() + "' is read-only");
+    }
+}
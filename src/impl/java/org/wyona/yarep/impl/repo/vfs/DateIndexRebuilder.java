@@ -0,0 +1,303 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.wyona.yarep.core.Path;
+import org.wyona.yarep.core.UID;
+
+/**
+ * Rebuilds the date indexes of all nodes of a repository, e.g. after a restore of the repository (see DateIndexerSearcher#buildDateIndex(String[], Date[])).
+ * In contrast to DateIndexerSearcher#buildDateIndex() no node and revision objects are instantiated: The paths are read from the map, the revision directories and revision packs are streamed
+ * and only the creation date is read from the meta file of every revision. The nodes are processed in parallel by a fixed number of threads.
+ * <br/><br/>
+ * If a checkpoint file is set, then the path of every node whose date index has been rebuilt is appended to this file, such that a stopped or crashed rebuild can be resumed by skipping these nodes.
+ * The checkpoint file is deleted as soon as the date indexes of all nodes have been rebuilt.
+ * <br/><br/>
+ * The rebuilder can be run within a background thread, e.g. <code>new Thread(new DateIndexRebuilder(repo, 4, new File("rebuild.checkpoint"))).start()</code>
+ */
+public class DateIndexRebuilder implements Runnable {
+
+    private static Logger log = LogManager.getLogger(DateIndexRebuilder.class);
+
+    private VirtualFileSystemRepository repo;
+    private int threads;
+    private File checkpointFile;
+
+    private Set completedPaths;
+    private PrintWriter checkpointWriter;
+
+    private AtomicLong rebuiltNodes = new AtomicLong();
+    private AtomicLong indexedRevisions = new AtomicLong();
+    private AtomicLong skippedNodes = new AtomicLong();
+    private AtomicLong failedNodes = new AtomicLong();
+
+    private volatile boolean stopped = false;
+    private volatile boolean finished = false;
+
+    /**
+     * @param repo Repository containing revisions
+     * @param threads Number of nodes which are processed in parallel
+     * @param checkpointFile File containing the paths of the nodes which have been processed already or null if no checkpoints shall be written
+     */
+    public DateIndexRebuilder(VirtualFileSystemRepository repo, int threads, File checkpointFile) {
+        this.repo = repo;
+        this.threads = threads > 0 ? threads : 1;
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Rebuild the date indexes of all nodes
+     */
+    public void run() {
+        if (repo.isReadOnly()) {
+            log.warn("Repository '" + repo.getName() + "' is read-only, hence date indexes cannot be rebuilt.");
+            finished = true;
+            return;
+        }
+
+        log.info("Start rebuilding date indexes of repository '" + repo.getName() + "' (Implementation: " + repo.getRevisionsDateIndexImpl() + ", Threads: " + threads + ", Checkpoint: " + checkpointFile + ") ...");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy()); // INFO: The bounded queue makes the walking thread process nodes itself instead of queueing all paths of the repository
+        try {
+            openCheckpoint();
+            walk(new Path("/"), executor);
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                log.debug("Progress: " + getProgress());
+            }
+        } catch (InterruptedException e) {
+            log.warn("Rebuilding of date indexes has been interrupted!");
+            stopped = true;
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error(e, e);
+            stopped = true;
+            executor.shutdownNow();
+        } finally {
+            closeCheckpoint();
+        }
+
+        if (!stopped && failedNodes.get() == 0 && checkpointFile != null) {
+            checkpointFile.delete();
+        }
+        log.info("Rebuilding of date indexes of repository '" + repo.getName() + "' " + (stopped ? "stopped" : "finished") + ": " + getProgress());
+        finished = true;
+    }
+
+    /**
+     * Stop rebuilding, whereas nodes which are processed currently are completed
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Check whether rebuilding has finished (or has been stopped)
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Get number of nodes whose date index has been rebuilt
+     */
+    public long getNumberOfRebuiltNodes() {
+        return rebuiltNodes.get();
+    }
+
+    /**
+     * Get number of revisions which have been indexed
+     */
+    public long getNumberOfIndexedRevisions() {
+        return indexedRevisions.get();
+    }
+
+    /**
+     * Get number of nodes which have been skipped, because they have been processed already according to the checkpoint file
+     */
+    public long getNumberOfSkippedNodes() {
+        return skippedNodes.get();
+    }
+
+    /**
+     * Get number of nodes whose date index could not be rebuilt
+     */
+    public long getNumberOfFailedNodes() {
+        return failedNodes.get();
+    }
+
+    /**
+     * Get progress as human readable text
+     */
+    public String getProgress() {
+        return "nodes: " + rebuiltNodes.get() + ", revisions: " + indexedRevisions.get() + ", skipped nodes: " + skippedNodes.get() + ", failed nodes: " + failedNodes.get();
+    }
+
+    /**
+     * Walk paths recursively and submit every resource to the executor
+     */
+    private void walk(Path path, ThreadPoolExecutor executor) throws Exception {
+        if (stopped) {
+            return;
+        }
+        if (repo.getMap().isCollection(path)) {
+            Path[] children = repo.getMap().getChildren(path);
+            for (int i = 0; i < children.length && !stopped; i++) {
+                walk(children[i], executor);
+            }
+            return;
+        }
+
+        final String nodePath = path.toString();
+        if (completedPaths.contains(nodePath)) {
+            skippedNodes.incrementAndGet();
+            return;
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                if (stopped) {
+                    return;
+                }
+                try {
+                    rebuild(nodePath);
+                    checkpoint(nodePath);
+                } catch (Exception e) {
+                    log.error("Could not rebuild date index of '" + nodePath + "': " + e.getMessage(), e);
+                    failedNodes.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Rebuild date index of one node
+     * @param nodePath Absolute repository path of node
+     */
+    private void rebuild(String nodePath) throws Exception {
+        File nodeMetaDir = VirtualFileSystemNode.getMetaDir(repo, new UID(nodePath).toString());
+        File revisionsBaseDir = VirtualFileSystemNode.getRevisionsBaseDir(nodeMetaDir);
+        if (!revisionsBaseDir.isDirectory() && !RevisionPack.exists(nodeMetaDir)) {
+            if (log.isDebugEnabled()) log.debug("Node '" + nodePath + "' has no revisions.");
+            return;
+        }
+
+        List names = new ArrayList();
+        List dates = new ArrayList();
+
+        // INFO: Revision directories take precedence over the pack (see VirtualFileSystemNode#getRevisionMetaFile(String))
+        List dirs = new ArrayList();
+        VirtualFileSystemNode.findRevisionDirs(revisionsBaseDir, "", names, dirs);
+        for (int i = 0; i < dirs.size(); i++) {
+            InputStream in = new BufferedInputStream(new FileInputStream(new File((File) dirs.get(i), VirtualFileSystemNode.META_FILE_NAME)));
+            try {
+                dates.add(getCreationDate((String) names.get(i), in));
+            } finally {
+                in.close();
+            }
+        }
+
+        if (RevisionPack.exists(nodeMetaDir)) {
+            RevisionPack pack = new RevisionPack(nodeMetaDir);
+            Set dirNames = new HashSet(names);
+            String[] packNames = pack.getRevisionNames();
+            for (int i = 0; i < packNames.length; i++) {
+                if (dirNames.contains(packNames[i])) {
+                    continue;
+                }
+                RevisionPack.Entry entry = pack.get(packNames[i]);
+                if (entry == null) {
+                    continue; // INFO: Revision has been deleted in the meantime
+                }
+                names.add(packNames[i]);
+                dates.add(getCreationDate(packNames[i], new ByteArrayInputStream(pack.getMeta(entry))));
+            }
+        }
+
+        DateIndexerSearcher dis = repo.getDateIndexerSearcher(nodePath);
+        dis.buildDateIndex((String[]) names.toArray(new String[names.size()]), (Date[]) dates.toArray(new Date[dates.size()]));
+        rebuiltNodes.incrementAndGet();
+        indexedRevisions.addAndGet(names.size());
+    }
+
+    /**
+     * Read creation date of revision from its meta file
+     * @param revisionName Name of revision
+     * @param in Meta file of revision
+     */
+    private Date getCreationDate(String revisionName, InputStream in) throws Exception {
+        Date creationDate = VirtualFileSystemMetaFile.readDate(in, VirtualFileSystemRevision.PROPERTY_REVISION_CREATION_DATE);
+        if (creationDate == null) {
+            // INFO: The name of a revision is based on System.currentTimeMillis() (see VirtualFileSystemNode#createRevision(String))
+            log.warn("Revision '" + revisionName + "' has no creation date, hence the name of the revision is used as creation date.");
+            creationDate = new Date(Long.parseLong(revisionName));
+        }
+        return creationDate;
+    }
+
+    /**
+     * Read the paths of the nodes which have been processed already and open checkpoint file for appending
+     */
+    private void openCheckpoint() throws IOException {
+        completedPaths = new HashSet();
+        if (checkpointFile == null) {
+            return;
+        }
+        if (checkpointFile.isFile()) {
+            BufferedReader reader = new BufferedReader(new FileReader(checkpointFile));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() > 0) {
+                        completedPaths.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            log.info("Resume rebuilding of date indexes, whereas " + completedPaths.size() + " nodes have been processed already (Checkpoint: " + checkpointFile + ")");
+        }
+        checkpointWriter = new PrintWriter(new FileOutputStream(checkpointFile, true));
+    }
+
+    /**
+     * Append path of a node which has been processed to the checkpoint file
+     */
+    private synchronized void checkpoint(String nodePath) {
+        if (checkpointWriter == null) {
+            return;
+        }
+        checkpointWriter.println(nodePath);
+        checkpointWriter.flush();
+    }
+
+    /**
+     * Close checkpoint file
+     */
+    private synchronized void closeCheckpoint() {
+        if (checkpointWriter != null) {
+            checkpointWriter.close();
+            checkpointWriter = null;
+        }
+    }
+}
@@ -44,6 +44,16 @@ public interface DateIndexerSearcher {
      */
     public Revision getRevision(Date date) throws Exception;
 
+    /**
+     * Get a batch of revisions ordered by creation date, which allows to iterate through the revisions with one index lookup per batch (see VFSRevisionIterator)
+     * @param date Point in time where the batch starts (cursor), or null to start with the most recent revision (or with the oldest revision if ascending)
+     * @param inclusive True if a revision created exactly at the specified point in time belongs to the batch, false if the batch starts after the specified point in time (e.g. because the point in time is the creation date of the last revision of the previous batch)
+     * @param ascending True for chronological order (oldest first), false for most recent first
+     * @param limit Maximum number of revisions
+     * @return Revisions, whereas fewer revisions than the limit means that there are no further revisions
+     */
+    public Revision[] getRevisions(Date date, boolean inclusive, boolean ascending, int limit) throws Exception;
+
     /**
      * Delete revision from date index
      * @param revisionName Name of revision to be deleted
@@ -59,4 +69,11 @@ public interface DateIndexerSearcher {
      * Build date index in order to retrieve revisions more quickly based on creation date
      */
     public void buildDateIndex() throws Exception;
+
+    /**
+     * Build date index from revisions which have been read without instantiating them (see DateIndexRebuilder), whereas an existing date index is replaced
+     * @param revisionNames Names of revisions
+     * @param creationDates Creation dates of revisions
+     */
+    public void buildDateIndex(String[] revisionNames, Date[] creationDates) throws Exception;
 }
@@ -13,6 +13,8 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -206,6 +208,29 @@ public class DateIndexerSearcherImplV1 implements DateIndexerSearcher {
         }
     }
 
+    /**
+     * Get a batch of revisions step by step, because the directory based index does not allow to read several revisions at once
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getRevisions(Date, boolean, boolean, int)
+     */
+    public Revision[] getRevisions(Date date, boolean inclusive, boolean ascending, int limit) throws Exception {
+        java.util.List revisions = new java.util.ArrayList();
+        Revision revision;
+        if (date == null) {
+            revision = ascending ? getOldestRevision() : getMostRecentRevision();
+        } else if (ascending) {
+            revision = getRevisionYoungerThan(inclusive ? new Date(date.getTime() - 1) : date);
+        } else {
+            revision = inclusive ? getRevision(date) : getRevisionOlderThan(date);
+        }
+        while (revision != null && revisions.size() < limit) {
+            revisions.add(revision);
+            if (revisions.size() < limit) {
+                revision = ascending ? getRevisionYoungerThan(revision.getCreationDate()) : getRevisionOlderThan(revision.getCreationDate());
+            }
+        }
+        return (Revision[]) revisions.toArray(new Revision[revisions.size()]);
+    }
+
     /**
      * Get revision by year, whereas the algorithm assumes that the order which File.list() is generating is ascending: 2007, 2008, 2009, 2010, ...
      * @param dateIndexBaseDir Directory where date index is located
@@ -934,7 +959,15 @@ public class DateIndexerSearcherImplV1 implements DateIndexerSearcher {
             buildDateIndex();
         }
 
-        File dateDirF = getRevisionDateDir(revisionName);
+        addRevision(revisionName, getRevisionDateDir(revisionName));
+    }
+
+    /**
+     * Add revision to date index
+     * @param revisionName Name of revision
+     * @param dateDirF Date directory of revision
+     */
+    private void addRevision(String revisionName, File dateDirF) throws Exception {
         if (!dateDirF.isDirectory()) {
             dateDirF.mkdirs();
             File revisionIdFile = new File(dateDirF, DATE_INDEX_ID_FILENAME);
@@ -964,6 +997,43 @@ public class DateIndexerSearcherImplV1 implements DateIndexerSearcher {
         }
     }
 
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#buildDateIndex(String[], Date[])
+     */
+    public void buildDateIndex(String[] revisionNames, Date[] creationDates) throws Exception {
+        File dateIndexBaseDir = new File(this.metaDir, DATE_INDEX_BASE_DIR);
+        if (dateIndexBaseDir.isDirectory()) {
+            FileUtils.deleteDirectory(dateIndexBaseDir);
+        }
+        dateIndexBaseDir.mkdirs();
+        for (int i = 0; i < revisionNames.length; i++) {
+            addRevision(revisionNames[i], getRevisionDateDir(creationDates[i]));
+        }
+    }
+
+    /**
+     * Compares names of date directories numerically, because the milliseconds directories are not padded with zeros (e.g. '95' is less than '100'), whereas other names are compared alphabetically
+     */
+    private static final Comparator NUMERIC_NAME_COMPARATOR = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            String name1 = (String) o1;
+            String name2 = (String) o2;
+            if (name1.length() != name2.length() && isNumber(name1) && isNumber(name2)) {
+                return name1.length() - name2.length();
+            }
+            return name1.compareTo(name2);
+        }
+
+        private boolean isNumber(String name) {
+            for (int i = 0; i < name.length(); i++) {
+                if (!Character.isDigit(name.charAt(i))) {
+                    return false;
+                }
+            }
+            return name.length() > 0;
+        }
+    };
+
     /**
      * Sort alphabetically ascending
      * @param array TODO
@@ -978,7 +1048,7 @@ public class DateIndexerSearcherImplV1 implements DateIndexerSearcher {
         log.warn("DEBUG: Array unsorted: " + unsorted);
 */
 
-        java.util.Arrays.sort(array);
+        Arrays.sort(array, NUMERIC_NAME_COMPARATOR);
 
 /*
         String sorted = "";
@@ -1005,7 +1075,7 @@ public class DateIndexerSearcherImplV1 implements DateIndexerSearcher {
         log.warn("DEBUG: Array unsorted: " + unsorted);
 */
 
-        java.util.Arrays.sort(array, java.util.Collections.reverseOrder());
+        Arrays.sort(array, Collections.reverseOrder(NUMERIC_NAME_COMPARATOR));
 
 /*
         String sorted = "";
@@ -1036,11 +1106,18 @@ public class DateIndexerSearcherImplV1 implements DateIndexerSearcher {
         Date creationDate = new VirtualFileSystemRevision(repo, nodePath, revisionName).getCreationDate(); // WARN: Older creation dates might not have milliseconds and hence are not corresponding exactly with the revision name, hence in order to build the date index correctly one needs to use the creation date
         //Date creationDate = new Date(Long.parseLong(revisionName)); // INFO: The name of a revision is based on System.currentTimeMillis() (see createRevision(String))
         log.debug("Creation date: " + creationDate);
+        return getRevisionDateDir(creationDate);
+    }
 
+    /**
+     * Get revision date directory
+     * @param creationDate Creation date of revision
+     */
+    private File getRevisionDateDir(Date creationDate) {
         java.text.DateFormat df = new java.text.SimpleDateFormat("yyyy/MM/dd/HH/mm/ss/S");
         df.setTimeZone(java.util.TimeZone.getTimeZone(TIME_ZONE_ID)); // INFO: Write index in UTC
         String dateDirS = df.format(creationDate);
-        log.debug("Date directory of revision '" + revisionName + "': " + dateDirS);
+        log.debug("Date directory of revision: " + dateDirS);
         File dateIndexBaseDir = new File(this.metaDir, DATE_INDEX_BASE_DIR);
         File dateDirF = new File(dateIndexBaseDir, dateDirS);
         return dateDirF;
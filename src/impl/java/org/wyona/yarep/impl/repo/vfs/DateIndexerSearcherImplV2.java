@@ -261,6 +261,38 @@ public class DateIndexerSearcherImplV2 implements DateIndexerSearcher {
         }
     }
 
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getRevisions(Date, boolean, boolean, int)
+     */
+    public Revision[] getRevisions(Date date, boolean inclusive, boolean ascending, int limit) throws Exception {
+        org.apache.lucene.search.Query query;
+        if (date == null) {
+            query = new org.apache.lucene.search.MatchAllDocsQuery();
+        } else if (ascending) {
+            query = org.apache.lucene.search.NumericRangeQuery.newLongRange(CREATION_DATE_FIELD_NAME, new Long(date.getTime()), null, inclusive, true);
+        } else {
+            query = org.apache.lucene.search.NumericRangeQuery.newLongRange(CREATION_DATE_FIELD_NAME, null, new Long(date.getTime()), true, inclusive);
+        }
+
+        String[] revisionNames;
+        IndexSearcher searcher = new IndexSearcher(indexDir.getAbsolutePath());
+        try {
+            org.apache.lucene.search.TopFieldDocs docs = searcher.search(query, null, limit, new Sort(new SortField(CREATION_DATE_FIELD_NAME, SortField.LONG, !ascending)));
+            revisionNames = new String[docs.scoreDocs.length];
+            for (int i = 0; i < revisionNames.length; i++) {
+                revisionNames[i] = searcher.doc(docs.scoreDocs[i].doc).getField(REVISION_NAME_FIELD_NAME).stringValue();
+            }
+        } finally {
+            searcher.close();
+        }
+
+        Revision[] revisions = new Revision[revisionNames.length];
+        for (int i = 0; i < revisions.length; i++) {
+            revisions[i] = node.getRevision(revisionNames[i]);
+        }
+        return revisions;
+    }
+
     /**
      * Delete revision from date index
      * @param revisionName Name of revision to be deleted
@@ -283,18 +315,26 @@ public class DateIndexerSearcherImplV2 implements DateIndexerSearcher {
         Date creationDate = node.getRevision(revisionName).getCreationDate(); // WARN: Older creation dates might not have milliseconds and hence are not corresponding exactly with the revision name, hence in order to build the date index correctly one needs to use the creation date
         log.debug("Add revision '" + revisionName + "' with creation date '" + creationDate + "' to date index ...");
 
-        Document doc = new Document();
-        doc.add(new NumericField(CREATION_DATE_FIELD_NAME, Field.Store.YES, true).setLongValue(creationDate.getTime()));
-        //doc.add(new Field(CREATION_DATE_FIELD_NAME, org.apache.lucene.document.DateTools.dateToString(creationDate, org.apache.lucene.document.DateTools.Resolution.MILLISECOND), Field.Store.YES, Field.Index.NOT_ANALYZED));
-        doc.add(new Field(REVISION_NAME_FIELD_NAME, revisionName, Field.Store.YES, Field.Index.NOT_ANALYZED));
-
         IndexWriter iw = getIndexWriter();
         Term revisionNameTerm = new Term(REVISION_NAME_FIELD_NAME, revisionName);
-        iw.updateDocument(revisionNameTerm, doc);
+        iw.updateDocument(revisionNameTerm, createDocument(revisionName, creationDate));
         iw.optimize();
         iw.close();
     }
 
+    /**
+     * Create lucene document of a revision
+     * @param revisionName Name of revision
+     * @param creationDate Creation date of revision
+     */
+    private Document createDocument(String revisionName, Date creationDate) {
+        Document doc = new Document();
+        doc.add(new NumericField(CREATION_DATE_FIELD_NAME, Field.Store.YES, true).setLongValue(creationDate.getTime()));
+        //doc.add(new Field(CREATION_DATE_FIELD_NAME, org.apache.lucene.document.DateTools.dateToString(creationDate, org.apache.lucene.document.DateTools.Resolution.MILLISECOND), Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field(REVISION_NAME_FIELD_NAME, revisionName, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        return doc;
+    }
+
     /**
      * Build date index in order to retrieve revisions more quickly based on creation date
      */
@@ -309,6 +349,22 @@ public class DateIndexerSearcherImplV2 implements DateIndexerSearcher {
         }
     }
 
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#buildDateIndex(String[], Date[])
+     */
+    public void buildDateIndex(String[] revisionNames, Date[] creationDates) throws Exception {
+        indexDir.mkdirs();
+        IndexWriter iw = new IndexWriter(indexDir.getAbsolutePath(), getAnalyzer(), true); // INFO: Replace existing index
+        try {
+            for (int i = 0; i < revisionNames.length; i++) {
+                iw.addDocument(createDocument(revisionNames[i], creationDates[i]));
+            }
+            iw.optimize();
+        } finally {
+            iw.close();
+        }
+    }
+
     /**
      * Get lucene index writer
      */
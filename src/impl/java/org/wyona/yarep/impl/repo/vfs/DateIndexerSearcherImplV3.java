@@ -0,0 +1,478 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.wyona.yarep.core.Revision;
+import org.wyona.yarep.impl.StripedLock;
+
+/**
+ * Utility class to index and search revisions of a node by date, whereas the index is one compact binary file (timeline) per node, which is binary-searched, such that every lookup reads only a few records of one file.
+ * The file is read with a RandomAccessFile instead of being memory-mapped, because a mapping is only released by the garbage collector (and a mapped file cannot be replaced on some platforms, e.g. Windows).
+ * <br/><br/>
+ * Layout of the file 'index_date_timeline' within the meta directory of the node: one record per revision sorted ascending by creation date (and revision name)
+ * <pre>
+ * creation date in milliseconds (long)
+ * revision name (long)
+ * </pre>
+ * A revision created after all other revisions (the usual case) is appended, otherwise (and when a revision is deleted) the file is rewritten into a temporary file, which then replaces the index.
+ */
+public class DateIndexerSearcherImplV3 implements DateIndexerSearcher {
+    private static Logger log = LogManager.getLogger(DateIndexerSearcherImplV3.class);
+
+    private static final String DATE_INDEX_FILE_NAME = "index_date_timeline";
+
+    private static final int RECORD_LENGTH = 16;
+
+    private static final StripedLock INDEX_LOCKS = new StripedLock(64);
+
+    private File indexFile;
+    private String nodePath;
+    private VirtualFileSystemRepository repo;
+
+    /**
+     * @param path Absolute repository path of node for which revisions shall be indexed by date. e.g. '/foo/bar.txt'
+     * @param metaDir Meta directory of this node (e.g. '/Users/michaelwechner/my-realm/repos/data-repo/yarep-meta/foo/bar.txt.yarep') which contains 'meta' file, revisions and date index of revisions
+     * @param repo Repository containing node
+     */
+    public DateIndexerSearcherImplV3(String path, File metaDir, VirtualFileSystemRepository repo) {
+        this.repo = repo;
+        this.nodePath = path;
+        this.indexFile = new File(metaDir, DATE_INDEX_FILE_NAME);
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#indexExists()
+     */
+    public boolean indexExists() {
+        return indexFile.isFile();
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getRevisionYoungerThan(Date)
+     */
+    public Revision getRevisionYoungerThan(Date date) throws Exception {
+        Timeline timeline = open();
+        if (timeline == null) {
+            return null;
+        }
+        try {
+            int pos = timeline.findFirstYoungerThan(date.getTime());
+            return pos < timeline.size() ? getRevision(timeline, pos) : null;
+        } finally {
+            timeline.close();
+        }
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getRevisionOlderThan(Date)
+     */
+    public Revision getRevisionOlderThan(Date date) throws Exception {
+        Timeline timeline = open();
+        if (timeline == null) {
+            return null;
+        }
+        try {
+            int pos = timeline.findFirstYoungerThan(date.getTime() - 1) - 1;
+            return pos >= 0 ? getRevision(timeline, pos) : null;
+        } finally {
+            timeline.close();
+        }
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getMostRecentRevision()
+     */
+    public Revision getMostRecentRevision() {
+        try {
+            Timeline timeline = open();
+            if (timeline == null) {
+                return null;
+            }
+            try {
+                return timeline.size() > 0 ? getRevision(timeline, timeline.size() - 1) : null;
+            } finally {
+                timeline.close();
+            }
+        } catch(Exception e) {
+            log.error(e, e);
+            return null;
+        }
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getOldestRevision()
+     */
+    public Revision getOldestRevision() {
+        try {
+            Timeline timeline = open();
+            if (timeline == null) {
+                return null;
+            }
+            try {
+                return timeline.size() > 0 ? getRevision(timeline, 0) : null;
+            } finally {
+                timeline.close();
+            }
+        } catch(Exception e) {
+            log.error(e, e);
+            return null;
+        }
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getRevision(Date)
+     */
+    public Revision getRevision(Date date) throws Exception {
+        Timeline timeline = open();
+        if (timeline == null) {
+            return null;
+        }
+        try {
+            int pos = timeline.findFirstYoungerThan(date.getTime()) - 1;
+            return pos >= 0 ? getRevision(timeline, pos) : null;
+        } finally {
+            timeline.close();
+        }
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getRevisions(Date, boolean, boolean, int)
+     */
+    public Revision[] getRevisions(Date date, boolean inclusive, boolean ascending, int limit) throws Exception {
+        String[] revisionNames;
+        Timeline timeline = open();
+        if (timeline == null) {
+            return new Revision[0];
+        }
+        try {
+            int start;
+            if (ascending) {
+                start = date == null ? 0 : timeline.findFirstYoungerThan(inclusive ? date.getTime() - 1 : date.getTime());
+            } else {
+                start = (date == null ? timeline.size() : timeline.findFirstYoungerThan(inclusive ? date.getTime() : date.getTime() - 1)) - 1;
+            }
+            int count = ascending ? Math.min(limit, timeline.size() - start) : Math.min(limit, start + 1);
+            if (count <= 0) {
+                return new Revision[0];
+            }
+            revisionNames = new String[count];
+            for (int i = 0; i < count; i++) {
+                revisionNames[i] = String.valueOf(timeline.getName(ascending ? start + i : start - i));
+            }
+        } finally {
+            timeline.close();
+        }
+
+        // INFO: Resolve the node only once per batch instead of once per revision
+        VirtualFileSystemNode node = repo.existsNode(nodePath) ? (VirtualFileSystemNode) repo.getNode(nodePath) : null;
+        Revision[] revisions = new Revision[revisionNames.length];
+        for (int i = 0; i < revisions.length; i++) {
+            revisions[i] = node != null ? new VirtualFileSystemRevision(node, revisionNames[i]) : new VirtualFileSystemRevision(repo, nodePath, revisionNames[i]);
+        }
+        return revisions;
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#deleteRevision(String)
+     */
+    public void deleteRevision(String revisionName) throws Exception {
+        if (!indexExists()) {
+            log.warn("No index yet, hence cannot delete revision '" + revisionName + "' from index.");
+            return;
+        }
+        long name = Long.parseLong(revisionName);
+        synchronized(INDEX_LOCKS.getLock(indexFile)) {
+            long[] records = readAll();
+            int count = records.length / 2;
+            for (int i = 0; i < count; i++) {
+                if (records[2 * i + 1] == name) {
+                    long[] remaining = new long[records.length - 2];
+                    System.arraycopy(records, 0, remaining, 0, 2 * i);
+                    System.arraycopy(records, 2 * i + 2, remaining, 2 * i, remaining.length - 2 * i);
+                    write(remaining);
+                    return;
+                }
+            }
+        }
+        log.warn("No such revision '" + revisionName + "' within date index: " + indexFile);
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#addRevision(String)
+     */
+    public void addRevision(String revisionName) throws Exception {
+        if (!indexExists()) {
+            buildDateIndex(); // INFO: The index is built based on the existing revisions, which includes the new revision
+            return;
+        }
+
+        long name = Long.parseLong(revisionName);
+        long time = new VirtualFileSystemRevision(repo, nodePath, revisionName).getCreationDate().getTime(); // WARN: Older creation dates might not have milliseconds and hence are not corresponding exactly with the revision name
+        synchronized(INDEX_LOCKS.getLock(indexFile)) {
+            RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+            try {
+                long length = raf.length() - raf.length() % RECORD_LENGTH;
+                boolean append = true;
+                if (length > 0) {
+                    raf.seek(length - RECORD_LENGTH);
+                    long lastTime = raf.readLong();
+                    long lastName = raf.readLong();
+                    append = lastTime < time || (lastTime == time && lastName < name);
+                }
+                if (append) {
+                    byte[] record = new byte[RECORD_LENGTH];
+                    toBytes(time, record, 0);
+                    toBytes(name, record, 8);
+                    raf.seek(length);
+                    raf.write(record); // INFO: One write, such that readers never see a partial record
+                    return;
+                }
+            } finally {
+                raf.close();
+            }
+
+            long[] records = readAll();
+            int count = records.length / 2;
+            for (int i = 0; i < count; i++) {
+                if (records[2 * i + 1] == name) {
+                    if (log.isDebugEnabled()) log.debug("Revision '" + revisionName + "' already exists within date index!");
+                    return;
+                }
+            }
+            long[] all = new long[records.length + 2];
+            System.arraycopy(records, 0, all, 0, records.length);
+            all[records.length] = time;
+            all[records.length + 1] = name;
+            write(sort(all));
+        }
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#buildDateIndex()
+     */
+    public void buildDateIndex() throws Exception {
+        log.warn("Build date index '" + indexFile + "', whereas this should happen only once when no index exists yet (or has been manually deleted again). Please note that the reading of the revisions must be based on the implementation VirtualFileSystemNode#readRevisions()!");
+        Revision[] revisions = repo.getNode(nodePath).getRevisions();
+        String[] revisionNames = new String[revisions.length];
+        Date[] creationDates = new Date[revisions.length];
+        for (int i = 0; i < revisions.length; i++) {
+            revisionNames[i] = revisions[i].getRevisionName();
+            creationDates[i] = revisions[i].getCreationDate();
+        }
+        buildDateIndex(revisionNames, creationDates);
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#buildDateIndex(String[], Date[])
+     */
+    public void buildDateIndex(String[] revisionNames, Date[] creationDates) throws Exception {
+        long[] records = new long[2 * revisionNames.length];
+        int count = 0;
+        for (int i = 0; i < revisionNames.length; i++) {
+            try {
+                records[2 * count + 1] = Long.parseLong(revisionNames[i]);
+            } catch (NumberFormatException e) {
+                log.warn("Revision name '" + revisionNames[i] + "' of node '" + nodePath + "' is not a number, hence revision will not be indexed.");
+                continue;
+            }
+            records[2 * count] = creationDates[i].getTime();
+            count++;
+        }
+        long[] indexed = new long[2 * count];
+        System.arraycopy(records, 0, indexed, 0, indexed.length);
+        synchronized(INDEX_LOCKS.getLock(indexFile)) {
+            write(sort(indexed));
+        }
+    }
+
+    /**
+     * Open index for reading
+     * @return Timeline, which must be closed again, or null if no index exists
+     */
+    private Timeline open() throws IOException {
+        if (!indexFile.isFile()) {
+            log.warn("No date index yet: " + indexFile);
+            return null;
+        }
+        return new Timeline(new RandomAccessFile(indexFile, "r"));
+    }
+
+    /**
+     * Get revision of a record
+     * @param pos Position of record
+     */
+    private Revision getRevision(Timeline timeline, int pos) throws Exception {
+        String revisionName = String.valueOf(timeline.getName(pos));
+        return new VirtualFileSystemRevision(repo, nodePath, revisionName);
+    }
+
+    /**
+     * Read all records
+     * @return Creation dates and revision names alternating
+     */
+    private long[] readAll() throws IOException {
+        if (!indexFile.isFile()) {
+            return new long[0];
+        }
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        try {
+            byte[] bytes = new byte[(int) (raf.length() - raf.length() % RECORD_LENGTH)];
+            raf.readFully(bytes);
+            long[] records = new long[bytes.length / 8];
+            ByteBuffer.wrap(bytes).asLongBuffer().get(records);
+            return records;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Write records into a temporary file, which then replaces the index
+     * @param records Sorted creation dates and revision names alternating
+     */
+    private void write(long[] records) throws IOException {
+        indexFile.getParentFile().mkdirs();
+        File tmpFile = File.createTempFile(DATE_INDEX_FILE_NAME, ".tmp", indexFile.getParentFile());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            for (int i = 0; i < records.length; i++) {
+                out.writeLong(records[i]);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(indexFile)) {
+            // INFO: On some platforms (e.g. Windows) an existing file cannot be replaced by renaming
+            indexFile.delete();
+            if (!tmpFile.renameTo(indexFile)) {
+                tmpFile.delete();
+                throw new IOException("Could not replace date index: " + indexFile);
+            }
+        }
+    }
+
+    /**
+     * Sort records by creation date and revision name
+     * @param records Creation dates and revision names alternating
+     * @return Sorted records
+     */
+    private static long[] sort(long[] records) {
+        Record[] sorted = new Record[records.length / 2];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = new Record(records[2 * i], records[2 * i + 1]);
+        }
+        Arrays.sort(sorted);
+        long[] result = new long[records.length];
+        for (int i = 0; i < sorted.length; i++) {
+            result[2 * i] = sorted[i].time;
+            result[2 * i + 1] = sorted[i].name;
+        }
+        return result;
+    }
+
+    /**
+     * Big-endian encoding of a long (same as DataOutput#writeLong(long))
+     */
+    private static void toBytes(long value, byte[] bytes, int offset) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Record of date index
+     */
+    private static class Record implements Comparable {
+        final long time;
+        final long name;
+
+        Record(long time, long name) {
+            this.time = time;
+            this.name = name;
+        }
+
+        public int compareTo(Object o) {
+            Record other = (Record) o;
+            if (time != other.time) {
+                return time < other.time ? -1 : 1;
+            }
+            return name < other.name ? -1 : (name == other.name ? 0 : 1);
+        }
+    }
+
+    /**
+     * Records of an opened index (creation date and revision name per record)
+     */
+    private static class Timeline {
+        private RandomAccessFile raf;
+        private int size;
+
+        Timeline(RandomAccessFile raf) throws IOException {
+            this.raf = raf;
+            this.size = (int) (raf.length() / RECORD_LENGTH); // INFO: A partially appended record is ignored
+        }
+
+        /**
+         * Get number of records
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Get creation date of a record
+         * @param pos Position of record
+         */
+        long getTime(int pos) throws IOException {
+            raf.seek((long) pos * RECORD_LENGTH);
+            return raf.readLong();
+        }
+
+        /**
+         * Get revision name of a record
+         * @param pos Position of record
+         */
+        long getName(int pos) throws IOException {
+            raf.seek((long) pos * RECORD_LENGTH + 8);
+            return raf.readLong();
+        }
+
+        /**
+         * Binary search of the first record with a creation date younger than a particular time
+         * @param time Time in milliseconds
+         * @return Position of record or number of records if no such record exists
+         */
+        int findFirstYoungerThan(long time) throws IOException {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (getTime(mid) <= time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         *
+         */
+        void close() throws IOException {
+            raf.close();
+        }
+    }
+}
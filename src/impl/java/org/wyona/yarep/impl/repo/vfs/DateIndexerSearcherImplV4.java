@@ -0,0 +1,176 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.util.Date;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.wyona.yarep.core.Revision;
+
+/**
+ * Utility class to index and search revisions of a node by date, whereas the revisions of all nodes are indexed by one lucene index per repository (see RepositoryDateIndex).
+ * In contrast to DateIndexerSearcherImplV2 (one lucene index per node) neither an index writer nor an index searcher is opened per lookup or per new revision.
+ */
+public class DateIndexerSearcherImplV4 implements DateIndexerSearcher {
+    private static Logger log = LogManager.getLogger(DateIndexerSearcherImplV4.class);
+
+    private RepositoryDateIndex index;
+    private String nodePath;
+    private VirtualFileSystemRepository repo;
+
+    /**
+     * @param path Absolute repository path of node for which revisions shall be indexed by date. e.g. '/foo/bar.txt'
+     * @param index Date index of repository
+     * @param repo Repository containing node
+     */
+    DateIndexerSearcherImplV4(String path, RepositoryDateIndex index, VirtualFileSystemRepository repo) {
+        this.nodePath = path;
+        this.index = index;
+        this.repo = repo;
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#indexExists()
+     */
+    public boolean indexExists() {
+        try {
+            return index.containsNode(nodePath);
+        } catch(Exception e) {
+            log.error(e, e);
+            return false;
+        }
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getRevisionYoungerThan(Date)
+     */
+    public Revision getRevisionYoungerThan(Date date) throws Exception {
+        return getFirst(index.search(nodePath, new Long(date.getTime()), null, false, true, true, 1));
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getRevisionOlderThan(Date)
+     */
+    public Revision getRevisionOlderThan(Date date) throws Exception {
+        return getFirst(index.search(nodePath, null, new Long(date.getTime()), true, false, false, 1));
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getMostRecentRevision()
+     */
+    public Revision getMostRecentRevision() {
+        try {
+            return getFirst(index.search(nodePath, null, null, true, true, false, 1));
+        } catch(Exception e) {
+            log.error(e, e);
+            return null;
+        }
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getOldestRevision()
+     */
+    public Revision getOldestRevision() {
+        try {
+            return getFirst(index.search(nodePath, null, null, true, true, true, 1));
+        } catch(Exception e) {
+            log.error(e, e);
+            return null;
+        }
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getRevision(Date)
+     */
+    public Revision getRevision(Date date) throws Exception {
+        return getFirst(index.search(nodePath, null, new Long(date.getTime()), true, true, false, 1));
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#getRevisions(Date, boolean, boolean, int)
+     */
+    public Revision[] getRevisions(Date date, boolean inclusive, boolean ascending, int limit) throws Exception {
+        String[] revisionNames;
+        if (date == null) {
+            revisionNames = index.search(nodePath, null, null, true, true, ascending, limit);
+        } else if (ascending) {
+            revisionNames = index.search(nodePath, new Long(date.getTime()), null, inclusive, true, true, limit);
+        } else {
+            revisionNames = index.search(nodePath, null, new Long(date.getTime()), true, inclusive, false, limit);
+        }
+        if (revisionNames.length == 0) {
+            return new Revision[0];
+        }
+
+        // INFO: Resolve the node only once per batch instead of once per revision
+        VirtualFileSystemNode node = repo.existsNode(nodePath) ? (VirtualFileSystemNode) repo.getNode(nodePath) : null;
+        Revision[] revisions = new Revision[revisionNames.length];
+        for (int i = 0; i < revisions.length; i++) {
+            revisions[i] = node != null ? new VirtualFileSystemRevision(node, revisionNames[i]) : new VirtualFileSystemRevision(repo, nodePath, revisionNames[i]);
+        }
+        return revisions;
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#deleteRevision(String)
+     */
+    public void deleteRevision(String revisionName) throws Exception {
+        index.delete(nodePath, revisionName);
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#addRevision(String)
+     */
+    public void addRevision(String revisionName) throws Exception {
+        if (!indexExists()) {
+            buildDateIndex(); // INFO: The node might have revisions which have been created before the date index implementation was switched, whereas the index is built based on the existing revisions, which includes the new revision
+            return;
+        }
+
+        Date creationDate = new VirtualFileSystemRevision(repo, nodePath, revisionName).getCreationDate(); // WARN: Older creation dates might not have milliseconds and hence are not corresponding exactly with the revision name
+        if (log.isDebugEnabled()) log.debug("Add revision '" + revisionName + "' of node '" + nodePath + "' with creation date '" + creationDate + "' to date index ...");
+        index.add(nodePath, new String[] {revisionName}, new long[] {creationDate.getTime()});
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#buildDateIndex()
+     */
+    public void buildDateIndex() throws Exception {
+        log.warn("Build date index of node '" + nodePath + "' within '" + index + "'. Please note that the reading of the revisions must be based on the implementation VirtualFileSystemNode#readRevisions()!");
+        Revision[] revisions = repo.getNode(nodePath).getRevisions();
+        if (revisions.length <= 0) {
+            log.warn("Node '" + nodePath + "' has no revisions yet, hence no date index will be built.");
+            return;
+        }
+        String[] revisionNames = new String[revisions.length];
+        long[] creationDates = new long[revisions.length];
+        for (int i = 0; i < revisions.length; i++) {
+            revisionNames[i] = revisions[i].getRevisionName();
+            creationDates[i] = revisions[i].getCreationDate().getTime();
+        }
+        index.add(nodePath, revisionNames, creationDates); // INFO: One commit for all revisions of the node
+    }
+
+    /**
+     * @see org.wyona.yarep.impl.repo.vfs.DateIndexerSearcher#buildDateIndex(String[], Date[])
+     */
+    public void buildDateIndex(String[] revisionNames, Date[] creationDates) throws Exception {
+        long[] times = new long[creationDates.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = creationDates[i].getTime();
+        }
+        index.replaceNode(nodePath, revisionNames, times);
+    }
+
+    /**
+     * Get revision of the first revision name
+     * @param revisionNames Revision names found
+     * @return Revision or null if no revision name has been found
+     */
+    private Revision getFirst(String[] revisionNames) throws Exception {
+        if (revisionNames.length == 0) {
+            return null;
+        }
+        return new VirtualFileSystemRevision(repo, nodePath, revisionNames[0]);
+    }
+}
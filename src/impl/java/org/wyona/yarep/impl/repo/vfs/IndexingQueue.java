@@ -0,0 +1,541 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.wyona.yarep.core.NoSuchRevisionException;
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.Property;
+import org.wyona.yarep.core.PropertyType;
+import org.wyona.yarep.core.Revision;
+import org.wyona.yarep.core.UID;
+import org.wyona.yarep.core.search.Indexer;
+import org.wyona.yarep.core.search.SearchException;
+import org.wyona.yarep.impl.AbstractNode;
+import org.wyona.yarep.impl.DefaultProperty;
+
+/**
+ * Queue of the automatic indexing of nodes and their properties (see VirtualFileSystemNode and VirtualFileSystemOutputStream), such that text extraction and index updates do not block the threads writing into the repository.
+ * <br/><br/>
+ * If no workers are configured, then a node is indexed right away by the thread which modified it (default). Otherwise:
+ * <ul>
+ * <li>Nodes are indexed by a bounded pool of background threads.</li>
+ * <li>Repeated modifications of a node are coalesced as long as the node is waiting, whereas the last modification wins and a node is indexed with its state at the time it is indexed.</li>
+ * <li>If the maximum number of waiting nodes has been reached, then a thread adding another node waits until a worker has taken a node (backpressure).</li>
+ * <li>The path of every waiting node is appended to the journal file '.indexing-journal' of the meta directory, which is deleted as soon as the queue is empty.
+ * The nodes of an existing journal are indexed again (or removed from the index if they do not exist anymore) when the repository is opened the next time, e.g. after a crash.</li>
+ * </ul>
+ * Closing the queue waits until all waiting nodes have been indexed. In order to wait until all modifications have been indexed, e.g. within tests, see waitUntilIdle(long).
+ */
+class IndexingQueue {
+
+    private static Logger log = LogManager.getLogger(IndexingQueue.class);
+
+    static final String JOURNAL_FILE_NAME = ".indexing-journal";
+
+    private static final String REVISION_SEPARATOR = "#revision=";
+
+    private static final int NONE = 0;
+    private static final int INDEX = 1;
+    private static final int REMOVE = 2;
+    private static final int RECOVER = 3; // INFO: Index if the node exists, otherwise remove it from the index
+
+    private static final int JOURNAL_COMPACTION_THRESHOLD = 1000;
+
+    private VirtualFileSystemRepository repo;
+    private Indexer indexer;
+    private int maxPending;
+    private File journalFile;
+
+    private LinkedHashMap pending = new LinkedHashMap(); // INFO: Waiting tasks by key (path of node or path and name of revision) in the order they have been added
+    private Set inProgress = new HashSet(); // INFO: Keys of the tasks which are being processed by workers
+    private List workers = new ArrayList();
+    private boolean closed = false;
+
+    private Writer journal;
+    private int journalLines = 0;
+
+    /**
+     * Queue which indexes nodes right away
+     * @param repo Repository containing nodes
+     * @param indexer Indexer of repository
+     */
+    IndexingQueue(VirtualFileSystemRepository repo, Indexer indexer) {
+        this.repo = repo;
+        this.indexer = indexer;
+    }
+
+    /**
+     * Queue which indexes nodes within background threads
+     * @param repo Repository containing nodes
+     * @param indexer Indexer of repository
+     * @param numberOfWorkers Number of background threads
+     * @param maxPending Maximum number of waiting nodes
+     * @param journalFile Journal file containing the waiting nodes or null if no journal shall be kept
+     */
+    IndexingQueue(VirtualFileSystemRepository repo, Indexer indexer, int numberOfWorkers, int maxPending, File journalFile) {
+        this(repo, indexer);
+        this.maxPending = Math.max(1, maxPending);
+        this.journalFile = journalFile;
+        recover();
+        for (int i = 0; i < numberOfWorkers; i++) {
+            Thread worker = new Thread(new Runnable() {
+                public void run() {
+                    work();
+                }
+            }, "yarep-indexer-" + repo.getName() + "-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+        for (int i = 0; i < workers.size(); i++) {
+            ((Thread) workers.get(i)).start();
+        }
+        log.info("Index nodes of repository '" + repo.getName() + "' within " + numberOfWorkers + " background threads (max pending: " + this.maxPending + ", journal: " + journalFile + ")");
+    }
+
+    /**
+     * (Re-)Index content of node
+     * @see org.wyona.yarep.core.search.Indexer#index(Node)
+     */
+    void index(Node node) throws SearchException {
+        if (!add(node, INDEX, NONE, null)) {
+            indexer.index(node);
+        }
+    }
+
+    /**
+     * (Re-)Index properties of node
+     * @see org.wyona.yarep.core.search.Indexer#index(Node, Property)
+     */
+    void index(Node node, Property property) throws SearchException {
+        if (!add(node, NONE, INDEX, property)) {
+            indexer.index(node, property);
+        }
+    }
+
+    /**
+     * Remove content of node from index
+     * @see org.wyona.yarep.core.search.Indexer#removeFromIndex(Node)
+     */
+    void removeFromIndex(Node node) throws SearchException {
+        if (!add(node, REMOVE, NONE, null)) {
+            indexer.removeFromIndex(node);
+        }
+    }
+
+    /**
+     * Remove property of node from index
+     * @param property Removed property or null if the property has already been removed from the node, whereas the remaining properties of the node are re-indexed within the background
+     * @see org.wyona.yarep.core.search.Indexer#removeFromIndex(Node, Property)
+     */
+    void removeFromIndex(Node node, Property property) throws SearchException {
+        if (!add(node, NONE, property != null ? REMOVE : INDEX, property)) {
+            indexer.removeFromIndex(node, property);
+        }
+    }
+
+    /**
+     * Check whether nodes are indexed within background threads
+     */
+    boolean isAsynchronous() {
+        return !workers.isEmpty();
+    }
+
+    /**
+     * Wait until all nodes which have been added so far have been indexed
+     * @param timeout Maximum time to wait (in milliseconds)
+     * @return True if the queue is empty and false if the timeout has elapsed before
+     */
+    synchronized boolean waitUntilIdle(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!isIdle()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Get number of nodes which are waiting or being indexed
+     */
+    synchronized int size() {
+        return pending.size() + inProgress.size();
+    }
+
+    /**
+     * Index all waiting nodes and stop the background threads, whereas nodes which are added afterwards are indexed right away
+     */
+    void close() {
+        synchronized(this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        for (int i = 0; i < workers.size(); i++) {
+            Thread worker = (Thread) workers.get(i);
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while waiting for indexer thread '" + worker.getName() + "', hence the remaining nodes will be indexed when the repository is opened the next time.");
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        synchronized(this) {
+            closeJournal();
+            if (isIdle() && journalFile != null) {
+                journalFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Add task to queue or merge it with the waiting task of the same node
+     * @return False if the queue is synchronous or has been closed, such that the caller has to index the node itself
+     */
+    private boolean add(Node node, int fulltextOp, int propertiesOp, Property property) throws SearchException {
+        if (workers.isEmpty()) {
+            return false;
+        }
+        String key = getKey(node);
+        synchronized(this) {
+            Task task = (Task) pending.get(key);
+            while (task == null && pending.size() >= maxPending && !closed && !workers.contains(Thread.currentThread())) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    log.warn("Interrupted while waiting for the indexing queue, hence node '" + key + "' is added although the queue is full.");
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                task = (Task) pending.get(key);
+            }
+            if (closed) {
+                return false;
+            }
+            if (task == null) {
+                task = new Task(key);
+                pending.put(key, task);
+                appendToJournal(key);
+                notifyAll();
+            }
+            task.merge(node, fulltextOp, propertiesOp, property);
+            return true;
+        }
+    }
+
+    /**
+     * Process tasks until the queue has been closed and is empty
+     */
+    private void work() {
+        while (true) {
+            Task task = take();
+            if (task == null) {
+                return;
+            }
+            try {
+                process(task);
+            } catch (Throwable e) {
+                log.error("Could not index node '" + task.key + "': " + e, e);
+            } finally {
+                done(task);
+            }
+        }
+    }
+
+    /**
+     * Take the oldest waiting task whose node is not being indexed by another worker
+     * @return Task or null if the queue has been closed and is empty
+     */
+    private synchronized Task take() {
+        while (true) {
+            for (Iterator it = pending.values().iterator(); it.hasNext();) {
+                Task task = (Task) it.next();
+                if (!inProgress.contains(task.key)) {
+                    it.remove();
+                    inProgress.add(task.key);
+                    notifyAll(); // INFO: Wake up threads waiting for space
+                    return task;
+                }
+            }
+            if (closed && pending.isEmpty()) {
+                return null;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                log.warn("Indexer thread has been interrupted: " + Thread.currentThread().getName());
+                return null;
+            }
+        }
+    }
+
+    /**
+     *
+     */
+    private synchronized void done(Task task) {
+        inProgress.remove(task.key);
+        if (isIdle()) {
+            truncateJournal();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Index node with its current state or remove it from the index
+     */
+    private void process(Task task) throws Exception {
+        Node current = getCurrentNode(task.key);
+        int fulltextOp = task.fulltextOp == RECOVER ? (current != null ? INDEX : REMOVE) : task.fulltextOp;
+        int propertiesOp = task.propertiesOp == RECOVER ? (current != null ? INDEX : REMOVE) : task.propertiesOp;
+
+        if (fulltextOp == INDEX && current != null) {
+            indexer.index(current);
+        } else if (fulltextOp == REMOVE) {
+            Node node = getRemovedNode(task);
+            if (node != null) {
+                indexer.removeFromIndex(node);
+            }
+        }
+
+        if (propertiesOp == INDEX && current != null) {
+            Property property = null;
+            if (task.property != null && current.hasProperty(task.property.getName())) {
+                property = current.getProperty(task.property.getName());
+            } else {
+                Property[] properties = current.getProperties();
+                property = properties.length > 0 ? properties[properties.length - 1] : null;
+            }
+            if (property != null) {
+                // INFO: The indexer re-adds all other properties of the node to the index document, hence indexing one of the properties is sufficient
+                indexer.index(current, property);
+            }
+        } else if (propertiesOp == REMOVE) {
+            Node node = getRemovedNode(task);
+            if (node != null) {
+                // INFO: The indexers remove the properties document of the node, whereas the property is only used for logging
+                indexer.removeFromIndex(node, task.property != null ? task.property : new DefaultProperty(AbstractNode.PROPERTY_TYPE, PropertyType.STRING, node));
+            }
+        }
+    }
+
+    /**
+     * Get current state of the node of a task
+     * @param key Path of node or path and name of revision
+     * @return Node or null if it does not exist anymore
+     */
+    private Node getCurrentNode(String key) throws Exception {
+        int index = key.indexOf(REVISION_SEPARATOR);
+        String path = index >= 0 ? key.substring(0, index) : key;
+        if (!repo.existsNode(path)) {
+            return null;
+        }
+        Node node = repo.getNode(path);
+        if (index >= 0) {
+            try {
+                return node.getRevision(key.substring(index + REVISION_SEPARATOR.length()));
+            } catch (NoSuchRevisionException e) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Get node which has to be removed from the index
+     * @return Node as it has been added to the queue or null if a removed revision has been recovered from the journal
+     */
+    private Node getRemovedNode(Task task) throws Exception {
+        if (task.node != null) {
+            return task.node;
+        }
+        if (task.key.indexOf(REVISION_SEPARATOR) >= 0) {
+            log.warn("Revision '" + task.key + "' does not exist anymore, but cannot be removed from the index, because it has been recovered from the journal.");
+            return null;
+        }
+        return new VirtualFileSystemNode(repo, task.key, new UID(task.key).toString());
+    }
+
+    /**
+     * Get key of node
+     * @return Path of node or path and name of revision
+     */
+    private String getKey(Node node) throws SearchException {
+        try {
+            if (node instanceof Revision) {
+                return node.getPath() + REVISION_SEPARATOR + ((Revision) node).getRevisionName();
+            }
+            return node.getPath();
+        } catch (Exception e) {
+            log.error(e, e);
+            throw new SearchException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     *
+     */
+    private boolean isIdle() {
+        return pending.isEmpty() && inProgress.isEmpty();
+    }
+
+    /**
+     * Add the nodes of an existing journal to the queue
+     */
+    private void recover() {
+        if (journalFile == null || !journalFile.isFile()) {
+            return;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "UTF-8"));
+            try {
+                String key;
+                while ((key = reader.readLine()) != null) {
+                    if (key.length() > 0 && !pending.containsKey(key)) {
+                        Task task = new Task(key);
+                        task.merge(null, RECOVER, RECOVER, null);
+                        pending.put(key, task);
+                    }
+                    journalLines++;
+                }
+            } finally {
+                reader.close();
+            }
+            log.warn("Index " + pending.size() + " nodes of repository '" + repo.getName() + "' again, which had not been indexed before the repository was closed: " + journalFile);
+        } catch (IOException e) {
+            log.error(e, e);
+        }
+    }
+
+    /**
+     * Append key of a waiting node to the journal and rewrite the journal if it mainly contains nodes which have been indexed already
+     */
+    private void appendToJournal(String key) {
+        if (journalFile == null) {
+            return;
+        }
+        try {
+            if (journal == null) {
+                journalFile.getParentFile().mkdirs();
+                journal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), "UTF-8"));
+            }
+            journal.write(key);
+            journal.write('\n');
+            journal.flush();
+            journalLines++;
+            if (journalLines > JOURNAL_COMPACTION_THRESHOLD && journalLines > 2 * size()) {
+                rewriteJournal();
+            }
+        } catch (IOException e) {
+            log.error(e, e);
+        }
+    }
+
+    /**
+     * Replace the journal by the keys of the nodes which are waiting or being indexed
+     */
+    private void rewriteJournal() throws IOException {
+        closeJournal();
+        File tmpFile = new File(journalFile.getParentFile(), JOURNAL_FILE_NAME + ".tmp");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+        try {
+            for (Iterator it = inProgress.iterator(); it.hasNext();) {
+                writer.write((String) it.next());
+                writer.write('\n');
+            }
+            for (Iterator it = pending.keySet().iterator(); it.hasNext();) {
+                writer.write((String) it.next());
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        if (!tmpFile.renameTo(journalFile)) {
+            // INFO: On some platforms (e.g. Windows) an existing file cannot be replaced by renaming
+            journalFile.delete();
+            if (!tmpFile.renameTo(journalFile)) {
+                throw new IOException("Could not replace indexing journal: " + journalFile);
+            }
+        }
+        journalLines = size();
+    }
+
+    /**
+     * Delete the journal, because all nodes have been indexed
+     */
+    private void truncateJournal() {
+        if (journalFile == null) {
+            return;
+        }
+        closeJournal();
+        if (journalFile.exists() && !journalFile.delete()) {
+            log.error("Could not delete indexing journal: " + journalFile);
+        }
+        journalLines = 0;
+    }
+
+    /**
+     *
+     */
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.error(e, e);
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * Pending indexing of one node, whereas the last modification of the content and the last modification of the properties win
+     */
+    private static class Task {
+        private String key;
+        private Node node; // INFO: Node as it has been added most recently, which is used to remove it from the index
+        private int fulltextOp = NONE;
+        private int propertiesOp = NONE;
+        private Property property;
+
+        private Task(String key) {
+            this.key = key;
+        }
+
+        private void merge(Node node, int fulltextOp, int propertiesOp, Property property) {
+            if (node != null) {
+                this.node = node;
+            }
+            if (fulltextOp != NONE) {
+                this.fulltextOp = fulltextOp;
+            }
+            if (propertiesOp != NONE) {
+                this.propertiesOp = propertiesOp;
+                if (property != null) {
+                    this.property = property;
+                }
+            }
+        }
+    }
+}
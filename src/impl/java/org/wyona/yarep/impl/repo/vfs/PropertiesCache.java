@@ -0,0 +1,183 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.Property;
+import org.wyona.yarep.core.PropertyType;
+import org.wyona.yarep.core.RepositoryException;
+import org.wyona.yarep.impl.DefaultProperty;
+
+/**
+ * Size bounded (least recently used entries are evicted first) cache of the parsed properties of meta files.
+ * A cached entry is only used as long as the last modified date and the size of the meta file did not change.
+ * Please note that each node gets its own copy of the cached properties, because nodes modify their properties.
+ */
+public class PropertiesCache {
+
+    private static Logger log = LogManager.getLogger(PropertiesCache.class);
+
+    private final int maxEntries;
+    private final LinkedHashMap entries;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxEntries Maximum number of meta files of which the properties are cached
+     */
+    PropertiesCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LRUMap(maxEntries);
+    }
+
+    /**
+     * Get copy of cached properties of a meta file
+     * @param metaFile Meta file containing properties
+     * @param node Node or revision to which the copied properties will belong
+     * @return Copy of properties (property name as key) or null if no valid entry is cached
+     */
+    HashMap get(File metaFile, Node node) throws RepositoryException {
+        Entry entry;
+        synchronized(this) {
+            entry = (Entry) entries.get(metaFile.getAbsolutePath());
+            if (entry != null && (entry.lastModified != metaFile.lastModified() || entry.length != metaFile.length())) {
+                if (log.isDebugEnabled()) log.debug("Meta file has been modified: " + metaFile);
+                entries.remove(metaFile.getAbsolutePath());
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return copy(entry.properties, node);
+    }
+
+    /**
+     * Get a particular cached property of a meta file without copying the properties (and without counting the lookup as hit or miss)
+     * @param metaFile Meta file containing properties
+     * @param name Property name
+     * @return Cached property, which must not be modified, or null if no valid entry is cached or if the property does not exist
+     */
+    synchronized Property peek(File metaFile, String name) {
+        Entry entry = (Entry) entries.get(metaFile.getAbsolutePath());
+        if (entry == null || entry.lastModified != metaFile.lastModified() || entry.length != metaFile.length()) {
+            return null;
+        }
+        return (Property) entry.properties.get(name);
+    }
+
+    /**
+     * Add or replace the properties of a meta file
+     * @param metaFile Meta file containing properties
+     * @param lastModified Last modified date of meta file before it has been read or after it has been written
+     * @param length Size of meta file before it has been read or after it has been written
+     * @param properties Properties (property name as key)
+     */
+    void put(File metaFile, long lastModified, long length, java.util.Map properties) throws RepositoryException {
+        Entry entry = new Entry(lastModified, length, copy(properties, null));
+        synchronized(this) {
+            entries.put(metaFile.getAbsolutePath(), entry);
+        }
+    }
+
+    /**
+     * Remove the properties of a meta file from the cache (e.g. because the meta file has been deleted)
+     * @param metaFile Meta file containing properties
+     */
+    synchronized void remove(File metaFile) {
+        entries.remove(metaFile.getAbsolutePath());
+    }
+
+    /**
+     * Get maximum number of cached entries
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Get number of currently cached entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get number of lookups which have been answered by the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get number of lookups which have not been answered by the cache, because there was no (valid) entry
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Copy properties
+     * @param properties Properties (property name as key)
+     * @param node Node to which the copied properties belong
+     */
+    private static HashMap copy(java.util.Map properties, Node node) throws RepositoryException {
+        HashMap copy = new HashMap(properties.size() * 2);
+        Iterator iterator = properties.values().iterator();
+        while (iterator.hasNext()) {
+            Property property = (Property) iterator.next();
+            Property propertyCopy = new DefaultProperty(property.getName(), property.getType(), node);
+            switch (property.getType()) {
+                case PropertyType.BOOLEAN: propertyCopy.setValue(property.getBoolean()); break;
+                case PropertyType.LONG: propertyCopy.setValue(property.getLong()); break;
+                case PropertyType.DOUBLE: propertyCopy.setValue(property.getDouble()); break;
+                case PropertyType.DATE: propertyCopy.setValue(property.getDate() != null ? new java.util.Date(property.getDate().getTime()) : null); break;
+                default: propertyCopy.setValue(property.getString()); break;
+            }
+            copy.put(property.getName(), propertyCopy);
+        }
+        return copy;
+    }
+
+    /**
+     * Cached properties of a meta file together with the state of the meta file when the properties have been read or written
+     */
+    private static class Entry {
+        final long lastModified;
+        final long length;
+        final HashMap properties;
+
+        Entry(long lastModified, long length, HashMap properties) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * Map in access order, which removes the least recently used entry as soon as it contains more than the maximum number of entries
+     */
+    private static class LRUMap extends LinkedHashMap {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        LRUMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        protected boolean removeEldestEntry(java.util.Map.Entry eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.store.FSDirectory;
+
+/**
+ * One lucene index for the revisions of all nodes of a repository (see revisions-date-index-impl 'lucene-shared' and DateIndexerSearcherImplV4), whereas every document contains the path of the node, the name and the creation date of a revision.
+ * <br/><br/>
+ * The index writer is opened once and kept open until the repository is closed (see VirtualFileSystemRepository#close()), whereas every modification is committed, but the index is never optimized (segments are merged by the merge policy of the writer).
+ * Searches share one near real-time reader of the writer, which is only reopened when the index has been modified since the last search.
+ */
+class RepositoryDateIndex {
+
+    private static Logger log = LogManager.getLogger(RepositoryDateIndex.class);
+
+    static final String INDEX_DIR_NAME = ".revisions-date-index";
+
+    private static final String ID_FIELD_NAME = "id";
+    private static final String PATH_FIELD_NAME = "path";
+    private static final String CREATION_DATE_FIELD_NAME = "cdate";
+    private static final String REVISION_NAME_FIELD_NAME = "rname";
+
+    private File indexDir;
+    private IndexWriter writer;
+    private IndexReader reader;
+    private boolean modified = true;
+
+    /**
+     * @param indexDir Directory of lucene index
+     */
+    RepositoryDateIndex(File indexDir) throws IOException {
+        this.indexDir = indexDir;
+        indexDir.mkdirs();
+        log.info("Open revisions date index: " + indexDir);
+        writer = new IndexWriter(FSDirectory.open(indexDir), new org.apache.lucene.analysis.WhitespaceAnalyzer(), IndexWriter.MaxFieldLength.UNLIMITED);
+    }
+
+    /**
+     * Check whether revisions of a node have been indexed
+     * @param path Absolute repository path of node
+     */
+    boolean containsNode(String path) throws IOException {
+        IndexReader r = acquireReader();
+        try {
+            return r.docFreq(new Term(PATH_FIELD_NAME, path)) > 0;
+        } finally {
+            r.decRef();
+        }
+    }
+
+    /**
+     * Add revisions of a node and commit
+     * @param path Absolute repository path of node
+     * @param revisionNames Names of revisions
+     * @param creationDates Creation dates of revisions
+     */
+    synchronized void add(String path, String[] revisionNames, long[] creationDates) throws IOException {
+        checkOpen();
+        for (int i = 0; i < revisionNames.length; i++) {
+            writer.updateDocument(new Term(ID_FIELD_NAME, getId(path, revisionNames[i])), createDocument(path, revisionNames[i], creationDates[i]));
+        }
+        writer.commit();
+        modified = true;
+    }
+
+    /**
+     * Replace all revisions of a node and commit
+     * @param path Absolute repository path of node
+     * @param revisionNames Names of revisions
+     * @param creationDates Creation dates of revisions
+     */
+    synchronized void replaceNode(String path, String[] revisionNames, long[] creationDates) throws IOException {
+        checkOpen();
+        writer.deleteDocuments(new Term(PATH_FIELD_NAME, path));
+        for (int i = 0; i < revisionNames.length; i++) {
+            writer.addDocument(createDocument(path, revisionNames[i], creationDates[i]));
+        }
+        writer.commit();
+        modified = true;
+    }
+
+    /**
+     * Create lucene document of a revision
+     */
+    private static Document createDocument(String path, String revisionName, long creationDate) {
+        Document doc = new Document();
+        doc.add(new Field(ID_FIELD_NAME, getId(path, revisionName), Field.Store.NO, Field.Index.NOT_ANALYZED));
+        doc.add(new Field(PATH_FIELD_NAME, path, Field.Store.NO, Field.Index.NOT_ANALYZED));
+        doc.add(new NumericField(CREATION_DATE_FIELD_NAME, Field.Store.YES, true).setLongValue(creationDate));
+        doc.add(new Field(REVISION_NAME_FIELD_NAME, revisionName, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        return doc;
+    }
+
+    /**
+     * Delete revision and commit
+     * @param path Absolute repository path of node
+     * @param revisionName Name of revision
+     */
+    synchronized void delete(String path, String revisionName) throws IOException {
+        checkOpen();
+        writer.deleteDocuments(new Term(ID_FIELD_NAME, getId(path, revisionName)));
+        writer.commit();
+        modified = true;
+    }
+
+    /**
+     * Delete all revisions of a node and commit
+     * @param path Absolute repository path of node
+     */
+    synchronized void deleteNode(String path) throws IOException {
+        checkOpen();
+        writer.deleteDocuments(new Term(PATH_FIELD_NAME, path));
+        writer.commit();
+        modified = true;
+    }
+
+    /**
+     * Search revisions of a node by creation date
+     * @param path Absolute repository path of node
+     * @param min Lower bound of creation date or null for open range
+     * @param max Upper bound of creation date or null for open range
+     * @param minInclusive True if lower bound is inclusive
+     * @param maxInclusive True if upper bound is inclusive
+     * @param ascending True for chronological order (oldest first), false for most recent first
+     * @param limit Maximum number of revisions
+     * @return Names of revisions
+     */
+    String[] search(String path, Long min, Long max, boolean minInclusive, boolean maxInclusive, boolean ascending, int limit) throws IOException {
+        BooleanQuery query = new BooleanQuery();
+        query.add(new TermQuery(new Term(PATH_FIELD_NAME, path)), BooleanClause.Occur.MUST);
+        if (min != null || max != null) {
+            Query range = NumericRangeQuery.newLongRange(CREATION_DATE_FIELD_NAME, min, max, minInclusive, maxInclusive);
+            query.add(range, BooleanClause.Occur.MUST);
+        }
+
+        IndexReader r = acquireReader();
+        try {
+            IndexSearcher searcher = new IndexSearcher(r);
+            TopFieldDocs docs = searcher.search(query, null, limit, new Sort(new SortField(CREATION_DATE_FIELD_NAME, SortField.LONG, !ascending)));
+            String[] revisionNames = new String[docs.scoreDocs.length];
+            for (int i = 0; i < revisionNames.length; i++) {
+                revisionNames[i] = searcher.doc(docs.scoreDocs[i].doc).get(REVISION_NAME_FIELD_NAME);
+            }
+            return revisionNames;
+        } finally {
+            r.decRef();
+        }
+    }
+
+    /**
+     * Search the revisions of several nodes which have been valid at a particular point in time, whereas all searches are done with the same reader
+     * @param paths Absolute repository paths of nodes
+     * @param max Point in time (inclusive)
+     * @return Name of revision per node, an empty string if the node has no revision at this point in time or null if the node is not contained by the index
+     */
+    String[] searchMostRecent(String[] paths, long max) throws IOException {
+        String[] revisionNames = new String[paths.length];
+        Sort sort = new Sort(new SortField(CREATION_DATE_FIELD_NAME, SortField.LONG, true));
+        Query range = NumericRangeQuery.newLongRange(CREATION_DATE_FIELD_NAME, null, new Long(max), true, true);
+
+        IndexReader r = acquireReader();
+        try {
+            IndexSearcher searcher = new IndexSearcher(r);
+            for (int i = 0; i < paths.length; i++) {
+                Term pathTerm = new Term(PATH_FIELD_NAME, paths[i]);
+                if (r.docFreq(pathTerm) == 0) {
+                    continue;
+                }
+                BooleanQuery query = new BooleanQuery();
+                query.add(new TermQuery(pathTerm), BooleanClause.Occur.MUST);
+                query.add(range, BooleanClause.Occur.MUST);
+                TopFieldDocs docs = searcher.search(query, null, 1, sort);
+                revisionNames[i] = docs.scoreDocs.length > 0 ? searcher.doc(docs.scoreDocs[0].doc).get(REVISION_NAME_FIELD_NAME) : "";
+            }
+            return revisionNames;
+        } finally {
+            r.decRef();
+        }
+    }
+
+    /**
+     * Close reader and writer
+     */
+    synchronized void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        log.info("Close revisions date index: " + indexDir);
+        try {
+            if (reader != null) {
+                reader.decRef();
+                reader = null;
+            }
+        } finally {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * Get shared reader, which is reopened if the index has been modified. The reader must be released with IndexReader#decRef()
+     */
+    private synchronized IndexReader acquireReader() throws IOException {
+        checkOpen();
+        if (modified || reader == null) {
+            IndexReader newReader = writer.getReader();
+            if (reader != null) {
+                reader.decRef(); // INFO: The previous reader is closed as soon as all searches using it have been finished
+            }
+            reader = newReader;
+            modified = false;
+        }
+        reader.incRef();
+        return reader;
+    }
+
+    /**
+     *
+     */
+    private void checkOpen() throws IOException {
+        if (writer == null) {
+            throw new IOException("Revisions date index has been closed: " + indexDir);
+        }
+    }
+
+    /**
+     * Get unique identifier of a revision
+     */
+    private static String getId(String path, String revisionName) {
+        return path + "#" + revisionName;
+    }
+
+    /**
+     *
+     */
+    public String toString() {
+        return indexDir.toString();
+    }
+}
@@ -0,0 +1,190 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.wyona.yarep.impl.StripedLock;
+
+/**
+ * Content addressed store of the revision contents of a node, whereas each distinct content is stored only once (keyed by its SHA-256 hash).
+ * The store is located within the meta directory of the node, e.g. 'about.html.yarep/blobs/3a/3a7bd3e2360a3d29eea436fcfb7e44c735d117c42d1c1835420b6b9942dd4f1b'
+ * and each blob has a reference count (number of revisions referencing the blob), such that a blob is deleted as soon as no revision references it anymore.
+ */
+class RevisionBlobStore {
+
+    private static Logger log = LogManager.getLogger(RevisionBlobStore.class);
+
+    static final String BLOBS_DIR = "blobs";
+    private static final String REFERENCES_SUFFIX = ".refs";
+    private static final long UNKNOWN_REFERENCES = -1;
+
+    private static final StripedLock BLOB_LOCKS = new StripedLock(64);
+
+    private File blobsDir;
+
+    /**
+     * @param nodeMetaDir Meta directory of node, e.g. 'about.html.yarep'
+     */
+    RevisionBlobStore(File nodeMetaDir) {
+        this.blobsDir = new File(nodeMetaDir, BLOBS_DIR);
+    }
+
+    /**
+     * Get file of a blob
+     * @param hash SHA-256 hash of content
+     */
+    File getBlobFile(String hash) {
+        return new File(new File(blobsDir, hash.substring(0, 2)), hash);
+    }
+
+    /**
+     * Add a reference to the blob of a content, whereas the content is only copied into the store if no blob with the same hash exists yet
+     * @param content File containing content
+     * @param hash SHA-256 hash of content (or null if the hash should be calculated)
+     * @return SHA-256 hash of content
+     */
+    String add(File content, String hash) throws IOException {
+        if (hash == null) {
+            hash = hash(content);
+        }
+        File blobFile = getBlobFile(hash);
+        synchronized(BLOB_LOCKS.getLock(blobFile)) {
+            if (!blobFile.isFile()) {
+                blobFile.getParentFile().mkdirs();
+                File tmpFile = File.createTempFile(hash, ".tmp", blobFile.getParentFile());
+                FileUtils.copyFile(content, tmpFile);
+                if (!tmpFile.renameTo(blobFile)) {
+                    tmpFile.delete();
+                    throw new IOException("Could not move '" + tmpFile + "' to '" + blobFile + "'");
+                }
+                writeReferences(hash, 1);
+                if (log.isDebugEnabled()) log.debug("New blob has been added: " + blobFile);
+            } else {
+                if (log.isDebugEnabled()) log.debug("Blob exists already: " + blobFile);
+                long references = readReferences(hash);
+                if (references != UNKNOWN_REFERENCES) {
+                    writeReferences(hash, references + 1);
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Remove a reference to a blob and delete the blob if it is not referenced anymore
+     * @param hash SHA-256 hash of content
+     */
+    void release(String hash) throws IOException {
+        File blobFile = getBlobFile(hash);
+        synchronized(BLOB_LOCKS.getLock(blobFile)) {
+            long references = readReferences(hash);
+            if (references == UNKNOWN_REFERENCES) {
+                log.warn("Blob '" + blobFile + "' is not deleted, because the number of revisions referencing it is unknown.");
+            } else if (references > 1) {
+                writeReferences(hash, references - 1);
+            } else {
+                blobFile.delete();
+                getReferencesFile(hash).delete();
+                blobFile.getParentFile().delete(); // INFO: Only succeeds if directory is empty
+                if (log.isDebugEnabled()) log.debug("Blob is not referenced anymore and has been deleted: " + blobFile);
+            }
+        }
+    }
+
+    /**
+     * Calculate SHA-256 hash of the content of a file
+     * @param file File containing content
+     * @return Hash as lower case hex string
+     */
+    static String hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+
+        byte[] bytes = digest.digest();
+        StringBuffer hex = new StringBuffer(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++) {
+            hex.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(bytes[i] & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     *
+     */
+    private File getReferencesFile(String hash) {
+        return new File(getBlobFile(hash).getParentFile(), hash + REFERENCES_SUFFIX);
+    }
+
+    /**
+     * Read number of revisions referencing a blob
+     * @return Number of references or UNKNOWN_REFERENCES if the reference count is missing or corrupt, whereas a blob with an unknown number of references is never deleted
+     */
+    private long readReferences(String hash) throws IOException {
+        File file = getReferencesFile(hash);
+        if (!file.isFile()) {
+            log.error("No reference count of blob '" + hash + "': " + file);
+            return UNKNOWN_REFERENCES;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line = reader.readLine();
+            long references = line != null ? Long.parseLong(line.trim()) : 0;
+            if (references < 1) {
+                log.error("Invalid reference count of blob '" + hash + "': " + line);
+                return UNKNOWN_REFERENCES;
+            }
+            return references;
+        } catch (NumberFormatException e) {
+            log.error("Invalid reference count of blob '" + hash + "': " + e.getMessage());
+            return UNKNOWN_REFERENCES;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Write number of revisions referencing a blob, whereas the reference count is replaced atomically
+     */
+    private void writeReferences(String hash, long references) throws IOException {
+        File file = getReferencesFile(hash);
+        File tmpFile = File.createTempFile(hash, ".tmp", file.getParentFile());
+        try {
+            FileWriter writer = new FileWriter(tmpFile);
+            try {
+                writer.write(String.valueOf(references));
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            tmpFile.delete();
+            throw e;
+        }
+        VirtualFileSystemNode.replaceFile(tmpFile, file);
+    }
+}
@@ -0,0 +1,298 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.wyona.yarep.impl.StripedLock;
+
+/**
+ * Catalog of the revisions of a node, which contains name, creation date, creator, comment and tag of every revision (see RevisionInfo), such that a history of the revisions can be listed by reading one file instead of one meta file per revision.
+ * <br/><br/>
+ * The catalog is stored within the file 'revisions.catalog' of the meta directory of the node as a sequence of records:
+ * <pre>
+ * name of revision (string)
+ * creation date in milliseconds (long)
+ * creator, comment and tag (nullable string each)
+ * </pre>
+ * A new revision is appended to the catalog, whereas a modified or deleted revision causes the catalog to be rewritten.
+ * If the catalog does not exist, then it is built by reading all revisions (see VirtualFileSystemNode#getRevisionInfos(int, int)).
+ * <br/><br/>
+ * The catalogs sorted by creation date are cached (size bounded, least recently used catalogs are evicted first), such that paging through the revisions does not read and sort the catalog for every page.
+ * A cached catalog is removed when the catalog is written and is only used as long as the last modified date and the size of the catalog file did not change (e.g. because of another process).
+ */
+class RevisionCatalog {
+
+    static final String CATALOG_FILE_NAME = "revisions.catalog";
+
+    private static final StripedLock CATALOG_LOCKS = new StripedLock(64);
+
+    private static final int MAX_CACHED_CATALOGS = 100;
+    private static final LinkedHashMap SORTED_CATALOGS = new LRUMap(MAX_CACHED_CATALOGS);
+
+    /**
+     * Most recent revision first
+     */
+    private static final Comparator MOST_RECENT_FIRST = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            RevisionInfo info1 = (RevisionInfo) o1;
+            RevisionInfo info2 = (RevisionInfo) o2;
+            if (info1.getCreationTime() != info2.getCreationTime()) {
+                return info1.getCreationTime() > info2.getCreationTime() ? -1 : 1;
+            }
+            return info2.getRevisionName().compareTo(info1.getRevisionName());
+        }
+    };
+
+    /**
+     * Check whether a catalog exists for a node
+     * @param nodeMetaDir Meta directory of node
+     */
+    static boolean exists(File nodeMetaDir) {
+        return new File(nodeMetaDir, CATALOG_FILE_NAME).isFile();
+    }
+
+    /**
+     * Get lock of the catalog of a node, which must be held while the catalog is read and written
+     * @param nodeMetaDir Meta directory of node
+     */
+    static Object getLock(File nodeMetaDir) {
+        return CATALOG_LOCKS.getLock(new File(nodeMetaDir, CATALOG_FILE_NAME));
+    }
+
+    /**
+     * Read catalog of a node
+     * @param nodeMetaDir Meta directory of node
+     * @param node Node which is associated with the revision infos
+     * @return Revision infos in the order they have been added or null if no catalog exists
+     */
+    static List read(File nodeMetaDir, VirtualFileSystemNode node) throws IOException {
+        File file = new File(nodeMetaDir, CATALOG_FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        List infos = new ArrayList();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                String name;
+                try {
+                    name = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                infos.add(new RevisionInfo(node, name, in.readLong(), readString(in), readString(in), readString(in)));
+            }
+        } finally {
+            in.close();
+        }
+        return infos;
+    }
+
+    /**
+     * Read catalog of a node sorted by creation date, whereas the cached catalog is used if it is still valid
+     * @param nodeMetaDir Meta directory of node
+     * @return Revision infos (most recent revision first), which are not associated with a node (see RevisionInfo#forNode(VirtualFileSystemNode)) and which must not be modified, or null if no catalog exists
+     */
+    static RevisionInfo[] readSorted(File nodeMetaDir) throws IOException {
+        File file = new File(nodeMetaDir, CATALOG_FILE_NAME);
+        synchronized(SORTED_CATALOGS) {
+            SortedCatalog cached = (SortedCatalog) SORTED_CATALOGS.get(file.getAbsolutePath());
+            if (cached != null && cached.lastModified == file.lastModified() && cached.length == file.length()) {
+                return cached.infos;
+            }
+        }
+
+        long lastModified = file.lastModified();
+        long length = file.length();
+        List infos = read(nodeMetaDir, null);
+        if (infos == null) {
+            return null;
+        }
+        RevisionInfo[] sorted = sort(infos);
+        synchronized(SORTED_CATALOGS) {
+            SORTED_CATALOGS.put(file.getAbsolutePath(), new SortedCatalog(lastModified, length, sorted));
+        }
+        return sorted;
+    }
+
+    /**
+     * Sort revision infos by creation date
+     * @param infos Revision infos
+     * @return Revision infos, most recent revision first
+     */
+    static RevisionInfo[] sort(List infos) {
+        RevisionInfo[] sorted = (RevisionInfo[]) infos.toArray(new RevisionInfo[infos.size()]);
+        Arrays.sort(sorted, MOST_RECENT_FIRST);
+        return sorted;
+    }
+
+    /**
+     * Append a new revision to the catalog of a node
+     * @param nodeMetaDir Meta directory of node
+     * @param info New revision
+     */
+    static void add(File nodeMetaDir, RevisionInfo info) throws IOException {
+        removeFromCache(nodeMetaDir);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(nodeMetaDir, CATALOG_FILE_NAME), true)));
+        try {
+            writeInfo(out, info);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Replace or remove a revision within the catalog of a node
+     * @param nodeMetaDir Meta directory of node
+     * @param revisionName Name of revision
+     * @param info Modified revision or null in order to remove the revision
+     * @return True if the catalog contained the revision
+     */
+    static boolean replace(File nodeMetaDir, String revisionName, RevisionInfo info) throws IOException {
+        List infos = read(nodeMetaDir, null);
+        if (infos == null) {
+            return false;
+        }
+        for (int i = 0; i < infos.size(); i++) {
+            if (((RevisionInfo) infos.get(i)).getRevisionName().equals(revisionName)) {
+                if (info != null) {
+                    infos.set(i, info);
+                } else {
+                    infos.remove(i);
+                }
+                write(nodeMetaDir, infos);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write catalog of a node into a temporary file, which then replaces the catalog
+     * @param nodeMetaDir Meta directory of node
+     * @param infos Revision infos
+     */
+    static void write(File nodeMetaDir, List infos) throws IOException {
+        removeFromCache(nodeMetaDir);
+        nodeMetaDir.mkdirs();
+        File file = new File(nodeMetaDir, CATALOG_FILE_NAME);
+        File tmpFile = File.createTempFile(CATALOG_FILE_NAME, ".tmp", nodeMetaDir);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            for (int i = 0; i < infos.size(); i++) {
+                writeInfo(out, (RevisionInfo) infos.get(i));
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            // INFO: On some platforms (e.g. Windows) an existing file cannot be replaced by renaming
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                throw new IOException("Could not replace revision catalog: " + file);
+            }
+        }
+    }
+
+    /**
+     * Delete catalog of a node, such that it is built again the next time it is read
+     * @param nodeMetaDir Meta directory of node
+     */
+    static void delete(File nodeMetaDir) {
+        removeFromCache(nodeMetaDir);
+        new File(nodeMetaDir, CATALOG_FILE_NAME).delete();
+    }
+
+    /**
+     * Remove cached catalog of a node
+     * @param nodeMetaDir Meta directory of node
+     */
+    private static void removeFromCache(File nodeMetaDir) {
+        synchronized(SORTED_CATALOGS) {
+            SORTED_CATALOGS.remove(new File(nodeMetaDir, CATALOG_FILE_NAME).getAbsolutePath());
+        }
+    }
+
+    /**
+     *
+     */
+    private static void writeInfo(DataOutputStream out, RevisionInfo info) throws IOException {
+        out.writeUTF(info.getRevisionName());
+        out.writeLong(info.getCreationTime());
+        writeString(out, info.getCreator());
+        writeString(out, info.getComment());
+        writeString(out, info.getTag());
+    }
+
+    /**
+     * Write nullable string (not limited to 64KB like DataOutputStream#writeUTF(String))
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read nullable string
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Catalog sorted by creation date together with the last modified date and the size of the catalog file when it has been read
+     */
+    private static class SortedCatalog {
+        final long lastModified;
+        final long length;
+        final RevisionInfo[] infos;
+
+        SortedCatalog(long lastModified, long length, RevisionInfo[] infos) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.infos = infos;
+        }
+    }
+
+    /**
+     * Map in access order, which removes the least recently used entry as soon as it contains more than the maximum number of entries
+     */
+    private static class LRUMap extends LinkedHashMap {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        LRUMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        protected boolean removeEldestEntry(java.util.Map.Entry eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,663 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * Stores the content of a revision as binary delta against the content of the previous revision, whereas every n-th revision (and every revision
+ * whose content is too large to be diffed in memory) is stored as full snapshot, such that the length of a delta chain is limited.
+ * <br/><br/>
+ * Files within a revision directory:
+ * <ul>
+ *   <li>content: full snapshot</li>
+ *   <li>content.delta: delta against the content of the base revision</li>
+ *   <li>content-base: name of base revision and length of delta chain</li>
+ *   <li>content-next: names of the revisions which are stored as delta against this revision (one per line, usually only one, but several after a revision has been restored, because the following revision is stored as delta against the latest revision)</li>
+ * </ul>
+ * Delta layout:
+ * <pre>
+ * magic (4 bytes: 'Y' 'D' 'L' '1')
+ * length of content (long)
+ * operations: 'A' length (int) bytes (add literal bytes) or 'C' offset (int) length (int) (copy bytes of base content), terminated by 'E'
+ * </pre>
+ * The content of a revision stored as delta is reconstructed while it is read, whereas only the operations of the deltas of the chain are held in memory
+ * (see DeltaContent). While a delta is encoded, the content of the base revision and the new content are held in memory, hence contents larger than
+ * MAX_DELTA_CONTENT_SIZE are stored as snapshots.
+ */
+class RevisionDeltaStore {
+
+    private static Logger log = LogManager.getLogger(RevisionDeltaStore.class);
+
+    static final String DELTA_FILE_NAME = "content.delta";
+    static final String BASE_FILE_NAME = "content-base";
+    static final String NEXT_FILE_NAME = "content-next";
+
+    private static final byte[] MAGIC = {'Y', 'D', 'L', '1'};
+    private static final int BLOCK_SIZE = 16;
+    private static final int HASH_MULTIPLIER = 31;
+    private static final long MAX_DELTA_CONTENT_SIZE = 4 * 1024 * 1024;
+
+    private VirtualFileSystemRepository repo;
+    private File nodeMetaDir;
+
+    /**
+     * @param repo Repository containing node
+     * @param nodeMetaDir Meta directory of node, e.g. 'about.html.yarep'
+     */
+    RevisionDeltaStore(VirtualFileSystemRepository repo, File nodeMetaDir) {
+        this.repo = repo;
+        this.nodeMetaDir = nodeMetaDir;
+    }
+
+    /**
+     * Check whether the content of a revision is stored as delta
+     * @param revisionDir Revision directory
+     */
+    static boolean isDelta(File revisionDir) {
+        return new File(revisionDir, DELTA_FILE_NAME).isFile();
+    }
+
+    /**
+     * Store content of a new revision either as delta against the content of a base revision or as full snapshot
+     * @param content Current content of node
+     * @param revisionName Name of new revision
+     * @param baseRevisionName Name of previous revision (or null if there is no previous revision)
+     * @param snapshotInterval Every how many revisions a full snapshot is stored
+     */
+    void store(File content, String revisionName, String baseRevisionName, int snapshotInterval) throws IOException {
+        File revisionDir = getRevisionDir(revisionName);
+        revisionDir.mkdirs();
+
+        File baseDir = baseRevisionName != null ? getRevisionDir(baseRevisionName) : null;
+        int chainLength = 0;
+        if (baseDir != null && hasContent(baseDir)) {
+            chainLength = getChainLength(baseDir) + 1;
+        }
+        if (chainLength == 0 || chainLength >= snapshotInterval || content.length() > MAX_DELTA_CONTENT_SIZE || getSize(baseDir) > MAX_DELTA_CONTENT_SIZE) {
+            FileUtils.copyFile(content, new File(revisionDir, VirtualFileSystemRevision.CONTENT_FILE_NAME));
+            return;
+        }
+
+        byte[] base = readContent(baseRevisionName);
+        byte[] target = FileUtils.readFileToByteArray(content);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(revisionDir, DELTA_FILE_NAME)));
+        try {
+            encode(base, target, out);
+        } finally {
+            out.close();
+        }
+        writeLines(new File(revisionDir, BASE_FILE_NAME), new String[] {baseRevisionName, String.valueOf(chainLength)});
+        File baseNextFile = new File(baseDir, NEXT_FILE_NAME);
+        List baseNext = readLinesAsList(baseNextFile);
+        if (!baseNext.contains(revisionName)) {
+            baseNext.add(revisionName);
+            writeLines(baseNextFile, (String[]) baseNext.toArray(new String[baseNext.size()]));
+        }
+        if (log.isDebugEnabled()) log.debug("Content of revision '" + revisionName + "' has been stored as delta against revision '" + baseRevisionName + "' (chain length: " + chainLength + ")");
+    }
+
+    /**
+     * Get content of a revision, whereas the content of a revision stored as delta is reconstructed while it is read, i.e. no temporary files are written
+     * @param revisionName Name of revision
+     */
+    InputStream getInputStream(String revisionName) throws IOException {
+        File revisionDir = getRevisionDir(revisionName);
+        if (!isDelta(revisionDir)) {
+            return new FileInputStream(new File(revisionDir, VirtualFileSystemRevision.CONTENT_FILE_NAME));
+        }
+        return new BufferedInputStream(new ContentInputStream(open(revisionName)));
+    }
+
+    /**
+     * Get size of content of a revision
+     * @param revisionDir Revision directory
+     */
+    static long getSize(File revisionDir) throws IOException {
+        File deltaFile = new File(revisionDir, DELTA_FILE_NAME);
+        if (!deltaFile.isFile()) {
+            return new File(revisionDir, VirtualFileSystemRevision.CONTENT_FILE_NAME).length();
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(deltaFile));
+        try {
+            readHeader(in);
+            return in.readLong();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Prepare deletion of a revision: The revisions which are stored as delta against this revision are converted into full snapshots and the reference of the base revision is removed
+     * @param revisionName Name of revision which will be deleted
+     */
+    void prepareDelete(String revisionName) throws IOException {
+        File revisionDir = getRevisionDir(revisionName);
+
+        String[] next = readLines(new File(revisionDir, NEXT_FILE_NAME));
+        for (int i = 0; next != null && i < next.length; i++) {
+            File nextDir = getRevisionDir(next[i]);
+            String[] nextBase = readLines(new File(nextDir, BASE_FILE_NAME));
+            if (isDelta(nextDir) && nextBase != null && nextBase[0].equals(revisionName)) {
+                File snapshot = new File(nextDir, VirtualFileSystemRevision.CONTENT_FILE_NAME);
+                File tmpFile = File.createTempFile(VirtualFileSystemRevision.CONTENT_FILE_NAME, ".tmp", nextDir);
+                try {
+                    InputStream in = getInputStream(next[i]);
+                    OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+                    try {
+                        IOUtils.copy(in, out);
+                    } finally {
+                        out.close();
+                        in.close();
+                    }
+                    if (!tmpFile.renameTo(snapshot)) {
+                        throw new IOException("Could not move '" + tmpFile + "' to '" + snapshot + "'");
+                    }
+                } finally {
+                    tmpFile.delete(); // INFO: Only exists if the snapshot could not be written
+                }
+                new File(nextDir, DELTA_FILE_NAME).delete();
+                new File(nextDir, BASE_FILE_NAME).delete();
+                // INFO: Revisions which are stored as delta against the converted revision have to be converted as well, because their chain length has changed
+                updateChainLengths(next[i], 0);
+                log.info("Revision '" + next[i] + "' has been converted into a snapshot, because its base revision '" + revisionName + "' will be deleted.");
+            }
+        }
+
+        String[] base = readLines(new File(revisionDir, BASE_FILE_NAME));
+        if (base != null) {
+            File baseNextFile = new File(getRevisionDir(base[0]), NEXT_FILE_NAME);
+            List baseNext = readLinesAsList(baseNextFile);
+            if (baseNext.remove(revisionName)) {
+                if (baseNext.isEmpty()) {
+                    baseNextFile.delete();
+                } else {
+                    writeLines(baseNextFile, (String[]) baseNext.toArray(new String[baseNext.size()]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Update the chain lengths of the revisions following a particular revision
+     * @param revisionName Name of revision
+     * @param chainLength New chain length of revision
+     */
+    private void updateChainLengths(String revisionName, int chainLength) throws IOException {
+        String[] next = readLines(new File(getRevisionDir(revisionName), NEXT_FILE_NAME));
+        for (int i = 0; next != null && i < next.length; i++) {
+            File baseFile = new File(getRevisionDir(next[i]), BASE_FILE_NAME);
+            String[] base = readLines(baseFile);
+            if (base != null && base[0].equals(revisionName)) {
+                writeLines(baseFile, new String[] {base[0], String.valueOf(chainLength + 1)});
+                updateChainLengths(next[i], chainLength + 1);
+            }
+        }
+    }
+
+    /**
+     * Open content of a revision for reading at arbitrary positions, whereas the content of a revision stored as delta is read through the content of its base revision
+     * @param revisionName Name of revision
+     */
+    private Content open(String revisionName) throws IOException {
+        File revisionDir = getRevisionDir(revisionName);
+        if (!isDelta(revisionDir)) {
+            return new SnapshotContent(new File(revisionDir, VirtualFileSystemRevision.CONTENT_FILE_NAME));
+        }
+
+        String[] base = readLines(new File(revisionDir, BASE_FILE_NAME));
+        if (base == null) {
+            throw new IOException("No base revision of revision '" + revisionName + "': " + revisionDir);
+        }
+        Content baseContent = open(base[0]);
+        try {
+            return new DeltaContent(new File(revisionDir, DELTA_FILE_NAME), baseContent);
+        } catch (IOException e) {
+            baseContent.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read content of a revision into memory (see MAX_DELTA_CONTENT_SIZE)
+     * @param revisionName Name of revision
+     */
+    private byte[] readContent(String revisionName) throws IOException {
+        InputStream in = getInputStream(revisionName);
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Check whether revision directory contains content
+     */
+    private static boolean hasContent(File revisionDir) {
+        return isDelta(revisionDir) || new File(revisionDir, VirtualFileSystemRevision.CONTENT_FILE_NAME).isFile();
+    }
+
+    /**
+     * Get number of deltas which have to be applied to the preceding snapshot in order to get the content of a revision
+     */
+    private static int getChainLength(File revisionDir) throws IOException {
+        String[] base = readLines(new File(revisionDir, BASE_FILE_NAME));
+        if (base == null || base.length < 2) {
+            return 0;
+        }
+        return Integer.parseInt(base[1]);
+    }
+
+    /**
+     *
+     */
+    private File getRevisionDir(String revisionName) {
+        return VirtualFileSystemNode.getRevisionDir(repo, nodeMetaDir, revisionName);
+    }
+
+    /**
+     * Encode delta of target against base
+     * @param base Content of base revision
+     * @param target Content of new revision
+     * @param out Output stream to which delta is written
+     */
+    static void encode(byte[] base, byte[] target, OutputStream out) throws IOException {
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.write(MAGIC);
+        dout.writeLong(target.length);
+
+        // INFO: Index the blocks of the base content (first occurrence wins) by an open addressing hash table, which needs less memory than a map of boxed integers
+        int capacity = Integer.highestOneBit(2 * (base.length / BLOCK_SIZE) + 1) * 2;
+        int[] blockHashes = new int[capacity];
+        int[] blockOffsets = new int[capacity];
+        Arrays.fill(blockOffsets, -1);
+        for (int i = 0; i + BLOCK_SIZE <= base.length; i += BLOCK_SIZE) {
+            int hash = hash(base, i);
+            int slot = getSlot(blockHashes, blockOffsets, hash);
+            if (blockOffsets[slot] < 0) {
+                blockHashes[slot] = hash;
+                blockOffsets[slot] = i;
+            }
+        }
+
+        int power = 1;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            power *= HASH_MULTIPLIER;
+        }
+
+        int literalStart = 0;
+        int pos = 0;
+        int hash = target.length >= BLOCK_SIZE ? hash(target, 0) : 0;
+        while (pos + BLOCK_SIZE <= target.length) {
+            int candidate = blockOffsets[getSlot(blockHashes, blockOffsets, hash)];
+            if (candidate >= 0 && equals(base, candidate, target, pos, BLOCK_SIZE)) {
+                int baseStart = candidate;
+                int targetStart = pos;
+                while (targetStart > literalStart && baseStart > 0 && base[baseStart - 1] == target[targetStart - 1]) {
+                    baseStart--;
+                    targetStart--;
+                }
+                int baseEnd = candidate + BLOCK_SIZE;
+                int targetEnd = pos + BLOCK_SIZE;
+                while (targetEnd < target.length && baseEnd < base.length && base[baseEnd] == target[targetEnd]) {
+                    baseEnd++;
+                    targetEnd++;
+                }
+
+                writeAdd(dout, target, literalStart, targetStart - literalStart);
+                dout.writeByte('C');
+                dout.writeInt(baseStart);
+                dout.writeInt(targetEnd - targetStart);
+
+                pos = targetEnd;
+                literalStart = targetEnd;
+                if (pos + BLOCK_SIZE <= target.length) {
+                    hash = hash(target, pos);
+                }
+            } else {
+                if (pos + BLOCK_SIZE < target.length) {
+                    hash = (hash - target[pos] * power) * HASH_MULTIPLIER + target[pos + BLOCK_SIZE];
+                }
+                pos++;
+            }
+        }
+        writeAdd(dout, target, literalStart, target.length - literalStart);
+        dout.writeByte('E');
+        dout.flush();
+    }
+
+    /**
+     *
+     */
+    private static void readHeader(DataInputStream in) throws IOException {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (in.readByte() != MAGIC[i]) {
+                throw new IOException("Not a revision delta");
+            }
+        }
+    }
+
+    /**
+     *
+     */
+    private static void writeAdd(DataOutputStream out, byte[] bytes, int offset, int length) throws IOException {
+        if (length > 0) {
+            out.writeByte('A');
+            out.writeInt(length);
+            out.write(bytes, offset, length);
+        }
+    }
+
+    /**
+     * Get slot of the hash table of the blocks of the base content which either contains the block with a particular hash or which is empty
+     */
+    private static int getSlot(int[] blockHashes, int[] blockOffsets, int hash) {
+        int mask = blockHashes.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (blockOffsets[slot] >= 0 && blockHashes[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Polynomial hash of a block, which can be rolled forward byte by byte
+     */
+    private static int hash(byte[] bytes, int offset) {
+        int hash = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            hash = hash * HASH_MULTIPLIER + bytes[offset + i];
+        }
+        return hash;
+    }
+
+    /**
+     *
+     */
+    private static boolean equals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read lines of a small file
+     * @return Lines or null if file does not exist
+     */
+    private static String[] readLines(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            return (String[]) IOUtils.readLines(reader).toArray(new String[0]);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read lines of a small file
+     * @return Modifiable list of lines, which is empty if file does not exist
+     */
+    private static List readLinesAsList(File file) throws IOException {
+        String[] lines = readLines(file);
+        return lines != null ? new ArrayList(Arrays.asList(lines)) : new ArrayList();
+    }
+
+    /**
+     * Write lines of a small file
+     */
+    private static void writeLines(File file, String[] lines) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            for (int i = 0; i < lines.length; i++) {
+                writer.write(lines[i]);
+                writer.write("\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Content of a revision which can be read at arbitrary positions
+     */
+    private static abstract class Content {
+
+        /**
+         * Read bytes at a particular position
+         * @return Number of bytes read (at least one byte) or -1 if the position is at the end of the content
+         */
+        abstract int read(long position, byte[] buffer, int offset, int length) throws IOException;
+
+        /**
+         * Read a particular number of bytes at a particular position
+         */
+        void readFully(long position, byte[] buffer, int offset, int length) throws IOException {
+            while (length > 0) {
+                int n = read(position, buffer, offset, length);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of base content");
+                }
+                position += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        /**
+         * Close the files of this content (and of the contents of the base revisions)
+         */
+        abstract void close() throws IOException;
+    }
+
+    /**
+     * Content of a revision which is stored as full snapshot
+     */
+    private static class SnapshotContent extends Content {
+
+        private RandomAccessFile file;
+
+        /**
+         * @param file Snapshot file
+         */
+        SnapshotContent(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+        }
+
+        int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            file.seek(position);
+            return file.read(buffer, offset, length);
+        }
+
+        void close() throws IOException {
+            file.close();
+        }
+    }
+
+    /**
+     * Content of a revision which is stored as delta, whereas only the operations of the delta are held in memory and the bytes are read either
+     * from the literal bytes within the delta file or from the content of the base revision
+     */
+    private static class DeltaContent extends Content {
+
+        private RandomAccessFile deltaFile;
+        private Content base;
+        private long length;
+
+        private int numberOfOperations = 0;
+        private long[] starts = new long[16]; // INFO: Position of the first byte of an operation within the content
+        private long[] sources = new long[16]; // INFO: Position of the literal bytes within the delta file or position within the content of the base revision
+        private boolean[] copies = new boolean[16];
+
+        /**
+         * @param file Delta file (see encode())
+         * @param base Content of base revision, which will be closed together with this content
+         */
+        DeltaContent(File file, Content base) throws IOException {
+            this.base = base;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                readHeader(in);
+                length = in.readLong();
+                long deltaPosition = MAGIC.length + 8;
+                long position = 0;
+                while (true) {
+                    int op = in.readByte();
+                    deltaPosition++;
+                    if (op == 'E') {
+                        break;
+                    } else if (op == 'A') {
+                        int opLength = in.readInt();
+                        deltaPosition += 4;
+                        addOperation(position, deltaPosition, false, opLength);
+                        for (int skipped = 0; skipped < opLength; ) {
+                            int n = in.skipBytes(opLength - skipped);
+                            if (n <= 0) {
+                                throw new IOException("Unexpected end of delta: " + file);
+                            }
+                            skipped += n;
+                        }
+                        deltaPosition += opLength;
+                        position += opLength;
+                    } else if (op == 'C') {
+                        int baseOffset = in.readInt();
+                        int opLength = in.readInt();
+                        deltaPosition += 8;
+                        addOperation(position, baseOffset, true, opLength);
+                        position += opLength;
+                    } else {
+                        throw new IOException("No such delta operation: " + op);
+                    }
+                }
+                if (position != length) {
+                    throw new IOException("Length of content does not match the operations of delta: " + file);
+                }
+            } finally {
+                in.close();
+            }
+            this.deltaFile = new RandomAccessFile(file, "r");
+        }
+
+        /**
+         *
+         */
+        private void addOperation(long start, long source, boolean copy, int opLength) {
+            if (opLength <= 0) {
+                return;
+            }
+            if (numberOfOperations == starts.length) {
+                int capacity = numberOfOperations * 2;
+                long[] newStarts = new long[capacity];
+                System.arraycopy(starts, 0, newStarts, 0, numberOfOperations);
+                starts = newStarts;
+                long[] newSources = new long[capacity];
+                System.arraycopy(sources, 0, newSources, 0, numberOfOperations);
+                sources = newSources;
+                boolean[] newCopies = new boolean[capacity];
+                System.arraycopy(copies, 0, newCopies, 0, numberOfOperations);
+                copies = newCopies;
+            }
+            starts[numberOfOperations] = start;
+            sources[numberOfOperations] = source;
+            copies[numberOfOperations] = copy;
+            numberOfOperations++;
+        }
+
+        int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            if (position >= this.length) {
+                return -1;
+            }
+            // INFO: Find the operation containing the position
+            int low = 0;
+            int high = numberOfOperations - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (starts[middle] <= position) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            long end = low + 1 < numberOfOperations ? starts[low + 1] : this.length;
+            int n = (int) Math.min(length, end - position);
+            long source = sources[low] + (position - starts[low]);
+            if (copies[low]) {
+                base.readFully(source, buffer, offset, n);
+            } else {
+                deltaFile.seek(source);
+                deltaFile.readFully(buffer, offset, n);
+            }
+            return n;
+        }
+
+        void close() throws IOException {
+            try {
+                deltaFile.close();
+            } finally {
+                base.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a content from the beginning to the end, whereas the content is closed when the stream is closed
+     */
+    private static class ContentInputStream extends InputStream {
+
+        private Content content;
+        private long position = 0;
+        private byte[] singleByte = new byte[1];
+
+        /**
+         *
+         */
+        ContentInputStream(Content content) {
+            this.content = content;
+        }
+
+        public int read() throws IOException {
+            int n = read(singleByte, 0, 1);
+            return n < 0 ? -1 : singleByte[0] & 0xff;
+        }
+
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int n = content.read(position, buffer, offset, length);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        public void close() throws IOException {
+            content.close();
+        }
+    }
+}
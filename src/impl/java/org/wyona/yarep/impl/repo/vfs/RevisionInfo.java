@@ -0,0 +1,124 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.util.Date;
+
+import org.wyona.yarep.core.RepositoryException;
+import org.wyona.yarep.core.Revision;
+
+/**
+ * Name, creation date, creator, comment and tag of a revision as read from the revision catalog of a node (see RevisionCatalog and VirtualFileSystemNode#getRevisionInfos(int, int)),
+ * whereas the revision itself is only instantiated when getRevision() is called.
+ */
+public class RevisionInfo {
+
+    private final VirtualFileSystemNode node;
+    private final String revisionName;
+    private final long creationDate;
+    private final String creator;
+    private final String comment;
+    private final String tag;
+
+    /**
+     * @param node Node to which the revision belongs to or null if unknown
+     * @param revisionName Name of revision
+     * @param creationDate Creation date of revision
+     * @param creator User who created the revision or null
+     * @param comment Comment of revision or null
+     * @param tag Tag of revision or null
+     */
+    RevisionInfo(VirtualFileSystemNode node, String revisionName, long creationDate, String creator, String comment, String tag) {
+        this.node = node;
+        this.revisionName = revisionName;
+        this.creationDate = creationDate;
+        this.creator = creator;
+        this.comment = comment;
+        this.tag = tag;
+    }
+
+    /**
+     * Read name, creation date, creator, comment and tag of a revision
+     * @param node Node to which the revision belongs to
+     * @param revision Revision
+     */
+    static RevisionInfo create(VirtualFileSystemNode node, Revision revision) throws RepositoryException {
+        Date date = revision.getCreationDate();
+        return new RevisionInfo(node, revision.getRevisionName(), date != null ? date.getTime() : Long.parseLong(revision.getRevisionName()), revision.getCreator(), revision.getComment(), revision.getTag());
+    }
+
+    /**
+     * Get name of revision
+     */
+    public String getRevisionName() {
+        return revisionName;
+    }
+
+    /**
+     * Get creation date of revision
+     */
+    public Date getCreationDate() {
+        return new Date(creationDate);
+    }
+
+    /**
+     * Get user who created the revision
+     * @return User ID or null
+     */
+    public String getCreator() {
+        return creator;
+    }
+
+    /**
+     * Get comment of revision
+     * @return Comment or null
+     */
+    public String getComment() {
+        return comment;
+    }
+
+    /**
+     * Get tag of revision
+     * @return Tag or null
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * Check whether revision has a tag
+     */
+    public boolean hasTag() {
+        return tag != null;
+    }
+
+    /**
+     * Get revision itself, which reads the meta file of the revision
+     */
+    public Revision getRevision() throws RepositoryException {
+        if (node == null) {
+            throw new RepositoryException("No node associated with revision '" + revisionName + "'");
+        }
+        return node.getRevision(revisionName);
+    }
+
+    /**
+     * Get copy of this revision info which is associated with a particular node
+     * @param node Node to which the revision belongs to
+     */
+    RevisionInfo forNode(VirtualFileSystemNode node) {
+        return new RevisionInfo(node, revisionName, creationDate, creator, comment, tag);
+    }
+
+    /**
+     * Get creation date in milliseconds
+     */
+    long getCreationTime() {
+        return creationDate;
+    }
+
+    /**
+     *
+     */
+    public String toString() {
+        return revisionName + ", " + getCreationDate() + ", " + creator + ", " + comment + ", " + tag;
+    }
+}
@@ -0,0 +1,411 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.wyona.yarep.impl.StripedLock;
+
+/**
+ * Revisions of a node stored within one append-only pack file plus an index with fixed-width records, such that creating a revision does not create any directories or files (see revisions-path-type 'pack').
+ * <br/><br/>
+ * The pack file ('revisions.pack' within the meta directory of the node) contains the contents and the meta data (binary meta file format, see VirtualFileSystemMetaFile) of the revisions one after another.
+ * The index file ('revisions.pack-index') contains one record per revision sorted by revision name:
+ * <pre>
+ * revision name (long)
+ * offset of meta data (long)
+ * length of meta data (int)
+ * offset of content (long)
+ * length of content (long)
+ * deleted (byte)
+ * </pre>
+ * Modified meta data is appended to the pack file and the record of the revision is updated in place. Deleted revisions are only marked as deleted.
+ * Hence the pack file is never compacted and only grows (by the content and meta data of every revision plus every modification of meta data), also when revisions are deleted (e.g. by the revision pruner),
+ * whereas the pack file and the index are deleted once all revisions of the pack have been deleted.
+ * Rewriting a pack without its deleted revisions would require to replace the pack file and the index together, which cannot be done atomically.
+ */
+class RevisionPack {
+
+    private static Logger log = LogManager.getLogger(RevisionPack.class);
+
+    static final String PACK_FILE_NAME = "revisions.pack";
+    static final String INDEX_FILE_NAME = "revisions.pack-index";
+
+    private static final int RECORD_LENGTH = 8 + 8 + 4 + 8 + 8 + 1;
+
+    private static final StripedLock PACK_LOCKS = new StripedLock(64);
+
+    private File packFile;
+    private File indexFile;
+
+    /**
+     * @param nodeMetaDir Meta directory of node, e.g. 'about.html.yarep'
+     */
+    RevisionPack(File nodeMetaDir) {
+        this.packFile = new File(nodeMetaDir, PACK_FILE_NAME);
+        this.indexFile = new File(nodeMetaDir, INDEX_FILE_NAME);
+    }
+
+    /**
+     * Check whether a pack exists for a node
+     * @param nodeMetaDir Meta directory of node
+     */
+    static boolean exists(File nodeMetaDir) {
+        return new File(nodeMetaDir, INDEX_FILE_NAME).isFile();
+    }
+
+    /**
+     * Add a revision
+     * @param revisionName Name of revision (number, usually the creation time in milliseconds)
+     * @param content Content of revision
+     * @param meta Meta data of revision
+     */
+    void add(String revisionName, InputStream content, byte[] meta) throws IOException {
+        long name = parseName(revisionName);
+        synchronized(getLock()) {
+            packFile.getParentFile().mkdirs();
+            RandomAccessFile pack = new RandomAccessFile(packFile, "rw");
+            long contentOffset;
+            long contentLength;
+            long metaOffset;
+            try {
+                contentOffset = pack.length();
+                pack.seek(contentOffset);
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = content.read(buffer)) != -1) {
+                    pack.write(buffer, 0, n);
+                }
+                contentLength = pack.getFilePointer() - contentOffset;
+                metaOffset = pack.getFilePointer();
+                pack.write(meta);
+            } finally {
+                pack.close();
+            }
+
+            RandomAccessFile index = new RandomAccessFile(indexFile, "rw");
+            try {
+                int count = (int) (index.length() / RECORD_LENGTH);
+                int pos = count;
+                while (pos > 0 && readName(index, pos - 1) > name) {
+                    pos--;
+                }
+                if (pos > 0 && readName(index, pos - 1) == name) {
+                    throw new IOException("Revision '" + revisionName + "' exists already within pack: " + packFile);
+                }
+                if (pos < count) {
+                    // INFO: Revisions are usually added in chronological order, but for example the converter might add older revisions later on
+                    byte[] tail = new byte[(count - pos) * RECORD_LENGTH];
+                    index.seek((long) pos * RECORD_LENGTH);
+                    index.readFully(tail);
+                    index.seek((long) (pos + 1) * RECORD_LENGTH);
+                    index.write(tail);
+                }
+                index.seek((long) pos * RECORD_LENGTH);
+                index.writeLong(name);
+                index.writeLong(metaOffset);
+                index.writeInt(meta.length);
+                index.writeLong(contentOffset);
+                index.writeLong(contentLength);
+                index.writeByte(0);
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * Get revision
+     * @param revisionName Name of revision
+     * @return Entry of revision or null if no such revision exists within pack
+     */
+    Entry get(String revisionName) throws IOException {
+        long name;
+        try {
+            name = Long.parseLong(revisionName);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        synchronized(getLock()) {
+            RandomAccessFile index = new RandomAccessFile(indexFile, "r");
+            try {
+                int pos = find(index, name);
+                if (pos < 0) {
+                    return null;
+                }
+                index.seek((long) pos * RECORD_LENGTH + 8);
+                Entry entry = new Entry(revisionName, index.readLong(), index.readInt(), index.readLong(), index.readLong());
+                return index.readByte() == 0 ? entry : null;
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * Get names of all revisions (in chronological order)
+     */
+    String[] getRevisionNames() throws IOException {
+        if (!indexFile.isFile()) {
+            return new String[0];
+        }
+        synchronized(getLock()) {
+            RandomAccessFile index = new RandomAccessFile(indexFile, "r");
+            try {
+                int count = (int) (index.length() / RECORD_LENGTH);
+                List names = new ArrayList(count);
+                for (int i = 0; i < count; i++) {
+                    index.seek((long) i * RECORD_LENGTH);
+                    long name = index.readLong();
+                    index.seek((long) i * RECORD_LENGTH + RECORD_LENGTH - 1);
+                    if (index.readByte() == 0) {
+                        names.add(String.valueOf(name));
+                    }
+                }
+                return (String[]) names.toArray(new String[names.size()]);
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * Get content of revision
+     * @param entry Entry of revision
+     */
+    InputStream getContent(Entry entry) throws IOException {
+        return new RangeInputStream(packFile, entry.contentOffset, entry.contentLength);
+    }
+
+    /**
+     * Get meta data of revision
+     * @param entry Entry of revision
+     */
+    byte[] getMeta(Entry entry) throws IOException {
+        RandomAccessFile pack = new RandomAccessFile(packFile, "r");
+        try {
+            byte[] meta = new byte[entry.metaLength];
+            pack.seek(entry.metaOffset);
+            pack.readFully(meta);
+            return meta;
+        } finally {
+            pack.close();
+        }
+    }
+
+    /**
+     * Replace meta data of revision by appending the new meta data to the pack file
+     * @param revisionName Name of revision
+     * @param meta New meta data
+     */
+    void updateMeta(String revisionName, byte[] meta) throws IOException {
+        synchronized(getLock()) {
+            RandomAccessFile index = new RandomAccessFile(indexFile, "rw");
+            try {
+                int pos = find(index, parseName(revisionName));
+                if (pos < 0) {
+                    throw new IOException("No such revision '" + revisionName + "' within pack: " + packFile);
+                }
+                RandomAccessFile pack = new RandomAccessFile(packFile, "rw");
+                long metaOffset;
+                try {
+                    metaOffset = pack.length();
+                    pack.seek(metaOffset);
+                    pack.write(meta);
+                } finally {
+                    pack.close();
+                }
+                index.seek((long) pos * RECORD_LENGTH + 8);
+                index.writeLong(metaOffset);
+                index.writeInt(meta.length);
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * Mark revision as deleted, whereas the pack file and the index are deleted if no other revision is left
+     * @param revisionName Name of revision
+     */
+    void delete(String revisionName) throws IOException {
+        synchronized(getLock()) {
+            boolean isEmpty;
+            RandomAccessFile index = new RandomAccessFile(indexFile, "rw");
+            try {
+                int pos = find(index, parseName(revisionName));
+                if (pos >= 0) {
+                    index.seek((long) pos * RECORD_LENGTH + RECORD_LENGTH - 1);
+                    index.writeByte(1);
+                } else {
+                    log.warn("No such revision '" + revisionName + "' within pack: " + packFile);
+                }
+                isEmpty = !containsRevisions(index);
+            } finally {
+                index.close();
+            }
+
+            if (isEmpty) {
+                // INFO: Delete the index first, because a pack without index does not exist (see exists(File)) and a new revision is appended to an existing pack file anyway
+                if (indexFile.delete()) {
+                    if (!packFile.delete()) {
+                        log.warn("Could not delete pack file: " + packFile);
+                    }
+                    log.debug("All revisions of pack '" + packFile + "' have been deleted, hence pack has been deleted.");
+                } else {
+                    log.warn("Could not delete index of pack, although all revisions have been deleted: " + indexFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether the index contains a revision which has not been deleted
+     */
+    private static boolean containsRevisions(RandomAccessFile index) throws IOException {
+        // INFO: Start with the most recent revision, because usually the oldest revisions are deleted (e.g. by the revision pruner)
+        for (int i = (int) (index.length() / RECORD_LENGTH) - 1; i >= 0; i--) {
+            index.seek((long) i * RECORD_LENGTH + RECORD_LENGTH - 1);
+            if (index.readByte() == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     */
+    public String toString() {
+        return packFile.toString();
+    }
+
+    /**
+     * Get lock of this pack
+     */
+    private Object getLock() {
+        return PACK_LOCKS.getLock(indexFile);
+    }
+
+    /**
+     * Binary search of a revision within the index
+     * @return Position of record or -1 if no such revision exists
+     */
+    private static int find(RandomAccessFile index, long name) throws IOException {
+        int low = 0;
+        int high = (int) (index.length() / RECORD_LENGTH) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midName = readName(index, mid);
+            if (midName < name) {
+                low = mid + 1;
+            } else if (midName > name) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *
+     */
+    private static long readName(RandomAccessFile index, int pos) throws IOException {
+        index.seek((long) pos * RECORD_LENGTH);
+        return index.readLong();
+    }
+
+    /**
+     *
+     */
+    private static long parseName(String revisionName) throws IOException {
+        try {
+            return Long.parseLong(revisionName);
+        } catch (NumberFormatException e) {
+            throw new IOException("Revision name is not a number: " + revisionName);
+        }
+    }
+
+    /**
+     * Record of a revision
+     */
+    static class Entry {
+        final String revisionName;
+        final long metaOffset;
+        final int metaLength;
+        final long contentOffset;
+        final long contentLength;
+
+        Entry(String revisionName, long metaOffset, int metaLength, long contentOffset, long contentLength) {
+            this.revisionName = revisionName;
+            this.metaOffset = metaOffset;
+            this.metaLength = metaLength;
+            this.contentOffset = contentOffset;
+            this.contentLength = contentLength;
+        }
+    }
+
+    /**
+     * Input stream of a range of a file
+     */
+    private static class RangeInputStream extends InputStream {
+        private InputStream in;
+        private long remaining;
+
+        RangeInputStream(File file, long offset, long length) throws IOException {
+            this.in = new BufferedInputStream(new FileInputStream(file));
+            long skipped = 0;
+            while (skipped < offset) {
+                long n = in.skip(offset - skipped);
+                if (n <= 0) {
+                    in.close();
+                    throw new IOException("Could not skip to offset " + offset + " of " + file);
+                }
+                skipped += n;
+            }
+            this.remaining = length;
+        }
+
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
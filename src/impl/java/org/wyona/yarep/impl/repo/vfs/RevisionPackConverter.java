@@ -0,0 +1,236 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * Converts revisions, which are stored as directories (revisions path type 'splitted' or 'flat', incl. contents stored as blobs or deltas), into the revision pack of their node (see RevisionPack).
+ * The meta directory is walked node by node and the converter pauses between two nodes in order to limit the load on the file system.
+ * <br/><br/>
+ * The conversion can be done while the repository is in use: All revisions of a node are first added to the pack and only then the revision directories are deleted, such that a revision can always be read (revision directories take precedence over the pack).
+ * Revisions whose meta file has been modified or which have been deleted in the meantime are updated respectively deleted within the pack before the revision directories are deleted.
+ * The names of the revisions do not change, hence the date index of a node stays valid. Revisions which exist already within the pack (e.g. because a previous conversion has been stopped) are skipped.
+ * <br/><br/>
+ * The attribute revisions-path-type of the meta configuration must be set to 'pack' (see VirtualFileSystemRepository) before the conversion is started, such that no new revision directories are created while the revisions are converted.
+ * Nevertheless only the revision directories which have been converted are deleted.
+ * The converter can be run within a background thread, e.g. <code>new Thread(new RevisionPackConverter(repo, 100)).start()</code>
+ */
+public class RevisionPackConverter implements Runnable {
+
+    private static Logger log = LogManager.getLogger(RevisionPackConverter.class);
+
+    private VirtualFileSystemRepository repo;
+    private long pauseMillis;
+
+    private AtomicLong convertedNodes = new AtomicLong();
+    private AtomicLong convertedRevisions = new AtomicLong();
+    private AtomicLong failedNodes = new AtomicLong();
+
+    private volatile boolean stopped = false;
+    private volatile boolean finished = false;
+
+    /**
+     * @param repo Repository containing revisions
+     * @param pauseMillis Pause between two nodes (in milliseconds)
+     */
+    public RevisionPackConverter(VirtualFileSystemRepository repo, long pauseMillis) {
+        this.repo = repo;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * Convert the revisions of all nodes
+     */
+    public void run() {
+        if (repo.isReadOnly()) {
+            log.warn("Repository '" + repo.getName() + "' is read-only, hence revisions cannot be converted.");
+            finished = true;
+            return;
+        }
+        if (!repo.getRevisionsPathType().equals(VirtualFileSystemRepository.REVISIONS_PATH_TYPE_PACK)) {
+            log.error("Revisions path type of repository '" + repo.getName() + "' is '" + repo.getRevisionsPathType() + "', hence new revisions would still be stored as directories. Please set the revisions path type to '" + VirtualFileSystemRepository.REVISIONS_PATH_TYPE_PACK + "' before converting the revisions.");
+            finished = true;
+            return;
+        }
+
+        log.info("Start conversion of revisions of repository '" + repo.getName() + "' (Pause: " + pauseMillis + "ms) ...");
+        try {
+            walk(repo.getMetaDir() != null ? repo.getMetaDir() : repo.getContentDir());
+        } catch (InterruptedException e) {
+            log.warn("Conversion of revisions has been interrupted!");
+            stopped = true;
+            Thread.currentThread().interrupt();
+        }
+        log.info("Conversion of revisions of repository '" + repo.getName() + "' " + (stopped ? "stopped" : "finished") + ": " + getProgress());
+        finished = true;
+    }
+
+    /**
+     * Stop conversion after the current node
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Check whether conversion has finished (or has been stopped)
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Get number of nodes whose revisions have been converted
+     */
+    public long getNumberOfConvertedNodes() {
+        return convertedNodes.get();
+    }
+
+    /**
+     * Get number of revisions which have been added to packs
+     */
+    public long getNumberOfConvertedRevisions() {
+        return convertedRevisions.get();
+    }
+
+    /**
+     * Get number of nodes whose revisions could not be converted
+     */
+    public long getNumberOfFailedNodes() {
+        return failedNodes.get();
+    }
+
+    /**
+     * Get progress as human readable text
+     */
+    public String getProgress() {
+        return "nodes: " + convertedNodes.get() + ", revisions: " + convertedRevisions.get() + ", failed nodes: " + failedNodes.get();
+    }
+
+    /**
+     * Walk directory recursively and convert the revisions of every meta directory
+     * @param dir Directory within meta directory
+     */
+    private void walk(File dir) throws InterruptedException {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (int i = 0; i < children.length && !stopped; i++) {
+            if (!children[i].isDirectory() || children[i].getName().startsWith(".")) {
+                continue;
+            }
+            if (children[i].getName().endsWith(VirtualFileSystemNode.META_DIR_SUFFIX)) {
+                if (VirtualFileSystemNode.getRevisionsBaseDir(children[i]).isDirectory()) {
+                    try {
+                        convert(children[i]);
+                        convertedNodes.incrementAndGet();
+                    } catch (Exception e) {
+                        log.error("Could not convert revisions of '" + children[i] + "': " + e.getMessage(), e);
+                        failedNodes.incrementAndGet();
+                    }
+                    if (pauseMillis > 0) {
+                        Thread.sleep(pauseMillis);
+                    }
+                }
+            } else {
+                walk(children[i]);
+            }
+        }
+    }
+
+    /**
+     * Convert revisions of a node
+     * @param nodeMetaDir Meta directory of node, e.g. 'about.html.yarep'
+     */
+    void convert(File nodeMetaDir) throws IOException {
+        File revisionsBaseDir = VirtualFileSystemNode.getRevisionsBaseDir(nodeMetaDir);
+        List names = new ArrayList();
+        List dirs = new ArrayList();
+        VirtualFileSystemNode.findRevisionDirs(revisionsBaseDir, "", names, dirs);
+
+        RevisionPack pack = new RevisionPack(nodeMetaDir);
+        long[] metaLastModified = new long[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            String name = (String) names.get(i);
+            File dir = (File) dirs.get(i);
+            if (pack.get(name) != null) {
+                log.warn("Revision '" + name + "' exists already within pack: " + pack);
+                continue;
+            }
+            File metaFile = new File(dir, VirtualFileSystemNode.META_FILE_NAME);
+            metaLastModified[i] = metaFile.lastModified();
+            byte[] meta = FileUtils.readFileToByteArray(metaFile);
+            InputStream in = getContent(nodeMetaDir, dir, name);
+            try {
+                pack.add(name, in, meta);
+            } finally {
+                in.close();
+            }
+            convertedRevisions.incrementAndGet();
+        }
+
+        // INFO: Apply modifications which happened while the revisions have been added to the pack
+        for (int i = 0; i < names.size(); i++) {
+            String name = (String) names.get(i);
+            File metaFile = new File((File) dirs.get(i), VirtualFileSystemNode.META_FILE_NAME);
+            if (!metaFile.isFile()) {
+                log.warn("Revision '" + name + "' has been deleted during conversion: " + dirs.get(i));
+                pack.delete(name);
+            } else if (metaLastModified[i] != 0 && metaFile.lastModified() != metaLastModified[i]) {
+                log.warn("Meta file of revision '" + name + "' has been modified during conversion: " + metaFile);
+                pack.updateMeta(name, FileUtils.readFileToByteArray(metaFile));
+            }
+        }
+
+        for (int i = 0; i < dirs.size(); i++) {
+            deleteRevisionDir((File) dirs.get(i), revisionsBaseDir);
+        }
+        List remainingNames = new ArrayList();
+        VirtualFileSystemNode.findRevisionDirs(revisionsBaseDir, "", remainingNames, new ArrayList());
+        if (remainingNames.isEmpty()) {
+            // INFO: The blobs and the deltas are only referenced by revision directories
+            FileUtils.deleteDirectory(revisionsBaseDir);
+            FileUtils.deleteDirectory(new File(nodeMetaDir, RevisionBlobStore.BLOBS_DIR));
+        } else {
+            log.warn(remainingNames.size() + " revision directories have been created during conversion, hence they are kept and will be converted next time: " + nodeMetaDir);
+        }
+        if (log.isDebugEnabled()) log.debug(names.size() + " revisions have been converted: " + nodeMetaDir);
+    }
+
+    /**
+     * Delete a revision directory and its parent directories as long as they are empty (splitted revision directories)
+     * @param dir Revision directory
+     * @param revisionsBaseDir Revisions base directory, which is not deleted
+     */
+    private void deleteRevisionDir(File dir, File revisionsBaseDir) throws IOException {
+        FileUtils.deleteDirectory(dir);
+        File parent = dir.getParentFile();
+        while (parent != null && !parent.equals(revisionsBaseDir) && parent.delete()) { // INFO: Deleting a directory fails if it is not empty
+            parent = parent.getParentFile();
+        }
+    }
+
+    /**
+     * Get content of a revision directory, which is either stored within the directory, as reference (see RevisionBlobStore) or as delta (see RevisionDeltaStore)
+     */
+    private InputStream getContent(File nodeMetaDir, File dir, String name) throws IOException {
+        String hash = VirtualFileSystemRevision.readContentReference(dir);
+        if (hash != null) {
+            return new FileInputStream(new RevisionBlobStore(nodeMetaDir).getBlobFile(hash));
+        } else if (RevisionDeltaStore.isDelta(dir)) {
+            return new RevisionDeltaStore(repo, nodeMetaDir).getInputStream(name);
+        } else {
+            return new FileInputStream(new File(dir, VirtualFileSystemRevision.CONTENT_FILE_NAME));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.Revision;
+import org.wyona.yarep.core.attributes.VersionableV1;
+
+/**
+ * Deletes the revisions which are not kept by the retention policies of a repository (see RevisionRetentionPolicy and the element revisions-retention of the repository configuration).
+ * The nodes are walked recursively and the revisions are deleted in batches, whereas the pruner pauses between two batches in order to limit the load on the file system.
+ * Deleting a revision also deletes it from the date index and updates the total number of revisions and the revision statistics of the node (see VirtualFileSystemRevision#delete()).
+ * <br/><br/>
+ * The pruner is run periodically within a background thread of the repository if the attribute interval of the element revisions-retention is set, or it can be run explicitly, e.g. <code>new Thread(new RevisionPruner(repo, 100, 100)).start()</code>
+ */
+public class RevisionPruner implements Runnable {
+
+    private static Logger log = LogManager.getLogger(RevisionPruner.class);
+
+    private VirtualFileSystemRepository repo;
+    private int batchSize;
+    private long pauseMillis;
+
+    private AtomicLong prunedNodes = new AtomicLong();
+    private AtomicLong deletedRevisions = new AtomicLong();
+    private AtomicLong failedNodes = new AtomicLong();
+
+    private volatile boolean stopped = false;
+    private volatile boolean finished = false;
+
+    /**
+     * @param repo Repository containing revisions
+     * @param batchSize Number of revisions which are deleted before pausing
+     * @param pauseMillis Pause between two batches (in milliseconds)
+     */
+    public RevisionPruner(VirtualFileSystemRepository repo, int batchSize, long pauseMillis) {
+        this.repo = repo;
+        this.batchSize = batchSize > 0 ? batchSize : 1;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * Delete the revisions of all nodes which are not kept by the retention policies
+     */
+    public void run() {
+        if (repo.isReadOnly()) {
+            log.warn("Repository '" + repo.getName() + "' is read-only, hence revisions cannot be pruned.");
+            finished = true;
+            return;
+        }
+        if (repo.getRevisionRetentionPolicies().length == 0) {
+            log.warn("No revisions retention policies configured for repository '" + repo.getName() + "'.");
+            finished = true;
+            return;
+        }
+
+        log.info("Start pruning revisions of repository '" + repo.getName() + "' (Batch size: " + batchSize + ", Pause: " + pauseMillis + "ms) ...");
+        try {
+            walk(repo.getRootNode());
+        } catch (InterruptedException e) {
+            log.warn("Pruning of revisions has been interrupted!");
+            stopped = true;
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error(e, e);
+        }
+        log.info("Pruning of revisions of repository '" + repo.getName() + "' " + (stopped ? "stopped" : "finished") + ": " + getProgress());
+        finished = true;
+    }
+
+    /**
+     * Stop pruning after the current batch
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Check whether pruning has finished (or has been stopped)
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Get number of nodes whose revisions have been pruned
+     */
+    public long getNumberOfPrunedNodes() {
+        return prunedNodes.get();
+    }
+
+    /**
+     * Get number of revisions which have been deleted
+     */
+    public long getNumberOfDeletedRevisions() {
+        return deletedRevisions.get();
+    }
+
+    /**
+     * Get number of nodes whose revisions could not be pruned
+     */
+    public long getNumberOfFailedNodes() {
+        return failedNodes.get();
+    }
+
+    /**
+     * Get progress as human readable text
+     */
+    public String getProgress() {
+        return "nodes: " + prunedNodes.get() + ", deleted revisions: " + deletedRevisions.get() + ", failed nodes: " + failedNodes.get();
+    }
+
+    /**
+     * Walk nodes recursively and prune the revisions of every resource
+     */
+    private void walk(Node node) throws Exception {
+        if (stopped) {
+            return;
+        }
+        if (Thread.currentThread().isInterrupted()) { // INFO: For example the repository is being closed (see VirtualFileSystemRepository#close())
+            throw new InterruptedException();
+        }
+        if (node.isCollection()) {
+            Node[] children = node.getNodes();
+            for (int i = 0; i < children.length && !stopped; i++) {
+                walk(children[i]);
+            }
+            return;
+        }
+
+        RevisionRetentionPolicy policy = repo.getRevisionRetentionPolicy(node.getPath());
+        if (policy == null || !(node instanceof VersionableV1)) {
+            return;
+        }
+        List toDelete;
+        try {
+            toDelete = policy.getRevisionsToDelete(getRevisions((VersionableV1) node), new Date());
+        } catch (Exception e) {
+            log.error("Could not select revisions of '" + node.getPath() + "' to be deleted: " + e.getMessage(), e);
+            failedNodes.incrementAndGet();
+            return;
+        }
+        if (toDelete.isEmpty()) {
+            return;
+        }
+
+        if (log.isDebugEnabled()) log.debug("Delete " + toDelete.size() + " revisions of '" + node.getPath() + "' (Policy: " + policy + ") ...");
+        for (int i = 0; i < toDelete.size(); i++) {
+            Revision revision = (Revision) toDelete.get(i);
+            try {
+                revision.delete();
+            } catch (Exception e) {
+                log.error("Could not delete revision '" + revision.getRevisionName() + "' of '" + node.getPath() + "': " + e.getMessage(), e);
+                failedNodes.incrementAndGet();
+                return;
+            }
+            if (deletedRevisions.incrementAndGet() % batchSize == 0) {
+                if (stopped) {
+                    return;
+                }
+                if (pauseMillis > 0) {
+                    Thread.sleep(pauseMillis);
+                }
+            }
+        }
+        prunedNodes.incrementAndGet();
+    }
+
+    /**
+     * Get revisions of a node based on the date index (most recent first)
+     */
+    private static Revision[] getRevisions(VersionableV1 node) throws Exception {
+        List revisions = new ArrayList();
+        Iterator it = node.getRevisions(false);
+        while (it.hasNext()) {
+            revisions.add(it.next());
+        }
+        return (Revision[]) revisions.toArray(new Revision[revisions.size()]);
+    }
+}
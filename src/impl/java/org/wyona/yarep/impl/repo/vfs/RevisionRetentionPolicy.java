@@ -0,0 +1,108 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.wyona.yarep.core.RepositoryException;
+import org.wyona.yarep.core.Revision;
+
+/**
+ * Retention policy for the revisions of the nodes below a particular path (see element revisions-retention of the repository configuration and RevisionPruner).
+ * A revision is kept if at least one of the following rules keeps it:
+ * <ul>
+ *   <li>keep-last: the specified number of most recent revisions are kept</li>
+ *   <li>keep-daily-after-days: revisions younger than the specified number of days are kept, whereas of older revisions only the most recent revision per day is kept</li>
+ *   <li>keep-tagged: revisions with a tag are kept (default=true)</li>
+ * </ul>
+ * If neither keep-last nor keep-daily-after-days is set, then no revisions are deleted.
+ */
+public class RevisionRetentionPolicy {
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private String path;
+    private int keepLast;
+    private int keepDailyAfterDays;
+    private boolean keepTagged;
+
+    /**
+     * @param path Path prefix of the nodes to which this policy applies, e.g. '/news/'
+     * @param keepLast Number of most recent revisions which are kept or -1 if not set
+     * @param keepDailyAfterDays Number of days after which only one revision per day is kept or -1 if not set
+     * @param keepTagged True if revisions with a tag are kept
+     */
+    public RevisionRetentionPolicy(String path, int keepLast, int keepDailyAfterDays, boolean keepTagged) {
+        this.path = path;
+        this.keepLast = keepLast;
+        this.keepDailyAfterDays = keepDailyAfterDays;
+        this.keepTagged = keepTagged;
+    }
+
+    /**
+     * Get path prefix of the nodes to which this policy applies
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Check whether this policy applies to a node
+     * @param nodePath Absolute repository path of node
+     */
+    public boolean appliesTo(String nodePath) {
+        return nodePath.startsWith(path);
+    }
+
+    /**
+     * Select the revisions which are not kept by this policy
+     * @param revisions Revisions of a node sorted by creation date, whereas the most recent revision comes first
+     * @param now Reference date in order to determine the age of the revisions
+     * @return Revisions to be deleted (most recent first)
+     */
+    public List getRevisionsToDelete(Revision[] revisions, Date now) throws RepositoryException {
+        List toDelete = new ArrayList();
+        if (keepLast < 0 && keepDailyAfterDays < 0) {
+            return toDelete;
+        }
+
+        long threshold = now.getTime() - keepDailyAfterDays * DAY_MILLIS;
+        Set days = new HashSet();
+        Calendar calendar = Calendar.getInstance();
+        for (int i = 0; i < revisions.length; i++) {
+            boolean keep = false;
+            if (keepLast >= 0 && i < keepLast) {
+                keep = true;
+            }
+            if (keepDailyAfterDays >= 0) {
+                long creationDate = revisions[i].getCreationDate().getTime();
+                if (creationDate >= threshold) {
+                    keep = true;
+                } else {
+                    calendar.setTimeInMillis(creationDate);
+                    // INFO: The first revision of a day is the most recent revision of this day
+                    if (days.add(new Integer(calendar.get(Calendar.YEAR) * 1000 + calendar.get(Calendar.DAY_OF_YEAR)))) {
+                        keep = true;
+                    }
+                }
+            }
+            if (!keep && keepTagged && revisions[i].hasTag()) {
+                keep = true;
+            }
+            if (!keep) {
+                toDelete.add(revisions[i]);
+            }
+        }
+        return toDelete;
+    }
+
+    /**
+     *
+     */
+    public String toString() {
+        return "path: " + path + ", keep-last: " + keepLast + ", keep-daily-after-days: " + keepDailyAfterDays + ", keep-tagged: " + keepTagged;
+    }
+}
@@ -0,0 +1,172 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import org.wyona.yarep.impl.StripedLock;
+
+/**
+ * Statistics of the revisions of a node (number of revisions, total size of the contents, creation dates of the oldest and most recent revision), which are updated every time a revision is created or deleted, such that they can be read without scanning the revisions.
+ * <br/><br/>
+ * The statistics are stored within the file 'revisions.stats' of the meta directory of the node:
+ * <pre>
+ * number of revisions (long)
+ * total size of contents in bytes (long)
+ * creation date of oldest revision in milliseconds (long, -1 if no revisions)
+ * creation date of most recent revision in milliseconds (long, -1 if no revisions)
+ * </pre>
+ * Statistics of existing revisions can be computed with VirtualFileSystemNode#recomputeRevisionStatistics() (also see the tool RecomputeRevisionStatistics).
+ */
+public class RevisionStatistics {
+
+    static final String STATS_FILE_NAME = "revisions.stats";
+
+    static final RevisionStatistics EMPTY = new RevisionStatistics(0, 0, -1, -1);
+
+    private static final StripedLock STATS_LOCKS = new StripedLock(64);
+
+    private final long count;
+    private final long totalSize;
+    private final long oldest;
+    private final long newest;
+
+    /**
+     * @param count Number of revisions
+     * @param totalSize Total size of the contents of the revisions
+     * @param oldest Creation date of oldest revision or -1
+     * @param newest Creation date of most recent revision or -1
+     */
+    RevisionStatistics(long count, long totalSize, long oldest, long newest) {
+        this.count = count;
+        this.totalSize = totalSize;
+        this.oldest = oldest;
+        this.newest = newest;
+    }
+
+    /**
+     * Get number of revisions
+     */
+    public long getNumberOfRevisions() {
+        return count;
+    }
+
+    /**
+     * Get total size of the contents of all revisions (in bytes)
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Get creation date of oldest revision
+     * @return Creation date or null if there are no revisions
+     */
+    public Date getOldestCreationDate() {
+        return oldest >= 0 ? new Date(oldest) : null;
+    }
+
+    /**
+     * Get creation date of most recent revision
+     * @return Creation date or null if there are no revisions
+     */
+    public Date getMostRecentCreationDate() {
+        return newest >= 0 ? new Date(newest) : null;
+    }
+
+    /**
+     * Statistics including an additional revision
+     * @param size Size of the content of the new revision
+     * @param creationDate Creation date of the new revision
+     */
+    RevisionStatistics add(long size, long creationDate) {
+        return new RevisionStatistics(count + 1, totalSize + size, (oldest < 0 || creationDate < oldest) ? creationDate : oldest, Math.max(newest, creationDate));
+    }
+
+    /**
+     * Statistics without a deleted revision
+     * @param size Size of the content of the deleted revision
+     * @param oldestRemaining Creation date of the oldest remaining revision or -1
+     * @param newestRemaining Creation date of the most recent remaining revision or -1
+     */
+    RevisionStatistics remove(long size, long oldestRemaining, long newestRemaining) {
+        if (count <= 1) {
+            return EMPTY;
+        }
+        return new RevisionStatistics(count - 1, Math.max(0, totalSize - size), oldestRemaining, newestRemaining);
+    }
+
+    /**
+     *
+     */
+    public String toString() {
+        return "revisions: " + count + ", size: " + totalSize + ", oldest: " + getOldestCreationDate() + ", most recent: " + getMostRecentCreationDate();
+    }
+
+    /**
+     * Check whether statistics exist for a node
+     * @param nodeMetaDir Meta directory of node
+     */
+    static boolean exists(File nodeMetaDir) {
+        return new File(nodeMetaDir, STATS_FILE_NAME).isFile();
+    }
+
+    /**
+     * Get lock of the statistics of a node, which must be held while the statistics are read, updated and written
+     * @param nodeMetaDir Meta directory of node
+     */
+    static Object getLock(File nodeMetaDir) {
+        return STATS_LOCKS.getLock(new File(nodeMetaDir, STATS_FILE_NAME));
+    }
+
+    /**
+     * Read statistics of a node
+     * @param nodeMetaDir Meta directory of node
+     * @return Statistics or null if no statistics exist
+     */
+    static RevisionStatistics read(File nodeMetaDir) throws IOException {
+        File file = new File(nodeMetaDir, STATS_FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            return new RevisionStatistics(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write statistics of a node into a temporary file, which then replaces the statistics
+     * @param nodeMetaDir Meta directory of node
+     */
+    void write(File nodeMetaDir) throws IOException {
+        nodeMetaDir.mkdirs();
+        File file = new File(nodeMetaDir, STATS_FILE_NAME);
+        File tmpFile = File.createTempFile(STATS_FILE_NAME, ".tmp", nodeMetaDir);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            out.writeLong(count);
+            out.writeLong(totalSize);
+            out.writeLong(oldest);
+            out.writeLong(newest);
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            // INFO: On some platforms (e.g. Windows) an existing file cannot be replaced by renaming
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                throw new IOException("Could not replace revision statistics: " + file);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.wyona.yarep.impl.StripedLock;
+
+/**
+ * Index of the tagged revisions of a node, such that a revision can be looked up by its tag without reading the meta files of all revisions (see VirtualFileSystemNode#getRevisionByTag(String)).
+ * <br/><br/>
+ * The index is stored within the file 'revisions.tags' of the meta directory of the node as a sequence of records (name of revision, tag), sorted by the names of the revisions, hence its size depends only on the number of tagged revisions.
+ * The index is updated every time the tag of a revision is set or removed and every time a tagged revision is created or deleted.
+ * If the index does not exist, then it is built from the revision catalog of the node (see RevisionCatalog).
+ */
+class RevisionTagIndex {
+
+    static final String TAG_INDEX_FILE_NAME = "revisions.tags";
+
+    private static final StripedLock TAG_INDEX_LOCKS = new StripedLock(64);
+
+    /**
+     * Sorts entries by the names of the revisions, which are based on System.currentTimeMillis(), hence older revisions come first
+     */
+    private static final Comparator REVISION_NAME_COMPARATOR = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            String name1 = ((String[]) o1)[0];
+            String name2 = ((String[]) o2)[0];
+            if (name1.length() != name2.length()) {
+                return name1.length() - name2.length();
+            }
+            return name1.compareTo(name2);
+        }
+    };
+
+    /**
+     * Check whether a tag index exists for a node
+     * @param nodeMetaDir Meta directory of node
+     */
+    static boolean exists(File nodeMetaDir) {
+        return new File(nodeMetaDir, TAG_INDEX_FILE_NAME).isFile();
+    }
+
+    /**
+     * Get lock of the tag index of a node, which must be held while the index is read and written
+     * @param nodeMetaDir Meta directory of node
+     */
+    static Object getLock(File nodeMetaDir) {
+        return TAG_INDEX_LOCKS.getLock(new File(nodeMetaDir, TAG_INDEX_FILE_NAME));
+    }
+
+    /**
+     * Get name of the oldest revision with a particular tag
+     * @param entries Entries of tag index (see read(File))
+     * @param tag Tag of revision
+     * @return Name of revision or null if no revision has this tag
+     */
+    static String getRevisionName(List entries, String tag) {
+        for (int i = 0; i < entries.size(); i++) {
+            String[] entry = (String[]) entries.get(i);
+            if (entry[1].equals(tag)) {
+                return entry[0];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read tag index of a node
+     * @param nodeMetaDir Meta directory of node
+     * @return Entries (name of revision, tag) sorted by the names of the revisions or null if no index exists
+     */
+    static List read(File nodeMetaDir) throws IOException {
+        File file = new File(nodeMetaDir, TAG_INDEX_FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        List entries = new ArrayList();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                String revisionName;
+                try {
+                    revisionName = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                entries.add(new String[] {revisionName, in.readUTF()});
+            }
+        } finally {
+            in.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Set or remove the tag of a revision within the tag index of a node, whereas nothing is done if the index does not exist
+     * @param nodeMetaDir Meta directory of node
+     * @param revisionName Name of revision
+     * @param tag Tag of revision or null if revision has no tag (anymore)
+     */
+    static void update(File nodeMetaDir, String revisionName, String tag) throws IOException {
+        List entries = read(nodeMetaDir);
+        if (entries == null) {
+            return;
+        }
+        boolean removed = false;
+        for (int i = 0; i < entries.size(); i++) {
+            String[] entry = (String[]) entries.get(i);
+            if (entry[0].equals(revisionName)) {
+                if (entry[1].equals(tag)) {
+                    return;
+                }
+                entries.remove(i);
+                removed = true;
+                break;
+            }
+        }
+        if (tag == null && !removed) {
+            return;
+        }
+        if (tag != null) {
+            entries.add(new String[] {revisionName, tag});
+        }
+        write(nodeMetaDir, entries);
+    }
+
+    /**
+     * Write tag index of a node into a temporary file, which then replaces the index
+     * @param nodeMetaDir Meta directory of node
+     * @param entries Entries (name of revision, tag)
+     */
+    static void write(File nodeMetaDir, List entries) throws IOException {
+        Collections.sort(entries, REVISION_NAME_COMPARATOR);
+        nodeMetaDir.mkdirs();
+        File file = new File(nodeMetaDir, TAG_INDEX_FILE_NAME);
+        File tmpFile = File.createTempFile(TAG_INDEX_FILE_NAME, ".tmp", nodeMetaDir);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                String[] entry = (String[]) entries.get(i);
+                out.writeUTF(entry[0]);
+                out.writeUTF(entry[1]);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            // INFO: On some platforms (e.g. Windows) an existing file cannot be replaced by renaming
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                throw new IOException("Could not replace tag index: " + file);
+            }
+        }
+    }
+
+    /**
+     * Delete tag index of a node, such that it is built again the next time it is read
+     * @param nodeMetaDir Meta directory of node
+     */
+    static void delete(File nodeMetaDir) {
+        new File(nodeMetaDir, TAG_INDEX_FILE_NAME).delete();
+    }
+}
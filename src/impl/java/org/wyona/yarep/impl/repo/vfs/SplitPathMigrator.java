@@ -0,0 +1,317 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * Migrates resources (content, meta data and revisions), which are still located at their not splitted location, to their splitted location (see &lt;splitpath&gt; configuration of VirtualFileSystemRepository).
+ * The content directory is walked and the resources are migrated in batches, whereas the resources of a batch are migrated in parallel and the migrator pauses between batches in order to limit the load on the file system.
+ * <br/><br/>
+ * Resources which exist already at their splitted location are skipped (the not splitted version remains as a backup).
+ * Collections are not moved, because the splitted locations do not reflect the parent-child relationship of the collections (see VirtualFileSystemRepository#splitPath(String, int, int, String[], String)),
+ * hence collections which only exist at their not splitted location are counted (see getNumberOfNotMigratedCollections()) and prevent that the migration is considered complete, because they could not be found anymore without the dual lookup.
+ * A resource whose content cannot be moved is left at its not splitted location, whereas its meta data is moved back.
+ * <br/><br/>
+ * When the migration finished without errors (and without collections at their not splitted location), the dual lookup of nodes (splitted and not splitted location) is turned off for the repository instance (see VirtualFileSystemRepository#isSplitPathMigrationComplete()), whereas one should also set the attribute migration-complete="true" of the &lt;splitpath&gt; configuration.
+ * <br/><br/>
+ * The migrator can be run within a background thread, e.g. <code>new Thread(new SplitPathMigrator(repo, 4, 100, 1000)).start()</code>
+ */
+public class SplitPathMigrator implements Runnable {
+
+    private static Logger log = LogManager.getLogger(SplitPathMigrator.class);
+
+    private VirtualFileSystemRepository repo;
+    private int numberOfThreads;
+    private int batchSize;
+    private long pauseMillis;
+
+    private AtomicLong migrated = new AtomicLong();
+    private AtomicLong skipped = new AtomicLong();
+    private AtomicLong failed = new AtomicLong();
+    private AtomicLong notMigratedCollections = new AtomicLong();
+
+    private volatile boolean stopped = false;
+    private volatile boolean finished = false;
+
+    /**
+     * @param repo Repository which has a &lt;splitpath&gt; configuration
+     * @param numberOfThreads Number of resources which are migrated in parallel
+     * @param batchSize Number of resources per batch
+     * @param pauseMillis Pause between two batches (in milliseconds)
+     */
+    public SplitPathMigrator(VirtualFileSystemRepository repo, int numberOfThreads, int batchSize, long pauseMillis) {
+        this.repo = repo;
+        this.numberOfThreads = numberOfThreads;
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * Migrate all resources
+     */
+    public void run() {
+        if (!repo.isSplitPathEnabled()) {
+            log.warn("Split path is not enabled for repository '" + repo.getName() + "', hence nothing to migrate.");
+            finished = true;
+            return;
+        }
+
+        log.info("Start split path migration of repository '" + repo.getName() + "' (Threads: " + numberOfThreads + ", Batch size: " + batchSize + ", Pause: " + pauseMillis + "ms) ...");
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            List batch = new ArrayList();
+            walk(repo.getContentDir(), "", batch, executor);
+            if (!batch.isEmpty() && !stopped) {
+                migrateBatch(batch, executor);
+            }
+        } catch (InterruptedException e) {
+            log.warn("Split path migration has been interrupted!");
+            stopped = true;
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+
+        log.info("Split path migration of repository '" + repo.getName() + "' " + (stopped ? "stopped" : "finished") + ": " + getProgress());
+        finished = true;
+        if (isComplete()) {
+            repo.setSplitPathMigrationComplete(true);
+            log.info("Split path migration of repository '" + repo.getName() + "' is complete, please set the attribute migration-complete=\"true\" of the splitpath configuration (" + repo.getConfigFile() + ").");
+        } else if (!stopped && failed.get() == 0 && notMigratedCollections.get() > 0) {
+            log.warn("Split path migration of repository '" + repo.getName() + "' is not complete, because " + notMigratedCollections.get() + " collection(s) only exist at their not splitted location, hence the dual lookup must not be turned off (attribute migration-complete of the splitpath configuration).");
+        }
+    }
+
+    /**
+     * Stop migration after the current batch
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Check whether migration has finished (or has been stopped)
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Check whether the migration has finished without failures and without collections which only exist at their not splitted location, i.e. whether the attribute migration-complete of the splitpath configuration can be set
+     */
+    public boolean isComplete() {
+        return finished && !stopped && repo.isSplitPathEnabled() && failed.get() == 0 && notMigratedCollections.get() == 0;
+    }
+
+    /**
+     * Get number of migrated resources
+     */
+    public long getNumberOfMigratedNodes() {
+        return migrated.get();
+    }
+
+    /**
+     * Get number of resources which have not been migrated, because they exist already at their splitted location
+     */
+    public long getNumberOfSkippedNodes() {
+        return skipped.get();
+    }
+
+    /**
+     * Get number of resources which could not be migrated
+     */
+    public long getNumberOfFailedNodes() {
+        return failed.get();
+    }
+
+    /**
+     * Get number of collections which only exist at their not splitted location (and which are not moved)
+     */
+    public long getNumberOfNotMigratedCollections() {
+        return notMigratedCollections.get();
+    }
+
+    /**
+     * Get progress as human readable text
+     */
+    public String getProgress() {
+        return "migrated: " + migrated.get() + ", skipped: " + skipped.get() + ", failed: " + failed.get() + ", not migrated collections: " + notMigratedCollections.get();
+    }
+
+    /**
+     * Walk directory recursively and migrate resources batch by batch
+     * @param dir Directory within content directory
+     * @param path Repository path of directory
+     * @param batch Current batch containing repository paths of resources
+     */
+    private void walk(File dir, String path, List batch, ExecutorService executor) throws InterruptedException {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (int i = 0; i < children.length && !stopped; i++) {
+            String childPath = path + "/" + children[i].getName();
+            if (children[i].getName().startsWith(".") || children[i].getName().endsWith(VirtualFileSystemNode.META_DIR_SUFFIX)) {
+                continue; // INFO: Hidden files (e.g. '.svn') and meta directories (in case the meta data is located within the content directory)
+            }
+            if (children[i].isDirectory()) {
+                if (needsMigration(childPath) && !new File(repo.getContentDir(), repo.splitPath(childPath)).isDirectory()) {
+                    log.warn("Collection '" + childPath + "' only exists at its not splitted location and will not be moved.");
+                    notMigratedCollections.incrementAndGet();
+                }
+                walk(children[i], childPath, batch, executor);
+            } else if (needsMigration(childPath)) {
+                batch.add(childPath);
+                if (batch.size() >= batchSize) {
+                    migrateBatch(batch, executor);
+                    batch.clear();
+                    if (pauseMillis > 0) {
+                        Thread.sleep(pauseMillis);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Migrate resources of batch in parallel
+     * @param batch Repository paths of resources
+     */
+    private void migrateBatch(List batch, ExecutorService executor) throws InterruptedException {
+        List tasks = new ArrayList();
+        for (int i = 0; i < batch.size(); i++) {
+            final String path = (String) batch.get(i);
+            tasks.add(new Callable() {
+                public Object call() {
+                    migrate(path);
+                    return null;
+                }
+            });
+        }
+        executor.invokeAll(tasks);
+        log.info("Split path migration of repository '" + repo.getName() + "': " + getProgress());
+    }
+
+    /**
+     * Migrate content and meta data (incl. revisions) of a resource
+     * @param path Repository path of resource
+     */
+    private void migrate(String path) {
+        try {
+            File contentDir = repo.getContentDir();
+            File splittedContentFile = new File(contentDir, repo.splitPath(path));
+            if (splittedContentFile.exists()) {
+                if (log.isDebugEnabled()) log.debug("Resource '" + path + "' exists already at splitted location: " + splittedContentFile);
+                skipped.incrementAndGet();
+                return;
+            }
+
+            File metaBaseDir = repo.getMetaDir() != null ? repo.getMetaDir() : contentDir;
+            File metaDir = new File(metaBaseDir, path + VirtualFileSystemNode.META_DIR_SUFFIX);
+            File splittedMetaDir = VirtualFileSystemNode.getMetaDir(repo, path);
+            boolean isMetaDirMoved = false;
+            if (metaDir.isDirectory() && !splittedMetaDir.exists()) {
+                move(metaDir, splittedMetaDir);
+                isMetaDirMoved = true;
+            }
+            try {
+                move(new File(contentDir, path), splittedContentFile);
+            } catch (IOException e) {
+                if (isMetaDirMoved) {
+                    move(splittedMetaDir, metaDir); // INFO: Otherwise the meta data would not be found anymore at the not splitted location of the content
+                }
+                throw e;
+            }
+            migrated.incrementAndGet();
+        } catch (Exception e) {
+            log.error("Could not migrate resource '" + path + "': " + e.getMessage(), e);
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Move file or directory
+     */
+    private static void move(File src, File dest) throws IOException {
+        dest.getParentFile().mkdirs();
+        if (src.renameTo(dest)) {
+            return;
+        }
+        // INFO: Rename does not work across file systems, hence copy and delete
+        if (src.isDirectory()) {
+            FileUtils.copyDirectory(src, dest);
+            FileUtils.deleteDirectory(src);
+        } else {
+            try {
+                FileUtils.copyFile(src, dest);
+            } catch (IOException e) {
+                dest.delete(); // INFO: Otherwise the incomplete copy would be considered as migrated by the next migration
+                throw e;
+            }
+            if (!src.delete()) {
+                throw new IOException("Could not delete '" + src + "' after copying it to '" + dest + "'");
+            }
+        }
+    }
+
+    /**
+     * Check whether a file within the content directory is a resource which has not been migrated yet
+     * @param path Path of file relative to content directory
+     */
+    private boolean needsMigration(String path) {
+        return !repo.splitPath(path).equals(path) && !isSplittedPath(path);
+    }
+
+    /**
+     * Check whether a path relative to the content directory is the splitted version of a repository path (and hence is already migrated)
+     * @param path Path relative to content directory, e.g. '/splitpath-example/ba/ck/wa/rds-compatible.txt'
+     */
+    boolean isSplittedPath(String path) {
+        String base = null;
+        String[] includes = repo.getSplitPathIncludes();
+        for (int i = 0; i < includes.length; i++) {
+            if (path.startsWith(includes[i])) {
+                base = includes[i];
+                break;
+            }
+        }
+        if (base == null) {
+            return false;
+        }
+
+        // INFO: Remove the slashes which have been inserted by splitting and unescape the path separators
+        String rest = path.substring(base.length());
+        StringBuffer head = new StringBuffer();
+        int pos = 0;
+        for (int i = 0; i < repo.getSplitPathDepth() && pos < rest.length(); i++) {
+            int end = Math.min(pos + repo.getSplitPathLength(), rest.length());
+            String segment = rest.substring(pos, end);
+            if (segment.indexOf('/') >= 0) {
+                return false;
+            }
+            head.append(segment);
+            pos = end;
+            if (pos < rest.length()) {
+                if (rest.charAt(pos) != '/') {
+                    return false;
+                }
+                pos++;
+            }
+        }
+        String unescapedHead = head.toString().replace(repo.getSplitPathEscape(), "/");
+        String tail = rest.substring(pos);
+
+        // INFO: Splitting removes a slash if the not escaped remainder starts with a slash, hence check both candidates
+        return repo.splitPath(base + unescapedHead + tail).equals(path) || repo.splitPath(base + unescapedHead + "/" + tail).equals(path);
+    }
+}
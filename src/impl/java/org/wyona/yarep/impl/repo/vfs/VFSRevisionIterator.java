@@ -10,17 +10,25 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 /**
- * Iterator to access revisions by date
+ * Iterator to access revisions by date.
+ * The iterator keeps a cursor (creation date of the last fetched revision) and fetches the revisions in batches (see DateIndexerSearcher#getRevisions(Date, boolean, boolean, int)), such that iterating through n revisions needs about n / batch size index lookups.
  */
 public class VFSRevisionIterator implements java.util.Iterator {
 
     private static Logger log = LogManager.getLogger(VFSRevisionIterator.class);
 
-    private Revision currentRevision;
+    static final int DEFAULT_BATCH_SIZE = 100;
 
     private DateIndexerSearcher dis;
     private Date pointInTime;
     private boolean reverse;
+    private int batchSize;
+
+    private Revision[] batch = new Revision[0];
+    private int position = 0;
+    private Date cursor = null; // INFO: Creation date of the last fetched revision
+    private boolean isStarted = false;
+    private boolean isExhausted = false;
 
     /**
      * @param dis Yarep node specific date indexer searcher which is supposed to have revisions
@@ -28,8 +36,19 @@ public class VFSRevisionIterator implements java.util.Iterator {
      * @param reverse Reversed order, if set to true, then oldest revision first and most recent (head) last
      */
     public VFSRevisionIterator(DateIndexerSearcher dis, Date date, boolean reverse) throws Exception {
+        this(dis, date, reverse, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param dis Yarep node specific date indexer searcher which is supposed to have revisions
+     * @param date Point in time (from where iteration shall start or stop)
+     * @param reverse Reversed order, if set to true, then oldest revision first and most recent (head) last
+     * @param batchSize Number of revisions which are fetched at once
+     */
+    public VFSRevisionIterator(DateIndexerSearcher dis, Date date, boolean reverse, int batchSize) throws Exception {
         this.pointInTime = date;
         this.dis = dis;
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
 
         this.reverse = reverse;
         if (reverse && pointInTime != null) {
@@ -39,107 +58,32 @@ public class VFSRevisionIterator implements java.util.Iterator {
         if (!dis.indexExists()) {
             dis.buildDateIndex();
         }
-        currentRevision = null;
     }
 
     /**
      * @see java.util.Iterator#hasNext()
      */
     public boolean hasNext() {
-        if (currentRevision == null) { // INFO: Iterator is still at the beginning
-            if (pointInTime != null) {
-                // TODO: What exactly means 'reverse' when using pointInTime?!
-                try {
-                    if (dis.getRevision(pointInTime) != null) {
-                        return true;
-                    } else {
-                        return false;
-                    }
-                } catch(Exception e) {
-                    log.error(e, e);
-                    return false;
-                }
-            } else {
-                if (reverse) {
-                    if (dis.getOldestRevision() != null) {
-                        return true;
-                    } else {
-                        log.warn("No revisions at all.");
-                        return false;
-                    }
-                } else {
-                    if (dis.getMostRecentRevision() != null) {
-                        return true;
-                    } else {
-                        log.warn("No revisions at all.");
-                        return false;
-                    }
-                }
-            }
-        } else {
-            try {
-                log.debug("Check if there is another revision older than: " + format(currentRevision.getCreationDate()));
-                if (reverse) {
-                    if (dis.getRevisionYoungerThan(currentRevision.getCreationDate()) != null) {
-                        return true;
-                    } else {
-                        log.debug("No revision younger than '" + currentRevision.getCreationDate() + "', hence stop iteration.");
-                        return false;
-                    }
-                } else {
-                    if (dis.getRevisionOlderThan(currentRevision.getCreationDate()) != null) {
-                        return true;
-                    } else {
-                        log.debug("No revision older than '" + currentRevision.getCreationDate() + "', hence stop iteration.");
-                        return false;
-                   }
-                }
-            } catch(Exception e) {
-                log.error(e, e);
-                return false;
-            }
+        if (position < batch.length) {
+            return true;
         }
+        try {
+            fetch();
+        } catch(Exception e) {
+            log.error(e, e);
+            isExhausted = true;
+        }
+        return position < batch.length;
     }
 
     /**
      * @see java.util.Iterator#next()
      */
     public Object next() throws java.util.NoSuchElementException {
-        if (currentRevision == null) {
-            if (pointInTime != null) {
-                // TODO: Finish reverse implementation
-                try {
-                    currentRevision = dis.getRevision(pointInTime);
-                    //log.debug("First revision found '" + format(currentRevision.getCreationDate()) + "' for point in time: " + format(pointInTime));
-                } catch(Exception e) {
-                    throw new java.util.NoSuchElementException(e.getMessage());
-                }
-            } else {
-                if (reverse) {
-                    currentRevision = dis.getOldestRevision();
-                } else {
-                    currentRevision = dis.getMostRecentRevision();
-                }
-            }
-            return currentRevision;
-        } else {
-            try {
-                if (reverse) {
-                    log.debug("Get revision younger than: " + format(currentRevision.getCreationDate()));
-                    currentRevision = dis.getRevisionYoungerThan(currentRevision.getCreationDate());
-                } else {
-                    log.debug("Get revision older than: " + format(currentRevision.getCreationDate()));
-                    currentRevision = dis.getRevisionOlderThan(currentRevision.getCreationDate());
-                }
-                if (currentRevision != null) {
-                    return currentRevision;
-                } else {
-                    throw new java.util.NoSuchElementException();
-                }
-            } catch(Exception e) {
-                throw new java.util.NoSuchElementException(e.getMessage());
-            }
+        if (!hasNext()) {
+            throw new java.util.NoSuchElementException();
         }
+        return batch[position++];
     }
 
     /**
@@ -149,6 +93,43 @@ public class VFSRevisionIterator implements java.util.Iterator {
         throw new UnsupportedOperationException("Not implemented.");
     }
 
+    /**
+     * Fetch next batch of revisions
+     */
+    private void fetch() throws Exception {
+        batch = new Revision[0];
+        position = 0;
+        if (isExhausted) {
+            return;
+        }
+
+        if (!isStarted) {
+            isStarted = true;
+            if (pointInTime != null && reverse) {
+                // TODO: What exactly means 'reverse' when using pointInTime?! (The first revision is the one at the point in time and then younger revisions follow)
+                Revision first = dis.getRevision(pointInTime);
+                if (first == null) {
+                    isExhausted = true;
+                    return;
+                }
+                batch = new Revision[] {first};
+                cursor = first.getCreationDate();
+                return;
+            }
+            batch = dis.getRevisions(pointInTime, true, reverse, batchSize);
+        } else {
+            batch = dis.getRevisions(cursor, false, reverse, batchSize);
+        }
+
+        if (batch.length < batchSize) {
+            isExhausted = true;
+        }
+        if (batch.length > 0) {
+            cursor = batch[batch.length - 1].getCreationDate();
+            if (log.isDebugEnabled()) log.debug("Fetched " + batch.length + " revisions, cursor: " + format(cursor));
+        }
+    }
+
     /**
      * Format date
      */
@@ -0,0 +1,230 @@
+package org.wyona.yarep.impl.repo.vfs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.Property;
+import org.wyona.yarep.core.PropertyType;
+import org.wyona.yarep.core.RepositoryException;
+import org.wyona.yarep.impl.DefaultProperty;
+
+/**
+ * Binary meta file format (version 2.0) containing the properties of a node or revision.
+ * In contrast to the text format (version 1.0) values are stored natively, such that no
+ * escaping/unescaping and no string/date parsing is necessary when reading a meta file.
+ * <br/><br/>
+ * Layout:
+ * <pre>
+ * magic (4 bytes: 0x00 'Y' 'M' 'F')
+ * version (UTF, e.g. "2.0")
+ * number of properties (int)
+ * for each property:
+ *   name (UTF)
+ *   type (byte, see org.wyona.yarep.core.PropertyType)
+ *   value (boolean, long, double, date as long milliseconds or length-prefixed UTF-8 string, whereas date and string are preceded by a null flag)
+ * </pre>
+ * The magic starts with a zero byte, which never occurs at the beginning of a text meta file.
+ */
+class VirtualFileSystemMetaFile {
+
+    private static Logger log = LogManager.getLogger(VirtualFileSystemMetaFile.class);
+
+    static final String PROPERTY_META_FILE_VERSION = "yarep_vfs-meta-file-version";
+
+    static final String VERSION_TEXT = "1.0";
+    static final String VERSION_BINARY = "2.0";
+
+    private static final byte[] MAGIC = {0x00, 'Y', 'M', 'F'};
+
+    /**
+     * Check whether the beginning of a meta file is the binary magic
+     * @param in Input stream of meta file, which must support mark/reset
+     * @return true when meta file is binary, false otherwise (also when the stream is empty). The stream is reset in either case.
+     */
+    static boolean isBinary(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (in.read() != MAGIC[i]) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Read properties from binary meta file
+     * @param in Input stream of meta file (positioned at the magic)
+     * @param node Node or revision the properties belong to
+     * @return Properties (property name as key), including the meta file version property
+     */
+    static HashMap read(InputStream in, Node node) throws IOException, RepositoryException {
+        DataInputStream din = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (din.readByte() != MAGIC[i]) {
+                throw new RepositoryException("Not a binary meta file (node: " + node.getPath() + ")");
+            }
+        }
+        String version = din.readUTF();
+        if (!VERSION_BINARY.equals(version)) {
+            throw new RepositoryException("No such vfs meta file version supported: " + version + " (node: " + node.getPath() + ")");
+        }
+
+        HashMap properties = new HashMap();
+        Property versionProperty = new DefaultProperty(PROPERTY_META_FILE_VERSION, PropertyType.STRING, node);
+        versionProperty.setValue(version);
+        properties.put(PROPERTY_META_FILE_VERSION, versionProperty);
+
+        int count = din.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = din.readUTF();
+            int type = din.readByte();
+            Property property = new DefaultProperty(name, type, node);
+            switch (type) {
+                case PropertyType.BOOLEAN: property.setValue(din.readBoolean()); break;
+                case PropertyType.LONG: property.setValue(din.readLong()); break;
+                case PropertyType.DOUBLE: property.setValue(din.readDouble()); break;
+                case PropertyType.DATE:
+                    if (din.readBoolean()) {
+                        property.setValue(new Date(din.readLong()));
+                    }
+                    break;
+                default:
+                    if (din.readBoolean()) {
+                        byte[] bytes = new byte[din.readInt()];
+                        din.readFully(bytes);
+                        property.setValue(new String(bytes, "UTF-8"));
+                    }
+                    break;
+            }
+            properties.put(name, property);
+        }
+        return properties;
+    }
+
+    /**
+     * Read a date property without reading the other properties into memory, e.g. the creation date of a revision (see DateIndexRebuilder)
+     * @param in Input stream of meta file (binary or text), which must support mark/reset
+     * @param name Name of date property
+     * @return Date or null if no such property exists
+     */
+    static Date readDate(InputStream in, String name) throws IOException, RepositoryException {
+        if (isBinary(in)) {
+            DataInputStream din = new DataInputStream(in);
+            din.skipBytes(MAGIC.length);
+            String version = din.readUTF();
+            if (!VERSION_BINARY.equals(version)) {
+                throw new RepositoryException("No such vfs meta file version supported: " + version);
+            }
+            int count = din.readInt();
+            for (int i = 0; i < count; i++) {
+                String propertyName = din.readUTF();
+                int type = din.readByte();
+                switch (type) {
+                    case PropertyType.BOOLEAN: din.readBoolean(); break;
+                    case PropertyType.LONG: din.readLong(); break;
+                    case PropertyType.DOUBLE: din.readDouble(); break;
+                    case PropertyType.DATE:
+                        Date date = din.readBoolean() ? new Date(din.readLong()) : null;
+                        if (propertyName.equals(name)) {
+                            return date;
+                        }
+                        break;
+                    default:
+                        if (din.readBoolean()) {
+                            int length = din.readInt();
+                            if (din.skipBytes(length) != length) {
+                                throw new IOException("Unexpected end of meta file while reading property '" + propertyName + "'");
+                            }
+                        }
+                        break;
+                }
+            }
+            return null;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.startsWith(name + "<")) {
+                int separator = line.indexOf(':', line.indexOf(">"));
+                if (separator < 0) {
+                    throw new RepositoryException("Error while parsing meta file at line " + line);
+                }
+                Property property = new DefaultProperty(name, PropertyType.DATE, null);
+                property.setValueFromString(line.substring(separator + 1).trim());
+                return property.getDate();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write properties as binary meta file
+     * @param out Output stream of meta file (will not be closed)
+     * @param properties Properties (property name as key). The meta file version property is ignored, because the version is part of the header.
+     */
+    static void write(OutputStream out, java.util.Map properties) throws IOException, RepositoryException {
+        int count = properties.size();
+        if (properties.containsKey(PROPERTY_META_FILE_VERSION)) {
+            count--;
+        }
+
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.write(MAGIC);
+        dout.writeUTF(VERSION_BINARY);
+        dout.writeInt(count);
+
+        Iterator iterator = properties.values().iterator();
+        while (iterator.hasNext()) {
+            Property property = (Property) iterator.next();
+            if (property.getName().equals(PROPERTY_META_FILE_VERSION)) {
+                continue;
+            }
+            dout.writeUTF(property.getName());
+            dout.writeByte(property.getType());
+            switch (property.getType()) {
+                case PropertyType.BOOLEAN: dout.writeBoolean(property.getBoolean()); break;
+                case PropertyType.LONG: dout.writeLong(property.getLong()); break;
+                case PropertyType.DOUBLE: dout.writeDouble(property.getDouble()); break;
+                case PropertyType.DATE:
+                    Date date = property.getDate();
+                    dout.writeBoolean(date != null);
+                    if (date != null) {
+                        dout.writeLong(date.getTime());
+                    }
+                    break;
+                default:
+                    String value = property.getValueAsString();
+                    if (value == null) {
+                        log.warn("Value as string of property '" + property.getName() + "' is null!");
+                    }
+                    dout.writeBoolean(value != null);
+                    if (value != null) {
+                        byte[] bytes = value.getBytes("UTF-8");
+                        dout.writeInt(bytes.length);
+                        dout.write(bytes);
+                    }
+                    break;
+            }
+        }
+        dout.flush();
+    }
+}
@@ -1,22 +1,27 @@
 package org.wyona.yarep.impl.repo.vfs;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.FileUtils;
@@ -31,6 +36,7 @@ import org.apache.lucene.index.IndexWriter;
 
 import org.wyona.yarep.core.NoSuchRevisionException;
 import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeInfo;
 import org.wyona.yarep.core.NodeStateException;
 import org.wyona.yarep.core.NodeType;
 import org.wyona.yarep.core.Path;
@@ -43,6 +49,8 @@ import org.wyona.yarep.core.UID;
 import org.wyona.yarep.core.attributes.VersionableV1;
 import org.wyona.yarep.impl.AbstractNode;
 import org.wyona.yarep.impl.DefaultProperty;
+import org.wyona.yarep.impl.StripedLock;
+import org.wyona.yarep.impl.VFileSystemMapImpl;
 
 /**
  * This class represents a repository node.
@@ -57,6 +65,11 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
     private static final char PROPERTY_SEPARATOR = ':';
 
     static final String PROPERTY_TOTAL_NUMBER_OF_REVISIONS = "yarep_vfs_total_number_of_revisions";
+    static final String PROPERTY_CONTENT_HASH = "yarep_vfs_content_hash";
+    static final String PROPERTY_LATEST_REVISION = "yarep_vfs_latest_revision";
+
+    // INFO: Last modified dates might only have a resolution of seconds, hence a content hash is only remembered if the content has not been modified recently
+    private static final long MIN_CONTENT_AGE_FOR_HASH = 2000;
     
     //protected FileSystemRepository repository;
     protected File contentDir;
@@ -78,6 +91,9 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
 
     static final int REVISION_SPLIT_LENGTH = 2;
 
+    // INFO: Locks shared by all nodes (also of different repositories), whereas the meta file of a node always maps to the same lock
+    private static final StripedLock META_FILE_LOCKS = new StripedLock(64);
+
     /**
      * Constructor
      * @throws RepositoryException
@@ -135,7 +151,29 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
             log.debug("metaDir=" + metaDir);
             log.debug("metaFile=" + metaFile);
         }
-        
+
+        // INFO: Properties are loaded lazily (see loadProperties()), because many callers (e.g. when listing children) only need the path, type or content of a node
+        this.properties = null;
+    }
+
+    /**
+     * (Re-)load properties from meta file, whereas a meta file is created if none exists yet.
+     * If the repository is read-only, then no meta file is created, but the meta file at the legacy (not splitted) location is read or default properties are created in memory.
+     */
+    protected void loadProperties() throws RepositoryException {
+        if (!metaFile.exists() && getRepository().isReadOnly()) {
+            if (backupMetaFile.isFile()) {
+                readProperties(backupMetaFile);
+            } else {
+                this.properties = new HashMap();
+                this.vfsMetaFileVersion = null;
+                Property[] defaultProperties = getDefaultProperties();
+                for (int i = 0; i < defaultProperties.length; i++) {
+                    this.properties.put(defaultProperties[i].getName(), defaultProperties[i]);
+                }
+            }
+            return;
+        }
         if (!metaFile.exists()) {
             // TODO: Is this really necessary?
             // TODO: Beside the question whether this is really necessary, it also seems to be very slow!!!
@@ -145,6 +183,15 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
         readProperties();
     }
 
+    /**
+     * Make sure that properties have been loaded from meta file
+     */
+    private void ensurePropertiesLoaded() throws RepositoryException {
+        if (this.properties == null) {
+            loadProperties();
+        }
+    }
+
     /**
      * Get meta directory of this node
      * @param repo Repository containing node or revision
@@ -173,69 +220,148 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
             metaDir.mkdirs();
         }
         this.properties = new HashMap();
+        this.setProperties(getDefaultProperties());
+    }
+
+    /**
+     * Get properties of a node which does not have a meta file yet
+     */
+    private Property[] getDefaultProperties() throws RepositoryException {
+        Property type;
         if (this.contentFile.isDirectory()) {
-            this.setProperty(PROPERTY_TYPE, NodeType.TYPENAME_COLLECTION);
+            type = createProperty(PROPERTY_TYPE, NodeType.TYPENAME_COLLECTION);
         } else {
-            this.setProperty(PROPERTY_TYPE, NodeType.TYPENAME_RESOURCE);
+            type = createProperty(PROPERTY_TYPE, NodeType.TYPENAME_RESOURCE);
             //this.setProperty(PROPERTY_SIZE, this.contentFile.length());
         }
-        this.setProperty(PROPERTY_LAST_MODIFIED, this.metaFile.lastModified());
+        return new Property[] {type, createProperty(PROPERTY_LAST_MODIFIED, this.metaFile.lastModified())};
+    }
+
+    /**
+     * Make sure that the repository is not read-only
+     * @throws RepositoryException if the repository is read-only
+     */
+    protected void checkWritable() throws RepositoryException {
+        if (getRepository().isReadOnly()) {
+            throw new RepositoryException("Repository '" + getRepository().getName() + "' is read-only, hence node '" + getPath() + "' cannot be modified!");
+        }
+    }
+
+    /**
+     * Get file containing the content of this node, which is the file at the legacy (not splitted) location if the repository is read-only and the node has not been migrated yet
+     */
+    private File getReadableContentFile() {
+        if (getRepository().isReadOnly() && !contentFile.exists() && backupContentFile.exists()) {
+            return backupContentFile;
+        }
+        return contentFile;
     }
     
     /**
-     * Read properties from (persistent) meta file
+     * Read properties from (persistent) meta file or from the properties cache of the repository (if enabled)
      */
     protected void readProperties() throws RepositoryException {
-        // TODO: Make sure properties are only read if saveProperties finished, because otherwise one might get just part of the data and/or strange exceptions...
-        try {
-            log.debug("Reading meta file: " + this.metaFile);
-            this.properties = new HashMap();
-            this.vfsMetaFileVersion = null;
-            BufferedReader reader = new BufferedReader(new FileReader(this.metaFile));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                String name;
-                String typeName;
-                String value;
-
-                if (vfsMetaFileVersion != null && vfsMetaFileVersion.equals("1.0")) {
-                    try {
-                        name = unescapeSeparator(line.substring(0, line.indexOf("<")).trim());
-                        typeName = line.substring(line.indexOf("<")+1, line.indexOf(">")).trim();
+        readProperties(this.metaFile);
+    }
 
-                        value = unescapeLinebreak(unescapeSeparator(line.substring(getValueStartIndex(line)).trim()));
-                    } catch (StringIndexOutOfBoundsException e) {
-                        throw new RepositoryException("Error while parsing meta file: " + this.metaFile + " at line " + line);
-                    }
-                } else { // INFO: Backwards compatibility (also see method checkForSeparator(String))
-                    try {
-                        name = unescapeSeparator(line.substring(0, line.indexOf("<")).trim());
-                        typeName = line.substring(line.indexOf("<")+1, line.indexOf(">")).trim();
-                        value = unescapeLinebreak(line.substring(line.indexOf(PROPERTY_SEPARATOR) + 1).trim());
-                        // INFO: Because revisions of a node also contain separators, the checkForSeparator() method generates a huge amount of log entries!
-                        //value = unescapeLinebreak(checkForSeparator(line.substring(line.indexOf(PROPERTY_SEPARATOR) + 1).trim()));
-                    } catch (StringIndexOutOfBoundsException e) {
-                        throw new RepositoryException("Error while parsing meta file: " + this.metaFile + " at line " + line);
-                    }
-                }
+    /**
+     * Read properties from a particular meta file or from the properties cache of the repository (if enabled)
+     * @param file Meta file, which is usually the meta file of this node, but might also be the meta file at a legacy location (see loadProperties())
+     */
+    private void readProperties(File file) throws RepositoryException {
+        PropertiesCache cache = getRepository().getPropertiesCache();
+        if (cache == null) {
+            parseMetaFile(file);
+            return;
+        }
 
-                if (name.equals("yarep_vfs-meta-file-version")) {
-                    vfsMetaFileVersion = value;
-                }
+        long lastModified = file.lastModified();
+        long length = file.length();
+        HashMap cachedProperties = cache.get(file, this);
+        if (cachedProperties != null) {
+            this.properties = cachedProperties;
+            Property version = (Property) cachedProperties.get(VirtualFileSystemMetaFile.PROPERTY_META_FILE_VERSION);
+            this.vfsMetaFileVersion = version != null ? version.getString() : null;
+            return;
+        }
+        parseMetaFile(file);
+        cache.put(file, lastModified, length, this.properties);
+    }
 
-                Property property = new DefaultProperty(name, PropertyType.getType(typeName), this);
-                property.setValueFromString(value);
-                this.properties.put(name, property);
-            }
-            reader.close();
+    /**
+     * Parse properties of meta file
+     * @param file Meta file
+     */
+    private void parseMetaFile(File file) throws RepositoryException {
+        // INFO: No locking necessary, because saveProperties(String) replaces the meta file by a rename, hence a meta file is never read while it is only partially written
+        try {
+            log.debug("Reading meta file: " + file);
+            parseMetaFile(new BufferedInputStream(new FileInputStream(file)), file.toString());
         } catch (IOException e) {
-            throw new RepositoryException("Error while reading meta file: " + metaFile + ": " 
+            throw new RepositoryException("Error while reading meta file: " + file + ": " 
                     + e.getMessage());
         }
     }
 
     /**
+     * Parse properties of meta file (binary or text format)
+     * @param in Input stream of meta file, which supports mark/reset and which will be closed
+     * @param source Location of meta file (used for error messages)
+     */
+    protected void parseMetaFile(BufferedInputStream in, String source) throws IOException, RepositoryException {
+        this.properties = new HashMap();
+        this.vfsMetaFileVersion = null;
+        if (VirtualFileSystemMetaFile.isBinary(in)) {
+            try {
+                this.properties = VirtualFileSystemMetaFile.read(in, this);
+                this.vfsMetaFileVersion = VirtualFileSystemMetaFile.VERSION_BINARY;
+            } finally {
+                in.close();
+            }
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            String name;
+            String typeName;
+            String value;
+
+            if (vfsMetaFileVersion != null && vfsMetaFileVersion.equals(VirtualFileSystemMetaFile.VERSION_TEXT)) {
+                try {
+                    name = unescapeSeparator(line.substring(0, line.indexOf("<")).trim());
+                    typeName = line.substring(line.indexOf("<")+1, line.indexOf(">")).trim();
+
+                    value = unescapeLinebreak(unescapeSeparator(line.substring(getValueStartIndex(line)).trim()));
+                } catch (StringIndexOutOfBoundsException e) {
+                    throw new RepositoryException("Error while parsing meta file: " + source + " at line " + line);
+                }
+            } else { // INFO: Backwards compatibility (also see method checkForSeparator(String))
+                try {
+                    name = unescapeSeparator(line.substring(0, line.indexOf("<")).trim());
+                    typeName = line.substring(line.indexOf("<")+1, line.indexOf(">")).trim();
+                    value = unescapeLinebreak(line.substring(line.indexOf(PROPERTY_SEPARATOR) + 1).trim());
+                    // INFO: Because revisions of a node also contain separators, the checkForSeparator() method generates a huge amount of log entries!
+                    //value = unescapeLinebreak(checkForSeparator(line.substring(line.indexOf(PROPERTY_SEPARATOR) + 1).trim()));
+                } catch (StringIndexOutOfBoundsException e) {
+                    throw new RepositoryException("Error while parsing meta file: " + source + " at line " + line);
+                }
+            }
+
+            if (name.equals(VirtualFileSystemMetaFile.PROPERTY_META_FILE_VERSION)) {
+                vfsMetaFileVersion = value;
+            }
+
+            Property property = new DefaultProperty(name, PropertyType.getType(typeName), this);
+            property.setValueFromString(value);
+            this.properties.put(name, property);
+        }
+        reader.close();
+    }
+
+    /*
+     * INFO: Not a javadoc comment, because otherwise the deprecation would be attributed to saveProperties(String)
      * @deprecated Use {@link saveProperties(String)} instead
      * Save all properties within a meta file
      * @throws RepositoryException
@@ -278,60 +404,98 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
 */
 
     /**
-     * Save all properties within a meta file
+     * Save all properties within a meta file. Meta files are written in the format configured for the repository (see VirtualFileSystemRepository#getMetaFileVersion()), such that nodes which still have a text meta file get migrated the first time they are written.
      * TODO/TBD: Changing a property should update the last modified date. This implementation does not change the last modified date if a property changes.
+     * The properties are written to a temporary file first, which then replaces the meta file, such that readers never see a partially written meta file.
      * @param pname Property name which has been set or removed (see setProperty(Property) and removeProperty(String))
      * @throws RepositoryException
      */
-    private void saveProperties(String pname) throws RepositoryException {
-        synchronized("save-properties") {
+    protected void saveProperties(String pname) throws RepositoryException {
+        checkWritable();
+        synchronized(META_FILE_LOCKS.getLock(this.metaFile)) {
         try {
             log.debug("Writing meta file: " + this.metaFile);
             if (!this.metaFile.getParentFile().isDirectory()) {
                 log.warn("Trying to save modified property '" + pname + "', but directory '" + this.metaFile.getParentFile().getAbsolutePath() + "' does not exist yet, hence we will create it ...");
                 this.metaFile.getParentFile().mkdirs();
             }
-            PrintWriter writer = new PrintWriter(new FileOutputStream(this.metaFile));
 
-            writer.println("yarep_vfs-meta-file-version" + "<" + "string" + ">" + PROPERTY_SEPARATOR + "1.0");
-            if (vfsMetaFileVersion != null && !vfsMetaFileVersion.equals("1.0")) {
-                throw new RepositoryException("No such vfs meta file version supported: " + vfsMetaFileVersion);
+            String version = getRepository().getMetaFileVersion();
+            File tmpFile = File.createTempFile(META_FILE_NAME, ".tmp", this.metaFile.getParentFile());
+            OutputStream out = new FileOutputStream(tmpFile);
+            try {
+                if (version.equals(VirtualFileSystemMetaFile.VERSION_BINARY)) {
+                    VirtualFileSystemMetaFile.write(out, this.properties);
+                } else {
+                    writeTextProperties(out);
+                }
+            } catch (Exception e) {
+                out.close();
+                tmpFile.delete();
+                throw e;
             }
+            out.close();
+            replaceFile(tmpFile, this.metaFile);
+            PropertiesCache cache = getRepository().getPropertiesCache();
 
-            Property modifiedProperty = null;
-            Iterator iterator = this.properties.values().iterator();
-            while (iterator.hasNext()) {
-                Property property = (Property)iterator.next();
-                if (!property.getName().equals("yarep_vfs-meta-file-version")) {
-                    if (property.getValueAsString() == null) {
-                        log.warn("Value as string of property '" + property.getName() + "' is null!");
-                    } else {
-                        if (property.getName().equals(pname)) {
-                            modifiedProperty = property;
-                        }
-                    }
-                    writer.println(escapeSeparator(property.getName()) + "<" + PropertyType.getTypeName(property.getType()) + ">" + PROPERTY_SEPARATOR + escapeLinebreak(escapeSeparator(property.getValueAsString())));
+            if (!version.equals(vfsMetaFileVersion)) {
+                if (vfsMetaFileVersion != null) {
+                    log.info("Meta file of node '" + getPath() + "' has been migrated from version " + vfsMetaFileVersion + " to version " + version);
                 }
+                vfsMetaFileVersion = version;
+                Property versionProperty = new DefaultProperty(VirtualFileSystemMetaFile.PROPERTY_META_FILE_VERSION, PropertyType.STRING, this);
+                versionProperty.setValue(version);
+                this.properties.put(VirtualFileSystemMetaFile.PROPERTY_META_FILE_VERSION, versionProperty);
             }
-            writer.flush();
-            writer.close();
 
-/* NOTE: Already done by setProperty(Property) and removeProperty(String)
-            if (modifiedProperty != null) {
-                if (getRepository().isAutoPropertyIndexingEnabled()) {
-                    log.debug("Index property '" + modifiedProperty.getName() + "' of node: " + this.getPath());
-                    getRepository().getIndexer().index(this, modifiedProperty);
-                }
-            } else {
-                log.warn("Modified property '" + name + "' has not been indexed!");
+            if (cache != null) {
+                cache.put(this.metaFile, this.metaFile.lastModified(), this.metaFile.length(), this.properties);
             }
-*/
         } catch (Exception e) {
             log.error(e, e);
             throw new RepositoryException("Error while writing meta file: " + metaFile + ": " + e.getMessage(), e);
         }
         }
     }
+
+    /**
+     * Replace a file by another file within the same directory
+     * @param src File which replaces the destination file
+     * @param dest File which will be replaced
+     */
+    static void replaceFile(File src, File dest) throws IOException {
+        if (src.renameTo(dest)) {
+            return;
+        }
+        // INFO: On some platforms (e.g. Windows) a rename fails when the destination exists already, hence delete the destination and try once more
+        dest.delete();
+        if (!src.renameTo(dest)) {
+            src.delete();
+            throw new IOException("Could not rename '" + src + "' to '" + dest + "'");
+        }
+    }
+
+    /**
+     * Write all properties using the text format (version 1.0)
+     * @param out Output stream of meta file (will not be closed)
+     */
+    private void writeTextProperties(OutputStream out) throws RepositoryException {
+        PrintWriter writer = new PrintWriter(out);
+
+        writer.println(VirtualFileSystemMetaFile.PROPERTY_META_FILE_VERSION + "<" + "string" + ">" + PROPERTY_SEPARATOR + VirtualFileSystemMetaFile.VERSION_TEXT);
+
+        Iterator iterator = this.properties.values().iterator();
+        while (iterator.hasNext()) {
+            Property property = (Property)iterator.next();
+            if (!property.getName().equals(VirtualFileSystemMetaFile.PROPERTY_META_FILE_VERSION)) {
+                if (property.getValueAsString() == null) {
+                    log.warn("Value as string of property '" + property.getName() + "' is null!");
+                }
+                writer.println(escapeSeparator(property.getName()) + "<" + PropertyType.getTypeName(property.getType()) + ">" + PROPERTY_SEPARATOR + escapeLinebreak(escapeSeparator(property.getValueAsString())));
+            }
+        }
+        writer.flush();
+    }
     
     /**
      * @see org.wyona.yarep.core.Node#getNodes()
@@ -354,10 +518,71 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
         return childNodes;
     }
     
+    /**
+     * Gets a page of the children sorted by name, whereas only the children of the page are instantiated (also see the child-index configuration of the content directory).
+     * If split path is enabled, then all children are instantiated (see getNodes()).
+     * @see org.wyona.yarep.core.Node#getNodes(int, int)
+     */
+    public Node[] getNodes(int offset, int limit) throws RepositoryException {
+        if (getRepository().isSplitPathEnabled()) {
+            // INFO: The physical children of a splitted collection are not its logical children, hence page the children returned by getNodes() instead of reading the child index
+            return super.getNodes(offset, limit);
+        }
+        Path[] childPaths = getRepository().getMap().getChildren(new Path(this.path), offset, limit);
+        Node[] childNodes = new Node[childPaths.length];
+        for (int i = 0; i < childPaths.length; i++) {
+            childNodes[i] = this.repository.getNode(childPaths[i].toString());
+        }
+        return childNodes;
+    }
+
+    /**
+     * Describes the children based on one listing of the content directory, whereas the meta files of the children are not read.
+     * The mime type and the last modified property are only set if the properties of a child are available within the properties cache.
+     * If split path is enabled, then the children are described based on getNodes().
+     * @see org.wyona.yarep.core.Node#listChildren()
+     */
+    public NodeInfo[] listChildren() throws RepositoryException {
+        if (!(getRepository().getMap() instanceof VFileSystemMapImpl) || getRepository().isSplitPathEnabled()) {
+            // INFO: The physical children of a splitted collection are not its logical children, hence describe the children returned by getNodes()
+            return super.listChildren();
+        }
+
+        File[] childFiles = ((VFileSystemMapImpl) getRepository().getMap()).listChildFiles(new Path(this.path));
+        PropertiesCache cache = getRepository().getPropertiesCache();
+        NodeInfo[] children = new NodeInfo[childFiles.length];
+        for (int i = 0; i < childFiles.length; i++) {
+            String childName = childFiles[i].getName();
+            String childPath = this.path.endsWith("/") ? this.path + childName : this.path + "/" + childName;
+            boolean isCollection = childFiles[i].isDirectory();
+
+            long lastModified = 0;
+            String mimeType = null;
+            if (cache != null) {
+                File childMetaFile = new File(getMetaDir(getRepository(), childPath), META_FILE_NAME);
+                Property lastModifiedProperty = cache.peek(childMetaFile, PROPERTY_LAST_MODIFIED);
+                if (lastModifiedProperty != null) {
+                    lastModified = lastModifiedProperty.getLong();
+                }
+                Property mimeTypeProperty = cache.peek(childMetaFile, PROPERTY_MIME_TYPE);
+                if (mimeTypeProperty != null) {
+                    mimeType = mimeTypeProperty.getString();
+                }
+            }
+            if (lastModified <= 0) {
+                lastModified = childFiles[i].lastModified();
+            }
+
+            children[i] = new NodeInfo(childName, childPath, isCollection ? NodeType.COLLECTION : NodeType.RESOURCE, isCollection ? 0 : childFiles[i].length(), lastModified, mimeType);
+        }
+        return children;
+    }
+
     /**
      * @see org.wyona.yarep.core.Node#addNode(java.lang.String, int)
      */
     public Node addNode(String name, int type) throws RepositoryException {
+        checkWritable();
         String newPath = getPath() + "/" + name;
         if (getPath().endsWith("/")) {
             newPath = getPath() + name;
@@ -408,6 +633,7 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      * @see org.wyona.yarep.core.Node#removeProperty(java.lang.String)
      */
     public void removeProperty(String name) throws RepositoryException {
+        ensurePropertiesLoaded();
         this.properties.remove(name);
         //saveProperties();
         saveProperties(name);
@@ -415,7 +641,7 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
         try {
             if (getRepository().isAutoPropertyIndexingEnabled()) {
                 log.debug("Remove property '" + name + "' of node: " + this.getPath() + " from index.");
-                getRepository().getIndexer().removeFromIndex(this, getProperty(name));
+                getRepository().getIndexingQueue().removeFromIndex(this, getProperty(name));
             }
         } catch(Exception e) {
             log.error(e, e);
@@ -427,6 +653,7 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      */
     public void setProperty(Property property) throws RepositoryException {
         //log.debug("Set property: " + property.getName());
+        ensurePropertiesLoaded();
         this.properties.put(property.getName(), property);
         //saveProperties();
         saveProperties(property.getName());
@@ -434,13 +661,62 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
         try {
             if (getRepository().isAutoPropertyIndexingEnabled()) {
                 log.debug("Index property '" + property.getName() + "' of node: " + this.getPath());
-                getRepository().getIndexer().index(this, property);
+                getRepository().getIndexingQueue().index(this, property);
             }
         } catch(Exception e) {
             log.error(e, e);
         }
     }
 
+    /**
+     * Set several properties, whereas the meta file is written only once and the properties are indexed only once
+     * @see org.wyona.yarep.core.Node#setProperties(Property[])
+     */
+    public void setProperties(Property[] properties) throws RepositoryException {
+        if (properties.length == 0) {
+            return;
+        }
+        ensurePropertiesLoaded();
+        for (int i = 0; i < properties.length; i++) {
+            this.properties.put(properties[i].getName(), properties[i]);
+        }
+        saveProperties(properties[properties.length - 1].getName());
+
+        try {
+            if (getRepository().isAutoPropertyIndexingEnabled()) {
+                log.debug("Index " + properties.length + " properties of node: " + this.getPath());
+                // INFO: The indexer re-adds all other properties of the node to the index document, hence indexing one of the properties is sufficient
+                getRepository().getIndexingQueue().index(this, properties[properties.length - 1]);
+            }
+        } catch(Exception e) {
+            log.error(e, e);
+        }
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getProperty(java.lang.String)
+     */
+    public Property getProperty(String name) throws RepositoryException {
+        ensurePropertiesLoaded();
+        return super.getProperty(name);
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#getProperties()
+     */
+    public Property[] getProperties() throws RepositoryException {
+        ensurePropertiesLoaded();
+        return super.getProperties();
+    }
+
+    /**
+     * @see org.wyona.yarep.core.Node#hasProperty(java.lang.String)
+     */
+    public boolean hasProperty(String name) throws RepositoryException {
+        ensurePropertiesLoaded();
+        return super.hasProperty(name);
+    }
+
     /**
      * @see org.wyona.yarep.core.Node#getInputStream()
      */
@@ -451,7 +727,11 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
                     File backupAlternativeFile = new File(backupContentFile, getRepository().getAlternative());
                     File alternativeFile = new File(contentFile, getRepository().getAlternative());
 
-                    if (!alternativeFile.exists() && backupAlternativeFile.exists()) {
+                    if (getRepository().isReadOnly()) {
+                        if (!alternativeFile.isFile() && backupAlternativeFile.isFile()) {
+                            alternativeFile = backupAlternativeFile;
+                        }
+                    } else if (!alternativeFile.exists() && backupAlternativeFile.exists()) {
                         if (alternativeFile.isFile()) {
                             alternativeFile.getParentFile().mkdirs();
                             try {
@@ -467,14 +747,18 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
                         return new FileInputStream(alternativeFile);
                     } else {
                         log.warn("Is Collection (" + contentFile + ") and no alternative File exists (" + alternativeFile + "), hence return directory listing as XHTML...");
-                        return new java.io.StringBufferInputStream(getDirectoryListing(contentFile, getRepository().getDirListingMimeType()));
+                        return new java.io.StringBufferInputStream(getDirectoryListing(getReadableContentFile(), getRepository().getDirListingMimeType()));
                     }
                 } else {
                     log.warn("Is Collection: " + contentFile);
-                    return new java.io.StringBufferInputStream(getDirectoryListing(contentFile, getRepository().getDirListingMimeType()));
+                    return new java.io.StringBufferInputStream(getDirectoryListing(getReadableContentFile(), getRepository().getDirListingMimeType()));
                 }
             } else {
-                if (!contentFile.exists() && backupContentFile.exists()) {
+                if (getRepository().isReadOnly()) {
+                    return new FileInputStream(getReadableContentFile());
+                }
+
+                if (!contentFile.exists() && !getRepository().isSplitPathMigrationComplete() && backupContentFile.exists()) {
                     log.warn("Not-splitted-yet file exists, hence copying file " + backupContentFile.getAbsolutePath() + " to " + contentFile.getAbsolutePath());
                     contentFile.getParentFile().mkdirs();
                     try {
@@ -504,6 +788,7 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      * @see org.wyona.yarep.core.Node#getOutputStream()
      */
     public OutputStream getOutputStream() throws RepositoryException {
+        checkWritable();
         try {
             if (isCollection()) {
                 if (getRepository().getAlternative() != null) {
@@ -563,11 +848,13 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
             throw new NodeStateException("Node " + path + " is not checked out.");
         }
 
-        Revision revision = createRevision(comment, time);
+        List properties = new ArrayList();
+        Revision revision = createRevision(comment, time, properties);
         
-        setProperty(PROPERTY_IS_CHECKED_OUT, false);
-        setProperty(PROPERTY_CHECKIN_DATE, new Date(time));
-        setProperty(PROPERTY_LAST_MODIFIED, time); // INFO: Overwrite createMetaFile()
+        properties.add(createProperty(PROPERTY_IS_CHECKED_OUT, false));
+        properties.add(createProperty(PROPERTY_CHECKIN_DATE, new Date(time)));
+        properties.add(createProperty(PROPERTY_LAST_MODIFIED, time)); // INFO: Overwrite createMetaFile()
+        setProperties((Property[]) properties.toArray(new Property[properties.size()]));
         
         return revision;
     }
@@ -580,8 +867,10 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
             throw new NodeStateException("Node " + path + " is not checked out.");
         }
         
-        setProperty(PROPERTY_IS_CHECKED_OUT, false);
-        setProperty(PROPERTY_CHECKIN_DATE, new Date());
+        setProperties(new Property[] {
+            createProperty(PROPERTY_IS_CHECKED_OUT, false),
+            createProperty(PROPERTY_CHECKIN_DATE, new Date())
+        });
     }
 
     /**
@@ -589,7 +878,7 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      */
     @Override
     public boolean isCheckedOut() throws RepositoryException {
-        readProperties(); // INFO: Make sure to re-read properties from persistent repository, because otherwise another synchronized methods like for example checkout(String) do not really make sense!
+        loadProperties(); // INFO: Make sure to re-read properties from persistent repository, because otherwise another synchronized methods like for example checkout(String) do not really make sense!
         return super.isCheckedOut();
     }
 
@@ -598,7 +887,7 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      */
     public void checkout(String userID) throws NodeStateException, RepositoryException {
         log.info("Try to checkout node '" + getPath() + "' by user '" + userID + "'.");
-        synchronized("virtual-file-system-node") {
+        synchronized(META_FILE_LOCKS.getLock(this.metaFile)) {
             if (isCheckedOut()) {
                 throw new NodeStateException("Node " + path + " is already checked out by: " + getCheckoutUserID());
             }
@@ -617,9 +906,11 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
             }
 */
         
-            setProperty(PROPERTY_IS_CHECKED_OUT, true);
-            setProperty(PROPERTY_CHECKOUT_USER_ID, userID);
-            setProperty(PROPERTY_CHECKOUT_DATE, new Date()); // TODO: One should be able to overwrite the checkout date similar to as the checkout method is able to do so.
+            setProperties(new Property[] {
+                createProperty(PROPERTY_IS_CHECKED_OUT, true),
+                createProperty(PROPERTY_CHECKOUT_USER_ID, userID),
+                createProperty(PROPERTY_CHECKOUT_DATE, new Date()) // TODO: One should be able to overwrite the checkout date similar to as the checkout method is able to do so.
+            });
 
             /* TBD: What is this good for and why is it commented?!
             if (getRevisions().length == 0) {
@@ -635,55 +926,430 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      * @param comment Comment re this new revision
      */
     protected Revision createRevision(String comment) throws RepositoryException {
-        return createRevision(comment, System.currentTimeMillis());
+        List properties = new ArrayList();
+        Revision revision = createRevision(comment, System.currentTimeMillis(), properties);
+        if (!properties.isEmpty()) {
+            setProperties((Property[]) properties.toArray(new Property[properties.size()]));
+        }
+        return revision;
     }
 
     /**
      * Create revision of this node for a particular time
      * @param comment Comment re this new revision
      * @param revisionTime A particular time
+     * @param nodeProperties List to which properties of this node are added which have to be set because of the new revision, such that the caller can write them together with its own modifications of the properties
      */
-    private Revision createRevision(String comment, long revisionTime) throws RepositoryException {
+    private Revision createRevision(String comment, long revisionTime, List nodeProperties) throws RepositoryException {
+        checkWritable();
         try {
             String revisionName = String.valueOf(revisionTime);
 
+            if (getRepository().getRevisionsPathType().equals(VirtualFileSystemRepository.REVISIONS_PATH_TYPE_PACK)) {
+                return createPackedRevision(comment, revisionTime, revisionName);
+            }
+
             File destContentFile = getRevisionContentFile(revisionName);
             //log.debug("Create content of revision '" + destContentFile + "' for a particular time: " + new Date(revisionTime));
-            FileUtils.copyFile(this.contentFile, destContentFile);
+            String contentStore = getRepository().getRevisionsContentStore();
+            if (contentStore.equals(VirtualFileSystemRepository.REVISIONS_CONTENT_STORE_BLOBS)) {
+                String hash = getBlobStore().add(this.contentFile, getContentHash());
+                Property contentHash = createContentHashProperty(hash);
+                if (contentHash != null) {
+                    nodeProperties.add(contentHash);
+                }
+                VirtualFileSystemRevision.writeContentReference(destContentFile.getParentFile(), hash);
+            } else if (contentStore.equals(VirtualFileSystemRepository.REVISIONS_CONTENT_STORE_DELTA)) {
+                Property latestRevision = getProperty(PROPERTY_LATEST_REVISION);
+                getDeltaStore().store(this.contentFile, revisionName, latestRevision != null ? latestRevision.getString() : null, getRepository().getRevisionsSnapshotInterval());
+            } else {
+                FileUtils.copyFile(this.contentFile, destContentFile);
+            }
         
             File destMetaFile = getRevisionMetaFile(revisionName);
             //log.debug("Create meta of revision '" + destMetaFile + "' for a particular time: " + new Date(revisionTime));
             FileUtils.copyFile(this.metaFile, destMetaFile);
         
-            Revision revision = new VirtualFileSystemRevision(this, revisionName);
-            revision.setProperty(PROPERTY_IS_CHECKED_OUT, false);
-            ((VirtualFileSystemRevision)revision).setCreationDate(new Date(revisionTime));
-            ((VirtualFileSystemRevision)revision).setCreator(getCheckoutUserID());
-            ((VirtualFileSystemRevision)revision).setComment(comment);
+            VirtualFileSystemRevision revision = new VirtualFileSystemRevision(this, revisionName);
+            revision.setPropertiesOfNewRevision(new Property[] {
+                revision.createProperty(PROPERTY_IS_CHECKED_OUT, false),
+                revision.createProperty(VirtualFileSystemRevision.PROPERTY_REVISION_CREATION_DATE, new Date(revisionTime)),
+                revision.createProperty(VirtualFileSystemRevision.PROPERTY_REVISION_CREATOR, getCheckoutUserID()),
+                revision.createProperty(VirtualFileSystemRevision.PROPERTY_REVISION_COMMENT, comment)
+            });
+
+            revisionCreated(revision, revisionTime);
+
+            if (contentStore.equals(VirtualFileSystemRepository.REVISIONS_CONTENT_STORE_DELTA)) {
+                nodeProperties.add(createProperty(PROPERTY_LATEST_REVISION, revisionName));
+            }
 
-            if (areRevisionsRead) {
-                this.revisions.put(revisionName, revision);
+            return revision;
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            throw new RepositoryException(e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Create revision of this node within the revision pack of this node (see RevisionPack), whereas the properties of the revision are written together with the content, such that only one append is necessary
+     * @param comment Comment re this new revision
+     * @param revisionTime A particular time
+     * @param revisionName Name of new revision
+     */
+    private Revision createPackedRevision(String comment, long revisionTime, String revisionName) throws IOException, RepositoryException {
+        ensurePropertiesLoaded();
+        HashMap revisionProperties = new HashMap(this.properties);
+        Property[] properties = new Property[] {
+            createProperty(PROPERTY_IS_CHECKED_OUT, false),
+            createProperty(VirtualFileSystemRevision.PROPERTY_REVISION_CREATION_DATE, new Date(revisionTime)),
+            createProperty(VirtualFileSystemRevision.PROPERTY_REVISION_CREATOR, getCheckoutUserID()),
+            createProperty(VirtualFileSystemRevision.PROPERTY_REVISION_COMMENT, comment)
+        };
+        for (int i = 0; i < properties.length; i++) {
+            revisionProperties.put(properties[i].getName(), properties[i]);
+        }
+        ByteArrayOutputStream meta = new ByteArrayOutputStream();
+        VirtualFileSystemMetaFile.write(meta, revisionProperties);
+
+        InputStream in = new FileInputStream(this.contentFile);
+        try {
+            getRevisionPack().add(revisionName, in, meta.toByteArray());
+        } finally {
+            in.close();
+        }
+
+        VirtualFileSystemRevision revision = new VirtualFileSystemRevision(this, revisionName);
+        revisionCreated(revision, revisionTime);
+        return revision;
+    }
+
+    /**
+     * Add a new revision to the date index and update the total number of revisions and the revision statistics
+     * @param revision New revision
+     * @param revisionTime Creation date of new revision
+     */
+    private void revisionCreated(Revision revision, long revisionTime) throws RepositoryException {
+        String revisionName = revision.getRevisionName();
+        if (areRevisionsRead) {
+            this.revisions.put(revisionName, revision);
+        }
+
+        DateIndexerSearcher dis = getDateIndexerSearcher();
+        try {
+            dis.addRevision(revisionName);
+        } catch(Exception e) {
+            log.error(e, e);
+        }
+
+        if (hasProperty(PROPERTY_TOTAL_NUMBER_OF_REVISIONS)) {
+            long currentTotal = getProperty(PROPERTY_TOTAL_NUMBER_OF_REVISIONS).getLong();
+            setProperty(PROPERTY_TOTAL_NUMBER_OF_REVISIONS, currentTotal + 1);
+        }
+
+        updateRevisionStatistics(this.contentFile.length(), revisionTime);
+
+        synchronized(RevisionCatalog.getLock(this.metaDir)) {
+            if (RevisionCatalog.exists(this.metaDir)) { // INFO: Otherwise the catalog will be built the next time it is read
+                try {
+                    RevisionCatalog.add(this.metaDir, RevisionInfo.create(this, revision));
+                } catch (IOException e) {
+                    log.error(e, e);
+                    RevisionCatalog.delete(this.metaDir);
+                }
+            }
+        }
+        if (revision.hasTag()) { // INFO: For example the tag of a restored revision is copied to the next revision
+            updateRevisionTagIndex(revisionName, revision.getTag());
+        }
+    }
+
+    /**
+     * Get name, creation date, creator, comment and tag of all revisions by reading the revision catalog of this node (see RevisionCatalog), whereas the most recent revision comes first
+     */
+    public RevisionInfo[] getRevisionInfos() throws RepositoryException {
+        return getRevisionInfos(0, -1);
+    }
+
+    /**
+     * Get name, creation date, creator, comment and tag of revisions by reading the revision catalog of this node (see RevisionCatalog), whereas the most recent revision comes first.
+     * The catalog is built once by reading all revisions if it does not exist yet (e.g. for revisions created by a previous version).
+     * @param offset Number of most recent revisions which are skipped
+     * @param limit Maximum number of revisions or -1 for all revisions
+     */
+    public RevisionInfo[] getRevisionInfos(int offset, int limit) throws RepositoryException {
+        RevisionInfo[] sorted = null;
+        synchronized(RevisionCatalog.getLock(this.metaDir)) {
+            try {
+                sorted = RevisionCatalog.readSorted(this.metaDir);
+            } catch (IOException e) {
+                log.error("Revision catalog of '" + getPath() + "' cannot be read and will be built again: " + e.getMessage(), e);
+            }
+            if (sorted == null) {
+                log.warn("Revision catalog of '" + getPath() + "' is built by reading all revisions, which should happen only once per node.");
+                Revision[] revisions = getRevisions();
+                List infos = new ArrayList(revisions.length);
+                for (int i = 0; i < revisions.length; i++) {
+                    // INFO: The cached revisions might have been modified by other instances in the meantime, hence the meta files are read again
+                    infos.add(RevisionInfo.create(this, new VirtualFileSystemRevision(this, revisions[i].getRevisionName())));
+                }
+                if (!getRepository().isReadOnly()) {
+                    try {
+                        RevisionCatalog.write(this.metaDir, infos);
+                    } catch (IOException e) {
+                        log.error(e, e);
+                    }
+                }
+                sorted = RevisionCatalog.sort(infos);
             }
+        }
 
-            DateIndexerSearcher dis = getDateIndexerSearcher();
+        int from = Math.min(Math.max(offset, 0), sorted.length);
+        int to = limit < 0 ? sorted.length : Math.min(from + limit, sorted.length);
+        RevisionInfo[] page = new RevisionInfo[to - from];
+        for (int i = 0; i < page.length; i++) {
+            page[i] = sorted[from + i].forNode(this);
+        }
+        return page;
+    }
+
+    /**
+     * Update the revision catalog after properties of a revision have been modified
+     * @param revision Modified revision
+     */
+    void revisionModified(Revision revision) throws RepositoryException {
+        synchronized(RevisionCatalog.getLock(this.metaDir)) {
+            try {
+                RevisionCatalog.replace(this.metaDir, revision.getRevisionName(), RevisionInfo.create(this, revision));
+            } catch (IOException e) {
+                log.error(e, e);
+                RevisionCatalog.delete(this.metaDir);
+            }
+        }
+        updateRevisionTagIndex(revision.getRevisionName(), revision.getTag());
+    }
+
+    /**
+     * Set or remove the tag of a revision within the tag index of this node
+     * @param revisionName Name of revision
+     * @param tag Tag of revision or null if revision has no tag (anymore)
+     */
+    private void updateRevisionTagIndex(String revisionName, String tag) {
+        synchronized(RevisionTagIndex.getLock(this.metaDir)) {
             try {
-                dis.addRevision(revisionName);
-            } catch(Exception e) {
+                RevisionTagIndex.update(this.metaDir, revisionName, tag);
+            } catch (IOException e) {
                 log.error(e, e);
+                RevisionTagIndex.delete(this.metaDir);
             }
+        }
+    }
 
-            if (hasProperty(PROPERTY_TOTAL_NUMBER_OF_REVISIONS)) {
-                long currentTotal = getProperty(PROPERTY_TOTAL_NUMBER_OF_REVISIONS).getLong();
-                setProperty(PROPERTY_TOTAL_NUMBER_OF_REVISIONS, currentTotal + 1);
+    /**
+     * Get name of the oldest revision with a particular tag by reading the tag index of this node (see RevisionTagIndex), whereas the index is built from the revision catalog if it does not exist yet
+     * @param tag Tag of revision
+     * @return Name of revision or null if no revision has this tag
+     */
+    private String getRevisionNameByTag(String tag) throws RepositoryException {
+        synchronized(RevisionTagIndex.getLock(this.metaDir)) {
+            List entries = null;
+            try {
+                entries = RevisionTagIndex.read(this.metaDir);
+            } catch (IOException e) {
+                log.error("Tag index of '" + getPath() + "' cannot be read and will be built again: " + e.getMessage(), e);
+            }
+            if (entries == null) {
+                RevisionInfo[] infos = getRevisionInfos();
+                entries = new ArrayList();
+                for (int i = 0; i < infos.length; i++) {
+                    if (infos[i].hasTag()) {
+                        entries.add(new String[] {infos[i].getRevisionName(), infos[i].getTag()});
+                    }
+                }
+                if (!getRepository().isReadOnly()) {
+                    try {
+                        RevisionTagIndex.write(this.metaDir, entries);
+                    } catch (IOException e) {
+                        log.error(e, e);
+                    }
+                }
             }
+            return RevisionTagIndex.getRevisionName(entries, tag);
+        }
+    }
 
-            return revision;
+    /**
+     * Get statistics of the revisions of this node, which are maintained when revisions are created or deleted and which are computed once if they do not exist yet (e.g. for revisions created by a previous version)
+     */
+    public RevisionStatistics getRevisionStatistics() throws RepositoryException {
+        try {
+            RevisionStatistics stats = RevisionStatistics.read(this.metaDir);
+            if (stats != null) {
+                return stats;
+            }
         } catch (IOException e) {
-            log.error(e.getMessage(), e);
-            throw new RepositoryException(e.getMessage(), e);
+            log.error(e, e);
         }
+        if (getRepository().isReadOnly()) {
+            return computeRevisionStatistics();
+        }
+        return recomputeRevisionStatistics();
     }
-    
+
+    /**
+     * Compute statistics of the revisions of this node by reading all revisions and replace the existing statistics
+     */
+    public RevisionStatistics recomputeRevisionStatistics() throws RepositoryException {
+        checkWritable();
+        synchronized(RevisionStatistics.getLock(this.metaDir)) {
+            RevisionStatistics stats = computeRevisionStatistics();
+            try {
+                stats.write(this.metaDir);
+            } catch (IOException e) {
+                log.error(e, e);
+                throw new RepositoryException(e.getMessage(), e);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Compute statistics of the revisions of this node by reading all revisions
+     */
+    private RevisionStatistics computeRevisionStatistics() throws RepositoryException {
+        log.warn("Statistics of the revisions of '" + getPath() + "' are computed by reading all revisions, which should happen only once per node.");
+        Revision[] revisions = getRevisions();
+        RevisionStatistics stats = RevisionStatistics.EMPTY;
+        for (int i = 0; i < revisions.length; i++) {
+            stats = stats.add(revisions[i].getSize(), revisions[i].getCreationDate().getTime());
+        }
+        return stats;
+    }
+
+    /**
+     * Update revision statistics after a revision has been created
+     * @param size Size of the content of the new revision
+     * @param revisionTime Creation date of the new revision
+     */
+    private void updateRevisionStatistics(long size, long revisionTime) throws RepositoryException {
+        synchronized(RevisionStatistics.getLock(this.metaDir)) {
+            try {
+                RevisionStatistics stats = RevisionStatistics.read(this.metaDir);
+                if (stats == null) {
+                    return; // INFO: The statistics will be computed the next time they are read (see getRevisionStatistics()), such that a checkin does not read all revisions
+                }
+                stats.add(size, revisionTime).write(this.metaDir);
+            } catch (IOException e) {
+                log.error(e, e);
+                throw new RepositoryException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Update revision statistics and revision catalog after a revision has been deleted
+     * @param revisionName Name of the deleted revision
+     * @param size Size of the content of the deleted revision
+     * @param dis Date index from which the revision has been deleted already
+     */
+    void revisionDeleted(String revisionName, long size, DateIndexerSearcher dis) throws RepositoryException {
+        synchronized(RevisionCatalog.getLock(this.metaDir)) {
+            try {
+                RevisionCatalog.replace(this.metaDir, revisionName, null);
+            } catch (IOException e) {
+                log.error(e, e);
+                RevisionCatalog.delete(this.metaDir);
+            }
+        }
+        updateRevisionTagIndex(revisionName, null);
+
+        synchronized(RevisionStatistics.getLock(this.metaDir)) {
+            try {
+                RevisionStatistics stats = RevisionStatistics.read(this.metaDir);
+                if (stats == null) {
+                    return; // INFO: The statistics will be computed the next time they are read
+                }
+                if (dis.indexExists()) {
+                    Revision oldest = dis.getOldestRevision();
+                    Revision newest = dis.getMostRecentRevision();
+                    stats = stats.remove(size, oldest != null ? oldest.getCreationDate().getTime() : -1, newest != null ? newest.getCreationDate().getTime() : -1);
+                } else {
+                    stats = computeRevisionStatistics();
+                }
+                stats.write(this.metaDir);
+            } catch (IOException e) {
+                log.error(e, e);
+                throw new RepositoryException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Get pack containing the revisions of this node (see revisions path type 'pack')
+     */
+    RevisionPack getRevisionPack() {
+        return new RevisionPack(getMetaDir(getRepository(), this.uuid));
+    }
+
+    /**
+     * Get store containing the (deduplicated) contents of the revisions of this node
+     */
+    RevisionBlobStore getBlobStore() {
+        return new RevisionBlobStore(getMetaDir(getRepository(), this.uuid));
+    }
+
+    /**
+     * Get store containing the contents of the revisions of this node as deltas
+     */
+    RevisionDeltaStore getDeltaStore() {
+        return new RevisionDeltaStore(getRepository(), getMetaDir(getRepository(), this.uuid));
+    }
+
+    /**
+     * Get SHA-256 hash of content, whereas the hash is only calculated if the content has been modified since the hash has been stored the last time (see createContentHashProperty(String))
+     */
+    private String getContentHash() throws IOException, RepositoryException {
+        String hash = getStoredContentHash();
+        if (hash != null) {
+            return hash;
+        }
+        return RevisionBlobStore.hash(this.contentFile);
+    }
+
+    /**
+     * Get SHA-256 hash of content without reading the content, i.e. if the hash has been stored for the current state of the content (see createContentHashProperty(String)), e.g. in order to identify the content within a cache
+     * @return Hash as lower case hex string or null if no hash has been stored for the current state of the content
+     */
+    public String getStoredContentHash() throws RepositoryException {
+        Property property = getProperty(PROPERTY_CONTENT_HASH);
+        String state = getContentState();
+        if (property != null && property.getString() != null && property.getString().startsWith(state)) {
+            return property.getString().substring(state.length());
+        }
+        return null;
+    }
+
+    /**
+     * Create property in order to store the hash of the content together with the state of the content (last modified date and size), such that the hash does not have to be calculated again as long as the content is not modified
+     * @param hash SHA-256 hash of content
+     * @return Property or null if the hash is stored already or if the content has been modified too recently, such that a further modification might not change the last modified date
+     */
+    private Property createContentHashProperty(String hash) throws RepositoryException {
+        String value = getContentState() + hash;
+        Property property = getProperty(PROPERTY_CONTENT_HASH);
+        if ((property != null && value.equals(property.getString())) || System.currentTimeMillis() - this.contentFile.lastModified() <= MIN_CONTENT_AGE_FOR_HASH) {
+            return null;
+        }
+        return createProperty(PROPERTY_CONTENT_HASH, value);
+    }
+
+    /**
+     *
+     */
+    private String getContentState() {
+        return this.contentFile.lastModified() + ":" + this.contentFile.length() + ":";
+    }
+
     /**
      * Read revisions into memory
      */
@@ -707,6 +1373,18 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
 
         readRevisionsFromSplittedDirectories();
 
+        try {
+            String[] packedRevisionNames = getRevisionPack().getRevisionNames();
+            for (int i = 0; i < packedRevisionNames.length; i++) {
+                if (!this.revisions.containsKey(packedRevisionNames[i])) {
+                    this.revisions.put(packedRevisionNames[i], new VirtualFileSystemRevision(this, packedRevisionNames[i]));
+                }
+            }
+        } catch (IOException e) {
+            log.error(e, e);
+            throw new RepositoryException(e.getMessage(), e);
+        }
+
         areRevisionsRead = true;
     }
     
@@ -714,19 +1392,81 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      * @see org.wyona.yarep.core.Node#restore(java.lang.String)
      */
     public void restore(String revisionName) throws NoSuchRevisionException, RepositoryException {
+        checkWritable();
         try {
             File srcContentFile = getRevisionContentFile(revisionName);
-            FileUtils.copyFile(srcContentFile, this.contentFile);
+            RevisionPack.Entry packEntry = null;
+            if (!VirtualFileSystemRevision.isRevisionDir(srcContentFile.getParentFile())) {
+                packEntry = getRevisionPack().get(revisionName);
+            }
+            if (packEntry != null) {
+                InputStream in = getRevisionPack().getContent(packEntry);
+                OutputStream out = new FileOutputStream(this.contentFile);
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    out.close();
+                    in.close();
+                }
+                restoreProperties(new BufferedInputStream(new ByteArrayInputStream(getRevisionPack().getMeta(packEntry))), getRevisionPack() + "#" + revisionName);
+                return;
+            }
+
+            String hash = VirtualFileSystemRevision.readContentReference(srcContentFile.getParentFile());
+            if (hash != null) {
+                if (this.contentFile.isFile() && hash.equals(getContentHash())) {
+                    log.debug("Content of node '" + getPath() + "' is equal to content of revision '" + revisionName + "', hence only the meta data is restored.");
+                } else {
+                    FileUtils.copyFile(getBlobStore().getBlobFile(hash), this.contentFile);
+                }
+            } else if (RevisionDeltaStore.isDelta(srcContentFile.getParentFile())) {
+                InputStream in = getDeltaStore().getInputStream(revisionName);
+                OutputStream out = new FileOutputStream(this.contentFile);
+                try {
+                    IOUtils.copy(in, out);
+                } finally {
+                    out.close();
+                    in.close();
+                }
+            } else {
+                FileUtils.copyFile(srcContentFile, this.contentFile);
+            }
         
             File srcMetaFile = getRevisionMetaFile(revisionName);
-            FileUtils.copyFile(srcMetaFile, this.metaFile);
-            
-            setProperty(AbstractNode.PROPERTY_LAST_MODIFIED, this.contentFile.lastModified());
+            restoreProperties(new BufferedInputStream(new FileInputStream(srcMetaFile)), srcMetaFile.toString());
         } catch (IOException e) {
             log.error(e.getMessage(), e);
             throw new RepositoryException(e.getMessage(), e);
         }
     }
+
+    /**
+     * Replace the properties of this node by the properties of a revision, whereas the meta file is written like any other modification of the properties (see saveProperties(String)).
+     * The name of the latest revision is kept, because it refers to the revisions of this node and not to the state of the node (the meta file of a revision contains the name of the revision preceding it).
+     * @param in Input stream of the meta file of the revision, which supports mark/reset and which will be closed
+     * @param source Location of the meta file of the revision (used for error messages)
+     */
+    private void restoreProperties(BufferedInputStream in, String source) throws IOException, RepositoryException {
+        synchronized(META_FILE_LOCKS.getLock(this.metaFile)) {
+            ensurePropertiesLoaded();
+            Property latestRevision = (Property) this.properties.get(PROPERTY_LATEST_REVISION);
+            boolean parsed = false;
+            try {
+                parseMetaFile(in, source);
+                parsed = true;
+            } finally {
+                if (!parsed) {
+                    this.properties = null; // INFO: The meta file of this node has not been modified, hence the properties are read again when they are accessed next time
+                }
+            }
+            if (latestRevision != null) {
+                this.properties.put(PROPERTY_LATEST_REVISION, latestRevision);
+            } else {
+                this.properties.remove(PROPERTY_LATEST_REVISION);
+            }
+            setProperty(AbstractNode.PROPERTY_LAST_MODIFIED, this.contentFile.lastModified());
+        }
+    }
     
     /**
      * Filter to check whether path is a revision (e.g. '1361266662652')
@@ -758,7 +1498,7 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
             return lm;
         } else {
             //log.warn("No last modified set: " + getPath());
-            return this.contentFile.lastModified();
+            return getReadableContentFile().lastModified();
         }
     }
     
@@ -766,7 +1506,7 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      * @see org.wyona.yarep.impl.AbstractNode#getSize()
      */
     public long getSize() throws RepositoryException {
-        return this.contentFile.length();
+        return getReadableContentFile().length();
     }
 
     /**
@@ -780,9 +1520,33 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      * @see org.wyona.yarep.core.Node#delete()
      */
     public void delete() throws RepositoryException {
+        checkWritable();
         deleteRec();
     }
 
+    /**
+     * Delete content file or directory of this node
+     */
+    protected void deleteContent() throws IOException, RepositoryException {
+        if (getRepository().getMap() instanceof VFileSystemMapImpl) {
+            // INFO: The map also updates the child index of the parent collection (if enabled)
+            ((VFileSystemMapImpl) getRepository().getMap()).deleteFile(new Path(getRepository().splitPath(this.uuid)));
+        } else if (getRepository().getMap().isCollection(new Path(getPath()))) {
+            FileUtils.deleteDirectory(this.contentFile);
+        } else {
+            this.contentFile.delete();
+        }
+    }
+
+    /**
+     * Delete the revisions of this node from the date index shared by all nodes of the repository (the date index of the other implementations is located within the meta directory of the node)
+     */
+    protected void deleteFromDateIndex() throws IOException, RepositoryException {
+        if (VirtualFileSystemRepository.REVISIONS_DATE_INDEX_SHARED_LUCENE_IMPL.equals(getRepository().getRevisionsDateIndexImpl())) {
+            getRepository().getRepositoryDateIndex().deleteNode(getPath());
+        }
+    }
+
     /**
      * Delete node and its children recursively
      */
@@ -801,14 +1565,14 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
 
         try {
             log.warn("DEBUG: Delete node '" + getPath() + "' from fulltext search index...");
-            getRepository().getIndexer().removeFromIndex(this);
+            getRepository().getIndexingQueue().removeFromIndex(this);
 
             log.warn("DEBUG: Delete properties of node '" + getPath() + "' from properties search index...");
             Property[] props = getProperties();
             if (getRepository().isAutoPropertyIndexingEnabled()) {
                 for (int i = 0; i < props.length; i++) {
                     log.debug("Remove property '" + props[i].getName() + "' of node: " + getPath() + " from index.");
-                    getRepository().getIndexer().removeFromIndex(this, props[i]);
+                    getRepository().getIndexingQueue().removeFromIndex(this, props[i]);
                 }
             } else {
                 log.warn("Auto indexing of properties is disabled, hence cannot delete properties of node '" + getPath() + "' from properties index.");
@@ -819,12 +1583,12 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
 
         //boolean success = getRepository().getMap().delete(new Path(getPath()));
         try {
-            if (getRepository().getMap().isCollection(new Path(getPath()))) {
-                FileUtils.deleteDirectory(this.contentFile);
-            } else {
-                this.contentFile.delete();
-            }
+            deleteContent();
             FileUtils.deleteDirectory(this.metaDir);
+            if (getRepository().getPropertiesCache() != null) {
+                getRepository().getPropertiesCache().remove(this.metaFile);
+            }
+            deleteFromDateIndex();
             // TODO: Delete empty directories!
         } catch (IOException e) {
             throw new RepositoryException("Could not delete node: " + getPath() + ": " + e.toString(), e);
@@ -835,7 +1599,12 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      *
      */
     public int getType() throws RepositoryException {
-        if (getRepository().getMap().isCollection(new Path(path))) {
+        // INFO: The type is derived from the file system and not from the type property, such that the meta file does not need to be read
+        if (this.contentFile.isDirectory()) {
+            return NodeType.COLLECTION;
+        } else if (this.contentFile.isFile()) {
+            return NodeType.RESOURCE;
+        } else if (getRepository().getMap().isCollection(new Path(path))) { // INFO: Node has not been migrated to a splitted path yet
             return NodeType.COLLECTION;
         } else if (getRepository().getMap().isResource(new Path(path))) {
             return NodeType.RESOURCE;
@@ -918,6 +1687,9 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
                     //log.warn("No revision found for node '" + path + "' and point in time '" + date + "'");
                     return null;
                 }
+            } else if (getRepository().isReadOnly()) {
+                log.warn("No date index yet, but repository is read-only, hence revisions of node '" + path + "' will be searched without date index ...");
+                return getRevisionWithoutDateIndex(date);
             } else {
                 log.warn("No date index yet, hence one will be created ...");
                 dis.buildDateIndex();
@@ -925,21 +1697,30 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
             }
         } else {
             log.debug("Old implementation");
-            if(log.isDebugEnabled()) log.debug("Use vfs-repo specific implementation ...");
-            Revision[] revisions = getRevisions();
-            for (int i = revisions.length - 1; i >= 0; i--) {
-                //log.warn("DEBUG: Revison: " + revisions[i].getRevisionName());
-                //Date creationDate = new Date(Long.parseLong(revisions[i].getRevisionName())); // INFO: The name of a revision is based on System.currentTimeMillis() (see createRevision(String))
-                Date creationDate = revisions[i].getCreationDate(); // INFO: This method is slower than the above
-                if (creationDate.before(date) || creationDate.equals(date)) {
-                    if (log.isDebugEnabled()) log.debug("Revision found: " + revisions[i].getRevisionName());
-                    log.debug("Number of revisions compared: " + (i + 1));
-                    return revisions[i];
-                }
+            return getRevisionWithoutDateIndex(date);
+        }
+    }
+
+    /**
+     * Get revision for a specific date (or just before) by comparing the creation dates of all revisions, which does not scale well
+     * @param date Point in time
+     * @return Revision or null if no revision exists for the specified point in time
+     */
+    private Revision getRevisionWithoutDateIndex(Date date) throws Exception {
+        if(log.isDebugEnabled()) log.debug("Use vfs-repo specific implementation ...");
+        Revision[] revisions = getRevisions();
+        for (int i = revisions.length - 1; i >= 0; i--) {
+            //log.warn("DEBUG: Revison: " + revisions[i].getRevisionName());
+            //Date creationDate = new Date(Long.parseLong(revisions[i].getRevisionName())); // INFO: The name of a revision is based on System.currentTimeMillis() (see createRevision(String))
+            Date creationDate = revisions[i].getCreationDate(); // INFO: This method is slower than the above
+            if (creationDate.before(date) || creationDate.equals(date)) {
+                if (log.isDebugEnabled()) log.debug("Revision found: " + revisions[i].getRevisionName());
+                log.debug("Number of revisions compared: " + (i + 1));
+                return revisions[i];
             }
-            log.warn("No revision found for node '" + path + "' and point in time '" + date + "'");
-            return null;
         }
+        log.warn("No revision found for node '" + path + "' and point in time '" + date + "'");
+        return null;
     }
 
     /**
@@ -960,6 +1741,11 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
             return revisions.size();
         }
 
+        RevisionStatistics stats = RevisionStatistics.read(this.metaDir);
+        if (stats != null) {
+            return (int) stats.getNumberOfRevisions();
+        }
+
         if (hasProperty(PROPERTY_TOTAL_NUMBER_OF_REVISIONS)) {
             return (int)getProperty(PROPERTY_TOTAL_NUMBER_OF_REVISIONS).getLong();
         }
@@ -976,8 +1762,11 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
             //log.debug("Number of revision directories which are unsplitted: " + revisionDirsUnsplitted.length);
             total = total + revisionDirsUnsplitted.length;
         }
+        total = total + getRevisionPack().getRevisionNames().length;
 
-        setProperty(PROPERTY_TOTAL_NUMBER_OF_REVISIONS, total);
+        if (!getRepository().isReadOnly()) {
+            setProperty(PROPERTY_TOTAL_NUMBER_OF_REVISIONS, total);
+        }
         //log.debug("Total number of revisions of '" + getPath() + "': " + total);
 
         return total;
@@ -1009,7 +1798,7 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      * @param numberOfRevisions TODO
      */
     private int getNumberOfRevisionsFromSplittedDirectories(File dir, int numberOfRevisions) {
-        if (new File(dir, VirtualFileSystemRevision.CONTENT_FILE_NAME).isFile() && new File(dir, META_FILE_NAME).isFile()) {
+        if (VirtualFileSystemRevision.isRevisionDir(dir)) {
             return numberOfRevisions + 1;
         } else {
             File[] filesAndDirs = dir.listFiles();
@@ -1043,7 +1832,7 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      * @param unsplittedName Unsplitted revision name
      */
     private void readRevisionsFromSplittedDirectories(File dir, String unsplittedName) throws RepositoryException {
-        if (new File(dir, VirtualFileSystemRevision.CONTENT_FILE_NAME).isFile() && new File(dir, META_FILE_NAME).isFile()) {
+        if (VirtualFileSystemRevision.isRevisionDir(dir)) {
             String revisionName = unsplittedName;
             //log.debug("Add revision: " + dir.getAbsolutePath() + ", " + revisionName);
             Revision revision = new VirtualFileSystemRevision(this, revisionName);
@@ -1067,14 +1856,14 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      * @see org.wyona.yarep.core.attributes.VersionableV1#getRevisions(boolean)
      */
     public java.util.Iterator<Revision> getRevisions(boolean reverse) throws Exception {
-        return new VFSRevisionIterator(getDateIndexerSearcher(), null, reverse);
+        return new VFSRevisionIterator(getDateIndexerSearcher(), null, reverse, getRepository().getRevisionsIteratorBatchSize());
     }
 
     /**
      * @see org.wyona.yarep.core.attributes.VersionableV1#getRevisions(Date, boolean)
      */
     public java.util.Iterator<Revision> getRevisions(Date date, boolean reverse) throws Exception {
-        return new VFSRevisionIterator(getDateIndexerSearcher(), date, reverse);
+        return new VFSRevisionIterator(getDateIndexerSearcher(), date, reverse, getRepository().getRevisionsIteratorBatchSize());
     }
 
     /**
@@ -1082,7 +1871,14 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
      */
     public Revision getRevision(String revisionName) throws NoSuchRevisionException, RepositoryException {
         VirtualFileSystemRevision revision = new VirtualFileSystemRevision(this, revisionName);
-        if (!revision.contentFile.exists()) {
+        boolean exists;
+        try {
+            exists = VirtualFileSystemRevision.hasContent(revision.metaDir) || getRevisionPack().get(revisionName) != null;
+        } catch (IOException e) {
+            log.error(e, e);
+            throw new RepositoryException(e.getMessage(), e);
+        }
+        if (!exists) {
             String logMessage = "Node '" + getPath() + "' has no such revision: " + revisionName;
             //log.error(logMessage);
             throw new NoSuchRevisionException(logMessage);
@@ -1091,14 +1887,16 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
     }
 
     /**
+     * Look up the revision by the tag index of this node (see RevisionTagIndex) instead of reading all revisions
      * @see org.wyona.yarep.core.Node#getRevisionByTag(String)
      */
     @Override
     public Revision getRevisionByTag(String tag) throws NoSuchRevisionException, RepositoryException {
-        if (!areRevisionsRead) {
-            readRevisions();
+        String revisionName = getRevisionNameByTag(tag);
+        if (revisionName == null) {
+            throw new NoSuchRevisionException("Node " + getPath() + " has no revision with tag: " + tag);
         }
-        return super.getRevisionByTag(tag);
+        return getRevision(revisionName);
     }
 
     /**
@@ -1114,14 +1912,12 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
     }
 
     /**
+     * Look up the revision by the tag index of this node (see RevisionTagIndex) instead of reading all revisions
      * @see org.wyona.yarep.core.Node#hasRevisionWithTag(String)
      */
     @Override
     public boolean hasRevisionWithTag(String tag) throws RepositoryException {
-        if (!areRevisionsRead) {
-            readRevisions();
-        }
-        return super.hasRevisionWithTag(tag);
+        return getRevisionNameByTag(tag) != null;
     }
 
     /**
@@ -1225,6 +2021,33 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
         return new File(metaDirectory, REVISIONS_BASE_DIR);
     }
 
+    /**
+     * Find revision directories recursively, whereas the name of a revision is the concatenation of the directory names (flat as well as splitted revision directories)
+     * @param dir Revisions base directory or splitted revision directory
+     * @param prefix Concatenated names of parent directories (within revisions base directory)
+     * @param names Names of revisions found
+     * @param dirs Directories of revisions found
+     */
+    static void findRevisionDirs(File dir, String prefix, List names, List dirs) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (int i = 0; i < children.length; i++) {
+            if (!children[i].isDirectory() || !children[i].getName().matches("[0-9]+")) {
+                continue;
+            }
+            String name = prefix + children[i].getName();
+            if (VirtualFileSystemRevision.isRevisionDir(children[i])) {
+                names.add(name);
+                dirs.add(children[i]);
+            } else {
+                findRevisionDirs(children[i], name, names, dirs);
+            }
+        }
+    }
+
     /**
      * Get directory of a particular revision
      * @param revisionName Name/ID of revision, e.g. '1171842541025'
@@ -1267,6 +2090,10 @@ public class VirtualFileSystemNode extends AbstractNode implements VersionableV1
             return new DateIndexerSearcherImplV1(getPath(), this.metaDir, getRepository());
         } else if (getRepository().getRevisionsDateIndexImpl().equals(VirtualFileSystemRepository.REVISIONS_DATE_INDEX_LUCENE_IMPL)) {
             return new DateIndexerSearcherImplV2(this, this.metaDir);
+        } else if (getRepository().getRevisionsDateIndexImpl().equals(VirtualFileSystemRepository.REVISIONS_DATE_INDEX_TIMELINE_IMPL)) {
+            return new DateIndexerSearcherImplV3(getPath(), this.metaDir, getRepository());
+        } else if (getRepository().getRevisionsDateIndexImpl().equals(VirtualFileSystemRepository.REVISIONS_DATE_INDEX_SHARED_LUCENE_IMPL)) {
+            return new DateIndexerSearcherImplV4(getPath(), getRepository().getRepositoryDateIndex(), getRepository());
         } else {
             log.error("No such revisions date index implementation '" + getRepository().getRevisionsDateIndexImpl() + "'!");
             return null;
@@ -70,7 +70,7 @@ public class VirtualFileSystemOutputStream extends OutputStream {
             
             if(vfsRepo.isAutoFulltextIndexingEnabled()) {
                 log.debug("Auto fulltext indexing enabled ...");
-                vfsRepo.getIndexer().index(node);
+                vfsRepo.getIndexingQueue().index(node);
             }
         } catch (Exception e) {
             log.error(e, e);
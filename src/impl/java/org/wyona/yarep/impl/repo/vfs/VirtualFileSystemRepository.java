@@ -49,14 +49,17 @@ import org.wyona.yarep.core.search.Searcher;
  * <br/><br/>
  * Repository configuration:
  * <pre>
- * &lt;repository class="org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository"&gt;
+ * &lt;repository class="org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository" read-only="false"&gt;
  *   &lt;name&gt;Test Repository&lt;/name&gt;
- *   &lt;content src="data"/&gt;
- *   &lt;meta src="yarep-data" revisions-path-type="splitted" revisions-date-index-impl="directory"/&gt;
+ *   &lt;content src="data" child-index="false"/&gt;
+ *   &lt;properties-cache max-entries="1000"/&gt;
+ *   &lt;meta src="yarep-data" revisions-path-type="splitted" revisions-date-index-impl="directory" revisions-content-store="copy" revisions-snapshot-interval="10" meta-file-version="2.0"/&gt;
+ *   &lt;revisions-retention interval="86400"&gt;&lt;policy path="/" keep-last="10" keep-daily-after-days="30"/&gt;&lt;/revisions-retention&gt;
  *     &lt;s:search-index xmlns:s="http://www.wyona.org/yarep/search/2.0" indexer-class="org.wyona.yarep.impl.search.lucene.LuceneIndexer" searcher-class="org.wyona.yarep.impl.search.lucene.LuceneSearcher">
  *       &lt;index-location file="index"/>
  *       &lt;repo-auto-index-fulltext boolean="true"/>
  *       &lt;repo-auto-index-properties boolean="true"/>
+ *       &lt;async-indexing workers="2" max-pending="1000"/>
  *       &lt;lucene>
  *         &lt;!-- The element 'local-tika-config' attribute 'file' is used to patch the default tika config -->
  *         &lt;local-tika-config file="tika-config.xml"/>
@@ -74,10 +77,28 @@ import org.wyona.yarep.core.search.Searcher;
  * </pre>
  * Explanation:
  * <ul>
+ *   <li>read-only (optional attribute, default=false): if true, then nothing is written to the file system, neither by reading (no meta files are created and nodes at not splitted locations are not copied to the splitted locations) nor by writing (all modifications fail with a RepositoryException)</li>
  *   <li>name: name of the repository</li>
- *   <li>content: path to the content directory, absolute or relative to the repo config file</li>
+ *   <li>content: path to the content directory, absolute or relative to the repo config file.<br/>
+ *                        The attribute child-index (optional, default=false) enables a sorted index of the children per collection, such that a page of children (see Node#getNodes(int, int)) can be read without listing all children of the collection. The index of a collection is stored within the meta directory of the collection (see VFileSystemMapImpl#setChildIndexDir(File)) and is rewritten whenever a child is created or deleted. The index is not used if split path is enabled (see &lt;splitpath&gt;).</li>
  *   <li>meta (optional): path to the meta directory. If this element is omitted, the meta data
- *                        will be written into the content directory.</li>
+ *                        will be written into the content directory.<br/>
+ *                        The attribute meta-file-version (optional) sets the format in which meta files are written: 2.0 (binary, default) or 1.0 (text).
+ *                        Both formats are always read, whereas existing meta files are converted to the configured format the first time they are written.<br/>
+ *                        The attribute revisions-content-store (optional) sets how the content of a new revision is stored: copy (a copy per revision, default) blobs (each distinct content is stored once per node and referenced by its SHA-256 hash, see RevisionBlobStore)
+ *                        or delta (binary delta against the previous revision and a full snapshot every revisions-snapshot-interval revisions (default=10), see RevisionDeltaStore).<br/>
+ *                        The attribute revisions-path-type (optional) sets where new revisions are stored: splitted (one directory per revision, split into sub-directories, default), flat (one directory per revision)
+ *                        or pack (one append-only pack file plus index per node, see RevisionPack, whose pack file is not compacted when revisions are deleted, but only deleted together with the last revision), whereas revisions-content-store only applies to the directory layouts. Revisions are read from all layouts independent of this setting and existing revision directories can be converted with RevisionPackConverter.<br/>
+ *                        The attribute revisions-date-index-impl (optional) sets how the revisions of a node are indexed by creation date: directory (one directory per year, month, day, etc., default, see DateIndexerSearcherImplV1),
+ *                        lucene (one lucene index per node, see DateIndexerSearcherImplV2), timeline (one binary file per node, see DateIndexerSearcherImplV3)
+ *                        or lucene-shared (one lucene index per repository within the directory '.revisions-date-index' of the meta directory, which is kept open until the repository is closed, see DateIndexerSearcherImplV4).<br/>
+ *                        The attribute revisions-iterator-batch-size (optional, default=100) sets how many revisions are fetched at once from the date index when iterating through the revisions of a node (see VFSRevisionIterator).</li>
+ *   <li>splitpath (optional): split paths into sub-directories (depth, length, escape, include/path), whereas resources at the not splitted location are still found (dual lookup),
+ *                        unless the attribute migration-complete is set to true (see SplitPathMigrator)</li>
+ *   <li>properties-cache (optional): cache the properties of the most recently read nodes and revisions (max-entries, default=1000).
+ *                        A cached entry is used as long as the last modified date and the size of the meta file did not change.</li>
+ *   <li>revisions-retention (optional): retention policies of revisions (see RevisionRetentionPolicy), whereas one policy element per path prefix (path, keep-last, keep-daily-after-days, keep-tagged) and the policy with the longest matching path applies.
+ *                        If the attribute interval (in seconds) is set, then the revisions which are not kept are deleted periodically within a background thread (see RevisionPruner), whereas the thread pauses (pause, default=100 milliseconds) after every batch (batch-size, default=100) of deleted revisions.</li>
  *   <li>(deprecated) search-index (optional): enable indexing/searching of repository content<br/>
  *     Attributes:
  *     <ul>
@@ -96,6 +117,7 @@ import org.wyona.yarep.core.search.Searcher;
  *       <li>index-location/file: file location of index</li>
  *       <li>index-fulltext/boolean (true/false): indexing of fulltext</li>
  *       <li>index-properties/boolean (true/false): indexing of properties</li>
+ *       <li>async-indexing (optional): index modified nodes within background threads (workers, default=2) instead of the thread which modified a node, whereas at most max-pending (default=1000) nodes are waiting to be indexed (see IndexingQueue)</li>
  *     </ul>
  *   </li>
  * </ul>
@@ -123,14 +145,36 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
     private boolean isPropertyIndexingEnabled = false;
     private Indexer indexer = null;
     private Searcher searcher = null;
+    private IndexingQueue indexingQueue = null;
 
     private String revisionsPathType;
     static final String REVISIONS_PATH_TYPE_SPLITTED = "splitted";
     static final String REVISIONS_PATH_TYPE_FLAT = "flat";
+    static final String REVISIONS_PATH_TYPE_PACK = "pack";
 
     private String revisionsDateIndexImpl;
     static final String REVISIONS_DATE_INDEX_DIRECTORY_IMPL = "directory";
     static final String REVISIONS_DATE_INDEX_LUCENE_IMPL = "lucene";
+    static final String REVISIONS_DATE_INDEX_TIMELINE_IMPL = "timeline";
+    static final String REVISIONS_DATE_INDEX_SHARED_LUCENE_IMPL = "lucene-shared";
+    private RepositoryDateIndex repositoryDateIndex;
+
+    private RevisionRetentionPolicy[] revisionRetentionPolicies = new RevisionRetentionPolicy[0];
+    private java.util.concurrent.ScheduledExecutorService revisionPrunerExecutor;
+    private static final long REVISION_PRUNER_SHUTDOWN_TIMEOUT = 30; // INFO: In seconds
+
+    private String metaFileVersion = VirtualFileSystemMetaFile.VERSION_BINARY;
+
+    private String revisionsContentStore = REVISIONS_CONTENT_STORE_COPY;
+    static final String REVISIONS_CONTENT_STORE_COPY = "copy";
+    static final String REVISIONS_CONTENT_STORE_BLOBS = "blobs";
+    static final String REVISIONS_CONTENT_STORE_DELTA = "delta";
+    private int revisionsSnapshotInterval = 10;
+    private int revisionsIteratorBatchSize = VFSRevisionIterator.DEFAULT_BATCH_SIZE;
+
+    private PropertiesCache propertiesCache = null;
+
+    private boolean readOnly = false;
 
     // Configuration parameters of the <splitpath ...> element
     private boolean splitPathEnabled = false;
@@ -139,6 +183,7 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
     private String DEFAULT_DUMMY_SEPARATOR_VALUE = "-";
     private String dummySeparator = DEFAULT_DUMMY_SEPARATOR_VALUE;
     private String[] includepaths = {};
+    private boolean splitPathMigrationComplete = false;
     
     /**
      *
@@ -168,6 +213,11 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
 
             name = config.getChild("name", false).getValue();
 
+            readOnly = config.getAttributeAsBoolean("read-only", false);
+            if (readOnly) {
+                log.info("Repository '" + name + "' is read-only.");
+            }
+
             this.contentDir = new File(config.getChild("content", false).getAttribute("src"));
             
             if (!this.contentDir.isAbsolute()) {
@@ -179,11 +229,28 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
             map = (Map) Class.forName("org.wyona.yarep.impl.VFileSystemMapImpl").newInstance();
             ((org.wyona.yarep.impl.VFileSystemMapImpl) map).setPathsDir(contentDir, configFile);
             ((org.wyona.yarep.impl.VFileSystemMapImpl) map).setIgnorePatterns(config.getChild("content", false).getChildren("ignore"));
+            ((org.wyona.yarep.impl.VFileSystemMapImpl) map).setChildIndexEnabled(config.getChild("content", false).getAttributeAsBoolean("child-index", false));
 
             Configuration metaDirConfig = config.getChild("meta", false);
             if (metaDirConfig != null) {
                 this.revisionsPathType = metaDirConfig.getAttribute("revisions-path-type", REVISIONS_PATH_TYPE_SPLITTED);
                 this.revisionsDateIndexImpl = metaDirConfig.getAttribute("revisions-date-index-impl", REVISIONS_DATE_INDEX_DIRECTORY_IMPL);
+                this.metaFileVersion = metaDirConfig.getAttribute("meta-file-version", VirtualFileSystemMetaFile.VERSION_BINARY);
+                if (!this.metaFileVersion.equals(VirtualFileSystemMetaFile.VERSION_BINARY) && !this.metaFileVersion.equals(VirtualFileSystemMetaFile.VERSION_TEXT)) {
+                    throw new RepositoryException("No such vfs meta file version supported: " + this.metaFileVersion);
+                }
+                this.revisionsContentStore = metaDirConfig.getAttribute("revisions-content-store", REVISIONS_CONTENT_STORE_COPY);
+                if (!this.revisionsContentStore.equals(REVISIONS_CONTENT_STORE_COPY) && !this.revisionsContentStore.equals(REVISIONS_CONTENT_STORE_BLOBS) && !this.revisionsContentStore.equals(REVISIONS_CONTENT_STORE_DELTA)) {
+                    throw new RepositoryException("No such revisions content store supported: " + this.revisionsContentStore);
+                }
+                this.revisionsSnapshotInterval = metaDirConfig.getAttributeAsInteger("revisions-snapshot-interval", 10);
+                if (this.revisionsSnapshotInterval < 1) {
+                    throw new RepositoryException("Revisions snapshot interval must be at least 1: " + this.revisionsSnapshotInterval);
+                }
+                this.revisionsIteratorBatchSize = metaDirConfig.getAttributeAsInteger("revisions-iterator-batch-size", VFSRevisionIterator.DEFAULT_BATCH_SIZE);
+                if (this.revisionsIteratorBatchSize < 1) {
+                    throw new RepositoryException("Revisions iterator batch size must be at least 1: " + this.revisionsIteratorBatchSize);
+                }
                 this.metaDir = new File(metaDirConfig.getAttribute("src"));
             
                 if (!this.metaDir.isAbsolute()) {
@@ -192,6 +259,16 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
 
                 log.info("Meta dir: " + this.metaDir);
             }
+            ((org.wyona.yarep.impl.VFileSystemMapImpl) map).setChildIndexDir(this.metaDir); // INFO: Keep the child indexes out of the content directory
+
+            Configuration propertiesCacheConfig = config.getChild("properties-cache", false);
+            if (propertiesCacheConfig != null) {
+                int maxEntries = propertiesCacheConfig.getAttributeAsInteger("max-entries", 1000);
+                if (maxEntries > 0) {
+                    propertiesCache = new PropertiesCache(maxEntries);
+                    log.info("Properties cache enabled (max entries: " + maxEntries + ")");
+                }
+            }
 
             Configuration directoryConfig = config.getChild("directory", false);
             if (directoryConfig != null) {
@@ -245,6 +322,7 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
                 splitlength = Integer.parseInt(length);
 
                 dummySeparator = splitConfig.getAttribute("escape", DEFAULT_DUMMY_SEPARATOR_VALUE);
+                splitPathMigrationComplete = splitConfig.getAttributeAsBoolean("migration-complete", false);
 
                 int c = splitConfig.getChildren("include").length;
                 int i = 0;
@@ -255,6 +333,33 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
                     }
                 }
             } 
+
+            Configuration retentionConfig = config.getChild("revisions-retention", false);
+            if (retentionConfig != null) {
+                Configuration[] policyConfigs = retentionConfig.getChildren("policy");
+                revisionRetentionPolicies = new RevisionRetentionPolicy[policyConfigs.length];
+                for (int k = 0; k < policyConfigs.length; k++) {
+                    int keepLast = policyConfigs[k].getAttributeAsInteger("keep-last", -1);
+                    if (keepLast == 0) {
+                        throw new RepositoryException("Number of revisions to keep must be at least 1: " + policyConfigs[k].getLocation());
+                    }
+                    revisionRetentionPolicies[k] = new RevisionRetentionPolicy(policyConfigs[k].getAttribute("path", "/"), keepLast, policyConfigs[k].getAttributeAsInteger("keep-daily-after-days", -1), policyConfigs[k].getAttributeAsBoolean("keep-tagged", true));
+                }
+                long interval = retentionConfig.getAttributeAsLong("interval", 0);
+                if (interval > 0 && !isReadOnly()) {
+                    startRevisionPruner(interval, retentionConfig.getAttributeAsInteger("batch-size", 100), retentionConfig.getAttributeAsLong("pause", 100));
+                }
+            }
+
+            // INFO: The indexing queue is created last, because it might start to index nodes of the journal right away
+            Configuration asyncIndexingConfig = searchConfig != null ? searchConfig.getChild("async-indexing", false) : null;
+            int indexingWorkers = asyncIndexingConfig != null ? asyncIndexingConfig.getAttributeAsInteger("workers", 2) : 0;
+            if (indexingWorkers > 0 && !isReadOnly()) {
+                File journalFile = new File(getMetaDir() != null ? getMetaDir() : getContentDir(), IndexingQueue.JOURNAL_FILE_NAME);
+                indexingQueue = new IndexingQueue(this, indexer, indexingWorkers, asyncIndexingConfig.getAttributeAsInteger("max-pending", 1000), journalFile);
+            } else {
+                indexingQueue = new IndexingQueue(this, indexer);
+            }
         } catch (Exception e) {
             log.error(e.toString());
             throw new RepositoryException("Could not read repository configuration: " 
@@ -430,6 +535,9 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
 
         if (splitPathEnabled) {
             String splittedPath = splitPath(path); // IMPORTANT: If a trailing slash exists, then it is important for split path to know about it, because it will be escaped and matched accordingly!
+            if (splitPathMigrationComplete) {
+                return map.exists(new Path(splittedPath));
+            }
             return map.exists(new Path(splittedPath)) || map.exists(new Path(pathWithoutTrailingSlash)); // INFO: The OR is because of backwards compatibility in case that a node exists with an unsplitted path, because it has not been migrated yet (which can happen if it has only been read so far, but never written since introducing the split path configuration)
         } else {
             return map.exists(new Path(pathWithoutTrailingSlash));
@@ -519,22 +627,44 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
     public void close() throws RepositoryException {
         log.warn("Closing repository: " + getName() + " (" + getConfigFile() + ")");
 
-/*
-        log.warn("Closing index writers");
-        IndexWriter iw;
-        try {
-            iw = getIndexWriter();
-            if (iw != null) {
-                iw.close();
+        if (revisionPrunerExecutor != null) {
+            revisionPrunerExecutor.shutdownNow();
+            try {
+                // INFO: Wait until a running pruner has stopped, because it might still update the date index, which is closed below
+                if (!revisionPrunerExecutor.awaitTermination(REVISION_PRUNER_SHUTDOWN_TIMEOUT, java.util.concurrent.TimeUnit.SECONDS)) {
+                    log.warn("Revision pruner of repository '" + getName() + "' has not stopped within " + REVISION_PRUNER_SHUTDOWN_TIMEOUT + " seconds.");
+                }
+            } catch (InterruptedException e) {
+                log.warn("Waiting for revision pruner of repository '" + getName() + "' to stop has been interrupted!");
+                Thread.currentThread().interrupt();
             }
-            iw = getPropertiesIndexWriter();
-            if (iw != null) {
-                iw.close();
+            revisionPrunerExecutor = null;
+        }
+
+        if (indexingQueue != null) {
+            indexingQueue.close(); // INFO: Index waiting nodes before the index writers are closed
+        }
+
+        synchronized(this) {
+            if (repositoryDateIndex != null) {
+                try {
+                    repositoryDateIndex.close();
+                } catch (Exception e) {
+                    throw new RepositoryException(e.getMessage(), e);
+                } finally {
+                    repositoryDateIndex = null;
+                }
+            }
+        }
+
+        if (indexer instanceof org.wyona.yarep.impl.search.lucene.LuceneIndexerV2) {
+            log.info("Closing index writers");
+            try {
+                ((org.wyona.yarep.impl.search.lucene.LuceneIndexerV2) indexer).close();
+            } catch (Exception e) {
+                throw new RepositoryException(e.getMessage(), e);
             }
-        } catch (Exception e) {
-            throw new RepositoryException(e.getMessage(), e);
         }
-*/
     }
 
     /**
@@ -573,6 +703,27 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
         return searcher;
     }
 
+    /**
+     * Get queue through which nodes are indexed automatically when they are modified (see async-indexing)
+     */
+    IndexingQueue getIndexingQueue() {
+        return indexingQueue;
+    }
+
+    /**
+     * Wait until all modifications have been indexed (only relevant if nodes are indexed within background threads, see async-indexing), e.g. before searching within tests
+     * @param timeout Maximum time to wait (in milliseconds)
+     * @return True if all modifications have been indexed and false if the timeout has elapsed before
+     */
+    public boolean waitForIndexing(long timeout) throws RepositoryException {
+        try {
+            return indexingQueue == null || indexingQueue.waitUntilIdle(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while waiting for indexing", e);
+        }
+    }
+
     public boolean isAutoFulltextIndexingEnabled() {
         return isFulltextIndexingEnabled;
     }
@@ -645,6 +796,20 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
         if (!new File(destMetaFile.getParent()).exists())
             new File(destMetaFile.getParent()).mkdirs();
         log.info("Copy properties: " + destMetaFile);
+        if (getMetaFileVersion().equals(VirtualFileSystemMetaFile.VERSION_BINARY)) {
+            java.util.HashMap properties = new java.util.HashMap();
+            org.wyona.yarep.core.Property[] srcProperties = srcNode.getProperties();
+            for (int i = 0; i < srcProperties.length; i++) {
+                properties.put(srcProperties[i].getName(), srcProperties[i]);
+            }
+            OutputStream out = new FileOutputStream(destMetaFile);
+            try {
+                VirtualFileSystemMetaFile.write(out, properties);
+            } finally {
+                out.close();
+            }
+            return true;
+        }
         java.io.PrintWriter writer = new java.io.PrintWriter(new FileOutputStream(destMetaFile));
         org.wyona.yarep.core.Property[] properties = srcNode.getProperties();
         for (int i = 0; i < properties.length; i++) {
@@ -778,6 +943,48 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
         return splitPathEnabled;
     }
 
+    /**
+     * Check whether all nodes have been migrated to their splitted location, such that nodes do not need to be looked up at their not splitted location anymore
+     */
+    public boolean isSplitPathMigrationComplete() {
+        return splitPathMigrationComplete;
+    }
+
+    /**
+     * Set whether all nodes have been migrated to their splitted location (see SplitPathMigrator)
+     */
+    void setSplitPathMigrationComplete(boolean splitPathMigrationComplete) {
+        this.splitPathMigrationComplete = splitPathMigrationComplete;
+    }
+
+    /**
+     * Get paths for which split path is enabled
+     */
+    String[] getSplitPathIncludes() {
+        return includepaths;
+    }
+
+    /**
+     * Get number of splits
+     */
+    int getSplitPathDepth() {
+        return splitparts;
+    }
+
+    /**
+     * Get length of a split segment
+     */
+    int getSplitPathLength() {
+        return splitlength;
+    }
+
+    /**
+     * Get string by which path separators are replaced when splitting
+     */
+    String getSplitPathEscape() {
+        return dummySeparator;
+    }
+
     /**
      * Get revisions path type
      */
@@ -785,6 +992,110 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
         return revisionsPathType;
     }
 
+    /**
+     * Check whether repository is read-only
+     * @return true if nothing must be written to the file system
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Get cache of properties, which can be used to check the hit/miss counters
+     * @return Cache or null if no properties cache is configured
+     */
+    public PropertiesCache getPropertiesCache() {
+        return propertiesCache;
+    }
+
+    /**
+     * Get version of format in which meta files are written (see VirtualFileSystemMetaFile)
+     */
+    String getMetaFileVersion() {
+        return metaFileVersion;
+    }
+
+    /**
+     * Get how the content of revisions is stored ('copy', 'blobs' (see RevisionBlobStore) or 'delta' (see RevisionDeltaStore))
+     */
+    String getRevisionsContentStore() {
+        return revisionsContentStore;
+    }
+
+    /**
+     * Get every how many revisions a full snapshot is stored if the content of revisions is stored as deltas
+     */
+    int getRevisionsSnapshotInterval() {
+        return revisionsSnapshotInterval;
+    }
+
+    /**
+     * Get number of revisions which are fetched at once when iterating through the revisions of a node (see VFSRevisionIterator)
+     */
+    int getRevisionsIteratorBatchSize() {
+        return revisionsIteratorBatchSize;
+    }
+
+    /**
+     * Get retention policies of revisions (see element revisions-retention)
+     */
+    RevisionRetentionPolicy[] getRevisionRetentionPolicies() {
+        return revisionRetentionPolicies;
+    }
+
+    /**
+     * Get retention policy of the revisions of a node, whereby the policy with the longest matching path applies
+     * @param path Absolute repository path of node
+     * @return Policy or null if no policy applies to this node
+     */
+    RevisionRetentionPolicy getRevisionRetentionPolicy(String path) {
+        RevisionRetentionPolicy policy = null;
+        for (int i = 0; i < revisionRetentionPolicies.length; i++) {
+            if (revisionRetentionPolicies[i].appliesTo(path) && (policy == null || revisionRetentionPolicies[i].getPath().length() > policy.getPath().length())) {
+                policy = revisionRetentionPolicies[i];
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * Run the revision pruner periodically within a background thread, which is stopped when the repository is closed
+     * @param interval Interval in seconds
+     * @param batchSize Number of revisions which are deleted before pausing
+     * @param pauseMillis Pause between two batches (in milliseconds)
+     */
+    private void startRevisionPruner(long interval, final int batchSize, final long pauseMillis) {
+        log.info("Prune revisions of repository '" + getName() + "' every " + interval + " seconds.");
+        revisionPrunerExecutor = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(new java.util.concurrent.ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "yarep-revision-pruner-" + getName());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        revisionPrunerExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                new RevisionPruner(VirtualFileSystemRepository.this, batchSize, pauseMillis).run();
+            }
+        }, interval, interval, java.util.concurrent.TimeUnit.SECONDS);
+    }
+
+    /**
+     * Get date index shared by all nodes of this repository (see revisions-date-index-impl 'lucene-shared'), which is opened the first time it is used
+     */
+    synchronized RepositoryDateIndex getRepositoryDateIndex() throws RepositoryException {
+        if (repositoryDateIndex == null) {
+            try {
+                repositoryDateIndex = new RepositoryDateIndex(new File(getMetaDir(), RepositoryDateIndex.INDEX_DIR_NAME));
+            } catch (Exception e) {
+                log.error(e, e);
+                throw new RepositoryException(e.getMessage(), e);
+            }
+        }
+        return repositoryDateIndex;
+    }
+
     /**
      * Get revisions date index impl
      */
@@ -810,6 +1121,12 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
                     //log.warn("No revision found for node '" + path + "' and point in time '" + date + "'");
                     return null;
                 }
+            } else if (isReadOnly()) {
+                if (existsNode(path)) {
+                    return ((VirtualFileSystemNode) getNode(path)).getRevision(date);
+                }
+                log.warn("No date index for '" + path + "' and repository is read-only, hence no revision can be found!");
+                return null;
             } else {
                 log.warn("No date index yet, hence one will be created ...");
                 dis.buildDateIndex();
@@ -837,6 +1154,29 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
         }
     }
 
+    /**
+     * Get the revisions of several nodes for a specific date (or just before), e.g. the children of a collection (see PointInTimeRepository).
+     * If the revisions are indexed by the shared date index of the repository (see RepositoryDateIndex), then all nodes are looked up with the same index reader, otherwise every node is looked up separately (see getRevision(String, Date)).
+     * @param paths Absolute repository paths of nodes
+     * @param date Point in time (or just before) for which revisions shall be returned
+     * @return Revision per node or null if no revision can be found for the specified point in time
+     */
+    public Revision[] getRevisions(String[] paths, Date date) throws Exception {
+        Revision[] revisions = new Revision[paths.length];
+        String[] revisionNames = null;
+        if (getRevisionsDateIndexImpl().equals(REVISIONS_DATE_INDEX_SHARED_LUCENE_IMPL)) {
+            revisionNames = getRepositoryDateIndex().searchMostRecent(paths, date.getTime());
+        }
+        for (int i = 0; i < paths.length; i++) {
+            if (revisionNames == null || revisionNames[i] == null) {
+                revisions[i] = getRevision(paths[i], date);
+            } else if (revisionNames[i].length() > 0) {
+                revisions[i] = new VirtualFileSystemRevision(this, paths[i], revisionNames[i]);
+            }
+        }
+        return revisions;
+    }
+
     /**
      * Get date indexer searcher implementation
      * @param path Absolute repository path of node
@@ -846,8 +1186,12 @@ public class VirtualFileSystemRepository implements Repository, VersionableRepos
         if (getRevisionsDateIndexImpl().equals(REVISIONS_DATE_INDEX_DIRECTORY_IMPL)) {
             return new DateIndexerSearcherImplV1(path, new VirtualFileSystemNode(this, path, new UID(path).toString()).metaDir, this);
         } else if (getRevisionsDateIndexImpl().equals(REVISIONS_DATE_INDEX_LUCENE_IMPL)) {
-            log.error("TODO: Replace node by path and repository!");
-            return new DateIndexerSearcherImplV2(null, null);
+            VirtualFileSystemNode node = new VirtualFileSystemNode(this, path, new UID(path).toString());
+            return new DateIndexerSearcherImplV2(node, node.metaDir);
+        } else if (getRevisionsDateIndexImpl().equals(REVISIONS_DATE_INDEX_TIMELINE_IMPL)) {
+            return new DateIndexerSearcherImplV3(path, VirtualFileSystemNode.getMetaDir(this, new UID(path).toString()), this);
+        } else if (getRevisionsDateIndexImpl().equals(REVISIONS_DATE_INDEX_SHARED_LUCENE_IMPL)) {
+            return new DateIndexerSearcherImplV4(path, getRepositoryDateIndex(), this);
         } else {
             log.error("No such revisions date index implementation '" + getRevisionsDateIndexImpl() + "'!");
             return null;
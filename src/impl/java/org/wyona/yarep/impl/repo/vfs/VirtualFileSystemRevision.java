@@ -1,10 +1,18 @@
 package org.wyona.yarep.impl.repo.vfs;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Date;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
@@ -31,11 +39,17 @@ public class VirtualFileSystemRevision extends VirtualFileSystemNode implements
     public static final String PROPERTY_REVISION_COMMENT = "yarep_revisionComment";
     
     public static final String CONTENT_FILE_NAME = "content";
+    static final String CONTENT_REFERENCE_FILE_NAME = "content-ref";
 
     private VirtualFileSystemRepository repo2; // INFO: Associated repository
     private VirtualFileSystemNode node2; // INFO: Associated node
     protected String revisionName;
     protected boolean isInitialized = false;
+    private String contentHash = null; // INFO: Hash of content if the content is stored within the blob store of the node (see RevisionBlobStore)
+    private boolean isDelta = false; // INFO: True if the content is stored as delta (see RevisionDeltaStore)
+    private RevisionPack.Entry packEntry = null; // INFO: Entry of revision if the revision is stored within the revision pack of the node (see RevisionPack)
+    private boolean isBeingCreated = false; // INFO: True while the properties of a new revision are set, because the node adds a new revision to the revision catalog itself (see VirtualFileSystemNode#revisionCreated(Revision, long))
+    private boolean isRevisionInfoModified = false; // INFO: True while several properties are set of which at least one is contained by the revision catalog (see setProperties(Property[]))
 
     /**
      * Constructor
@@ -130,7 +144,24 @@ public class VirtualFileSystemRevision extends VirtualFileSystemNode implements
         }
 
         if (!metaFile.exists()) {
-            throw new RepositoryException("Meta file '" + metaFile + "' does not exist.");
+            try {
+                packEntry = getRevisionPack().get(revisionName);
+            } catch (IOException e) {
+                throw new RepositoryException(e.getMessage(), e);
+            }
+            if (packEntry == null) {
+                throw new RepositoryException("Meta file '" + metaFile + "' does not exist.");
+            }
+        } else if (!contentFile.exists()) {
+            try {
+                contentHash = readContentReference(metaDir);
+            } catch (IOException e) {
+                throw new RepositoryException(e.getMessage(), e);
+            }
+            if (contentHash != null) {
+                contentFile = getBlobStore().getBlobFile(contentHash);
+            }
+            isDelta = RevisionDeltaStore.isDelta(metaDir);
         }
         readProperties();
         
@@ -282,6 +313,7 @@ public class VirtualFileSystemRevision extends VirtualFileSystemNode implements
         if (!isInitialized) {
             init();
         }
+        checkWritable();
 
         // INFO: Delete from index first, before deleting revision itself!
         DateIndexerSearcher dis = null;
@@ -293,6 +325,7 @@ public class VirtualFileSystemRevision extends VirtualFileSystemNode implements
             log.error("Neither repository nor node!");
             return;
         }
+        long size = getSize();
         try {
             dis.deleteRevision(revisionName);
         } catch(Exception e) {
@@ -308,11 +341,160 @@ public class VirtualFileSystemRevision extends VirtualFileSystemNode implements
                 long currentTotal = node2.getProperty(VirtualFileSystemNode.PROPERTY_TOTAL_NUMBER_OF_REVISIONS).getLong();
                 node2.setProperty(VirtualFileSystemNode.PROPERTY_TOTAL_NUMBER_OF_REVISIONS, currentTotal - 1);
             }
+            node2.revisionDeleted(revisionName, size, dis);
         } else {
             log.warn("Associated node (of this revision '" + getRevisionName() + "') does not seem to exist anymore, hence we cannot update total number of revisions!");
         }
     }
 
+    /**
+     * Read properties from the revision pack of the node if this revision is stored within the pack, otherwise from the meta file of this revision
+     * @see org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode#readProperties()
+     */
+    @Override
+    protected void readProperties() throws RepositoryException {
+        if (packEntry == null) {
+            super.readProperties();
+            return;
+        }
+        try {
+            parseMetaFile(new BufferedInputStream(new ByteArrayInputStream(getRevisionPack().getMeta(packEntry))), getRevisionPack() + "#" + revisionName);
+        } catch (IOException e) {
+            throw new RepositoryException("Error while reading meta data of revision '" + revisionName + "' of node '" + path + "': " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Append the properties to the revision pack of the node if this revision is stored within the pack, otherwise write the meta file of this revision
+     * @see org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode#saveProperties(String)
+     */
+    @Override
+    protected void saveProperties(String pname) throws RepositoryException {
+        if (packEntry == null) {
+            super.saveProperties(pname);
+        } else {
+            checkWritable();
+            try {
+                ByteArrayOutputStream meta = new ByteArrayOutputStream();
+                VirtualFileSystemMetaFile.write(meta, this.properties);
+                getRevisionPack().updateMeta(revisionName, meta.toByteArray());
+                packEntry = getRevisionPack().get(revisionName);
+            } catch (IOException e) {
+                log.error(e, e);
+                throw new RepositoryException("Error while writing meta data of revision '" + revisionName + "' of node '" + path + "': " + e.getMessage(), e);
+            }
+        }
+
+        if (node2 != null && !isBeingCreated && (isRevisionInfoModified || isRevisionInfoProperty(pname))) {
+            node2.revisionModified(this);
+        }
+    }
+
+    /**
+     * Check whether a property is contained by the revision catalog of the node (see RevisionInfo)
+     * @param pname Name of property
+     */
+    private static boolean isRevisionInfoProperty(String pname) {
+        return PROPERTY_REVISION_CREATION_DATE.equals(pname) || PROPERTY_REVISION_CREATOR.equals(pname) || PROPERTY_REVISION_COMMENT.equals(pname) || PROPERTY_REVISION_TAG.equals(pname);
+    }
+
+    /**
+     * Get hash of content if the content is stored within the blob store of the node, whereas the content hash property (which is copied from the node) is only valid if the content is stored as a file
+     * @see org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode#getStoredContentHash()
+     */
+    @Override
+    public String getStoredContentHash() throws RepositoryException {
+        if (contentHash != null) {
+            return contentHash;
+        }
+        if (packEntry != null || isDelta) {
+            return null;
+        }
+        return super.getStoredContentHash();
+    }
+
+    /**
+     * The revision is deleted from the date index by delete() (and the revisions of the node must not be deleted from the date index)
+     * @see org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode#deleteFromDateIndex()
+     */
+    @Override
+    protected void deleteFromDateIndex() {
+    }
+
+    /**
+     * Delete the content of this revision (and not the content of the node, which is managed by the map)
+     * @see org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode#deleteContent()
+     */
+    @Override
+    protected void deleteContent() throws IOException, RepositoryException {
+        if (packEntry != null) {
+            getRevisionPack().delete(revisionName);
+            return;
+        }
+        if (contentHash != null) {
+            getBlobStore().release(contentHash);
+            return;
+        }
+        getDeltaStore().prepareDelete(revisionName);
+        if (contentFile.isDirectory()) {
+            FileUtils.deleteDirectory(contentFile);
+        } else {
+            contentFile.delete();
+        }
+    }
+
+    /**
+     * Check whether a directory contains a revision, whereby the content is either stored within the directory or referenced (see RevisionBlobStore)
+     * @param dir Revision directory
+     */
+    static boolean isRevisionDir(File dir) {
+        return new File(dir, META_FILE_NAME).isFile() && hasContent(dir);
+    }
+
+    /**
+     * Check whether a revision directory contains the content of the revision, either as file, as reference (see RevisionBlobStore) or as delta (see RevisionDeltaStore)
+     * @param dir Revision directory
+     */
+    static boolean hasContent(File dir) {
+        return new File(dir, CONTENT_FILE_NAME).isFile() || new File(dir, CONTENT_REFERENCE_FILE_NAME).isFile() || RevisionDeltaStore.isDelta(dir);
+    }
+
+    /**
+     * Write reference to the content of a revision, which is stored within the blob store of the node
+     * @param dir Revision directory
+     * @param hash SHA-256 hash of content
+     */
+    static void writeContentReference(File dir, String hash) throws IOException {
+        if (!dir.isDirectory()) {
+            dir.mkdirs();
+        }
+        FileWriter writer = new FileWriter(new File(dir, CONTENT_REFERENCE_FILE_NAME));
+        try {
+            writer.write(hash);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Read reference to the content of a revision
+     * @param dir Revision directory
+     * @return SHA-256 hash of content or null if the content of the revision is not stored within the blob store of the node
+     */
+    static String readContentReference(File dir) throws IOException {
+        File file = new File(dir, CONTENT_REFERENCE_FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String hash = reader.readLine();
+            return hash != null ? hash.trim() : null;
+        } finally {
+            reader.close();
+        }
+    }
+
     /**
      * Delete empty directories recursively upwards
      * @param dir Directory which will be deleted if it is empty, e.g. '/Users/michaelwechner/src/yanel/src/realms/yanel-website/data-repo/yarep-meta/en/about.html.yarep/revisions/11/71/84/25/41/025'
@@ -357,6 +539,22 @@ public class VirtualFileSystemRevision extends VirtualFileSystemNode implements
         if (!isInitialized) {
             init();
         }
+        if (packEntry != null) {
+            try {
+                return getRevisionPack().getContent(packEntry);
+            } catch (IOException e) {
+                log.error(e, e);
+                throw new RepositoryException(e.getMessage(), e);
+            }
+        }
+        if (isDelta) {
+            try {
+                return getDeltaStore().getInputStream(revisionName);
+            } catch (IOException e) {
+                log.error(e, e);
+                throw new RepositoryException(e.getMessage(), e);
+            }
+        }
         return super.getInputStream();
     }
 
@@ -409,6 +607,17 @@ public class VirtualFileSystemRevision extends VirtualFileSystemNode implements
         if (!isInitialized) {
             init();
         }
+        if (packEntry != null) {
+            return packEntry.contentLength;
+        }
+        if (isDelta) {
+            try {
+                return RevisionDeltaStore.getSize(metaDir);
+            } catch (IOException e) {
+                log.error(e, e);
+                throw new RepositoryException(e.getMessage(), e);
+            }
+        }
         return super.getSize();
     }
 
@@ -474,4 +683,37 @@ public class VirtualFileSystemRevision extends VirtualFileSystemNode implements
         }
         super.setProperty(property);
     }
+
+    /**
+     * Set several properties, whereas the revision catalog of the node is updated if any of the properties is contained by the catalog
+     * @see org.wyona.yarep.core.Node#setProperties(Property[])
+     */
+    public void setProperties(Property[] properties) throws RepositoryException {
+        if (!isInitialized) {
+            init();
+        }
+        for (int i = 0; i < properties.length; i++) {
+            if (isRevisionInfoProperty(properties[i].getName())) {
+                isRevisionInfoModified = true;
+            }
+        }
+        try {
+            super.setProperties(properties);
+        } finally {
+            isRevisionInfoModified = false;
+        }
+    }
+
+    /**
+     * Set the initial properties of a new revision, whereby the revision catalog and the tag index of the node are not updated, because the node adds the new revision once it has been created
+     * @param properties Initial properties, e.g. creation date and creator
+     */
+    void setPropertiesOfNewRevision(Property[] properties) throws RepositoryException {
+        isBeingCreated = true;
+        try {
+            setProperties(properties);
+        } finally {
+            isBeingCreated = false;
+        }
+    }
 }
@@ -0,0 +1,212 @@
+package org.wyona.yarep.impl.search.lucene;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.Parser;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode;
+
+/**
+ * Cache of the text and the tika metadata which have been extracted from contents (see LuceneIndexerV2#addFulltext(Node, String, Document)), such that unchanged contents are not parsed again,
+ * e.g. when only the properties of a node have been modified or when a revision has the same content as the previous revision.
+ * <br/><br/>
+ * An entry is identified by the SHA-256 hash of the content, the mime type, the parser class and the tika configuration, such that a modified tika configuration or another parser do not use outdated entries.
+ * The hash of the content is not calculated if it is stored already for the current state of the content (see VirtualFileSystemNode#getStoredContentHash()).
+ * Entries are never modified and every content is only stored once, whereas entries are not deleted by the cache itself, but the directory of the cache (see LuceneConfig#getExtractedTextCacheDir()) can be deleted at any time.
+ */
+class ExtractedTextCache {
+
+    private static Logger log = LogManager.getLogger(ExtractedTextCache.class);
+
+    private static final String FORMAT_VERSION = "2";
+    private static final String TEXT = "text";
+    private static final String METADATA_COUNT = "metadata.count";
+    private static final String METADATA_PREFIX = "metadata.";
+
+    private File cacheDir;
+    private String tikaConfigId;
+
+    /**
+     * @param cacheDir Directory containing the cache entries
+     * @param tikaConfigId Identifier of the tika configuration (see LuceneConfig#getTikaConfigId())
+     */
+    ExtractedTextCache(File cacheDir, String tikaConfigId) {
+        this.cacheDir = cacheDir;
+        this.tikaConfigId = tikaConfigId;
+    }
+
+    /**
+     * Get key of the cache entry of the content of a node
+     * @param node Node or revision
+     * @param parser Parser which extracts the text
+     * @param mimeType Mime type of content
+     * @return Key as lower case hex string
+     */
+    String getKey(Node node, Parser parser, String mimeType) throws Exception {
+        String contentHash = null;
+        if (node instanceof VirtualFileSystemNode) {
+            contentHash = ((VirtualFileSystemNode) node).getStoredContentHash();
+        }
+        if (contentHash == null) {
+            MessageDigest digest = createDigest();
+            InputStream in = node.getInputStream();
+            try {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+            contentHash = toHex(digest.digest());
+        }
+
+        MessageDigest digest = createDigest();
+        digest.update((FORMAT_VERSION + "\n" + parser.getClass().getName() + "\n" + mimeType + "\n" + tikaConfigId + "\n" + contentHash).getBytes("UTF-8"));
+        return toHex(digest.digest());
+    }
+
+    /**
+     *
+     */
+    private static MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * @return Bytes as lower case hex string
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuffer hex = new StringBuffer(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++) {
+            hex.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(bytes[i] & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Get extracted text of a cache entry
+     * @param key Key of cache entry (see getKey(Node, Parser, String))
+     * @param metadata Metadata to which the cached tika metadata is added
+     * @return Extracted text or null if the cache does not contain an entry with this key
+     */
+    String get(String key, Metadata metadata) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties entry = new Properties();
+        try {
+            InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                entry.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            log.warn("Could not read cache entry '" + file + "', hence the content will be parsed again: " + e.getMessage());
+            return null;
+        }
+
+        String text = entry.getProperty(TEXT);
+        if (text == null) {
+            log.warn("Cache entry '" + file + "' does not contain any text, hence the content will be parsed again.");
+            return null;
+        }
+        int count;
+        try {
+            count = Integer.parseInt(entry.getProperty(METADATA_COUNT, "0"));
+        } catch (NumberFormatException e) {
+            log.warn("Cache entry '" + file + "' contains an invalid number of metadata, hence the content will be parsed again: " + e.getMessage());
+            return null;
+        }
+        for (int i = 0; i < count; i++) {
+            metadata.add(entry.getProperty(METADATA_PREFIX + i + ".name"), entry.getProperty(METADATA_PREFIX + i + ".value"));
+        }
+        if (log.isDebugEnabled()) log.debug("Extracted text has been read from cache: " + file);
+        return text;
+    }
+
+    /**
+     * Add entry to cache
+     * @param key Key of cache entry (see getKey(Node, Parser, String))
+     * @param text Extracted text
+     * @param metadata Tika metadata of content
+     * @param excludedName Name of metadata which is specific to the node and hence is not cached
+     */
+    void put(String key, String text, Metadata metadata, String excludedName) {
+        File file = getFile(key);
+        if (file.isFile()) {
+            return; // INFO: Another thread has added the entry in the meantime
+        }
+
+        Properties entry = new Properties();
+        entry.setProperty(TEXT, text);
+        int count = 0;
+        String[] names = metadata.names();
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(excludedName)) {
+                continue;
+            }
+            String[] values = metadata.getValues(names[i]);
+            for (int k = 0; k < values.length; k++) {
+                entry.setProperty(METADATA_PREFIX + count + ".name", names[i]);
+                entry.setProperty(METADATA_PREFIX + count + ".value", values[k]);
+                count++;
+            }
+        }
+        entry.setProperty(METADATA_COUNT, "" + count);
+
+        File tmpFile = null;
+        try {
+            file.getParentFile().mkdirs();
+            tmpFile = File.createTempFile(key, ".tmp", file.getParentFile());
+            OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                entry.store(out, null);
+            } finally {
+                out.close();
+            }
+            if (tmpFile.renameTo(file)) {
+                tmpFile = null;
+                if (log.isDebugEnabled()) log.debug("Extracted text has been added to cache: " + file);
+            } // INFO: Otherwise another thread might have added the entry in the meantime
+        } catch (IOException e) {
+            log.warn("Could not add entry '" + file + "' to cache: " + e.getMessage());
+        } finally {
+            if (tmpFile != null) {
+                tmpFile.delete(); // INFO: Do not leave incomplete entries behind, e.g. if the disk is full
+            }
+        }
+    }
+
+    /**
+     *
+     */
+    private File getFile(String key) {
+        return new File(new File(cacheDir, key.substring(0, 2)), key);
+    }
+}
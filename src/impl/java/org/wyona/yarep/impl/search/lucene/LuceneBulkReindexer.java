@@ -0,0 +1,420 @@
+package org.wyona.yarep.impl.search.lucene;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.FSDirectory;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeType;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.RepositoryException;
+import org.wyona.yarep.core.Revision;
+
+/**
+ * Rebuilds the fulltext and properties indexes of a repository using LuceneIndexerV2, e.g. after changing the analyzer or the tika configuration.
+ * In contrast to YarepUtil#indexRepository(Repository) the live indexes are not modified node by node, but new indexes are built aside and the live indexes are replaced at the end:
+ * <ul>
+ *   <li>The calling thread walks the tree and submits every node to a fixed number of threads, which extract the text (tika) and create the lucene documents</li>
+ *   <li>One writer thread adds the documents in batches to new indexes (directories with the suffix '.reindex' next to the live indexes) without committing every document</li>
+ *   <li>The new indexes are optimized once and replace the live indexes (see SharedIndexWriter#replaceIndex(File)), whereas searches see either the previous or the new index</li>
+ *   <li>Nodes which have been modified during the rebuild are indexed again after the replacement</li>
+ * </ul>
+ * Revisions are indexed as well if the indexing of revisions is enabled (see LuceneConfig#doIndexRevisions()).
+ * <br/><br/>
+ * The reindexer can be run within a background thread, e.g. <code>new Thread(new LuceneBulkReindexer(repo, 4)).start()</code>, whereas the progress and the throughput can be read by getProgress().
+ */
+public class LuceneBulkReindexer implements Runnable {
+
+    private static Logger log = LogManager.getLogger(LuceneBulkReindexer.class);
+
+    private static final String BUILD_DIR_SUFFIX = ".reindex";
+    private static final int BATCH_SIZE = 100;
+    private static final double RAM_BUFFER_SIZE_MB = 64;
+    private static final long PROGRESS_LOG_INTERVAL = 10000;
+
+    private static final Document[] END_OF_DOCUMENTS = new Document[0];
+
+    private Repository repo;
+    private LuceneIndexerV2 indexer;
+    private int threads;
+
+    private BlockingQueue documents;
+    private volatile Exception writerException;
+
+    private AtomicLong visitedNodes = new AtomicLong();
+    private AtomicLong indexedNodes = new AtomicLong();
+    private AtomicLong writtenDocuments = new AtomicLong();
+    private AtomicLong failedNodes = new AtomicLong();
+    private AtomicLong reindexedModifiedNodes = new AtomicLong();
+    private volatile long startTime = 0;
+    private volatile long endTime = 0;
+
+    private volatile boolean stopped = false;
+    private volatile boolean finished = false;
+
+    /**
+     * @param repo Repository which is indexed by LuceneIndexerV2
+     * @param threads Number of nodes whose text is extracted in parallel
+     */
+    public LuceneBulkReindexer(Repository repo, int threads) throws RepositoryException {
+        if (!(repo.getIndexer() instanceof LuceneIndexerV2)) {
+            throw new RepositoryException("Repository '" + repo.getName() + "' is not indexed by " + LuceneIndexerV2.class.getName() + ", hence it cannot be reindexed in bulk mode!");
+        }
+        this.repo = repo;
+        this.indexer = (LuceneIndexerV2) repo.getIndexer();
+        this.threads = threads > 0 ? threads : 1;
+    }
+
+    /**
+     * Rebuild the fulltext and properties indexes
+     */
+    public void run() {
+        File fulltextBuildDir = getBuildDir(indexer.config.getFulltextSearchIndexFile());
+        File propertiesBuildDir = getBuildDir(indexer.config.getPropertiesSearchIndexFile());
+        log.info("Start bulk reindex of repository '" + repo.getName() + "' (Threads: " + threads + ", Fulltext: " + fulltextBuildDir + ", Properties: " + propertiesBuildDir + ") ...");
+        startTime = System.currentTimeMillis();
+
+        indexer.startTrackingModifications();
+        boolean replaced = false;
+        try {
+            build(fulltextBuildDir, propertiesBuildDir);
+            if (!stopped) {
+                indexer.replaceIndexes(fulltextBuildDir, propertiesBuildDir);
+                replaced = true;
+            }
+        } catch (InterruptedException e) {
+            log.warn("Bulk reindex has been interrupted!");
+            stopped = true;
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error(e, e);
+            stopped = true;
+        } finally {
+            String[] modifiedPaths = indexer.stopTrackingModifications();
+            if (replaced) {
+                reindexModified(modifiedPaths);
+            }
+            deleteBuildDir(fulltextBuildDir);
+            deleteBuildDir(propertiesBuildDir);
+        }
+
+        endTime = System.currentTimeMillis();
+        log.info("Bulk reindex of repository '" + repo.getName() + "' " + (replaced ? "finished" : "stopped, hence the live indexes have not been replaced") + ": " + getProgress());
+        finished = true;
+    }
+
+    /**
+     * Stop reindexing, whereas the live indexes are not replaced
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Check whether reindexing has finished (or has been stopped)
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Get number of nodes (and revisions) which have been visited by the tree walker
+     */
+    public long getNumberOfVisitedNodes() {
+        return visitedNodes.get();
+    }
+
+    /**
+     * Get number of nodes (and revisions) whose documents have been created
+     */
+    public long getNumberOfIndexedNodes() {
+        return indexedNodes.get();
+    }
+
+    /**
+     * Get number of lucene documents which have been added to the new indexes
+     */
+    public long getNumberOfWrittenDocuments() {
+        return writtenDocuments.get();
+    }
+
+    /**
+     * Get number of nodes (and revisions) which could not be indexed
+     */
+    public long getNumberOfFailedNodes() {
+        return failedNodes.get();
+    }
+
+    /**
+     * Get number of nodes which have been modified during the rebuild and hence have been indexed again after the live indexes have been replaced
+     */
+    public long getNumberOfReindexedModifiedNodes() {
+        return reindexedModifiedNodes.get();
+    }
+
+    /**
+     * Get throughput
+     * @return Number of indexed nodes per second
+     */
+    public double getNodesPerSecond() {
+        if (startTime == 0) {
+            return 0;
+        }
+        long duration = (endTime > 0 ? endTime : System.currentTimeMillis()) - startTime;
+        return duration > 0 ? indexedNodes.get() * 1000.0 / duration : 0;
+    }
+
+    /**
+     * Get progress as human readable text
+     */
+    public String getProgress() {
+        return "visited nodes: " + visitedNodes.get() + ", indexed nodes: " + indexedNodes.get() + ", written documents: " + writtenDocuments.get() + ", failed nodes: " + failedNodes.get() + ", reindexed modified nodes: " + reindexedModifiedNodes.get() + ", nodes/s: " + Math.round(getNodesPerSecond());
+    }
+
+    /**
+     * Build new fulltext and properties indexes
+     */
+    private void build(File fulltextBuildDir, File propertiesBuildDir) throws Exception {
+        deleteBuildDir(fulltextBuildDir); // INFO: Leftover of a stopped or crashed rebuild
+        deleteBuildDir(propertiesBuildDir);
+        final IndexWriter fulltextWriter = createBuildWriter(fulltextBuildDir, indexer.config.getFulltextAnalyzer());
+        final IndexWriter propertiesWriter = createBuildWriter(propertiesBuildDir, indexer.config.getPropertyAnalyzer());
+
+        documents = new ArrayBlockingQueue(threads * BATCH_SIZE);
+        Thread writerThread = new Thread(new Runnable() {
+            public void run() {
+                write(fulltextWriter, propertiesWriter);
+            }
+        }, "yarep-bulk-reindex-writer-" + repo.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy()); // INFO: The bounded queue makes the walking thread process nodes itself instead of queueing all nodes of the repository
+        try {
+            walk(repo.getRootNode(), executor);
+            executor.shutdown();
+            long lastLog = System.currentTimeMillis();
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (System.currentTimeMillis() - lastLog >= PROGRESS_LOG_INTERVAL) {
+                    log.info("Progress: " + getProgress());
+                    lastLog = System.currentTimeMillis();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            while (writerThread.isAlive() && !documents.offer(END_OF_DOCUMENTS, 1, TimeUnit.SECONDS)) {
+                log.debug("Wait until writer thread has capacity.");
+            }
+            writerThread.join();
+        }
+
+        if (writerException != null) {
+            fulltextWriter.rollback();
+            propertiesWriter.rollback();
+            throw writerException;
+        }
+        if (stopped) {
+            fulltextWriter.rollback();
+            propertiesWriter.rollback();
+            return;
+        }
+        log.info("Optimize new indexes: " + getProgress());
+        fulltextWriter.optimize();
+        fulltextWriter.close();
+        propertiesWriter.optimize();
+        propertiesWriter.close();
+    }
+
+    /**
+     * Walk tree recursively and submit every node to the executor
+     */
+    private void walk(Node root, ThreadPoolExecutor executor) throws Exception {
+        LinkedList stack = new LinkedList();
+        stack.add(root);
+        while (!stack.isEmpty() && !stopped) {
+            if (writerException != null) {
+                throw writerException;
+            }
+            final Node node = (Node) stack.removeFirst();
+            visitedNodes.incrementAndGet();
+            executor.execute(new Runnable() {
+                public void run() {
+                    if (!stopped) {
+                        createDocuments(node);
+                    }
+                }
+            });
+
+            if (node.isCollection()) {
+                Node[] children = node.getNodes();
+                for (int i = children.length - 1; i >= 0; i--) {
+                    if (!children[i].getName().equals(".svn")) { // INFO: See YarepUtil#indexNodeRecursively(Node, Indexer)
+                        stack.addFirst(children[i]);
+                    }
+                }
+            } else if (node.getType() == NodeType.RESOURCE && indexer.config.doIndexRevisions()) {
+                Revision[] revisions = node.getRevisions();
+                for (int i = 0; revisions != null && i < revisions.length; i++) {
+                    final Revision revision = revisions[i];
+                    visitedNodes.incrementAndGet();
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            if (!stopped) {
+                                createDocuments(revision);
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Extract text and create fulltext and properties document of a node or revision, which are handed over to the writer thread
+     */
+    private void createDocuments(Node node) {
+        try {
+            Document fulltextDoc = indexer.createFulltextDocument(node);
+            Document propertiesDoc = indexer.createPropertiesDocument(node);
+            Document[] docs = new Document[] {fulltextDoc, propertiesDoc};
+            while (!documents.offer(docs, 1, TimeUnit.SECONDS)) {
+                if (stopped) {
+                    return; // INFO: The writer thread might have stopped because of an error
+                }
+            }
+            indexedNodes.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            try {
+                log.error("Could not index node '" + node.getPath() + "': " + e.getMessage(), e);
+            } catch (Exception re) {
+                log.error(e, e);
+            }
+            failedNodes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Add documents in batches to the new indexes until all nodes have been processed (executed by the writer thread)
+     */
+    private void write(IndexWriter fulltextWriter, IndexWriter propertiesWriter) {
+        List batch = new ArrayList(BATCH_SIZE);
+        try {
+            while (true) {
+                batch.add(documents.take());
+                documents.drainTo(batch, BATCH_SIZE - 1);
+                for (int i = 0; i < batch.size(); i++) {
+                    Document[] docs = (Document[]) batch.get(i);
+                    if (docs == END_OF_DOCUMENTS) {
+                        return;
+                    }
+                    fulltextWriter.addDocument(docs[0]);
+                    writtenDocuments.incrementAndGet();
+                    if (docs[1] != null) {
+                        propertiesWriter.addDocument(docs[1]);
+                        writtenDocuments.incrementAndGet();
+                    }
+                }
+                batch.clear();
+            }
+        } catch (Exception e) {
+            log.error(e, e);
+            writerException = e;
+            stopped = true;
+        }
+    }
+
+    /**
+     * Index nodes which have been modified while the new indexes have been built, whereas the current state of the node is indexed or the node is removed from the indexes if it does not exist anymore
+     * @param paths Paths of modified documents (see LuceneIndexerV2#stopTrackingModifications())
+     */
+    private void reindexModified(String[] paths) {
+        if (paths.length > 0) {
+            log.info("Index " + paths.length + " nodes which have been modified during the bulk reindex ...");
+        }
+        for (int i = 0; i < paths.length; i++) {
+            try {
+                Node node = getNode(paths[i]);
+                if (node != null) {
+                    indexer.updateDocuments(node);
+                } else {
+                    indexer.deleteDocuments(paths[i]);
+                }
+                reindexedModifiedNodes.incrementAndGet();
+            } catch (Exception e) {
+                log.error("Could not index modified node '" + paths[i] + "': " + e.getMessage(), e);
+                failedNodes.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Get node or revision of a document path
+     * @param path Path of document, which contains the revision name in the case of a revision
+     * @return Node or null if the node does not exist anymore
+     */
+    private Node getNode(String path) throws Exception {
+        int index = path.indexOf("#revision=");
+        String nodePath = index >= 0 ? path.substring(0, index) : path;
+        if (!repo.existsNode(nodePath)) {
+            return null;
+        }
+        Node node = repo.getNode(nodePath);
+        if (index >= 0) {
+            String revisionName = path.substring(index + "#revision=".length());
+            try {
+                return node.getRevision(revisionName);
+            } catch (org.wyona.yarep.core.NoSuchRevisionException e) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Create writer of a new index, which flushes documents according to the size of the RAM buffer and commits only when it is closed
+     */
+    private IndexWriter createBuildWriter(File buildDir, Analyzer analyzer) throws Exception {
+        buildDir.mkdirs();
+        IndexWriter writer = new IndexWriter(FSDirectory.open(buildDir), analyzer, true, IndexWriter.MaxFieldLength.LIMITED);
+        writer.setRAMBufferSizeMB(RAM_BUFFER_SIZE_MB);
+        return writer;
+    }
+
+    /**
+     * Get directory of new index next to the live index
+     */
+    private File getBuildDir(File indexDir) {
+        return new File(indexDir.getAbsoluteFile().getParentFile(), indexDir.getName() + BUILD_DIR_SUFFIX);
+    }
+
+    /**
+     *
+     */
+    private void deleteBuildDir(File buildDir) {
+        if (buildDir.exists()) {
+            try {
+                FileUtils.deleteDirectory(buildDir);
+            } catch (Exception e) {
+                log.error("Could not delete directory of new index: " + buildDir, e);
+            }
+        }
+    }
+}
@@ -31,7 +31,12 @@ public class LuceneConfig {
     private String FULLTEXT_INDEX_DIR = "fulltext";
     private String PROPERTIES_INDEX_DIR = "properties";
     private TikaConfig tikaConfig;
+    private String tikaConfigId = "default";
+    private File extractedTextCacheDir = null;
     private long writeLockTimeout = 0;
+    private boolean keepIndexWriterOpen = true;
+    private int commitMaxChanges = 100;
+    private long commitInterval = 1000;
     private Repository repo;
 
     private boolean indexRevisions = false;
@@ -100,6 +105,7 @@ public class LuceneConfig {
                     if (localTikaConfigFile.isFile()) {
                         log.warn("Use local tika config: " + localTikaConfigFile.getAbsolutePath());
                         tikaConfig = new TikaConfig(localTikaConfigFile);
+                        tikaConfigId = localTikaConfigFile.getAbsolutePath() + ":" + localTikaConfigFile.lastModified() + ":" + localTikaConfigFile.length();
                     } else {
                         log.error("No such file: " + localTikaConfigFile + " (Default tika config will be used)");
                         tikaConfig = TikaConfig.getDefaultConfig();
@@ -108,6 +114,15 @@ public class LuceneConfig {
                     log.info("Use default tika config");
                     tikaConfig = TikaConfig.getDefaultConfig();
                 }
+
+                String extractedTextCacheSrc = luceneConfig.getChild("extracted-text-cache").getAttribute("dir", null);
+                if (extractedTextCacheSrc != null) {
+                    extractedTextCacheDir = new File(extractedTextCacheSrc);
+                    if (!extractedTextCacheDir.isAbsolute()) {
+                        extractedTextCacheDir = FileUtil.file(configParent, extractedTextCacheDir.toString());
+                    }
+                    log.info("Extracted text cache directory: " + extractedTextCacheDir);
+                }
                 
                 // Create properties index dir subdirectory in order to save the lucene index for searching on properties
                 propertiesSearchIndexFile = new File(searchIndexSrcFile, PROPERTIES_INDEX_DIR);
@@ -126,6 +141,13 @@ public class LuceneConfig {
                     writeLockTimeout = 1001; // INFO: 1001 milliseconds
                     log.warn("No 'write.lock' timeout configured, hence use hard-coded value: " + writeLockTimeout);
                 }
+
+                Configuration indexWriterConfig = luceneConfig.getChild("index-writer", false);
+                if (indexWriterConfig != null) {
+                    keepIndexWriterOpen = indexWriterConfig.getAttributeAsBoolean("keep-open", keepIndexWriterOpen);
+                    commitMaxChanges = indexWriterConfig.getAttributeAsInteger("commit-max-changes", commitMaxChanges);
+                    commitInterval = indexWriterConfig.getAttributeAsLong("commit-interval", commitInterval);
+                }
             } else {
                 log.warn("No search index dir (<search-index src=\"...\"/>) configured within: " + configParent);
             }
@@ -142,6 +164,7 @@ public class LuceneConfig {
      * @param searchIndexConfig
      * @param configParent
      */
+    @Deprecated
     public void deprecatedConfigure(Configuration searchIndexConfig, String configParent) throws SearchException {
         log.warn("DEPRECATED: This config schema is deprecated (" + repo.getConfigFile() + ")! Use the new schema described at http://svn.wyona.com/repos/public/yarep/trunk/src/test/repository/new-vfs-example/repository.xml");
         try {
@@ -240,6 +263,21 @@ public class LuceneConfig {
         return tikaConfig;
     }
 
+    /**
+     * Get identifier of the tika configuration, which changes when the local tika configuration file is replaced or modified
+     */
+    public String getTikaConfigId() {
+        return tikaConfigId;
+    }
+
+    /**
+     * Get directory of the cache containing the extracted text of contents (see ExtractedTextCache)
+     * @return Directory or null if extracted text should not be cached
+     */
+    public File getExtractedTextCacheDir() {
+        return extractedTextCacheDir;
+    }
+
     /**
      * Get write lock timeout
      */
@@ -248,6 +286,27 @@ public class LuceneConfig {
         return writeLockTimeout;
     }
 
+    /**
+     * Check whether the index writers are kept open until the repository is closed (see SharedIndexWriter) or closed after every modification (e.g. within a clustered environment)
+     */
+    public boolean doKeepIndexWriterOpen() {
+        return keepIndexWriterOpen;
+    }
+
+    /**
+     * Get maximum number of changes of an index writer which are buffered before they are committed
+     */
+    public int getCommitMaxChanges() {
+        return commitMaxChanges;
+    }
+
+    /**
+     * Get maximum time (in milliseconds) changes of an index writer are buffered before they are committed
+     */
+    public long getCommitInterval() {
+        return commitInterval;
+    }
+
     /**
      * Get repository which contains the content for which this index has been created
      */
@@ -13,6 +13,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.TermQuery;
@@ -32,6 +33,13 @@ import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository;
 
 /**
  * Version 2 of Lucene implementation of indexer (mixing fulltext and properties)
+ * <br/><br/>
+ * One writer per index (fulltext and properties) is kept open until the repository is closed (see close() and SharedIndexWriter), whereas changes are committed according to the commit policy
+ * configured by the optional element &lt;index-writer keep-open="true" commit-max-changes="100" commit-interval="1000"/&gt; (interval in milliseconds) within the element &lt;lucene&gt;.
+ * If keep-open is set to false (e.g. within a clustered environment), then a writer is closed after every modification.
+ * <br/><br/>
+ * The text extracted by tika can be cached on disk by configuring the optional element &lt;extracted-text-cache dir="text-cache"/&gt; within the element &lt;lucene&gt; (see ExtractedTextCache),
+ * such that contents which have not been modified are not parsed again, e.g. when only properties have been modified.
  */
 public class LuceneIndexerV2 implements Indexer {
     
@@ -40,12 +48,25 @@ public class LuceneIndexerV2 implements Indexer {
 
     private static final String SYNC_LOCK_PROPERTIES = "sync-lock-properties";
     private static final String SYNC_LOCK_FULLTEXT = "sync-lock-fulltext";
+    private final Object SYNC_LOCK_MODIFIED_PATHS = new Object();
+
+    private SharedIndexWriter fulltextWriter;
+    private SharedIndexWriter propertiesWriter;
+    private java.util.concurrent.ScheduledExecutorService commitExecutor;
+    private static final long COMMITTER_SHUTDOWN_TIMEOUT = 30; // INFO: In seconds
+
+    private java.util.Set modifiedPaths;
+
+    private ExtractedTextCache textCache;
 
     /**
      * @see org.wyona.yarep.core.search.Indexer#configure(Configuration, File, Repository)
      */
     public void configure(Configuration searchIndexConfig, File configFile, Repository repo) throws SearchException {
         this.config = new LuceneConfig(searchIndexConfig, configFile.getParent(), repo);
+        if (config.getExtractedTextCacheDir() != null) {
+            textCache = new ExtractedTextCache(config.getExtractedTextCacheDir(), config.getTikaConfigId());
+        }
     }
     
     /**
@@ -67,47 +88,17 @@ public class LuceneIndexerV2 implements Indexer {
      */
     public void index(Node node, Metadata metaData) throws SearchException {
         try {
-            String path = node.getPath();
-            if (config.doIndexRevisions() && org.wyona.yarep.util.YarepUtil.isRevision(node)) {
-                String revisionName = ((org.wyona.yarep.core.Revision)node).getRevisionName();
-                log.debug("Trying to index revision: " + path + " (" + revisionName + "), " + node.getClass().getName());
-                path = path + "#revision=" + revisionName; // TODO: Discuss the separator
-            } else {
-                log.debug("Trying to index node: " + path);
-            }
-
             if (metaData != null) {
                 log.warn("This indexer implementation '" + getClass().getName() + "' is currently not making use of the meta data argument!");
             }
 
-            Document luceneDoc = getDocument(path);
-
-            // INFO: Add fulltext and tika properties
-            String mimeType = node.getMimeType();
-            if (mimeType != null) {
-                if (log.isDebugEnabled()) log.debug("Mime type: " + mimeType);
-                luceneDoc = addFulltext(node, mimeType, luceneDoc);
-            } else {
-                log.warn("Node '" + path + "' has no mime-type set and hence actual node content will not be added to fulltext index.");
-            }
-
-            // INFO: Add properties
-            Property[] properties = node.getProperties();
-            if (properties != null) {
-                for (int i = 0; i < properties.length; i++) {
-                    //log.debug("Add property to fulltext index: " + properties[i].getName());
-                    if (properties[i].getValueAsString() != null) {
-                        luceneDoc.add(new Field(properties[i].getName(), properties[i].getValueAsString(), Field.Store.YES, Field.Index.TOKENIZED));
-                    }
-                }
-            } else {
-                log.info("Node '" + path + "' has no properties.");
-            }
+            Document luceneDoc = createFulltextDocument(node);
+            String path = luceneDoc.get("_PATH");
 
             // INFO: Update index
             try {
                 log.debug("Fulltext index: Add/update node: " + path);
-                updateDocument(createFulltextIndexWriter(), path, luceneDoc);
+                updateDocument(getFulltextWriter(), path, luceneDoc);
             } catch(org.apache.lucene.store.LockObtainFailedException e) {
                 log.warn("Could not init 'fulltext' IndexWriter (maybe because of existing lock, exception message: " + e.getMessage() + "), hence content of node '" + path + "' will not be indexed!");
                 // TODO: log node path into dedicated log message!
@@ -118,6 +109,75 @@ public class LuceneIndexerV2 implements Indexer {
         }
     }
 
+    /**
+     * Create lucene document of fulltext index containing the extracted text, the tika properties and the properties of a node (see index(Node, Metadata) and LuceneBulkReindexer)
+     * @param node Node or revision
+     */
+    Document createFulltextDocument(Node node) throws Exception {
+        String path = getIndexPath(node);
+        Document luceneDoc = getDocument(path);
+
+        // INFO: Add fulltext and tika properties
+        String mimeType = node.getMimeType();
+        if (mimeType != null) {
+            if (log.isDebugEnabled()) log.debug("Mime type: " + mimeType);
+            luceneDoc = addFulltext(node, mimeType, luceneDoc);
+        } else {
+            log.warn("Node '" + path + "' has no mime-type set and hence actual node content will not be added to fulltext index.");
+        }
+
+        // INFO: Add properties
+        Property[] properties = node.getProperties();
+        if (properties != null) {
+            addProperties(properties, luceneDoc);
+        } else {
+            log.info("Node '" + path + "' has no properties.");
+        }
+        return luceneDoc;
+    }
+
+    /**
+     * Create lucene document of properties index containing all properties of a node (see LuceneBulkReindexer)
+     * @param node Node or revision
+     * @return Lucene document or null if the node has no properties
+     */
+    Document createPropertiesDocument(Node node) throws Exception {
+        Property[] properties = node.getProperties();
+        if (properties == null || properties.length == 0) {
+            return null;
+        }
+        Document luceneDoc = getDocument(getIndexPath(node));
+        addProperties(properties, luceneDoc);
+        return luceneDoc;
+    }
+
+    /**
+     * Get path of document within index, whereas the path of a revision contains the revision name if revisions are indexed
+     * @param node Node or revision
+     */
+    private String getIndexPath(Node node) throws Exception {
+        String path = node.getPath();
+        if (config.doIndexRevisions() && org.wyona.yarep.util.YarepUtil.isRevision(node)) {
+            String revisionName = ((org.wyona.yarep.core.Revision)node).getRevisionName();
+            log.debug("Trying to index revision: " + path + " (" + revisionName + "), " + node.getClass().getName());
+            return path + "#revision=" + revisionName; // TODO: Discuss the separator
+        }
+        log.debug("Trying to index node: " + path);
+        return path;
+    }
+
+    /**
+     * Add string values of properties to lucene document
+     */
+    private void addProperties(Property[] properties, Document luceneDoc) throws Exception {
+        for (int i = 0; i < properties.length; i++) {
+            //log.debug("Add property to fulltext index: " + properties[i].getName());
+            if (properties[i].getValueAsString() != null) {
+                luceneDoc.add(new Field(properties[i].getName(), properties[i].getValueAsString(), Field.Store.YES, Field.Index.TOKENIZED));
+            }
+        }
+    }
+
     /**
      * @see org.wyona.yarep.core.search.Indexer#removeFromIndex(org.wyona.yarep.core.Node)
      */
@@ -136,30 +196,149 @@ public class LuceneIndexerV2 implements Indexer {
      */
     private void removeFromFulltextIndex(String path) {
         log.debug("Trying to remove document '" + path + "' from fulltext index...");
-        IndexWriter indexWriter = null;
+        trackModification(path);
         try {
-            indexWriter = createFulltextIndexWriter();
-            if (indexWriter != null) {
-                indexWriter.deleteDocuments(new org.apache.lucene.index.Term("_PATH", path));
-                indexWriter.close();
-            } else {
-                log.warn("No fulltext index writer, hence could not remove document '" + path + "' from fulltext index!");
-            }
+            getFulltextWriter().deleteDocuments(new org.apache.lucene.index.Term("_PATH", path));
         } catch(Exception e) {
             log.warn("Probably IndexWriter could not be initialized, because of existing lock, hence node with path '" + path + "' will not be deleted from the index! Exception message: " + e.getMessage());
             //log.error(e, e);
+        }
+    }
+
+    /**
+     * Get shared writer of fulltext index, whereas the lucene index writer itself is opened the first time a document is written
+     */
+    synchronized SharedIndexWriter getFulltextWriter() {
+        if (fulltextWriter == null) {
+            log.debug("Fulltext search index directory: " + config.getFulltextSearchIndexFile());
+            fulltextWriter = new SharedIndexWriter(config.getFulltextSearchIndexFile(), config.getFulltextAnalyzer(), config);
+            startCommitter();
+        }
+        return fulltextWriter;
+    }
+
+    /**
+     * Get shared writer of properties index, whereas the lucene index writer itself is opened the first time a document is written
+     */
+    synchronized SharedIndexWriter getPropertiesWriter() {
+        if (propertiesWriter == null) {
+            log.debug("Properties search index directory: " + config.getPropertiesSearchIndexFile());
+            propertiesWriter = new SharedIndexWriter(config.getPropertiesSearchIndexFile(), config.getPropertyAnalyzer(), config);
+            startCommitter();
+        }
+        return propertiesWriter;
+    }
+
+    /**
+     * Get near real-time reader of fulltext index, which must be released with IndexReader#decRef()
+     * @return Reader or null if the fulltext index has not been modified yet by this indexer
+     */
+    synchronized IndexReader acquireFulltextReader() throws java.io.IOException {
+        return fulltextWriter != null ? fulltextWriter.acquireReader() : null;
+    }
+
+    /**
+     * Get near real-time reader of properties index, which must be released with IndexReader#decRef()
+     * @return Reader or null if the properties index has not been modified yet by this indexer
+     */
+    synchronized IndexReader acquirePropertiesReader() throws java.io.IOException {
+        return propertiesWriter != null ? propertiesWriter.acquireReader() : null;
+    }
+
+    /**
+     * Commit pending changes and close the index writers (see VirtualFileSystemRepository#close())
+     */
+    public void close() throws SearchException {
+        java.util.concurrent.ScheduledExecutorService executor;
+        synchronized(this) {
+            executor = commitExecutor;
+            commitExecutor = null;
+        }
+        if (executor != null) {
+            // INFO: Do not interrupt a running commit (which might close the channels of the index files), but only cancel the scheduled commits
+            executor.shutdown();
             try {
-                indexWriter.close();
-            } catch (Exception e2) {
-                log.warn("Could not close indexWriter. Exception message: " + e2.getMessage());
-                //log.error(e2, e2);
+                // INFO: Wait outside of the lock until a running commit has finished, because the committer needs the lock to access the writers, which are closed below
+                if (!executor.awaitTermination(COMMITTER_SHUTDOWN_TIMEOUT, java.util.concurrent.TimeUnit.SECONDS)) {
+                    log.warn("Index committer of repository '" + config.getRepo().getName() + "' has not stopped within " + COMMITTER_SHUTDOWN_TIMEOUT + " seconds.");
+                }
+            } catch (InterruptedException e) {
+                log.warn("Waiting for index committer of repository '" + config.getRepo().getName() + "' to stop has been interrupted!");
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized(this) {
+            try {
+                if (fulltextWriter != null) {
+                    fulltextWriter.close();
+                }
+            } catch (Exception e) {
+                log.error(e, e);
+                throw new SearchException(e.getMessage(), e);
+            } finally {
+                fulltextWriter = null;
+                try {
+                    if (propertiesWriter != null) {
+                        propertiesWriter.close();
+                    }
+                } catch (Exception e) {
+                    log.error(e, e);
+                    throw new SearchException(e.getMessage(), e);
+                } finally {
+                    propertiesWriter = null;
+                }
             }
         }
     }
-    
+
+    /**
+     * Commit pending changes of the shared writers periodically within a background thread, such that changes become durable also if no further modifications happen
+     */
+    private void startCommitter() {
+        if (commitExecutor != null || !config.doKeepIndexWriterOpen() || config.getCommitInterval() <= 0) {
+            return;
+        }
+        commitExecutor = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(new java.util.concurrent.ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "yarep-index-committer-" + config.getRepo().getName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        commitExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                commitIfDue();
+            }
+        }, config.getCommitInterval(), config.getCommitInterval(), java.util.concurrent.TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Commit pending changes of the shared writers if the commit interval has elapsed, whereas the writers are accessed with the same lock as by close() and commit()
+     */
+    private synchronized void commitIfDue() {
+        commitIfDue(fulltextWriter);
+        commitIfDue(propertiesWriter);
+    }
+
+    /**
+     *
+     */
+    private void commitIfDue(SharedIndexWriter writer) {
+        if (writer != null) {
+            try {
+                writer.commitIfDue();
+            } catch (Exception e) {
+                log.error(e, e);
+            }
+        }
+    }
+
     /**
      * Get index writer
+     * @deprecated Documents are written by the shared writer (see getFulltextWriter()), which holds the write.lock of the index as long as it is open
      */
+   @Deprecated
    protected IndexWriter createFulltextIndexWriter() throws Exception {
        synchronized(SYNC_LOCK_FULLTEXT) {
            log.debug("Fulltext search index directory: " + config.getFulltextSearchIndexFile());
@@ -171,7 +350,9 @@ public class LuceneIndexerV2 implements Indexer {
 
    /**
     * Create writer for modifying properties
+    * @deprecated Documents are written by the shared writer (see getPropertiesWriter()), which holds the write.lock of the index as long as it is open
     */
+   @Deprecated
    protected IndexWriter createPropertiesIndexWriter() throws Exception {
        synchronized(SYNC_LOCK_PROPERTIES) {
            log.debug("Properties search index directory: " + config.getPropertiesSearchIndexFile());
@@ -261,7 +442,7 @@ public class LuceneIndexerV2 implements Indexer {
                 }
 */
                 log.debug("Properties index: Add/update property '" + property.getName() + "' (Value: " + property.getValueAsString() + ") of node: " + path);
-                updateDocument(createPropertiesIndexWriter(), path, luceneDoc);
+                updateDocument(getPropertiesWriter(), path, luceneDoc);
             } catch(org.apache.lucene.store.LockObtainFailedException e) {
                 log.warn("Could not init 'properties' IndexWriter (maybe because of existing lock (Timeout: " + IndexWriter.getDefaultWriteLockTimeout() + "ms), exception message: " + e.getMessage() + "), hence properties of node '" + path + "' will not be indexed!");
                 // TODO: log node path into dedicated log message!
@@ -279,20 +460,12 @@ public class LuceneIndexerV2 implements Indexer {
         try {
             String path = node.getPath();
             log.debug("Trying to remove property '" + property.getName() + "' of node '" + path + "' from properties index...");
-            IndexWriter indexWriter = null;
+            trackModification(path);
             try {
-                indexWriter = createPropertiesIndexWriter();
-                indexWriter.deleteDocuments(new org.apache.lucene.index.Term("_PATH", path)); // TODO: Actually only documents with _PATH = path and containing a field with the property name should be deleted!
-                indexWriter.close();
+                getPropertiesWriter().deleteDocuments(new org.apache.lucene.index.Term("_PATH", path)); // TODO: Actually only documents with _PATH = path and containing a field with the property name should be deleted!
             } catch(Exception e) {
                 log.warn("Probably IndexWriter could not be initialized, because of existing lock, hence node with path '" + path + "' will not be deleted from the index! Exception message: " + e.getMessage());
                 //log.error(e, e);
-                try {
-                    indexWriter.close();
-                } catch (Exception e2) {
-                    log.warn("Could not close indexWriter. Exception message: " + e2.getMessage());
-                    //log.error(e2, e2);
-                }
             }
         } catch(org.wyona.yarep.core.RepositoryException e) {
             log.error(e, e);
@@ -300,27 +473,111 @@ public class LuceneIndexerV2 implements Indexer {
     }
 
     /**
-     * Update document of a particular path within index
+     * Update document of a particular path within index, whereas the change is committed according to the commit policy and the index is not optimized (see SharedIndexWriter)
      *
-     * @param indexWriter Index writer
+     * @param indexWriter Shared index writer
      * @param path Path of node with which the fields and values are related to
      * @param document Lucene document containing the new fields and new values
      */
-    private void updateDocument(IndexWriter indexWriter, String path, Document document) throws Exception {
+    private void updateDocument(SharedIndexWriter indexWriter, String path, Document document) throws Exception {
         Term pathTerm = new Term("_PATH", path);
+        if (log.isDebugEnabled()) log.debug("Node '" + path + "' will be indexed.");
+        trackModification(path);
+        indexWriter.updateDocument(pathTerm, document);
+    }
 
-        if (indexWriter != null) {
-            if (log.isDebugEnabled()) log.debug("Node '" + path + "' will be indexed.");
-            indexWriter.updateDocument(pathTerm, document);
-            indexWriter.optimize(); // TODO: Make this configurable because of performance problem?!
-            indexWriter.close();
-            //indexWriter.flush();
+    /**
+     * Replace the fulltext and properties documents of a node by documents reflecting its current state, whereas the properties document is deleted if the node has no properties (see LuceneBulkReindexer)
+     * @param node Node or revision
+     */
+    void updateDocuments(Node node) throws Exception {
+        Document fulltextDoc = createFulltextDocument(node);
+        String path = fulltextDoc.get("_PATH");
+        updateDocument(getFulltextWriter(), path, fulltextDoc);
+        Document propertiesDoc = createPropertiesDocument(node);
+        if (propertiesDoc != null) {
+            updateDocument(getPropertiesWriter(), path, propertiesDoc);
         } else {
-            throw new Exception("Index writer is null and hence node '" + path + "' will not be indexed!");
-            //log.warn("IndexWriter is null and hence node will not be indexed: " + path);
+            getPropertiesWriter().deleteDocuments(new Term("_PATH", path));
+        }
+    }
+
+    /**
+     * Delete the fulltext and properties documents of a particular path, e.g. of a node which does not exist anymore (see LuceneBulkReindexer)
+     * @param path Path of document
+     */
+    void deleteDocuments(String path) throws Exception {
+        trackModification(path);
+        getFulltextWriter().deleteDocuments(new Term("_PATH", path));
+        getPropertiesWriter().deleteDocuments(new Term("_PATH", path));
+    }
+
+    /**
+     * Delete the properties documents of a particular path, e.g. of a node which is missing inside the repository (see LuceneSearcher#getMissingNodes(boolean, int))
+     * @param path Path of document
+     */
+    void deletePropertiesDocuments(String path) throws Exception {
+        trackModification(path);
+        getPropertiesWriter().deleteDocuments(new Term("_PATH", path));
+    }
+
+    /**
+     * Commit pending changes of the shared writers immediately, whereas the writers are kept open
+     */
+    synchronized void commit() throws java.io.IOException {
+        if (fulltextWriter != null) {
+            fulltextWriter.commit();
+        }
+        if (propertiesWriter != null) {
+            propertiesWriter.commit();
+        }
+    }
+
+    /**
+     * Start recording the paths of all documents which are modified, e.g. while a bulk reindex is building new indexes aside (see LuceneBulkReindexer)
+     */
+    void startTrackingModifications() {
+        synchronized(SYNC_LOCK_MODIFIED_PATHS) {
+            modifiedPaths = new java.util.LinkedHashSet();
+        }
+    }
+
+    /**
+     * Stop recording modified paths
+     * @return Paths of documents which have been modified since startTrackingModifications() has been called
+     */
+    String[] stopTrackingModifications() {
+        synchronized(SYNC_LOCK_MODIFIED_PATHS) {
+            if (modifiedPaths == null) {
+                return new String[0];
+            }
+            String[] paths = (String[]) modifiedPaths.toArray(new String[modifiedPaths.size()]);
+            modifiedPaths = null;
+            return paths;
         }
     }
 
+    /**
+     * Record path of a modified document if modifications are tracked
+     */
+    private void trackModification(String path) {
+        synchronized(SYNC_LOCK_MODIFIED_PATHS) {
+            if (modifiedPaths != null) {
+                modifiedPaths.add(path);
+            }
+        }
+    }
+
+    /**
+     * Replace the content of the live fulltext and properties indexes by the content of indexes which have been built aside (see LuceneBulkReindexer and SharedIndexWriter#replaceIndex(File))
+     * @param fulltextSrcDir Directory of new fulltext index
+     * @param propertiesSrcDir Directory of new properties index
+     */
+    void replaceIndexes(File fulltextSrcDir, File propertiesSrcDir) throws Exception {
+        getFulltextWriter().replaceIndex(fulltextSrcDir);
+        getPropertiesWriter().replaceIndex(propertiesSrcDir);
+    }
+
     /**
      * Init lucene document
      * @param path Node path for which fields and values are associated with
@@ -345,7 +602,15 @@ public class LuceneIndexerV2 implements Indexer {
                 org.apache.tika.metadata.Metadata tikaMetaData = new org.apache.tika.metadata.Metadata();
                 tikaMetaData.set("yarep-path", node.getPath());
 
-                StringWriter writer = new StringWriter();
+                // INFO: Unchanged content is not parsed again (see ExtractedTextCache)
+                String cacheKey = null;
+                if (textCache != null) {
+                    cacheKey = textCache.getKey(node, parser, mimeType);
+                    fullText = textCache.get(cacheKey, tikaMetaData);
+                }
+
+                if (fullText == null) {
+                    StringWriter writer = new StringWriter();
 
 /*
                             // The WriteOutContentHandler writes all character content out to the writer. Please note that Tika also contains various other utility classes to extract content, such as for example the BodyContentHandler (see http://lucene.apache.org/tika/apidocs/org/apache/tika/sax/package-summary.html)
@@ -354,10 +619,14 @@ public class LuceneIndexerV2 implements Indexer {
                             log.warn("Fulltext generation with WriteOutContentHandler does seem to be buggy (because title and body are not separated with a space): " + fullText);
 */
 
-                // NOTE: The body content handler generates xhtml ... instead just the words ...
-                parser.parse(node.getInputStream(), new BodyContentHandler(writer), tikaMetaData);
-                fullText = writer.toString();
-                writer.close();
+                    // NOTE: The body content handler generates xhtml ... instead just the words ...
+                    parser.parse(node.getInputStream(), new BodyContentHandler(writer), tikaMetaData);
+                    fullText = writer.toString();
+                    writer.close();
+                    if (textCache != null) {
+                        textCache.put(cacheKey, fullText, tikaMetaData, "yarep-path");
+                    }
+                }
 /* INFO: Alternative to using a writer ...
                             BodyContentHandler textHandler = new BodyContentHandler();
                             parser.parse(node.getInputStream(), textHandler, tikaMetaData);
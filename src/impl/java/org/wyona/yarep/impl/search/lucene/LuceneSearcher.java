@@ -8,6 +8,7 @@ import org.apache.avalon.framework.configuration.Configuration;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
 
 import org.wyona.yarep.core.NoSuchNodeException;
@@ -42,11 +43,15 @@ public class LuceneSearcher implements Searcher {
      * @see org.wyona.yarep.core.search.Searcher#search(String)
      */
     public Node[] search(String query) throws SearchException {
+        IndexReader reader = null;
         try {
             //TODO: this is not really nice re performance, it reads the index form the file-system for each search
             //it would be nice to initialize IndexSearcher at startup and reuse the IndexSearcher 
             //but in this case the IndexSearcher then uses the index as it was at startup and not reloading it when the index has changed at runtime
-            org.apache.lucene.search.Searcher searcher = new IndexSearcher(config.getFulltextSearchIndexFile().getAbsolutePath());
+            // INFO: If the index is written by a shared index writer, then its near real-time reader is used, such that changes are found which have not been committed yet
+            LuceneIndexerV2 indexer = getSharedIndexer();
+            reader = indexer != null ? indexer.acquireFulltextReader() : null;
+            org.apache.lucene.search.Searcher searcher = reader != null ? new IndexSearcher(reader) : new IndexSearcher(config.getFulltextSearchIndexFile().getAbsolutePath());
             if (searcher != null) {
                 try {
                     org.apache.lucene.search.Query luceneQuery = new org.apache.lucene.queryParser.QueryParser(LuceneIndexer.INDEX_PROPERTY_FULL, config.getFulltextAnalyzer()).parse(query);
@@ -95,6 +100,8 @@ public class LuceneSearcher implements Searcher {
         } catch (Exception e) {
             log.error(e, e);
             throw new SearchException(e.getMessage(),e);
+        } finally {
+            releaseReader(reader);
         }
         return null;
     }
@@ -103,11 +110,14 @@ public class LuceneSearcher implements Searcher {
      * @see org.wyona.yarep.core.search.Searcher#searchProperty(String, String, String)
      */
     public Node[] searchProperty(String pName, String query, String path) throws SearchException {
+        IndexReader reader = null;
         try {
             //TODO: this is not really nice re performance, it reads the index form the file-system for each search
             //it would be nice to initialize IndexSearcher at startup and reuse the IndexSearcher 
             //but in this case the IndexSearcher then uses the index as it was at startup and not reloading it when the index has changed at runtime            
-            org.apache.lucene.search.Searcher searcher = new IndexSearcher(config.getPropertiesSearchIndexFile().getAbsolutePath());
+            LuceneIndexerV2 indexer = getSharedIndexer();
+            reader = indexer != null ? indexer.acquirePropertiesReader() : null;
+            org.apache.lucene.search.Searcher searcher = reader != null ? new IndexSearcher(reader) : new IndexSearcher(config.getPropertiesSearchIndexFile().getAbsolutePath());
             if (searcher != null) {
                 try {
                     log.debug("Search property '" + pName + "': " + query);
@@ -173,6 +183,8 @@ public class LuceneSearcher implements Searcher {
         } catch (Exception e) {
             log.error(e, e);
             throw new SearchException(e.getMessage(),e);
+        } finally {
+            releaseReader(reader);
         }
         return null;
     }
@@ -184,9 +196,13 @@ public class LuceneSearcher implements Searcher {
      * @return List of paths of of nodes and/or revisions, which do not exist anymore inside repository
      */
     public String[] getMissingNodes(boolean delete, int limitSize) throws SearchException {
+        IndexReader reader = null;
         try {
             File indexDirectory = config.getPropertiesSearchIndexFile();
-            org.apache.lucene.search.Searcher searcher = new IndexSearcher(indexDirectory.getAbsolutePath());
+            // INFO: If the shared index writer is open, then its near real-time reader finds also changes which have not been committed yet, and missing documents are deleted by the shared writer, which holds the write.lock
+            LuceneIndexerV2 indexer = getSharedIndexer();
+            reader = indexer != null ? indexer.acquirePropertiesReader() : null;
+            org.apache.lucene.search.Searcher searcher = reader != null ? new IndexSearcher(reader) : new IndexSearcher(indexDirectory.getAbsolutePath());
             if (searcher != null) {
                 try {
                     org.apache.lucene.search.Query luceneQuery = new org.apache.lucene.search.MatchAllDocsQuery();
@@ -235,16 +251,23 @@ public class LuceneSearcher implements Searcher {
                     if (delete) {
                         log.warn("Delete missing documents from index...");
                         try {
-                            // TODO: Use Indexer configured by repository!
-                            org.apache.lucene.index.IndexWriter indexWriter = LuceneIndexerV2.createIndexWriter(indexDirectory, config.getPropertyAnalyzer(), config.getWriteLockTimeout());
-                            if (indexWriter != null) {
+                            if (indexer != null) {
                                 for (String path: results) {
                                     log.warn("DEBUG: Try to delete document from index: " + path);
-                                    indexWriter.deleteDocuments(new org.apache.lucene.index.Term(PATH_FIELD_NAME, path));
+                                    indexer.deletePropertiesDocuments(path);
                                 }
-                                indexWriter.close();
+                                indexer.commit();
                             } else {
-                                throw new SearchException("Could not init IndexWriter in order to delete missing documents!");
+                                org.apache.lucene.index.IndexWriter indexWriter = LuceneIndexerV2.createIndexWriter(indexDirectory, config.getPropertyAnalyzer(), config.getWriteLockTimeout());
+                                if (indexWriter != null) {
+                                    for (String path: results) {
+                                        log.warn("DEBUG: Try to delete document from index: " + path);
+                                        indexWriter.deleteDocuments(new org.apache.lucene.index.Term(PATH_FIELD_NAME, path));
+                                    }
+                                    indexWriter.close();
+                                } else {
+                                    throw new SearchException("Could not init IndexWriter in order to delete missing documents!");
+                                }
                             }
                         } catch(Exception e) {
                             throw new SearchException(e);
@@ -263,6 +286,31 @@ public class LuceneSearcher implements Searcher {
         } catch (Exception e) {
             log.error(e, e);
             throw new SearchException(e.getMessage(),e);
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    /**
+     * Get indexer of repository if it keeps shared index writers open (see LuceneIndexerV2)
+     * @return Indexer or null if the repository uses another indexer
+     */
+    private LuceneIndexerV2 getSharedIndexer() throws Exception {
+        org.wyona.yarep.core.search.Indexer indexer = config.getRepo().getIndexer();
+        return indexer instanceof LuceneIndexerV2 ? (LuceneIndexerV2) indexer : null;
+    }
+
+    /**
+     * Release near real-time reader of a shared index writer
+     * @param reader Reader or null
+     */
+    private void releaseReader(IndexReader reader) {
+        if (reader != null) {
+            try {
+                reader.decRef();
+            } catch (Exception e) {
+                log.error(e, e);
+            }
         }
     }
 }
@@ -0,0 +1,197 @@
+package org.wyona.yarep.impl.search.lucene;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+/**
+ * Index writer of one lucene index (fulltext or properties, see LuceneIndexerV2), which is opened the first time a document is written and kept open until the repository is closed.
+ * <br/><br/>
+ * Modifications are committed as soon as either a maximum number of changes has been buffered or the commit interval has elapsed since the last commit (see LuceneConfig#getCommitMaxChanges() and LuceneConfig#getCommitInterval()), whereas pending changes are also committed periodically (see commitIfDue()) and when the writer is closed.
+ * The index is never optimized, but segments are merged by the merge policy of the writer.
+ * Searches share one near real-time reader of the writer (see acquireReader()), such that modifications are visible before they have been committed.
+ */
+class SharedIndexWriter {
+
+    private static Logger log = LogManager.getLogger(SharedIndexWriter.class);
+
+    private File indexDir;
+    private Analyzer analyzer;
+    private long writeLockTimeout;
+    private int commitMaxChanges;
+    private long commitInterval;
+    private boolean keepOpen;
+
+    private IndexWriter writer;
+    private IndexReader reader;
+    private boolean modified = true;
+    private int uncommittedChanges = 0;
+    private long lastCommit = System.currentTimeMillis();
+
+    /**
+     * @param indexDir Directory of lucene index
+     * @param analyzer Analyzer of index
+     * @param config Configuration containing write.lock timeout and commit policy
+     */
+    SharedIndexWriter(File indexDir, Analyzer analyzer, LuceneConfig config) {
+        this.indexDir = indexDir;
+        this.analyzer = analyzer;
+        this.writeLockTimeout = config.getWriteLockTimeout();
+        this.commitMaxChanges = config.getCommitMaxChanges();
+        this.commitInterval = config.getCommitInterval();
+        this.keepOpen = config.doKeepIndexWriterOpen();
+    }
+
+    /**
+     * Add or replace the document of a particular path
+     * @param pathTerm Term containing path of document
+     * @param document Lucene document
+     */
+    synchronized void updateDocument(Term pathTerm, Document document) throws Exception {
+        getWriter().updateDocument(pathTerm, document);
+        changed();
+    }
+
+    /**
+     * Delete documents containing a particular term
+     * @param term Term, e.g. path of document
+     */
+    synchronized void deleteDocuments(Term term) throws Exception {
+        getWriter().deleteDocuments(term);
+        changed();
+    }
+
+    /**
+     * Commit pending changes if the commit interval has elapsed since the last commit
+     */
+    synchronized void commitIfDue() throws IOException {
+        if (uncommittedChanges > 0 && System.currentTimeMillis() - lastCommit >= commitInterval) {
+            commit();
+        }
+    }
+
+    /**
+     * Commit pending changes
+     */
+    synchronized void commit() throws IOException {
+        if (writer != null && uncommittedChanges > 0) {
+            if (log.isDebugEnabled()) log.debug("Commit " + uncommittedChanges + " changes of index: " + indexDir);
+            writer.commit();
+            uncommittedChanges = 0;
+        }
+        lastCommit = System.currentTimeMillis();
+    }
+
+    /**
+     * Get shared near real-time reader, which is reopened if the index has been modified. The reader must be released with IndexReader#decRef()
+     * @return Reader or null if the writer is not open (yet), such that the committed index has to be read from the index directory
+     */
+    synchronized IndexReader acquireReader() throws IOException {
+        if (writer == null) {
+            return null;
+        }
+        if (modified || reader == null) {
+            IndexReader newReader = writer.getReader();
+            if (reader != null) {
+                reader.decRef(); // INFO: The previous reader is closed as soon as all searches using it have been finished
+            }
+            reader = newReader;
+            modified = false;
+        }
+        reader.incRef();
+        return reader;
+    }
+
+    /**
+     * Commit pending changes and close reader and writer
+     */
+    synchronized void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        log.info("Close index writer: " + indexDir);
+        try {
+            if (reader != null) {
+                reader.decRef();
+                reader = null;
+            }
+            commit();
+        } finally {
+            writer.close();
+            writer = null;
+            modified = true;
+        }
+    }
+
+    /**
+     * Replace all documents of the index by the documents of another index, e.g. an index which has been built aside by a bulk reindex (see LuceneBulkReindexer).
+     * The current writer is closed and the index is recreated by a writer which does not commit before all documents have been added, such that readers see either the previous or the new index, but never a partial one.
+     * @param srcDir Directory of index containing the new documents
+     */
+    synchronized void replaceIndex(File srcDir) throws IOException {
+        close();
+        log.info("Replace index '" + indexDir + "' by index: " + srcDir);
+        indexDir.mkdirs();
+        IndexWriter.setDefaultWriteLockTimeout(writeLockTimeout);
+        IndexWriter replacingWriter = new IndexWriter(FSDirectory.open(indexDir), analyzer, true, IndexWriter.MaxFieldLength.LIMITED);
+        boolean committed = false;
+        try {
+            replacingWriter.addIndexesNoOptimize(new Directory[] {FSDirectory.open(srcDir)});
+            replacingWriter.commit();
+            committed = true;
+        } finally {
+            if (committed) {
+                replacingWriter.close();
+            } else {
+                replacingWriter.rollback(); // INFO: The previous index stays intact
+            }
+        }
+        modified = true;
+    }
+
+    /**
+     * Get writer, which is opened the first time it is used
+     */
+    private IndexWriter getWriter() throws Exception {
+        if (writer == null) {
+            writer = LuceneIndexerV2.createIndexWriter(indexDir, analyzer, writeLockTimeout);
+            if (writer == null) {
+                throw new Exception("Index writer is null and hence index '" + indexDir + "' cannot be modified!");
+            }
+            log.info("Opened index writer: " + indexDir);
+            lastCommit = System.currentTimeMillis();
+        }
+        return writer;
+    }
+
+    /**
+     * Apply commit policy after a modification
+     */
+    private void changed() throws IOException {
+        modified = true;
+        uncommittedChanges++;
+        if (!keepOpen) {
+            // INFO: Release the write.lock right away, e.g. because other cluster nodes write into the same index
+            close();
+        } else if (uncommittedChanges >= commitMaxChanges || System.currentTimeMillis() - lastCommit >= commitInterval) {
+            commit();
+        }
+    }
+
+    /**
+     *
+     */
+    public String toString() {
+        return indexDir.toString();
+    }
+}
@@ -0,0 +1,89 @@
+package org.wyona.yarep.tests;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.RepositoryFactory;
+import org.wyona.yarep.core.Revision;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode;
+
+/**
+ * Fixtures shared by the tests of particular features of the 'virtual filesystem' repository implementation
+ */
+public abstract class AbstractVirtualFilesystemTest extends TestCase {
+
+    /**
+     * Creation date of the most recent revision created by checkin(Node), whereas the revisions are created in the past, because some tests look up the revisions for the current date
+     */
+    private static long revisionTime = (System.currentTimeMillis() / 1000 - 3600) * 1000;
+
+    /**
+     * Open the default test repository (new-vfs-example/repository.xml)
+     */
+    protected Repository openRepository() throws Exception {
+        return new RepositoryFactory().newRepository("vfs-example", new File("new-vfs-example/repository.xml"));
+    }
+
+    /**
+     * Open a test repository configured for a particular feature
+     * @param fixture Name of the fixture, e.g. 'blobs' for new-vfs-example/repository-blobs.xml
+     */
+    protected Repository openRepository(String fixture) throws Exception {
+        return new RepositoryFactory().newRepository("vfs-example-" + fixture, new File("new-vfs-example/repository-" + fixture + ".xml"));
+    }
+
+    /**
+     * Create a node below the root node, whereas a node left over by a previous test run is deleted first
+     * @param repository Test repository
+     * @param path Path of node, e.g. '/hello.txt'
+     * @param type Node type (see NodeType)
+     */
+    protected Node createNode(Repository repository, String path, int type) throws Exception {
+        if (repository.existsNode(path)) {
+            repository.getNode(path).delete();
+        }
+        return repository.getNode("/").addNode(path.substring(1), type);
+    }
+
+    /**
+     *
+     */
+    protected void writeContent(Node node, String content) throws Exception {
+        OutputStream out = node.getOutputStream();
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+
+    /**
+     *
+     */
+    protected String readContent(Node node) throws Exception {
+        InputStream in = node.getInputStream();
+        try {
+            return org.apache.commons.io.IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Checkin node, whereas the revision is created one second after the previous revision of the test, such that the order of the revisions does not depend on the timing of the test
+     */
+    protected Revision checkin(Node node) throws Exception {
+        return checkin(node, "");
+    }
+
+    /**
+     * Checkin node with a comment, whereas the revision is created one second after the previous revision of the test
+     */
+    protected Revision checkin(Node node, String comment) throws Exception {
+        node.checkout("test-user");
+        revisionTime = revisionTime + 1000;
+        return ((VirtualFileSystemNode) node).checkin(comment, revisionTime);
+    }
+}
@@ -0,0 +1,166 @@
+package org.wyona.yarep.tests;
+
+import java.io.File;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeInfo;
+import org.wyona.yarep.core.NodeType;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository;
+
+/**
+ * Tests of listing the children of collections of the virtual filesystem repository implementation
+ */
+public class VirtualFilesystemChildrenTest extends AbstractVirtualFilesystemTest {
+
+    /**
+     * Test listing lightweight descriptions of child nodes
+     */
+    public void testListChildren() throws Exception {
+        Repository repo = openRepository("properties-cache"); // INFO: The mime types of the children are read from the properties cache
+        Node collection = repo.getNode("/");
+        if (!repo.existsNode("/list-children-test")) {
+            collection = collection.addNode("list-children-test", NodeType.COLLECTION);
+        } else {
+            collection = repo.getNode("/list-children-test");
+        }
+        Node resource = collection.hasNode("hello.txt") ? collection.getNode("hello.txt") : collection.addNode("hello.txt", NodeType.RESOURCE);
+        writeContent(resource, "Hello World");
+        resource.setMimeType("text/plain");
+        if (!collection.hasNode("sub")) {
+            collection.addNode("sub", NodeType.COLLECTION);
+        }
+
+        NodeInfo[] children = collection.listChildren();
+        assertEquals(collection.getNodes().length, children.length);
+        assertEquals(2, children.length);
+        for (int i = 0; i < children.length; i++) {
+            if (children[i].getName().equals("hello.txt")) {
+                assertTrue(children[i].isResource());
+                assertEquals("/list-children-test/hello.txt", children[i].getPath());
+                assertEquals(11, children[i].getSize());
+                assertEquals("text/plain", children[i].getMimeType());
+                assertEquals(repo.getNode(children[i].getPath()).getLastModified(), children[i].getLastModified());
+            } else {
+                assertEquals("sub", children[i].getName());
+                assertTrue(children[i].isCollection());
+            }
+        }
+    }
+
+    /**
+     * Test getting pages of children sorted by name, which are read from the child index
+     */
+    public void testPagedChildren() throws Exception {
+        Repository repo = openRepository("child-index");
+        Node collection = createNode(repo, "/paged-children-test", NodeType.COLLECTION);
+        String[] names = {"e", "b", "h", "a", "g", "c", "f", "d"};
+        for (int i = 0; i < names.length; i++) {
+            collection.addNode(names[i], NodeType.RESOURCE);
+        }
+
+        assertPage("a,b,c", collection.getNodes(0, 3));
+        assertPage("d,e,f", collection.getNodes(3, 3));
+        assertPage("g,h", collection.getNodes(6, 3));
+        assertPage("", collection.getNodes(8, 3));
+        VirtualFileSystemRepository vfsRepo = (VirtualFileSystemRepository) repo;
+        File dir = new File(vfsRepo.getContentDir(), "paged-children-test");
+        assertTrue("Child index has not been created", new File(vfsRepo.getMetaDir(), "paged-children-test.yarep/child-index").isFile());
+        assertEquals("Child index is located within the content directory", 8, dir.list().length);
+
+        // INFO: The index is updated when nodes are added or deleted
+        collection.addNode("bb", NodeType.RESOURCE);
+        collection.getNode("g").delete();
+        assertPage("a,b,bb,c,d,e,f,h", collection.getNodes(0, 100));
+        assertEquals(8, collection.getNodes().length);
+
+        // INFO: The index is rebuilt when a file has been added without using the repository
+        new File(dir, "cc").createNewFile();
+        dir.setLastModified(dir.lastModified() + 10000);
+        assertPage("c,cc,d", collection.getNodes(3, 3));
+    }
+
+    /**
+     * Test that pages and descriptions of children are based on getNodes() if split path is enabled
+     */
+    public void testChildrenWithSplitPath() throws Exception {
+        Repository repo = openRepository("splitpath-migration");
+        Node collection = createNode(repo, "/split-children-test", NodeType.COLLECTION);
+        collection.addNode("b", NodeType.RESOURCE);
+        collection.addNode("a", NodeType.RESOURCE);
+
+        assertPage("a,b", collection.getNodes(0, 10));
+        assertPage("b", collection.getNodes(1, 10));
+        assertEquals(collection.getNodes().length, collection.listChildren().length);
+    }
+
+    /**
+     * Test that the child index is rebuilt when a file has been added without using the repository, but the last modified date of the directory has not changed (because of its granularity)
+     */
+    public void testChildIndexWithinLastModifiedGranularity() throws Exception {
+        Repository repo = openRepository("child-index");
+        Node collection = createNode(repo, "/granularity-children-test", NodeType.COLLECTION);
+        collection.addNode("a", NodeType.RESOURCE);
+        collection.addNode("b", NodeType.RESOURCE);
+        assertPage("a,b", collection.getNodes(0, 10));
+
+        File dir = new File(((VirtualFileSystemRepository) repo).getContentDir(), "granularity-children-test");
+        long lastModified = dir.lastModified();
+        new File(dir, "c").createNewFile();
+        dir.setLastModified(lastModified);
+        assertPage("a,b,c", collection.getNodes(0, 10));
+    }
+
+    /**
+     * Test that the child index is not corrupted when two repository instances add children to the same collection concurrently
+     */
+    public void testConcurrentChildIndexUpdates() throws Exception {
+        Repository repo = openRepository("child-index");
+        createNode(repo, "/concurrent-children-test", NodeType.COLLECTION);
+        assertPage("", repo.getNode("/concurrent-children-test").getNodes(0, 10)); // INFO: Creates the child index
+
+        final Node[] collections = new Node[] {repo.getNode("/concurrent-children-test"), openRepository("child-index").getNode("/concurrent-children-test")};
+        final Exception[] errors = new Exception[collections.length];
+        Thread[] threads = new Thread[collections.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int k = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int n = 0; n < 20; n++) {
+                            collections[k].addNode("child-" + k + "-" + (n < 10 ? "0" : "") + n, NodeType.RESOURCE);
+                        }
+                    } catch (Exception e) {
+                        errors[k] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            if (errors[i] != null) {
+                throw errors[i];
+            }
+        }
+
+        Node[] children = collections[0].getNodes(0, 100);
+        assertEquals(40, children.length);
+        assertEquals("child-0-00", children[0].getName());
+        assertEquals("child-1-19", children[39].getName());
+    }
+
+    /**
+     * Compare names of nodes with expected comma separated names
+     */
+    private void assertPage(String expected, Node[] nodes) throws Exception {
+        StringBuffer names = new StringBuffer();
+        for (int i = 0; i < nodes.length; i++) {
+            if (i > 0) {
+                names.append(",");
+            }
+            names.append(nodes[i].getName());
+        }
+        assertEquals(expected, names.toString());
+    }
+}
@@ -0,0 +1,184 @@
+package org.wyona.yarep.tests;
+
+import java.io.File;
+import java.util.Date;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeType;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.Revision;
+
+/**
+ * Tests of the date indexes of the revisions of the virtual filesystem repository implementation
+ */
+public class VirtualFilesystemDateIndexTest extends AbstractVirtualFilesystemTest {
+
+    /**
+     * Test date index based on one binary file per node
+     */
+    public void testRevisionTimeline() throws Exception {
+        Repository timelineRepo = openRepository("timeline");
+        String path = "/revision-timeline-test.txt";
+        Node node = createNode(timelineRepo, path, NodeType.RESOURCE);
+        Revision[] revisions = new Revision[4];
+        for (int i = 0; i < revisions.length; i++) {
+            writeContent(node, "Content " + i);
+            revisions[i] = checkin(node);
+        }
+        File indexFile = new File(timelineRepo.getConfigFile().getParentFile(), "meta-timeline/revision-timeline-test.txt.yarep/index_date_timeline");
+        assertEquals(revisions.length * 16, indexFile.length());
+
+        org.wyona.yarep.core.attributes.VersionableV1 versionable = (org.wyona.yarep.core.attributes.VersionableV1) node;
+        for (int i = 0; i < revisions.length; i++) {
+            Date creationDate = revisions[i].getCreationDate();
+            assertEquals(revisions[i].getRevisionName(), versionable.getRevision(creationDate).getRevisionName());
+            Date justBeforeNext = new Date((i + 1 < revisions.length ? revisions[i + 1].getCreationDate().getTime() : creationDate.getTime() + 1000) - 1);
+            assertEquals(revisions[i].getRevisionName(), versionable.getRevision(justBeforeNext).getRevisionName());
+        }
+        assertNull(versionable.getRevision(new Date(revisions[0].getCreationDate().getTime() - 1)));
+
+        // INFO: Iterate through the revisions in batches of two revisions (see revisions-iterator-batch-size)
+        java.util.Iterator it = versionable.getRevisions(false);
+        for (int i = revisions.length - 1; i >= 0; i--) {
+            assertTrue(it.hasNext());
+            assertEquals(revisions[i].getRevisionName(), ((Revision) it.next()).getRevisionName());
+        }
+        assertFalse(it.hasNext());
+        it = versionable.getRevisions(true);
+        for (int i = 0; i < revisions.length; i++) {
+            assertEquals(revisions[i].getRevisionName(), ((Revision) it.next()).getRevisionName());
+        }
+        assertFalse(it.hasNext());
+        it = versionable.getRevisions(revisions[2].getCreationDate(), false);
+        for (int i = 2; i >= 0; i--) {
+            assertEquals(revisions[i].getRevisionName(), ((Revision) it.next()).getRevisionName());
+        }
+        assertFalse(it.hasNext());
+
+        node.getRevision(revisions[1].getRevisionName()).delete();
+        assertEquals((revisions.length - 1) * 16, indexFile.length());
+        assertEquals(revisions[0].getRevisionName(), versionable.getRevision(revisions[1].getCreationDate()).getRevisionName());
+
+        // INFO: Rebuild index
+        indexFile.delete();
+        assertEquals(revisions[2].getRevisionName(), versionable.getRevision(revisions[2].getCreationDate()).getRevisionName());
+        assertEquals((revisions.length - 1) * 16, indexFile.length());
+    }
+
+    /**
+     * Test that the date indexes of a repository are rebuilt by streaming the revisions and that nodes listed within the checkpoint file are skipped
+     */
+    public void testRebuildDateIndexes() throws Exception {
+        Repository timelineRepo = openRepository("timeline");
+        String path = "/rebuild-date-indexes-test.txt";
+        Node node = createNode(timelineRepo, path, NodeType.RESOURCE);
+        Revision[] revisions = new Revision[3];
+        for (int i = 0; i < revisions.length; i++) {
+            writeContent(node, "Content " + i);
+            revisions[i] = checkin(node);
+        }
+        File indexFile = new File(timelineRepo.getConfigFile().getParentFile(), "meta-timeline/rebuild-date-indexes-test.txt.yarep/index_date_timeline");
+        File checkpointFile = new File(timelineRepo.getConfigFile().getParentFile(), "rebuild-date-indexes.checkpoint");
+        checkpointFile.delete();
+
+        indexFile.delete();
+        org.wyona.yarep.impl.repo.vfs.DateIndexRebuilder rebuilder = new org.wyona.yarep.impl.repo.vfs.DateIndexRebuilder((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository) timelineRepo, 2, checkpointFile);
+        rebuilder.run();
+        assertTrue(rebuilder.isFinished());
+        assertEquals(0, rebuilder.getNumberOfFailedNodes());
+        assertTrue(rebuilder.getNumberOfIndexedRevisions() >= revisions.length);
+        assertEquals(revisions.length * 16, indexFile.length());
+        assertFalse(checkpointFile.exists());
+        org.wyona.yarep.core.attributes.VersionableV1 versionable = (org.wyona.yarep.core.attributes.VersionableV1) node;
+        for (int i = 0; i < revisions.length; i++) {
+            assertEquals(revisions[i].getRevisionName(), versionable.getRevision(revisions[i].getCreationDate()).getRevisionName());
+        }
+
+        // INFO: Nodes which have been processed already according to the checkpoint file are skipped
+        java.io.PrintWriter pw = new java.io.PrintWriter(new java.io.FileOutputStream(checkpointFile));
+        pw.println(path);
+        pw.close();
+        indexFile.delete();
+        rebuilder = new org.wyona.yarep.impl.repo.vfs.DateIndexRebuilder((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository) timelineRepo, 2, checkpointFile);
+        rebuilder.run();
+        assertEquals(1, rebuilder.getNumberOfSkippedNodes());
+        assertFalse(indexFile.exists());
+        assertFalse(checkpointFile.exists());
+        timelineRepo.close();
+    }
+
+    /**
+     * Test the date index shared by all nodes of a repository
+     */
+    public void testRevisionSharedDateIndex() throws Exception {
+        Repository sharedRepo = openRepository("lucene-shared");
+        Node[] nodes = new Node[2];
+        Revision[][] revisions = new Revision[nodes.length][3];
+        for (int k = 0; k < nodes.length; k++) {
+            nodes[k] = createNode(sharedRepo, "/revision-shared-date-index-test-" + k + ".txt", NodeType.RESOURCE);
+        }
+        // INFO: Create the revisions of both nodes alternately, such that the lookups must distinguish the nodes
+        for (int i = 0; i < revisions[0].length; i++) {
+            for (int k = 0; k < nodes.length; k++) {
+                writeContent(nodes[k], "Content " + k + " " + i);
+                revisions[k][i] = checkin(nodes[k]);
+            }
+        }
+        assertTrue(new File(sharedRepo.getConfigFile().getParentFile(), "meta-lucene-shared/.revisions-date-index").isDirectory());
+
+        for (int k = 0; k < nodes.length; k++) {
+            org.wyona.yarep.core.attributes.VersionableV1 versionable = (org.wyona.yarep.core.attributes.VersionableV1) nodes[k];
+            for (int i = 0; i < revisions[k].length; i++) {
+                assertEquals(revisions[k][i].getRevisionName(), versionable.getRevision(revisions[k][i].getCreationDate()).getRevisionName());
+            }
+            assertNull(versionable.getRevision(new Date(revisions[k][0].getCreationDate().getTime() - 1)));
+            java.util.Iterator it = versionable.getRevisions(false);
+            for (int i = revisions[k].length - 1; i >= 0; i--) {
+                assertEquals(revisions[k][i].getRevisionName(), ((Revision) it.next()).getRevisionName());
+            }
+            assertFalse(it.hasNext());
+        }
+
+        nodes[0].getRevision(revisions[0][1].getRevisionName()).delete();
+        assertEquals(revisions[0][0].getRevisionName(), ((org.wyona.yarep.core.attributes.VersionableV1) nodes[0]).getRevision(revisions[0][1].getCreationDate()).getRevisionName());
+
+        // INFO: The index is still available after the repository has been closed and opened again
+        sharedRepo.close();
+        sharedRepo = openRepository("lucene-shared");
+        Node node = sharedRepo.getNode(nodes[1].getPath());
+        assertEquals(revisions[1][1].getRevisionName(), ((org.wyona.yarep.core.attributes.VersionableV1) node).getRevision(revisions[1][1].getCreationDate()).getRevisionName());
+
+        // INFO: Deleting a node deletes its revisions from the index
+        node.delete();
+        node = sharedRepo.getNode("/").addNode(nodes[1].getName(), NodeType.RESOURCE);
+        assertNull(((org.wyona.yarep.core.attributes.VersionableV1) node).getRevision(new Date()));
+        sharedRepo.close();
+    }
+
+    /**
+     * Test that the revisions which have been created before the shared date index has been configured are added to the index when the next revision is created
+     */
+    public void testSwitchToSharedDateIndex() throws Exception {
+        String path = "/switch-to-shared-date-index-test.txt";
+        Repository directoryRepo = openRepository("lucene-shared-directory");
+        Node node = createNode(directoryRepo, path, NodeType.RESOURCE);
+        Revision[] revisions = new Revision[3];
+        for (int i = 0; i < 2; i++) {
+            writeContent(node, "Content " + i);
+            revisions[i] = checkin(node);
+        }
+        directoryRepo.close();
+
+        Repository sharedRepo = openRepository("lucene-shared");
+        node = sharedRepo.getNode(path);
+        writeContent(node, "Content 2");
+        revisions[2] = checkin(node);
+        org.wyona.yarep.core.attributes.VersionableV1 versionable = (org.wyona.yarep.core.attributes.VersionableV1) node;
+        for (int i = 0; i < revisions.length; i++) {
+            assertEquals(revisions[i].getRevisionName(), versionable.getRevision(revisions[i].getCreationDate()).getRevisionName());
+        }
+        Revision[] mostRecent = ((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository) sharedRepo).getRevisions(new String[] {path}, revisions[0].getCreationDate());
+        assertEquals(revisions[0].getRevisionName(), mostRecent[0].getRevisionName());
+        sharedRepo.close();
+    }
+}
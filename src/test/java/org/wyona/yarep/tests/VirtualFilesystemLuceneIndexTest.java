@@ -0,0 +1,267 @@
+package org.wyona.yarep.tests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.PrintWriter;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeType;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository;
+import org.wyona.yarep.impl.search.lucene.LuceneBulkReindexer;
+import org.wyona.yarep.impl.search.lucene.LuceneSearcher;
+
+/**
+ * Tests of the lucene indexes of the virtual filesystem repository implementation
+ */
+public class VirtualFilesystemLuceneIndexTest extends AbstractVirtualFilesystemTest {
+
+    /**
+     * Test that the shared index writers of LuceneIndexerV2 make changes searchable right away, but commit them according to the commit policy and when the repository is closed
+     */
+    public void testSharedIndexWriter() throws Exception {
+        Repository indexedRepo = openRepository("indexer-v2");
+        String path = "/shared-index-writer-test.txt";
+        Node node = createNode(indexedRepo, path, NodeType.RESOURCE);
+        node.setMimeType("text/plain");
+        writeContent(node, "Sharedwriter content");
+        node.setProperty("sharedwritercolor", "blue");
+
+        assertEquals(1, indexedRepo.getSearcher().search("sharedwriter").length);
+        assertEquals(1, indexedRepo.getSearcher().searchProperty("sharedwritercolor", "blue", "/").length);
+        File fulltextIndexDir = new File(indexedRepo.getConfigFile().getParentFile(), "search-index-v2/fulltext");
+        assertEquals("Changes have been committed before the commit policy applies", 0, countCommittedDocuments(fulltextIndexDir, path));
+
+        indexedRepo.close();
+        assertEquals(1, countCommittedDocuments(fulltextIndexDir, path));
+
+        indexedRepo = openRepository("indexer-v2");
+        assertEquals(1, indexedRepo.getSearcher().search("sharedwriter").length);
+        indexedRepo.getNode(path).delete();
+        assertEquals(0, indexedRepo.getSearcher().search("sharedwriter").length);
+        indexedRepo.close();
+    }
+
+    /**
+     * Test that documents of nodes which are missing inside the repository are found and deleted while the shared index writers are open
+     */
+    public void testGetMissingNodes() throws Exception {
+        VirtualFileSystemRepository indexedRepo = (VirtualFileSystemRepository) openRepository("indexer-v2");
+        String path = "/missing-node-test.txt";
+        Node node = createNode(indexedRepo, path, NodeType.RESOURCE);
+        node.setMimeType("text/plain");
+        writeContent(node, "Missingnode content");
+        node.setProperty("missingnodecolor", "red");
+        assertEquals(1, indexedRepo.getSearcher().searchProperty("missingnodecolor", "red", "/").length);
+
+        // INFO: Delete the node behind the back of the repository, such that its documents remain inside the index
+        assertTrue(new File(indexedRepo.getContentDir(), node.getName()).delete());
+        org.apache.commons.io.FileUtils.deleteDirectory(new File(indexedRepo.getMetaDir(), node.getName() + ".yarep"));
+
+        LuceneSearcher searcher = (LuceneSearcher) indexedRepo.getSearcher();
+        assertTrue(java.util.Arrays.asList(searcher.getMissingNodes(true, -1)).contains(path));
+        assertEquals(0, indexedRepo.getSearcher().searchProperty("missingnodecolor", "red", "/").length);
+        assertEquals("Deletions have not been committed", 0, countCommittedDocuments(new File(indexedRepo.getConfigFile().getParentFile(), "search-index-v2/properties"), path));
+        assertFalse(java.util.Arrays.asList(searcher.getMissingNodes(false, -1)).contains(path));
+        indexedRepo.close();
+    }
+
+    /**
+     * Test that the bulk reindex replaces the live indexes by indexes which have been built aside
+     */
+    public void testBulkReindex() throws Exception {
+        Repository indexedRepo = openRepository("indexer-v2");
+        String path = "/bulk-reindex-test.txt";
+        Node node = createNode(indexedRepo, path, NodeType.RESOURCE);
+        node.setMimeType("text/plain");
+        writeContent(node, "Bulkreindex content");
+        node.setProperty("bulkreindexcolor", "yellow");
+
+        // INFO: Simulate an outdated index
+        indexedRepo.getIndexer().removeFromIndex(node);
+        indexedRepo.getIndexer().removeFromIndex(node, node.getProperty("bulkreindexcolor"));
+        assertEquals(0, indexedRepo.getSearcher().search("bulkreindex").length);
+        assertEquals(0, indexedRepo.getSearcher().searchProperty("bulkreindexcolor", "yellow", "/").length);
+
+        LuceneBulkReindexer reindexer = new LuceneBulkReindexer(indexedRepo, 2);
+        reindexer.run();
+        assertTrue(reindexer.isFinished());
+        assertTrue(reindexer.getNumberOfIndexedNodes() > 0);
+        assertEquals(reindexer.getNumberOfVisitedNodes(), reindexer.getNumberOfIndexedNodes() + reindexer.getNumberOfFailedNodes());
+
+        assertEquals(1, indexedRepo.getSearcher().search("bulkreindex").length);
+        assertEquals(1, indexedRepo.getSearcher().searchProperty("bulkreindexcolor", "yellow", "/").length);
+        File indexDir = new File(indexedRepo.getConfigFile().getParentFile(), "search-index-v2");
+        assertEquals("Replaced index has not been committed", 1, countCommittedDocuments(new File(indexDir, "fulltext"), path));
+        assertFalse(new File(indexDir, "fulltext.reindex").exists());
+        assertFalse(new File(indexDir, "properties.reindex").exists());
+
+        // INFO: The live index is still modified incrementally after it has been replaced
+        indexedRepo.getNode(path).delete();
+        assertEquals(0, indexedRepo.getSearcher().search("bulkreindex").length);
+        indexedRepo.close();
+    }
+
+    /**
+     * Test that unchanged content is not parsed again, but that the extracted text is read from the cache
+     */
+    public void testExtractedTextCache() throws Exception {
+        Repository indexedRepo = openRepository("text-cache");
+        String path = "/extracted-text-cache-test.txt";
+        Node node = createNode(indexedRepo, path, NodeType.RESOURCE);
+        node.setMimeType("text/plain");
+        writeContent(node, "Cachedextract content " + System.currentTimeMillis());
+        assertEquals(1, indexedRepo.getSearcher().search("cachedextract").length);
+
+        // INFO: Replace the cached text, such that the cache entry can be distinguished from a parsed content
+        File cacheEntry = findCacheEntry(new File(indexedRepo.getConfigFile().getParentFile(), "text-cache"), "Cachedextract");
+        assertNotNull("Extracted text has not been cached", cacheEntry);
+        java.util.Properties entry = new java.util.Properties();
+        entry.setProperty("text", "Tamperedextract content");
+        java.io.OutputStream out = new java.util.zip.GZIPOutputStream(new FileOutputStream(cacheEntry));
+        entry.store(out, null);
+        out.close();
+
+        indexedRepo.getIndexer().index(node);
+        assertEquals(1, indexedRepo.getSearcher().search("tamperedextract").length);
+        assertEquals(0, indexedRepo.getSearcher().search("cachedextract").length);
+
+        // INFO: A corrupt cache entry is ignored and the content is parsed again
+        entry.setProperty("metadata.count", "invalid");
+        out = new java.util.zip.GZIPOutputStream(new FileOutputStream(cacheEntry));
+        entry.store(out, null);
+        out.close();
+        indexedRepo.getIndexer().index(node);
+        assertEquals(1, indexedRepo.getSearcher().search("cachedextract").length);
+        assertEquals(0, indexedRepo.getSearcher().search("tamperedextract").length);
+
+        writeContent(node, "Modifiedextract content " + System.currentTimeMillis());
+        assertEquals(1, indexedRepo.getSearcher().search("modifiedextract").length);
+        assertEquals(0, indexedRepo.getSearcher().search("tamperedextract").length);
+
+        indexedRepo.getNode(path).delete();
+        indexedRepo.close();
+    }
+
+    /**
+     * Test that the stored content hash of a node is used to look up the extracted text instead of reading the content
+     */
+    public void testExtractedTextCacheWithStoredContentHash() throws Exception {
+        VirtualFileSystemRepository indexedRepo = (VirtualFileSystemRepository) openRepository("text-cache");
+        String content = "Storedhashsource content " + System.currentTimeMillis();
+        Node source = createNode(indexedRepo, "/stored-hash-source.txt", NodeType.RESOURCE);
+        source.setMimeType("text/plain");
+        writeContent(source, content);
+        assertEquals(1, indexedRepo.getSearcher().search("storedhashsource").length);
+
+        // INFO: Store the hash of the content of the source as hash of another content, such that a cache hit can only be caused by the stored hash
+        Node target = createNode(indexedRepo, "/stored-hash-target.txt", NodeType.RESOURCE);
+        target.setMimeType("text/plain");
+        writeContent(target, "Storedhashtarget content");
+        File contentFile = new File(indexedRepo.getContentDir(), "stored-hash-target.txt");
+        java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+        StringBuffer hash = new StringBuffer();
+        byte[] bytes = digest.digest(content.getBytes("UTF-8"));
+        for (int i = 0; i < bytes.length; i++) {
+            hash.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+            hash.append(Character.forDigit(bytes[i] & 0xf, 16));
+        }
+        target.setProperty("yarep_vfs_content_hash", contentFile.lastModified() + ":" + contentFile.length() + ":" + hash);
+
+        indexedRepo.getIndexer().index(target);
+        assertEquals(2, indexedRepo.getSearcher().search("storedhashsource").length);
+        assertEquals(0, indexedRepo.getSearcher().search("storedhashtarget").length);
+
+        indexedRepo.getNode("/stored-hash-source.txt").delete();
+        indexedRepo.getNode("/stored-hash-target.txt").delete();
+        indexedRepo.close();
+    }
+
+    /**
+     * Test that modified nodes are indexed within background threads and that the nodes of the journal are indexed again when the repository is opened
+     */
+    public void testAsyncIndexing() throws Exception {
+        VirtualFileSystemRepository asyncRepo = (VirtualFileSystemRepository) openRepository("async-indexing");
+        Node[] nodes = new Node[5];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = createNode(asyncRepo, "/async-indexing-test-" + i + ".txt", NodeType.RESOURCE);
+            nodes[i].setMimeType("text/plain");
+            writeContent(nodes[i], "Asyncdraft");
+            writeContent(nodes[i], "Asyncfinal content " + i);
+            nodes[i].setProperty("asynccolor", "red");
+            nodes[i].setProperty("asynccolor", "green");
+        }
+        assertTrue("Nodes have not been indexed in time", asyncRepo.waitForIndexing(60000));
+        assertEquals(nodes.length, asyncRepo.getSearcher().search("asyncfinal").length);
+        assertEquals(0, asyncRepo.getSearcher().search("asyncdraft").length);
+        assertEquals(nodes.length, asyncRepo.getSearcher().searchProperty("asynccolor", "green", "/").length);
+        assertEquals(0, asyncRepo.getSearcher().searchProperty("asynccolor", "red", "/").length);
+        File journalFile = new File(asyncRepo.getMetaDir(), ".indexing-journal");
+        assertFalse("Journal has not been deleted although all nodes have been indexed", journalFile.exists());
+        asyncRepo.close();
+
+        // INFO: Simulate a crash after a node has been deleted, but before it has been removed from the index
+        File configDir = asyncRepo.getConfigFile().getParentFile();
+        File fulltextIndexDir = new File(configDir, "search-index-async/fulltext");
+        String path = nodes[0].getPath();
+        assertEquals(1, countCommittedDocuments(fulltextIndexDir, path));
+        assertTrue(new File(asyncRepo.getContentDir(), nodes[0].getName()).delete());
+        org.apache.commons.io.FileUtils.deleteDirectory(new File(asyncRepo.getMetaDir(), nodes[0].getName() + ".yarep"));
+        PrintWriter writer = new PrintWriter(journalFile, "UTF-8");
+        writer.println(path);
+        writer.close();
+
+        asyncRepo = (VirtualFileSystemRepository) openRepository("async-indexing");
+        assertTrue("Journal has not been recovered in time", asyncRepo.waitForIndexing(60000));
+        assertFalse(journalFile.exists());
+        asyncRepo.close();
+        assertEquals(0, countCommittedDocuments(fulltextIndexDir, path));
+        assertEquals(0, countCommittedDocuments(new File(configDir, "search-index-async/properties"), path));
+    }
+
+    /**
+     * Count documents of a path which have been committed to a lucene index
+     */
+    private int countCommittedDocuments(File indexDir, String path) throws Exception {
+        org.apache.lucene.index.IndexReader reader = org.apache.lucene.index.IndexReader.open(org.apache.lucene.store.FSDirectory.open(indexDir), true);
+        try {
+            // INFO: Count with TermDocs, because IndexReader#docFreq(Term) also counts deleted documents
+            org.apache.lucene.index.TermDocs termDocs = reader.termDocs(new org.apache.lucene.index.Term("_PATH", path));
+            int count = 0;
+            while (termDocs.next()) {
+                count++;
+            }
+            termDocs.close();
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Find entry of extracted text cache containing a particular text
+     * @return Cache entry or null if no entry contains the text
+     */
+    private File findCacheEntry(File dir, String text) throws Exception {
+        File[] files = dir.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            if (files[i].isDirectory()) {
+                File entryFile = findCacheEntry(files[i], text);
+                if (entryFile != null) {
+                    return entryFile;
+                }
+            } else if (!files[i].getName().endsWith(".tmp")) {
+                java.util.Properties entry = new java.util.Properties();
+                InputStream in = new java.util.zip.GZIPInputStream(new FileInputStream(files[i]));
+                entry.load(in);
+                in.close();
+                if (entry.getProperty("text", "").indexOf(text) >= 0) {
+                    return files[i];
+                }
+            }
+        }
+        return null;
+    }
+}
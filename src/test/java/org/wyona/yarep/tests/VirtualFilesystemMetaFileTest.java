@@ -0,0 +1,121 @@
+package org.wyona.yarep.tests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.PrintWriter;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeType;
+import org.wyona.yarep.core.Property;
+import org.wyona.yarep.core.PropertyType;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.impl.DefaultProperty;
+
+/**
+ * Test for reading and writing the meta files (properties) of nodes of the 'virtual filesystem' repository implementation
+ */
+public class VirtualFilesystemMetaFileTest extends AbstractVirtualFilesystemTest {
+
+    /**
+     * Test that text meta files (version 1.0) are still read and migrated to the binary format (version 2.0) when a property is written
+     */
+    public void testMetaFileMigration() throws Exception {
+        Repository repo = openRepository();
+        String name = "meta-file-migration-test.txt";
+        if (!repo.existsNode("/" + name)) {
+            repo.getNode("/").addNode(name, NodeType.RESOURCE);
+        }
+        File metaFile = new File(repo.getConfigFile().getParentFile(), "meta/" + name + ".yarep/meta");
+        metaFile.getParentFile().mkdirs();
+        PrintWriter writer = new PrintWriter(metaFile);
+        writer.println("yarep_vfs-meta-file-version<string>:1.0");
+        writer.println("yarep_type<string>:resource");
+        writer.println("title<string>:Hello\\: World");
+        writer.println("yarep_lastModified<long>:1234567890123");
+        writer.println("yarep_isCheckedOut<boolean>:true");
+        writer.println("yarep_checkoutDate<date>:2014-03-11T10:20:30:456+0100");
+        writer.close();
+
+        Node node = repo.getNode("/" + name);
+        assertEquals("Hello: World", node.getProperty("title").getString());
+        assertEquals(1234567890123L, node.getProperty("yarep_lastModified").getLong());
+        long checkoutDate = node.getProperty("yarep_checkoutDate").getDate().getTime();
+
+        node.setProperty("migrated", true);
+        FileInputStream in = new FileInputStream(metaFile);
+        assertEquals("Meta file has not been migrated to the binary format", 0, in.read());
+        in.close();
+
+        node = repo.getNode("/" + name);
+        assertEquals("2.0", node.getProperty("yarep_vfs-meta-file-version").getString());
+        assertEquals("Hello: World", node.getProperty("title").getString());
+        assertEquals(1234567890123L, node.getProperty("yarep_lastModified").getLong());
+        assertTrue(node.getProperty("yarep_isCheckedOut").getBoolean());
+        assertEquals(checkoutDate, node.getProperty("yarep_checkoutDate").getDate().getTime());
+        assertTrue(node.getProperty("migrated").getBoolean());
+
+        node.delete();
+    }
+
+    /**
+     * Test setting several properties at once
+     */
+    public void testSetProperties() throws Exception {
+        Repository repo = openRepository();
+        Node node = repo.getNode("/another-directory/index.html");
+        Property title = new DefaultProperty("batch-title", PropertyType.STRING, node);
+        title.setValue("Batch");
+        Property count = new DefaultProperty("batch-count", PropertyType.LONG, node);
+        count.setValue(42L);
+        node.setProperties(new Property[] {title, count});
+
+        node = repo.getNode("/another-directory/index.html");
+        assertEquals("Batch", node.getProperty("batch-title").getString());
+        assertEquals(42L, node.getProperty("batch-count").getLong());
+        node.removeProperty("batch-title");
+        node.removeProperty("batch-count");
+    }
+
+    /**
+     * Test that restoring a revision replaces the meta file atomically, such that concurrent readers never see a partially written meta file
+     */
+    public void testRestoreWhileReading() throws Exception {
+        final Repository repo = openRepository();
+        final String path = "/restore-meta-file-test.txt";
+        Node node = createNode(repo, path, NodeType.RESOURCE);
+        writeContent(node, "Hello");
+        Property[] properties = new Property[200];
+        for (int i = 0; i < properties.length; i++) {
+            properties[i] = new DefaultProperty("property-" + i, PropertyType.STRING, node);
+            properties[i].setValue("Value of property " + i);
+        }
+        node.setProperties(properties); // INFO: Makes the meta file large enough, such that a partially written meta file would be noticed
+        String revisionName = checkin(node).getRevisionName();
+
+        final Exception[] error = new Exception[1];
+        Thread reader = new Thread() {
+            public void run() {
+                try {
+                    while (!isInterrupted()) {
+                        assertEquals("Value of property 199", repo.getNode(path).getProperty("property-199").getString());
+                    }
+                } catch (Throwable t) {
+                    error[0] = new Exception(t.toString(), t);
+                }
+            }
+        };
+        reader.start();
+        try {
+            for (int i = 0; i < 50 && error[0] == null; i++) {
+                node.restore(revisionName);
+            }
+        } finally {
+            reader.interrupt();
+            reader.join();
+        }
+        if (error[0] != null) {
+            throw error[0];
+        }
+        assertEquals("Value of property 0", repo.getNode(path).getProperty("property-0").getString());
+    }
+}
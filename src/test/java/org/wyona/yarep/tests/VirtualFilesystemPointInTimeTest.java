@@ -0,0 +1,73 @@
+package org.wyona.yarep.tests;
+
+import java.util.Date;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeType;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.RepositoryException;
+import org.wyona.yarep.core.Revision;
+
+/**
+ * Tests of the read-only views of the virtual filesystem repository implementation at a point in time
+ */
+public class VirtualFilesystemPointInTimeTest extends AbstractVirtualFilesystemTest {
+
+    /**
+     * Test the read-only view of a repository at a point in time
+     */
+    public void testPointInTimeRepository() throws Exception {
+        Repository repo = openRepository();
+        assertPointInTimeView(repo);
+        Repository sharedRepo = openRepository("lucene-shared");
+        assertPointInTimeView(sharedRepo);
+        sharedRepo.close();
+    }
+
+    /**
+     * Create revisions of the children of a collection and check the view of the repository at a point in time between these revisions
+     */
+    private void assertPointInTimeView(Repository repository) throws Exception {
+        String path = "/point-in-time-test";
+        Node collection = createNode(repository, path, NodeType.COLLECTION);
+        Node a = collection.addNode("a.txt", NodeType.RESOURCE);
+        writeContent(a, "A 1");
+        checkin(a);
+        Node b = collection.addNode("b.txt", NodeType.RESOURCE);
+        writeContent(b, "B 1");
+        Revision revisionB = checkin(b);
+        Date pointInTime = new Date(revisionB.getCreationDate().getTime() + 1);
+        writeContent(a, "A 2");
+        checkin(a);
+        Node c = collection.addNode("c.txt", NodeType.RESOURCE);
+        writeContent(c, "C 1");
+        checkin(c);
+
+        Repository view = new org.wyona.yarep.impl.repo.pointintime.PointInTimeRepository(repository, pointInTime);
+        Node[] children = view.getNode(path).getNodes();
+        assertEquals(2, children.length);
+        for (int i = 0; i < children.length; i++) {
+            assertTrue(children[i].isResource());
+            if (children[i].getName().equals("a.txt")) {
+                assertEquals("A 1", readContent(children[i]));
+            } else {
+                assertEquals("b.txt", children[i].getName());
+                assertEquals("B 1", readContent(children[i]));
+            }
+        }
+        assertEquals(2, view.getNode(path + "/").listChildren().length);
+        java.io.InputStream in = view.getInputStream(new org.wyona.yarep.core.Path(path + "/a.txt"));
+        assertEquals("A 1", org.apache.commons.io.IOUtils.toString(in));
+        in.close();
+        assertTrue(view.existsNode(path + "/b.txt"));
+        assertFalse(view.existsNode(path + "/c.txt"));
+        assertEquals("A 2", readContent(repository.getNode(path + "/a.txt")));
+        try {
+            view.getNode(path + "/a.txt").setProperty("title", "Changed");
+            fail("A point in time view is read-only");
+        } catch (RepositoryException e) {
+            // INFO: Expected
+        }
+        view.close();
+    }
+}
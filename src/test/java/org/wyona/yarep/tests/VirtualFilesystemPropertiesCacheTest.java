@@ -0,0 +1,31 @@
+package org.wyona.yarep.tests;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.impl.repo.vfs.PropertiesCache;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository;
+
+/**
+ * Test for the properties cache of the 'virtual filesystem' repository implementation (see repository-properties-cache.xml)
+ */
+public class VirtualFilesystemPropertiesCacheTest extends AbstractVirtualFilesystemTest {
+
+    /**
+     * Test that properties are read from the properties cache as long as the meta file has not been modified
+     */
+    public void testPropertiesCache() throws Exception {
+        Repository repo = openRepository("properties-cache");
+        PropertiesCache cache = ((VirtualFileSystemRepository) repo).getPropertiesCache();
+        assertNotNull("Properties cache is not configured", cache);
+
+        Node node = repo.getNode("/another-directory/index.html");
+        node.setProperty("cache-test", "first");
+        long hits = cache.getHits();
+        assertEquals("first", repo.getNode("/another-directory/index.html").getProperty("cache-test").getString());
+        assertEquals(hits + 1, cache.getHits());
+
+        node.setProperty("cache-test", "second");
+        assertEquals("second", repo.getNode("/another-directory/index.html").getProperty("cache-test").getString());
+        node.removeProperty("cache-test");
+    }
+}
@@ -0,0 +1,43 @@
+package org.wyona.yarep.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.RepositoryException;
+
+/**
+ * Test for the read-only mode of the 'virtual filesystem' repository implementation (see repository-read-only.xml)
+ */
+public class VirtualFilesystemReadOnlyTest extends AbstractVirtualFilesystemTest {
+
+    /**
+     * Test that reading from a read-only repository does not write anything and that modifications fail
+     */
+    public void testReadOnly() throws Exception {
+        Repository readOnlyRepo = openRepository("read-only");
+        File contentFile = new File(readOnlyRepo.getConfigFile().getParentFile(), "content/read-only-test.txt");
+        File metaDir = new File(readOnlyRepo.getConfigFile().getParentFile(), "meta/read-only-test.txt.yarep");
+        FileOutputStream out = new FileOutputStream(contentFile);
+        out.write("Hello".getBytes());
+        out.close();
+
+        try {
+            Node node = readOnlyRepo.getNode("/read-only-test.txt");
+            assertEquals("resource", node.getProperty("yarep_type").getString());
+            assertEquals(5, node.getSize());
+            assertFalse("Meta data has been written", metaDir.exists());
+
+            try {
+                node.setProperty("foo", "bar");
+                fail("Property could be set although repository is read-only");
+            } catch (RepositoryException e) {
+                // INFO: Expected
+            }
+            assertFalse("Meta data has been written", metaDir.exists());
+        } finally {
+            contentFile.delete();
+        }
+    }
+}
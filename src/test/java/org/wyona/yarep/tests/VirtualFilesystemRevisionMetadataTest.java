@@ -0,0 +1,153 @@
+package org.wyona.yarep.tests;
+
+import java.io.File;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeType;
+import org.wyona.yarep.core.Property;
+import org.wyona.yarep.core.PropertyType;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.Revision;
+import org.wyona.yarep.impl.DefaultProperty;
+
+/**
+ * Tests of the data kept about the revisions of nodes (statistics, catalog and tag index) of the virtual filesystem repository implementation
+ */
+public class VirtualFilesystemRevisionMetadataTest extends AbstractVirtualFilesystemTest {
+
+    /**
+     * Test that the revision statistics are updated when revisions are created and deleted
+     */
+    public void testRevisionStatistics() throws Exception {
+        Repository repo = openRepository();
+        String path = "/revision-statistics-test.txt";
+        Node node = createNode(repo, path, NodeType.RESOURCE);
+        Revision[] revisions = new Revision[3];
+        for (int i = 0; i < revisions.length; i++) {
+            writeContent(node, "Content".substring(0, i + 1));
+            revisions[i] = checkin(node);
+        }
+        File statsFile = new File(repo.getConfigFile().getParentFile(), "meta/revision-statistics-test.txt.yarep/revisions.stats");
+        assertFalse("Statistics of existing revisions are not computed by a checkin", statsFile.exists());
+
+        org.wyona.yarep.impl.repo.vfs.RevisionStatistics stats = ((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode) node).getRevisionStatistics();
+        assertTrue(statsFile.isFile());
+        assertEquals(3, stats.getNumberOfRevisions());
+        assertEquals(1 + 2 + 3, stats.getTotalSize());
+        assertEquals(revisions[0].getCreationDate(), stats.getOldestCreationDate());
+        assertEquals(revisions[2].getCreationDate(), stats.getMostRecentCreationDate());
+
+        node.getRevision(revisions[2].getRevisionName()).delete();
+        stats = ((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode) repo.getNode(path)).getRevisionStatistics();
+        assertEquals(2, stats.getNumberOfRevisions());
+        assertEquals(1 + 2, stats.getTotalSize());
+        assertEquals(revisions[1].getCreationDate(), stats.getMostRecentCreationDate());
+        assertEquals(2, ((org.wyona.yarep.core.attributes.VersionableV1) repo.getNode(path)).getTotalNumberOfRevisions());
+
+        // INFO: Recompute statistics of existing revisions
+        assertTrue(statsFile.delete());
+        stats = ((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode) repo.getNode(path)).getRevisionStatistics();
+        assertTrue(statsFile.isFile());
+        assertEquals(2, stats.getNumberOfRevisions());
+        assertEquals(1 + 2, stats.getTotalSize());
+        assertEquals(revisions[0].getCreationDate(), stats.getOldestCreationDate());
+
+        // INFO: Existing statistics are updated by a checkin
+        writeContent(node, "Content");
+        Revision newest = checkin(node);
+        stats = ((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode) repo.getNode(path)).getRevisionStatistics();
+        assertEquals(3, stats.getNumberOfRevisions());
+        assertEquals(1 + 2 + 7, stats.getTotalSize());
+        assertEquals(newest.getCreationDate(), stats.getMostRecentCreationDate());
+    }
+
+    /**
+     * Test that the revision catalog is built once and updated when revisions are created, tagged and deleted
+     */
+    public void testRevisionInfos() throws Exception {
+        Repository repo = openRepository();
+        String path = "/revision-infos-test.txt";
+        Node node = createNode(repo, path, NodeType.RESOURCE);
+        Revision[] revisions = new Revision[3];
+        for (int i = 0; i < revisions.length; i++) {
+            writeContent(node, "Content " + i);
+            revisions[i] = checkin(node, "Comment " + i);
+        }
+
+        File catalogFile = new File(repo.getConfigFile().getParentFile(), "meta/revision-infos-test.txt.yarep/revisions.catalog");
+        assertFalse(catalogFile.exists());
+        org.wyona.yarep.impl.repo.vfs.RevisionInfo[] infos = ((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode) node).getRevisionInfos();
+        assertTrue(catalogFile.isFile());
+        assertEquals(revisions.length, infos.length);
+        for (int i = 0; i < revisions.length; i++) {
+            org.wyona.yarep.impl.repo.vfs.RevisionInfo info = infos[revisions.length - 1 - i];
+            assertEquals(revisions[i].getRevisionName(), info.getRevisionName());
+            assertEquals(revisions[i].getCreationDate(), info.getCreationDate());
+            assertEquals("test-user", info.getCreator());
+            assertEquals("Comment " + i, info.getComment());
+            assertFalse(info.hasTag());
+        }
+        assertEquals("Content 1", readContent(infos[1].getRevision()));
+
+        // INFO: New, tagged and deleted revisions are reflected by the catalog
+        writeContent(node, "Content 3");
+        Revision newest = checkin(node);
+        node.getRevision(revisions[0].getRevisionName()).setTag("live");
+        node.getRevision(revisions[1].getRevisionName()).delete();
+        infos = ((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode) repo.getNode(path)).getRevisionInfos(0, 2);
+        assertEquals(2, infos.length);
+        assertEquals(newest.getRevisionName(), infos[0].getRevisionName());
+        assertEquals(revisions[2].getRevisionName(), infos[1].getRevisionName());
+        infos = ((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode) repo.getNode(path)).getRevisionInfos(2, 10);
+        assertEquals(1, infos.length);
+        assertEquals(revisions[0].getRevisionName(), infos[0].getRevisionName());
+        assertEquals("live", infos[0].getTag());
+
+        // INFO: The catalog is also updated if the property contained by the catalog is not the last of several properties
+        Revision revision = repo.getNode(path).getRevision(newest.getRevisionName());
+        Property comment = new DefaultProperty(org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRevision.PROPERTY_REVISION_COMMENT, PropertyType.STRING, revision);
+        comment.setValue("Modified comment");
+        Property other = new DefaultProperty("other-property", PropertyType.STRING, revision);
+        other.setValue("Other value");
+        revision.setProperties(new Property[] {comment, other});
+        infos = ((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode) repo.getNode(path)).getRevisionInfos(0, 1);
+        assertEquals("Modified comment", infos[0].getComment());
+    }
+
+    /**
+     * Test that revisions are looked up by the tag index, which is updated when tags are set and revisions are deleted
+     */
+    public void testRevisionTagIndex() throws Exception {
+        Repository repo = openRepository();
+        String path = "/revision-tag-index-test.txt";
+        Node node = createNode(repo, path, NodeType.RESOURCE);
+        Revision[] revisions = new Revision[3];
+        for (int i = 0; i < revisions.length; i++) {
+            writeContent(node, "Content " + i);
+            revisions[i] = checkin(node);
+        }
+        node.getRevision(revisions[1].getRevisionName()).setTag("approved");
+
+        File tagIndexFile = new File(repo.getConfigFile().getParentFile(), "meta/revision-tag-index-test.txt.yarep/revisions.tags");
+        assertFalse(tagIndexFile.exists());
+        assertTrue(node.hasRevisionWithTag("approved"));
+        assertTrue(tagIndexFile.isFile());
+        assertFalse(node.hasRevisionWithTag("live"));
+        assertEquals(revisions[1].getRevisionName(), node.getRevisionByTag("approved").getRevisionName());
+
+        node.getRevision(revisions[2].getRevisionName()).setTag("live");
+        assertEquals(revisions[2].getRevisionName(), repo.getNode(path).getRevisionByTag("live").getRevisionName());
+        node.getRevision(revisions[2].getRevisionName()).delete();
+        assertFalse(repo.getNode(path).hasRevisionWithTag("live"));
+        try {
+            repo.getNode(path).getRevisionByTag("live");
+            fail("Revision with tag 'live' has been deleted");
+        } catch (org.wyona.yarep.core.NoSuchRevisionException e) {
+            // INFO: Expected
+        }
+
+        // INFO: Rebuild index
+        assertTrue(tagIndexFile.delete());
+        assertEquals(revisions[1].getRevisionName(), repo.getNode(path).getRevisionByTag("approved").getRevisionName());
+    }
+}
@@ -0,0 +1,50 @@
+package org.wyona.yarep.tests;
+
+import java.util.Date;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeType;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.Revision;
+
+/**
+ * Tests of the retention policies of the revisions of the virtual filesystem repository implementation
+ */
+public class VirtualFilesystemRevisionRetentionTest extends AbstractVirtualFilesystemTest {
+
+    /**
+     * Test that revisions which are not kept by the retention policies are deleted
+     */
+    public void testRevisionRetention() throws Exception {
+        Repository retentionRepo = openRepository("retention");
+        String path = "/revision-retention-test.txt";
+        Node node = createNode(retentionRepo, path, NodeType.RESOURCE);
+        Revision[] revisions = new Revision[4];
+        for (int i = 0; i < revisions.length; i++) {
+            writeContent(node, "Content " + i);
+            revisions[i] = checkin(node);
+        }
+        revisions[0].setTag("approved");
+
+        // INFO: Keep the last two revisions and the tagged revision
+        org.wyona.yarep.impl.repo.vfs.RevisionPruner pruner = new org.wyona.yarep.impl.repo.vfs.RevisionPruner((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository) retentionRepo, 1, 0);
+        pruner.run();
+        assertTrue(pruner.isFinished());
+        assertEquals(1, pruner.getNumberOfDeletedRevisions());
+
+        node = retentionRepo.getNode(path);
+        assertEquals(3, ((org.wyona.yarep.core.attributes.VersionableV1) node).getTotalNumberOfRevisions());
+        assertEquals(3, ((org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode) node).getRevisionStatistics().getNumberOfRevisions());
+        assertEquals(revisions[0].getRevisionName(), ((org.wyona.yarep.core.attributes.VersionableV1) node).getRevision(revisions[1].getCreationDate()).getRevisionName());
+        assertEquals("Content 3", readContent(node.getRevision(revisions[3].getRevisionName())));
+
+        // INFO: Keep one revision per day after 30 days
+        Revision[] remaining = new Revision[] {revisions[3], revisions[2], revisions[0]};
+        org.wyona.yarep.impl.repo.vfs.RevisionRetentionPolicy daily = new org.wyona.yarep.impl.repo.vfs.RevisionRetentionPolicy("/", -1, 30, false);
+        assertEquals(0, daily.getRevisionsToDelete(remaining, new Date()).size());
+        java.util.List toDelete = daily.getRevisionsToDelete(remaining, new Date(System.currentTimeMillis() + 31L * 24 * 60 * 60 * 1000));
+        assertEquals(2, toDelete.size());
+        assertEquals(revisions[2].getRevisionName(), ((Revision) toDelete.get(0)).getRevisionName());
+        retentionRepo.close();
+    }
+}
@@ -0,0 +1,252 @@
+package org.wyona.yarep.tests;
+
+import java.io.File;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.NodeType;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.Revision;
+import org.wyona.yarep.impl.repo.vfs.RevisionPackConverter;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository;
+
+/**
+ * Tests of storing the revisions of nodes of the virtual filesystem repository implementation
+ */
+public class VirtualFilesystemRevisionStoreTest extends AbstractVirtualFilesystemTest {
+
+    /**
+     * Test that deleting a revision does not delete the content of the node
+     */
+    public void testDeleteRevision() throws Exception {
+        Repository repo = openRepository();
+        String path = "/delete-revision-test.txt";
+        Node node = createNode(repo, path, NodeType.RESOURCE);
+        writeContent(node, "Hello");
+        Revision revision = checkin(node, "first");
+
+        revision.delete();
+        assertTrue(repo.existsNode(path));
+        assertEquals(5, repo.getNode(path).getSize());
+        assertEquals(0, repo.getNode(path).getRevisions().length);
+    }
+
+    /**
+     * Test that the content of revisions is stored only once per distinct content if the blob store is enabled
+     */
+    public void testRevisionBlobStore() throws Exception {
+        Repository blobsRepo = openRepository("blobs");
+        String path = "/revision-blobs-test.txt";
+        Node node = createNode(blobsRepo, path, NodeType.RESOURCE);
+        writeContent(node, "Hello");
+        Revision first = checkin(node);
+        Revision second = checkin(node);
+        writeContent(node, "Hello World");
+        Revision third = checkin(node);
+
+        File blobsDir = new File(blobsRepo.getConfigFile().getParentFile(), "meta-blobs/revision-blobs-test.txt.yarep/blobs");
+        assertEquals("Number of distinct contents", 2, countBlobs(blobsDir));
+        assertEquals(3, node.getRevisions().length);
+        assertEquals("Hello", readContent(node.getRevision(second.getRevisionName())));
+        assertEquals("Hello World", readContent(node.getRevision(third.getRevisionName())));
+
+        node.restore(first.getRevisionName());
+        assertEquals("Hello", readContent(blobsRepo.getNode(path)));
+
+        // INFO: A blob is deleted as soon as no revision references it anymore
+        node.getRevision(first.getRevisionName()).delete();
+        assertEquals(2, countBlobs(blobsDir));
+        node.getRevision(second.getRevisionName()).delete();
+        assertEquals(1, countBlobs(blobsDir));
+        assertEquals("Hello World", readContent(node.getRevision(third.getRevisionName())));
+
+        // INFO: The hash of a content which has not been modified recently is stored by the checkin
+        File contentFile = new File(((VirtualFileSystemRepository) blobsRepo).getContentDir(), "revision-blobs-test.txt");
+        contentFile.setLastModified(System.currentTimeMillis() - 60000);
+        Revision fourth = checkin(node);
+        String contentHash = blobsRepo.getNode(path).getProperty("yarep_vfs_content_hash").getString();
+        String hash = contentHash.substring(contentHash.lastIndexOf(':') + 1);
+        File blobFile = new File(blobsDir, hash.substring(0, 2) + "/" + hash);
+        assertTrue(blobFile.isFile());
+
+        // INFO: A blob is not deleted if the number of revisions referencing it is unknown
+        java.io.FileWriter writer = new java.io.FileWriter(new File(blobFile.getParentFile(), hash + ".refs"));
+        writer.write("corrupt");
+        writer.close();
+        node.getRevision(fourth.getRevisionName()).delete();
+        assertTrue(blobFile.isFile());
+    }
+
+    /**
+     * Test that restoring a revision does not make the next revision a delta against an older revision, which would break the revisions stored as delta against the older revision when it is deleted
+     */
+    public void testRevisionDeltaStoreRestore() throws Exception {
+        Repository deltaRepo = openRepository("delta");
+        Node node = createNode(deltaRepo, "/revision-delta-restore-test.txt", NodeType.RESOURCE);
+        Revision[] revisions = new Revision[3];
+        for (int i = 0; i < 2; i++) {
+            writeContent(node, "Content of revision " + i);
+            revisions[i] = checkin(node);
+        }
+        node.restore(revisions[1].getRevisionName());
+        writeContent(node, "Content of revision 2");
+        revisions[2] = checkin(node);
+
+        node.getRevision(revisions[0].getRevisionName()).delete();
+        assertEquals("Content of revision 1", readContent(node.getRevision(revisions[1].getRevisionName())));
+        assertEquals("Content of revision 2", readContent(node.getRevision(revisions[2].getRevisionName())));
+    }
+
+    /**
+     * Count blobs within blob store
+     */
+    private int countBlobs(File blobsDir) {
+        int count = 0;
+        File[] dirs = blobsDir.listFiles();
+        for (int i = 0; dirs != null && i < dirs.length; i++) {
+            File[] files = dirs[i].listFiles();
+            for (int k = 0; files != null && k < files.length; k++) {
+                if (!files[k].getName().endsWith(".refs")) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Test storing the content of revisions as deltas with a full snapshot every third revision
+     */
+    public void testRevisionDeltaStore() throws Exception {
+        Repository deltaRepo = openRepository("delta");
+        String path = "/revision-delta-test.xml";
+        Node node = createNode(deltaRepo, path, NodeType.RESOURCE);
+
+        String[] contents = new String[5];
+        Revision[] revisions = new Revision[contents.length];
+        for (int i = 0; i < contents.length; i++) {
+            StringBuffer xml = new StringBuffer("<items>\n");
+            for (int k = 0; k < 200; k++) {
+                xml.append("  <item id=\"" + k + "\">" + (k == 100 ? "Version " + i : "Item " + k) + "</item>\n");
+            }
+            xml.append("</items>\n");
+            contents[i] = xml.toString();
+            writeContent(node, contents[i]);
+            revisions[i] = checkin(node);
+        }
+
+        for (int i = 0; i < revisions.length; i++) {
+            File revisionDir = ((VirtualFileSystemNode) node).getRevisionContentFile(revisions[i].getRevisionName()).getParentFile();
+            boolean isSnapshot = (i % 3 == 0);
+            assertEquals("Revision " + i + " is a snapshot", isSnapshot, new File(revisionDir, "content").isFile());
+            if (!isSnapshot) {
+                assertTrue("Delta is not small", new File(revisionDir, "content.delta").length() < contents[i].length() / 10);
+            }
+            Revision revision = node.getRevision(revisions[i].getRevisionName());
+            assertEquals(contents[i].length(), revision.getSize());
+            assertEquals(contents[i], readContent(revision));
+        }
+
+        // INFO: The content of a delta revision is reconstructed while it is read, such that no temporary files are left behind by a reader which does not close the stream
+        File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        int numberOfTmpFiles = tmpDir.list().length;
+        assertEquals('<', node.getRevision(revisions[2].getRevisionName()).getInputStream().read());
+        assertEquals(numberOfTmpFiles, tmpDir.list().length);
+
+        node.restore(revisions[2].getRevisionName());
+        assertEquals(contents[2], readContent(deltaRepo.getNode(path)));
+
+        // INFO: Deleting the base of a delta converts the following revision into a snapshot
+        node.getRevision(revisions[1].getRevisionName()).delete();
+        File revisionDir = ((VirtualFileSystemNode) node).getRevisionContentFile(revisions[2].getRevisionName()).getParentFile();
+        assertTrue(new File(revisionDir, "content").isFile());
+        assertEquals(contents[2], readContent(node.getRevision(revisions[2].getRevisionName())));
+        assertEquals(contents[4], readContent(node.getRevision(revisions[4].getRevisionName())));
+    }
+
+    /**
+     * Test revisions stored within revision packs, incl. the conversion of revision directories
+     */
+    public void testRevisionPack() throws Exception {
+        Repository packRepo = openRepository("pack");
+        String path = "/revision-pack-test.txt";
+        Node node = createNode(packRepo, path, NodeType.RESOURCE);
+        Revision[] revisions = new Revision[3];
+        for (int i = 0; i < revisions.length; i++) {
+            writeContent(node, "Content " + i);
+            revisions[i] = checkin(node);
+        }
+
+        File metaDir = new File(packRepo.getConfigFile().getParentFile(), "meta-pack/revision-pack-test.txt.yarep");
+        assertFalse("No revision directories", new File(metaDir, "revisions").exists());
+        assertTrue(new File(metaDir, "revisions.pack").isFile());
+        assertEquals(revisions.length, node.getRevisions().length);
+        for (int i = 0; i < revisions.length; i++) {
+            Revision revision = node.getRevision(revisions[i].getRevisionName());
+            assertEquals("Content " + i, readContent(revision));
+            assertEquals(("Content " + i).length(), revision.getSize());
+            assertEquals("test-user", revision.getCreator());
+        }
+
+        node.getRevision(revisions[1].getRevisionName()).setTag("release");
+        Node reloaded = openRepository("pack").getNode(path);
+        assertEquals("release", reloaded.getRevision(revisions[1].getRevisionName()).getTag());
+        assertEquals(revisions[1].getRevisionName(), reloaded.getRevisionByTag("release").getRevisionName());
+
+        node.restore(revisions[0].getRevisionName());
+        assertEquals("Content 0", readContent(packRepo.getNode(path)));
+
+        node.getRevision(revisions[2].getRevisionName()).delete();
+        try {
+            node.getRevision(revisions[2].getRevisionName());
+            fail("Revision has been deleted");
+        } catch (org.wyona.yarep.core.NoSuchRevisionException e) {
+            // INFO: Expected
+        }
+        assertEquals("Content 0", readContent(packRepo.getNode(path)));
+        assertEquals("Content 1", readContent(node.getRevision(revisions[1].getRevisionName())));
+
+        // INFO: The pack is deleted together with its last revision
+        Revision[] remainingRevisions = openRepository("pack").getNode(path).getRevisions();
+        assertEquals(2, remainingRevisions.length);
+        for (int i = 0; i < remainingRevisions.length; i++) {
+            assertTrue(new File(metaDir, "revisions.pack").isFile());
+            remainingRevisions[i].delete();
+        }
+        assertFalse("Pack has not been deleted", new File(metaDir, "revisions.pack").exists());
+        assertFalse(new File(metaDir, "revisions.pack-index").exists());
+        node = openRepository("pack").getNode(path);
+        assertEquals(0, node.getRevisions().length);
+        writeContent(node, "Content 3");
+        assertEquals("Content 3", readContent(checkin(node)));
+        assertTrue(new File(metaDir, "revisions.pack").isFile());
+
+        // INFO: Convert revision directories (contents stored as deltas) into a pack
+        Repository deltaRepo = openRepository("delta");
+        String convertPath = "/revision-pack-convert-test.txt";
+        Node deltaNode = createNode(deltaRepo, convertPath, NodeType.RESOURCE);
+        Revision[] deltaRevisions = new Revision[4];
+        for (int i = 0; i < deltaRevisions.length; i++) {
+            writeContent(deltaNode, "Converted content " + i);
+            deltaRevisions[i] = checkin(deltaNode);
+        }
+        File deltaMetaDir = new File(deltaRepo.getConfigFile().getParentFile(), "meta-delta/revision-pack-convert-test.txt.yarep");
+
+        // INFO: Revisions are only converted if new revisions are stored within packs
+        RevisionPackConverter converter = new RevisionPackConverter((VirtualFileSystemRepository) deltaRepo, 0);
+        converter.run();
+        assertTrue(converter.isFinished());
+        assertEquals(0, converter.getNumberOfConvertedNodes());
+        assertTrue("Revision directories have not been converted", new File(deltaMetaDir, "revisions").isDirectory());
+
+        Repository convertRepo = openRepository("delta-pack");
+        converter = new RevisionPackConverter((VirtualFileSystemRepository) convertRepo, 0);
+        converter.run();
+        assertEquals(0, converter.getNumberOfFailedNodes());
+        assertFalse("Revision directories have been deleted", new File(deltaMetaDir, "revisions").exists());
+        Node convertedNode = convertRepo.getNode(convertPath);
+        for (int i = 0; i < deltaRevisions.length; i++) {
+            assertEquals("Converted content " + i, readContent(convertedNode.getRevision(deltaRevisions[i].getRevisionName())));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.wyona.yarep.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.impl.repo.vfs.SplitPathMigrator;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository;
+
+/**
+ * Tests of splitting the paths of resources of the virtual filesystem repository implementation
+ */
+public class VirtualFilesystemSplitPathTest extends AbstractVirtualFilesystemTest {
+
+    /**
+     * Test migrating resources from their not splitted location to their splitted location
+     */
+    public void testSplitPathMigration() throws Exception {
+        Repository repo = openRepository("splitpath-migration");
+        VirtualFileSystemRepository vfsRepo = (VirtualFileSystemRepository) repo;
+        FileUtils.deleteDirectory(new File(vfsRepo.getContentDir(), "splitpath-example")); // INFO: Remove resources migrated by a previous test run
+        File legacyFile = new File(vfsRepo.getContentDir(), "splitpath-example/migration-test.txt");
+        legacyFile.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(legacyFile);
+        out.write("Hello".getBytes());
+        out.close();
+        assertTrue(repo.existsNode("/splitpath-example/migration-test.txt"));
+
+        SplitPathMigrator migrator = new SplitPathMigrator(vfsRepo, 2, 10, 0);
+        migrator.run();
+        assertTrue(migrator.isFinished());
+        assertEquals(0, migrator.getNumberOfFailedNodes());
+        assertEquals(1, migrator.getNumberOfMigratedNodes());
+        assertTrue(migrator.isComplete());
+        assertTrue(vfsRepo.isSplitPathMigrationComplete());
+
+        assertFalse("Resource has not been moved", legacyFile.exists());
+        assertTrue(new File(vfsRepo.getContentDir(), "splitpath-example/mi/gr/at/ion-test.txt").isFile());
+        assertTrue(repo.existsNode("/splitpath-example/migration-test.txt"));
+        InputStream in = repo.getNode("/splitpath-example/migration-test.txt").getInputStream();
+        byte[] buffer = new byte[5];
+        assertEquals(5, in.read(buffer));
+        in.close();
+        assertEquals("Hello", new String(buffer));
+
+        // INFO: Running the migration again must not migrate anything
+        migrator = new SplitPathMigrator(vfsRepo, 2, 10, 0);
+        migrator.run();
+        assertEquals(0, migrator.getNumberOfMigratedNodes());
+    }
+
+    /**
+     * Test that the migration is not considered complete as long as collections only exist at their not splitted location
+     */
+    public void testSplitPathMigrationWithCollection() throws Exception {
+        VirtualFileSystemRepository vfsRepo = (VirtualFileSystemRepository) openRepository("splitpath-migration");
+        FileUtils.deleteDirectory(new File(vfsRepo.getContentDir(), "splitpath-example")); // INFO: Remove resources migrated by a previous test run
+        File legacyFile = new File(vfsRepo.getContentDir(), "splitpath-example/legacy-collection/migration-test.txt");
+        legacyFile.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(legacyFile);
+        out.write("Hello".getBytes());
+        out.close();
+        assertTrue(vfsRepo.existsNode("/splitpath-example/legacy-collection"));
+
+        SplitPathMigrator migrator = new SplitPathMigrator(vfsRepo, 2, 10, 0);
+        migrator.run();
+        assertEquals(0, migrator.getNumberOfFailedNodes());
+        assertEquals(1, migrator.getNumberOfMigratedNodes());
+        assertEquals(1, migrator.getNumberOfNotMigratedCollections());
+        assertFalse(migrator.isComplete());
+        assertFalse(vfsRepo.isSplitPathMigrationComplete());
+        assertTrue(vfsRepo.existsNode("/splitpath-example/legacy-collection"));
+    }
+}
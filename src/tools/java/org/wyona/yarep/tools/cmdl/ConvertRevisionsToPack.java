@@ -0,0 +1,41 @@
+package org.wyona.yarep.tools.cmdl;
+
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.RepositoryFactory;
+import org.wyona.yarep.impl.repo.vfs.RevisionPackConverter;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository;
+
+import java.io.File;
+
+/**
+ * Utility to convert the revision directories of a virtual file system repository into revision packs, whereas the attribute revisions-path-type of the repository configuration must be set to 'pack' already
+ */
+public class ConvertRevisionsToPack {
+
+    /**
+     *
+     */
+    public static void main(String[] args) {
+
+        if(args.length != 2) {
+            System.out.println("Usage: <data respository configuration> <pause between nodes in milliseconds>");
+            return;
+        }
+
+        try {
+            RepositoryFactory repoFactory = new RepositoryFactory();
+            Repository repo = repoFactory.newRepository("my-repo", new File(args[0]));
+            if (!(repo instanceof VirtualFileSystemRepository)) {
+                System.err.println("Repository '" + args[0] + "' is not a virtual file system repository!");
+                return;
+            }
+
+            RevisionPackConverter converter = new RevisionPackConverter((VirtualFileSystemRepository) repo, Long.parseLong(args[1]));
+            converter.run();
+            System.out.println("Conversion of revisions finished: " + converter.getProgress());
+        } catch (Exception e) {
+            System.err.println(e);
+            return;
+        }
+    }
+}
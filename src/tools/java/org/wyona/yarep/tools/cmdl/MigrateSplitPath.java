@@ -0,0 +1,44 @@
+package org.wyona.yarep.tools.cmdl;
+
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.RepositoryFactory;
+import org.wyona.yarep.impl.repo.vfs.SplitPathMigrator;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository;
+
+import java.io.File;
+
+/**
+ * Utility to migrate resources of a virtual file system repository to their splitted location (see splitpath configuration)
+ */
+public class MigrateSplitPath {
+
+    /**
+     *
+     */
+    public static void main(String[] args) {
+
+        if(args.length != 4) {
+            System.out.println("Usage: <data respository configuration> <number of threads> <batch size> <pause between batches in milliseconds>");
+            return;
+        }
+
+        try {
+            RepositoryFactory repoFactory = new RepositoryFactory();
+            Repository repo = repoFactory.newRepository("my-repo", new File(args[0]));
+            if (!(repo instanceof VirtualFileSystemRepository)) {
+                System.err.println("Repository '" + args[0] + "' is not a virtual file system repository!");
+                return;
+            }
+
+            SplitPathMigrator migrator = new SplitPathMigrator((VirtualFileSystemRepository) repo, Integer.parseInt(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[3]));
+            migrator.run();
+            System.out.println("Split path migration finished: " + migrator.getProgress());
+            if (migrator.isComplete()) {
+                System.out.println("Please set the attribute migration-complete=\"true\" of the splitpath configuration: " + repo.getConfigFile());
+            }
+        } catch (Exception e) {
+            System.err.println(e);
+            return;
+        }
+    }
+}
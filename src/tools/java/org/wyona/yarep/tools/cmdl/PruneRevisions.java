@@ -0,0 +1,42 @@
+package org.wyona.yarep.tools.cmdl;
+
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.RepositoryFactory;
+import org.wyona.yarep.impl.repo.vfs.RevisionPruner;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository;
+
+import java.io.File;
+
+/**
+ * Utility to delete the revisions of a virtual file system repository which are not kept by the configured retention policies (see element revisions-retention)
+ */
+public class PruneRevisions {
+
+    /**
+     *
+     */
+    public static void main(String[] args) {
+
+        if(args.length != 3) {
+            System.out.println("Usage: <data respository configuration> <batch size> <pause between batches in milliseconds>");
+            return;
+        }
+
+        try {
+            RepositoryFactory repoFactory = new RepositoryFactory();
+            Repository repo = repoFactory.newRepository("my-repo", new File(args[0]));
+            if (!(repo instanceof VirtualFileSystemRepository)) {
+                System.err.println("Repository '" + args[0] + "' is not a virtual file system repository!");
+                return;
+            }
+
+            RevisionPruner pruner = new RevisionPruner((VirtualFileSystemRepository) repo, Integer.parseInt(args[1]), Long.parseLong(args[2]));
+            pruner.run();
+            System.out.println("Pruning of revisions finished: " + pruner.getProgress());
+            repo.close();
+        } catch (Exception e) {
+            System.err.println(e);
+            return;
+        }
+    }
+}
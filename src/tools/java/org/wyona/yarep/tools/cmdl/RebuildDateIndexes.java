@@ -0,0 +1,42 @@
+package org.wyona.yarep.tools.cmdl;
+
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.RepositoryFactory;
+import org.wyona.yarep.impl.repo.vfs.DateIndexRebuilder;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository;
+
+import java.io.File;
+
+/**
+ * Utility to rebuild the date indexes of all nodes of a virtual file system repository, e.g. after a restore of the repository (see DateIndexRebuilder)
+ */
+public class RebuildDateIndexes {
+
+    /**
+     *
+     */
+    public static void main(String[] args) {
+
+        if(args.length < 2 || args.length > 3) {
+            System.out.println("Usage: <data respository configuration> <number of threads> [<checkpoint file in order to resume a stopped rebuild>]");
+            return;
+        }
+
+        try {
+            RepositoryFactory repoFactory = new RepositoryFactory();
+            Repository repo = repoFactory.newRepository("my-repo", new File(args[0]));
+            if (!(repo instanceof VirtualFileSystemRepository)) {
+                System.err.println("Repository '" + args[0] + "' is not a virtual file system repository!");
+                return;
+            }
+
+            DateIndexRebuilder rebuilder = new DateIndexRebuilder((VirtualFileSystemRepository) repo, Integer.parseInt(args[1]), args.length == 3 ? new File(args[2]) : null);
+            rebuilder.run();
+            System.out.println("Rebuilding of date indexes finished: " + rebuilder.getProgress());
+            repo.close();
+        } catch (Exception e) {
+            System.err.println(e);
+            return;
+        }
+    }
+}
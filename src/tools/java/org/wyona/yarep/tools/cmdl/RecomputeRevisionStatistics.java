@@ -0,0 +1,69 @@
+package org.wyona.yarep.tools.cmdl;
+
+import org.wyona.yarep.core.Node;
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.RepositoryFactory;
+import org.wyona.yarep.impl.repo.vfs.RevisionStatistics;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemNode;
+import org.wyona.yarep.impl.repo.vfs.VirtualFileSystemRepository;
+
+import java.io.File;
+
+/**
+ * Utility to (re)compute the revision statistics of all nodes of a virtual file system repository (see RevisionStatistics), e.g. for revisions which have been created by a previous version
+ */
+public class RecomputeRevisionStatistics {
+
+    private static int numberOfNodes = 0;
+    private static long numberOfRevisions = 0;
+
+    /**
+     *
+     */
+    public static void main(String[] args) {
+
+        if(args.length < 1 || args.length > 2) {
+            System.out.println("Usage: <data respository configuration> [<path of collection, default: />]");
+            return;
+        }
+
+        try {
+            RepositoryFactory repoFactory = new RepositoryFactory();
+            Repository repo = repoFactory.newRepository("my-repo", new File(args[0]));
+            if (!(repo instanceof VirtualFileSystemRepository)) {
+                System.err.println("Repository '" + args[0] + "' is not a virtual file system repository!");
+                return;
+            }
+
+            recompute(repo.getNode(args.length == 2 ? args[1] : "/"));
+            System.out.println("Revision statistics have been recomputed: nodes: " + numberOfNodes + ", revisions: " + numberOfRevisions);
+            repo.close();
+        } catch (Exception e) {
+            System.err.println(e);
+            return;
+        }
+    }
+
+    /**
+     * Recompute revision statistics of a node and its children recursively
+     */
+    private static void recompute(Node node) throws Exception {
+        if (node.isCollection()) {
+            Node[] children = node.getNodes();
+            for (int i = 0; i < children.length; i++) {
+                recompute(children[i]);
+            }
+        } else if (node instanceof VirtualFileSystemNode) {
+            try {
+                RevisionStatistics stats = ((VirtualFileSystemNode) node).recomputeRevisionStatistics();
+                numberOfNodes++;
+                numberOfRevisions = numberOfRevisions + stats.getNumberOfRevisions();
+                if (numberOfNodes % 1000 == 0) {
+                    System.out.println("Nodes: " + numberOfNodes + ", revisions: " + numberOfRevisions);
+                }
+            } catch (Exception e) {
+                System.err.println("Could not recompute revision statistics of '" + node.getPath() + "': " + e);
+            }
+        }
+    }
+}
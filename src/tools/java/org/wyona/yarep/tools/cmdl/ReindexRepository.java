@@ -0,0 +1,42 @@
+package org.wyona.yarep.tools.cmdl;
+
+import org.wyona.yarep.core.Repository;
+import org.wyona.yarep.core.RepositoryFactory;
+import org.wyona.yarep.impl.search.lucene.LuceneBulkReindexer;
+
+import java.io.File;
+
+/**
+ * Utility to rebuild the fulltext and properties indexes of a repository aside and to replace the live indexes at the end (see LuceneBulkReindexer)
+ */
+public class ReindexRepository {
+
+    /**
+     *
+     */
+    public static void main(String[] args) {
+
+        if(args.length != 2) {
+            System.out.println("Usage: <data respository configuration> <number of threads>");
+            return;
+        }
+
+        try {
+            RepositoryFactory repoFactory = new RepositoryFactory();
+            Repository repo = repoFactory.newRepository("my-repo", new File(args[0]));
+
+            LuceneBulkReindexer reindexer = new LuceneBulkReindexer(repo, Integer.parseInt(args[1]));
+            Thread thread = new Thread(reindexer);
+            thread.start();
+            while (!reindexer.isFinished()) {
+                thread.join(10000);
+                System.out.println("Progress: " + reindexer.getProgress());
+            }
+            System.out.println("Reindexing finished: " + reindexer.getProgress());
+            repo.close();
+        } catch (Exception e) {
+            System.err.println(e);
+            return;
+        }
+    }
+}